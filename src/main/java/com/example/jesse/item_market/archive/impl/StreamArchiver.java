@@ -0,0 +1,661 @@
+package com.example.jesse.item_market.archive.impl;
+
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.STREAM_OPERATOR;
+import static com.example.jesse.item_market.utils.StreamGroupReader.readGroup;
+
+/**
+ * <p>日志流归档器。</p>
+ *
+ * <p>
+ *     各个脚本向市场、用户、包裹、公会、联系人、用户名、公会名日志流写入审计事件时不带 MAXLEN，
+ *     这些流是 Redis 内存的最大占用者。本类以消费组（stream-archive）读取每一个日志流，
+ *     把一批事件以一条多行 INSERT 写入 MySQL 的 stream_archive 表，
+ *     与归档进度（stream_archive_checkpoint 表）在同一个事务中提交，提交后 XACK，
+ *     再由 trimArchivedStream.lua 以 XTRIM MINID 删除已经归档的事件。
+ * </p>
+ *
+ * <ul>
+ *     <li>
+ *         背压：所有流一轮一轮地归档，每一轮每个流只读一批，写入并确认之后才开始下一轮，
+ *         同时归档的流数不超过 max-concurrency，占用的数据库连接数也就不超过它。
+ *     </li>
+ *     <li>
+ *         幂等：stream_archive 以 (stream_key, entry_id) 为唯一键，INSERT IGNORE 写入，
+ *         写入之后、确认之前崩溃导致的重复投递不会产生重复的行；
+ *         归档事件数（指标与 archived_total）按实际插入的行数累计，重复投递的事件不会被重复计数。
+ *     </li>
+ *     <li>
+ *         进度：归档进度表记录每个流归档到的最后一条事件与累计归档数，
+ *         消费组丢失（流被删除后重建等）时从这里继续，而不是从头归档。
+ *     </li>
+ *     <li>
+ *         安全删除：删除的事件不会越过任何一个消费组最早的待确认事件或最后投递的事件，
+ *         所以市场统计、交易事件展开等消费组还没处理的事件不会被删除。
+ *     </li>
+ *     <li>
+ *         指标：stream.archive.entries（归档事件数）、stream.archive.trimmed（删除事件数）、
+ *         stream.archive.batch（每批写入耗时），都以 stream 标签区分日志流
+ *         （按用户分开的日志流以扫描模式作为标签，如 users:log:{*}）。
+ *     </li>
+ * </ul>
+ *
+ * <p>
+ *     集群模式下用户、包裹、联系人日志按用户分成了各自的流（如 users:log:{uuid}），
+ *     数量与用户数相同，不为它们逐个创建消费组，而是每隔 per-user-sweep-interval-seconds 扫描一遍：
+ *     事件数超过 per-user-retain 的流，把最早的一批（至多 batch-size 条）写入 MySQL 后删除，
+ *     每个用户最近的 per-user-retain 条事件留在 Redis 中，供集群模式下的操作历史查询。
+ *     所以这些流的长度不会超过 per-user-retain 加上两次扫描之间新写入的事件数。
+ * </p>
+ */
+@Slf4j
+@Component
+public class StreamArchiver implements SmartLifecycle
+{
+    /** trimArchivedStream.lua：删除已经归档的事件，发布删除的事件数。*/
+    private static final LuaScript<Long> TRIM_ARCHIVED_STREAM
+        = LuaScript.<Long>builder(STREAM_OPERATOR, "trimArchivedStream.lua")
+                   .success("SUCCESS", (call) -> call.result().getLong(0))
+                   .success("NOTHING_TO_TRIM", (call) -> 0L)
+                   .build();
+
+    /** 日志流归档消费组名。*/
+    public static final String ARCHIVE_GROUP = "stream-archive";
+
+    /** 归档事件数指标名。*/
+    public static final String ENTRIES_METRIC = "stream.archive.entries";
+
+    /** 删除事件数指标名。*/
+    public static final String TRIMMED_METRIC = "stream.archive.trimmed";
+
+    /** 每批写入耗时指标名。*/
+    public static final String BATCH_METRIC = "stream.archive.batch";
+
+    /** 归档表与进度表的建表语句。*/
+    private static final List<String> SCHEMA = List.of(
+        """
+        CREATE TABLE IF NOT EXISTS stream_archive
+        (
+            id            BIGINT       NOT NULL AUTO_INCREMENT,
+            stream_key    VARCHAR(128) NOT NULL,
+            entry_id      VARCHAR(48)  NOT NULL,
+            entry_time_ms BIGINT       NOT NULL,
+            event         VARCHAR(64)  NULL,
+            fields        JSON         NOT NULL,
+            archived_at   TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+            PRIMARY KEY (id),
+            UNIQUE KEY uk_stream_entry (stream_key, entry_id),
+            KEY idx_stream_time (stream_key, entry_time_ms)
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS stream_archive_checkpoint
+        (
+            stream_key     VARCHAR(128) NOT NULL,
+            last_entry_id  VARCHAR(48)  NOT NULL,
+            archived_total BIGINT       NOT NULL,
+            updated_at     TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+            PRIMARY KEY (stream_key)
+        )
+        """
+    );
+
+    /** 是否启用日志流归档？*/
+    @Value("${app.stream-archive.enabled:false}")
+    private boolean enabled;
+
+    /** 一批最多归档几条事件。*/
+    @Value("${app.stream-archive.batch-size:500}")
+    private int batchSize;
+
+    /** 同时归档的最大流数（也是归档占用的最大数据库连接数）。*/
+    @Value("${app.stream-archive.max-concurrency:2}")
+    private int maxConcurrency;
+
+    /** 没有新事件（或者出错）时等待多久再读（毫秒）。*/
+    @Value("${app.stream-archive.idle-wait-millis:5000}")
+    private long idleWaitMillis;
+
+    /** 集群模式下，按用户分开的日志流每个保留最近几条事件（更早的事件归档后删除）。*/
+    @Value("${app.stream-archive.per-user-retain:1000}")
+    private long perUserRetain;
+
+    /** 集群模式下，每隔多久扫描一遍按用户分开的日志流（秒）。*/
+    @Value("${app.stream-archive.per-user-sweep-interval-seconds:600}")
+    private long perUserSweepIntervalSeconds;
+
+    /** 本节点在消费组中的消费者名（重启后保持不变才能继续处理自己的待确认事件）。*/
+    @Value("${app.stream-archive.consumer-name:${HOSTNAME:stream-archive}}")
+    private String consumerName;
+
+    /** 字符串序列化 Redis 模板（日志流的字段都是原始字符串）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** R2DBC 数据库客户端。*/
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /** R2DBC 的事务操作器。*/
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    /** 把事件的字段序列化成 JSON。*/
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** 指标注册表。*/
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 正在执行的归档任务。*/
+    private volatile Disposable archiving;
+
+    /** 日志流 -> 各项指标。*/
+    private final Map<String, StreamMeters> meters = new ConcurrentHashMap<>();
+
+    /** 下一轮需要先归档待确认事件的日志流（上一轮写入或确认失败，事件还留在待确认列表中）。*/
+    private final Set<String> retryStreams = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 一个日志流的指标。
+     *
+     * @param entries 归档事件数
+     * @param trimmed 删除事件数
+     * @param batch   每批写入耗时
+     */
+    private record StreamMeters(Counter entries, Counter trimmed, Timer batch) {}
+
+    /** 启动归档任务（没有启用时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && RUNNING.compareAndSet(false, true))
+        {
+            log.info(
+                "[SmartLifecycle] Stream archiver started, consumer: {}, streams: {}.",
+                this.consumerName, getArchivedStreamKeys());
+
+            this.archiving
+                = this.archive()
+                      .subscribe(
+                          null,
+                          (exception) ->
+                              log.error("Stream archiver stopped by error!", exception)
+                      );
+        }
+    }
+
+    /** 停止归档任务，没有确认的事件留在待确认列表中，下次启动时继续处理。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] Stream archiver stopped.");
+
+            if (this.archiving != null) {
+                this.archiving.dispose();
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其最后被创建，最先被执行。*/
+    @Override
+    public int getPhase() { return Integer.MAX_VALUE; }
+
+    /** 某个日志流的指标标签：按用户分开的日志流共用它的扫描模式（users:log:{uuid} -> users:log:{*}）。*/
+    private static @NotNull String
+    meterTag(@NotNull String streamKey) {
+        return streamKey.replaceFirst("\\{[^{}]*}$", "{*}");
+    }
+
+    /** 获取（或创建）某个日志流的指标。*/
+    private @NotNull StreamMeters
+    getMeters(String streamKey)
+    {
+        return
+        this.meters.computeIfAbsent(meterTag(streamKey), (key) ->
+            new StreamMeters(
+                Counter.builder(ENTRIES_METRIC)
+                       .description("Stream entries archived to MySQL")
+                       .tag("stream", key)
+                       .register(this.meterRegistry),
+                Counter.builder(TRIMMED_METRIC)
+                       .description("Archived stream entries trimmed from Redis")
+                       .tag("stream", key)
+                       .register(this.meterRegistry),
+                Timer.builder(BATCH_METRIC)
+                     .description("Time to write one archive batch to MySQL")
+                     .tag("stream", key)
+                     .register(this.meterRegistry)));
+    }
+
+    /** 创建归档表与进度表（已经存在时什么都不做）。*/
+    private @NotNull Mono<Void> createSchema()
+    {
+        return
+        Flux.fromIterable(SCHEMA)
+            .concatMap((statement) ->
+                this.databaseClient.sql(statement).then())
+            .then();
+    }
+
+    /** 读取某个日志流的归档进度，没有归档过时发布 "0"。*/
+    private @NotNull Mono<String>
+    findCheckpoint(String streamKey)
+    {
+        return
+        this.databaseClient
+            .sql("SELECT last_entry_id FROM stream_archive_checkpoint WHERE stream_key = :stream")
+            .bind("stream", streamKey)
+            .map((row, metadata) -> row.get("last_entry_id", String.class))
+            .one()
+            .defaultIfEmpty("0");
+    }
+
+    /** 创建消费组（流不存在时一并创建），从归档进度之后开始读取；消费组已经存在时什么都不做。*/
+    private @NotNull Mono<Void>
+    createGroup(String streamKey)
+    {
+        final ByteBuffer rawKey
+            = ByteBuffer.wrap(streamKey.getBytes(StandardCharsets.UTF_8));
+
+        return
+        this.findCheckpoint(streamKey)
+            .flatMap((checkpoint) ->
+                this.stringRedisTemplate
+                    .execute((connection) ->
+                        connection.streamCommands()
+                                  .xGroupCreate(rawKey, ARCHIVE_GROUP, ReadOffset.from(checkpoint), true))
+                    .then())
+            .onErrorResume(
+                (exception) ->
+                    exception.getMessage() != null &&
+                    exception.getMessage().contains("BUSYGROUP"),
+                (exception) -> Mono.empty()
+            );
+    }
+
+    /** 以本消费者的身份从某个位置读取某个日志流的一批事件。*/
+    private @NotNull Mono<List<MapRecord<String, String, String>>>
+    readBatch(String streamKey, ReadOffset offset)
+    {
+        return
+        readGroup(
+            this.stringRedisTemplate,
+            Consumer.from(ARCHIVE_GROUP, this.consumerName), this.batchSize,
+            StreamOffset.create(streamKey, offset))
+        .collectList();
+    }
+
+    /** 事件的字段序列化成 JSON。*/
+    private @NotNull String
+    toJson(@NotNull Map<String, String> fields)
+    {
+        try {
+            return this.objectMapper.writeValueAsString(fields);
+        }
+        catch (JsonProcessingException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * 在一个事务中把一批事件写入归档表（一条多行 INSERT IGNORE），并推进归档进度。
+     * 已经归档过的事件（重复投递）被 INSERT IGNORE 跳过，不计入归档数。
+     *
+     * @param streamKey 日志流键
+     * @param records   一批事件（按 ID 递增）
+     *
+     * @return 发布实际插入的行数的 Mono
+     */
+    private @NotNull Mono<Long>
+    insertBatch(String streamKey, @NotNull List<MapRecord<String, String, String>> records)
+    {
+        final StringBuilder sql
+            = new StringBuilder(
+                "INSERT IGNORE INTO stream_archive " +
+                "(stream_key, entry_id, entry_time_ms, event, fields) VALUES ");
+
+        for (int index = 0; index < records.size(); ++index)
+        {
+            if (index > 0) {
+                sql.append(", ");
+            }
+
+            sql.append("(:stream, :id").append(index)
+               .append(", :time").append(index)
+               .append(", :event").append(index)
+               .append(", :fields").append(index).append(')');
+        }
+
+        DatabaseClient.GenericExecuteSpec insert
+            = this.databaseClient.sql(sql.toString()).bind("stream", streamKey);
+
+        for (int index = 0; index < records.size(); ++index)
+        {
+            final MapRecord<String, String, String> record = records.get(index);
+            final String event = record.getValue().get("event");
+
+            insert = insert.bind("id" + index, record.getId().getValue())
+                           .bind("time" + index, record.getId().getTimestamp())
+                           .bind("fields" + index, this.toJson(record.getValue()));
+
+            insert = (event == null)
+                ? insert.bindNull("event" + index, String.class)
+                : insert.bind("event" + index, event);
+        }
+
+        final Function<Long, Mono<Void>> checkpoint
+            = (inserted) ->
+              this.databaseClient
+                  .sql("""
+                      INSERT INTO stream_archive_checkpoint (stream_key, last_entry_id, archived_total)
+                      VALUES (:stream, :lastId, :count)
+                      ON DUPLICATE KEY UPDATE
+                          last_entry_id  = VALUES(last_entry_id),
+                          archived_total = archived_total + VALUES(archived_total)
+                      """)
+                  .bind("stream", streamKey)
+                  .bind("lastId", records.getLast().getId().getValue())
+                  .bind("count", inserted)
+                  .then();
+
+        return
+        this.transactionalOperator
+            .transactional(
+                insert.fetch()
+                      .rowsUpdated()
+                      .flatMap((inserted) -> checkpoint.apply(inserted).thenReturn(inserted)));
+    }
+
+    /** 确认一批事件，再删除所有消费组都已经处理完的已归档事件。*/
+    private @NotNull Mono<Void>
+    acknowledgeAndTrim(String streamKey, @NotNull List<MapRecord<String, String, String>> records)
+    {
+        final RecordId[] ids
+            = records.stream()
+                     .map(MapRecord::getId)
+                     .toArray(RecordId[]::new);
+
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForStream()
+            .acknowledge(streamKey, ARCHIVE_GROUP, ids)
+            .then(this.trimArchived(streamKey, records.getLast().getId().getValue()));
+    }
+
+    /** 删除某个日志流中已经归档到 archivedId 的事件（不越过任何消费组的进度）。*/
+    private @NotNull Mono<Void>
+    trimArchived(String streamKey, String archivedId)
+    {
+        return
+        this.luaScriptExecutor
+            .execute(TRIM_ARCHIVED_STREAM, List.of(streamKey), archivedId)
+            .doOnNext((trimmed) -> this.getMeters(streamKey).trimmed().increment(trimmed))
+            .then();
+    }
+
+    /** 归档一批事件：写入 MySQL、确认、删除，发布这一批的事件数。*/
+    private @NotNull Mono<Integer>
+    archiveBatch(String streamKey, @NotNull List<MapRecord<String, String, String>> records)
+    {
+        if (records.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        final StreamMeters streamMeters = this.getMeters(streamKey);
+        final long start = System.nanoTime();
+
+        return
+        this.insertBatch(streamKey, records)
+            .doOnNext((inserted) -> {
+                streamMeters.batch().record(Duration.ofNanos(System.nanoTime() - start));
+                streamMeters.entries().increment(inserted);
+            })
+            .then(this.acknowledgeAndTrim(streamKey, records))
+            .thenReturn(records.size());
+    }
+
+    /** 归档本消费者所有待确认的事件（从 afterId 之后开始，逐批向后推进）。*/
+    private @NotNull Mono<Void>
+    drainPending(String streamKey, String afterId)
+    {
+        return
+        this.readBatch(streamKey, ReadOffset.from(afterId))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.empty()
+                    : this.archiveBatch(streamKey, records)
+                          .then(
+                              Mono.defer(() ->
+                                  this.drainPending(streamKey, records.getLast().getId().getValue()))));
+    }
+
+    /**
+     * 读取并归档某个日志流的一批新事件，发布这一批的事件数（出错时发布 0）。
+     * 上一轮失败的日志流先从头归档本消费者所有待确认的事件，
+     * 否则它们要等到重启才会被重新读取，删除已归档事件时也会一直停在最早的待确认事件之前。
+     */
+    private @NotNull Mono<Integer>
+    archiveNewEvents(String streamKey)
+    {
+        final boolean retry = this.retryStreams.remove(streamKey);
+
+        final Mono<Void> pending
+            = (retry) ? this.drainPending(streamKey, "0") : Mono.empty();
+
+        return
+        pending
+            .then(this.readBatch(streamKey, ReadOffset.lastConsumed()))
+            .flatMap((records) -> this.archiveBatch(streamKey, records))
+            .onErrorResume((exception) -> {
+                log.warn("Archive stream: {} failed, retry in next round.", streamKey, exception);
+
+                this.retryStreams.add(streamKey);
+
+                // 流或者消费组可能被删除了，重新创建后继续读取
+                return
+                this.createGroup(streamKey)
+                    .onErrorResume((ignore) -> Mono.empty())
+                    .thenReturn(0);
+            });
+    }
+
+    /** 某个日志流启动时的准备：创建消费组，归档本消费者所有待确认的事件。*/
+    private @NotNull Mono<Void>
+    prepareStream(String streamKey)
+    {
+        return
+        this.createGroup(streamKey)
+            .then(this.drainPending(streamKey, "0"))
+            .onErrorResume((exception) -> {
+                log.warn("Prepare stream: {} for archiving failed!", streamKey, exception);
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 一轮归档：每个日志流各读取并归档一批新事件（同时归档的流数不超过 max-concurrency），
+     * 有流读满了一批（还有积压）时马上开始下一轮，否则等待一段时间。
+     */
+    private @NotNull Mono<Void>
+    archiveRound(List<String> streamKeys)
+    {
+        return
+        Flux.fromIterable(streamKeys)
+            .flatMap(this::archiveNewEvents, this.maxConcurrency)
+            .reduce(0, Math::max)
+            .flatMap((largestBatch) ->
+                (largestBatch < this.batchSize)
+                    ? Mono.delay(Duration.ofMillis(this.idleWaitMillis)).then()
+                    : Mono.<Void>empty());
+    }
+
+    /**
+     * 归档某个按用户分开的日志流中超出保留条数的最早一批事件，再删除它们，发布这一批的事件数。
+     * 这类流没有归档消费组，写入 MySQL 之后直接删除（仍然不越过其他消费组的进度），
+     * 写入之后、删除之前崩溃时，下次扫描重新读到的事件被 INSERT IGNORE 跳过。
+     */
+    private @NotNull Mono<Integer>
+    archivePerUserStream(String streamKey)
+    {
+        return
+        this.stringRedisTemplate
+            .opsForStream()
+            .size(streamKey)
+            .flatMap((length) -> {
+                final long excess = length - this.perUserRetain;
+
+                if (excess <= 0L) {
+                    return Mono.just(0);
+                }
+
+                return
+                this.stringRedisTemplate
+                    .<String, String>opsForStream()
+                    .range(
+                        streamKey, Range.unbounded(),
+                        Limit.limit().count((int) Math.min(excess, this.batchSize)))
+                    .collectList()
+                    .flatMap((records) -> {
+                        if (records.isEmpty()) {
+                            return Mono.just(0);
+                        }
+
+                        final StreamMeters streamMeters = this.getMeters(streamKey);
+                        final long start = System.nanoTime();
+
+                        return
+                        this.insertBatch(streamKey, records)
+                            .doOnNext((inserted) -> {
+                                streamMeters.batch().record(Duration.ofNanos(System.nanoTime() - start));
+                                streamMeters.entries().increment(inserted);
+                            })
+                            .then(this.trimArchived(streamKey, records.getLast().getId().getValue()))
+                            .thenReturn(records.size());
+                    });
+            })
+            .onErrorResume((exception) -> {
+                log.warn("Archive per-user stream: {} failed, retry in next sweep.", streamKey, exception);
+                return Mono.just(0);
+            });
+    }
+
+    /** 扫描一遍集群模式下按用户分开的日志流（同时归档的流数不超过 max-concurrency），发布归档的事件数。*/
+    private @NotNull Mono<Long>
+    sweepPerUserStreams(@NotNull List<String> patterns)
+    {
+        return
+        Flux.fromIterable(patterns)
+            .concatMap((pattern) ->
+                this.stringRedisTemplate
+                    .scan(
+                        ScanOptions.scanOptions()
+                            .match(pattern)
+                            .count(this.batchSize)
+                            .build()))
+            .flatMap(this::archivePerUserStream, this.maxConcurrency)
+            .reduce(0L, Long::sum)
+            .doOnNext((archived) -> {
+                if (archived > 0L) {
+                    log.info("Per-user stream sweep archived {} entries.", archived);
+                }
+            })
+            .onErrorResume((exception) -> {
+                log.warn("Per-user stream sweep failed, retry in next sweep.", exception);
+                return Mono.just(0L);
+            });
+    }
+
+    /**
+     * 日志流归档任务：
+     *
+     * <ol>
+     *     <li>创建归档表与进度表</li>
+     *     <li>为每个日志流创建消费组，归档本消费者所有待确认的事件</li>
+     *     <li>一轮一轮地归档所有日志流的新事件，直到本 Bean 停止</li>
+     *     <li>集群模式下，同时定期扫描按用户分开的日志流</li>
+     * </ol>
+     */
+    public @NotNull Mono<Void> archive()
+    {
+        final List<String> streamKeys  = List.copyOf(getArchivedStreamKeys());
+        final List<String> perUserKeys = getPerUserLogKeyPatterns();
+
+        final Mono<Void> sharedStreams
+            = this.archiveRound(streamKeys)
+                  .repeat(RUNNING::get)
+                  .then();
+
+        final Mono<Void> perUserStreams
+            = (perUserKeys.isEmpty())
+                ? Mono.empty()
+                : Flux.interval(
+                          Duration.ZERO,
+                          Duration.ofSeconds(this.perUserSweepIntervalSeconds))
+                      .takeWhile((tick) -> RUNNING.get())
+                      .concatMap((tick) -> this.sweepPerUserStreams(perUserKeys))
+                      .then();
+
+        return
+        this.createSchema()
+            .then(
+                Flux.fromIterable(streamKeys)
+                    .flatMap(this::prepareStream, this.maxConcurrency)
+                    .then())
+            .then(Mono.when(sharedStreams, perUserStreams));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.jesse.item_market.config;
+
+import com.example.jesse.item_market.lock.RedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * <p>一次性迁移（回填）任务的基类。</p>
+ *
+ * 开启配置后，应用启动完成时在分布式锁内执行一次 {@link #migrateAll()}，完成后写入标记键，
+ * 多个节点同时启动或者重复启动都只会执行一次；标记键已经存在时什么都不做。
+ * 子类只需给出任务名、标记键与迁移步骤，逐个键迁移的任务可以直接用 {@link #forEachKey}。
+ */
+@Slf4j
+public abstract class OneShotMigration
+{
+    /** 任务名（日志与分布式锁名中使用，例：UserFundsMigration）。*/
+    private final String taskName;
+
+    /** 分布式锁的超时时间（秒），应当长于整个迁移的耗时。*/
+    private final long lockTimeoutSeconds;
+
+    /** 通用 Redis 模板（读写标记键、SCAN 键）。*/
+    @Autowired
+    protected ReactiveRedisTemplate<String, Object> redisTemplate;
+
+    /** Redis 分布式锁。*/
+    @Autowired
+    private RedisLock redisLock;
+
+    protected OneShotMigration(String taskName, long lockTimeoutSeconds)
+    {
+        this.taskName           = taskName;
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
+    }
+
+    /** 是否在应用启动完成时执行？*/
+    protected abstract boolean isEnabled();
+
+    /** 完成后写入的标记键。*/
+    protected abstract @NotNull String markerKey();
+
+    /**
+     * 迁移所有数据（标记键不存在时在锁内调用）。
+     *
+     * @return 发布本次迁移的数量的 Mono
+     */
+    protected abstract @NotNull Mono<Long> migrateAll();
+
+    /** 应用启动完成后，按配置执行。*/
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady()
+    {
+        if (!this.isEnabled()) {
+            return;
+        }
+
+        this.run()
+            .subscribe(
+                (count) ->
+                    log.info("{} finished, {} migrated.", this.taskName, count),
+                (exception) ->
+                    log.error("{} failed!", this.taskName, exception)
+            );
+    }
+
+    /**
+     * 执行迁移（已经执行过时什么都不做）。
+     *
+     * @return 发布本次迁移的数量的 Mono（已经执行过时为 0）
+     */
+    public @NotNull Mono<Long> run()
+    {
+        return
+        this.redisLock.withLock(
+            this.taskName + "_Lock",
+            10L, this.lockTimeoutSeconds,
+            (identifier) ->
+                this.redisTemplate
+                    .hasKey(this.markerKey())
+                    .flatMap((done) -> {
+                        if (done)
+                        {
+                            log.info("{} already done, skip.", this.taskName);
+                            return Mono.just(0L);
+                        }
+
+                        return
+                        this.migrateAll()
+                            .flatMap((count) ->
+                                this.redisTemplate
+                                    .opsForValue()
+                                    .set(this.markerKey(), Instant.now().getEpochSecond())
+                                    .thenReturn(count));
+                    })
+        );
+    }
+
+    /**
+     * SCAN 所有匹配 pattern 的键，并发地对每个键执行一次 step，
+     * 发布 step 发布了 true 的键的数量。
+     *
+     * @param pattern     键的模式
+     * @param concurrency 同时执行的 step 数量
+     * @param step        迁移一个键，发布本次是否迁移了这个键
+     */
+    protected @NotNull Mono<Long>
+    forEachKey(
+        String pattern, int concurrency,
+        Function<String, Mono<Boolean>> step)
+    {
+        return
+        this.redisTemplate
+            .scan(
+                ScanOptions.scanOptions()
+                    .match(pattern)
+                    .count(100L)
+                    .build())
+            .flatMap(step, concurrency)
+            .filter(Boolean::booleanValue)
+            .count();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.jesse.item_market.config;
+
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import com.example.jesse.item_market.utils.dto.LuaBulkResult;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.USER_OPERATOR;
+
+/**
+ * <p>业务数据编码的在线迁移任务。</p>
+ *
+ * 用户、包裹、市场、公会数据原先经 Jackson 序列化，字符串都带着一层 JSON 引号（"\"Sword\""），
+ * 现在改为以原始字符串保存（见 {@link PlainValueSerializer}）。
+ * 开启 app.redis.plain-value-migration 后，应用启动完成时 SCAN 这些数据的键，
+ * 每 100 个键为一批，以流水线的方式执行 migratePlainValues.lua 逐个改写，
+ * 每个键的改写都是原子的，日志流、分布式锁等其他键不受影响。
+ * 整个过程在分布式锁内执行，完成后写入标记键，多个节点同时启动或者重复启动都只会迁移一次。
+ * 标记键写入之前，读取方同时接受两种编码（Java 端见 {@link PlainValueReader}，Lua 端见 shared/plain.lua）。
+ */
+@Slf4j
+@Component
+public class PlainValueMigration extends OneShotMigration
+{
+    /** migratePlainValues.lua：改写一个键，发布本次是否改写了这个键。*/
+    private static final LuaScript<Boolean> MIGRATE_PLAIN_VALUES
+        = LuaScript.<Boolean>builder(USER_OPERATOR, "migratePlainValues.lua")
+                   .success("MIGRATED", (call) -> true)
+                   .success("UNCHANGED", (call) -> false)
+                   .success("SKIPPED", (call) -> false)
+                   .build();
+
+    /** 需要改写的键的模式。*/
+    private static final List<String> KEY_PATTERNS
+        = List.of(
+            USER_PREFIX + "*", "user-name:*", USER_CONTACT_PREFIX + "*",
+            INVENTORY_PREFIX + "*", MARKET_PREFIX + "*", GUILD_PREFIX + "*"
+        );
+
+    /** 每一批改写的键数量。*/
+    private static final int BATCH_SIZE = 100;
+
+    /** 是否在应用启动完成时执行迁移？*/
+    @Value("${app.redis.plain-value-migration:false}")
+    private boolean enabled;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** 兼容旧编码的读取器（迁移完成后关闭兼容读取）。*/
+    @Autowired
+    private PlainValueReader plainValueReader;
+
+    public PlainValueMigration() { super("PlainValueMigration", 600L); }
+
+    @Override
+    protected boolean isEnabled() { return this.enabled; }
+
+    @Override
+    protected @NotNull String markerKey() { return getPlainValueMigrationKey(); }
+
+    /** 执行迁移，完成（或者早已完成）后关闭兼容读取。*/
+    @Override
+    public @NotNull Mono<Long> run() {
+        return super.run().doOnSuccess((ignore) -> this.plainValueReader.markMigrated());
+    }
+
+    /** SCAN 所有业务数据的键，分批改写。*/
+    @Override
+    protected @NotNull Mono<Long> migrateAll()
+    {
+        return
+        Flux.fromIterable(KEY_PATTERNS)
+            .concatMap((pattern) ->
+                this.redisTemplate
+                    .scan(
+                        ScanOptions.scanOptions()
+                            .match(pattern)
+                            .count(BATCH_SIZE)
+                            .build()))
+            .buffer(BATCH_SIZE)
+            .concatMap((keys) ->
+                this.luaScriptExecutor
+                    .executeAll(
+                        MIGRATE_PLAIN_VALUES,
+                        keys.stream()
+                            .map((key) -> LuaScript.Invocation.of(List.of(key)))
+                            .toList()))
+            .doOnNext((result) -> {
+                if (!result.isSuccess()) {
+                    log.warn("Migrate key failed!", result.getError());
+                }
+            })
+            .map(LuaBulkResult::getValue)
+            .filter(Objects::nonNull)
+            .filter(Boolean::booleanValue)
+            .count();
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.jesse.item_market.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.jesse.item_market.utils.KeyConcat.getPlainValueMigrationKey;
+
+/**
+ * <p>兼容旧编码（Jackson，字符串带 JSON 引号）的业务数据读取器。</p>
+ *
+ * 迁移标记键（见 {@link PlainValueMigration}）写入之前，还没有改写的键中
+ * 哈希的字段名与字段值、集合与有序集合的成员都还带着引号（"\"Sword\""）。
+ * 这期间读取哈希字段时，读不到的字段再按带引号的字段名读一次，读出的值与成员去掉引号；
+ * 确认标记键存在之后，所有读取都直接返回原始字符串，不再多执行任何命令。
+ * 标记键在应用启动完成时读取一次，之后兼容读取时最多每分钟重新确认一次（其他节点可能已经完成了迁移）。
+ */
+@Slf4j
+@Component
+public class PlainValueReader
+{
+    /** 兼容读取期间，两次确认迁移标记键的最小间隔（毫秒）。*/
+    private static final long MARKER_RECHECK_MILLIS = 60_000L;
+
+    /** 解析旧编码的 JSON 字符串。*/
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /** 迁移标记键是否已经存在？*/
+    private final AtomicBoolean migrated = new AtomicBoolean(false);
+
+    /** 上一次确认迁移标记键的时间（毫秒）。*/
+    private final AtomicLong lastMarkerCheck = new AtomicLong(0L);
+
+    /** 字符串序列化 Redis 模板（业务数据都以原始字符串保存）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** 通用 Redis 模板（读取迁移标记键）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> redisTemplate;
+
+    /** 应用启动完成后，读取迁移标记键。*/
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        this.recheckMarker();
+    }
+
+    /** 迁移完成（{@link PlainValueMigration} 写入标记键之后调用）。*/
+    public void markMigrated() {
+        this.migrated.set(true);
+    }
+
+    /** 是否还需要兼容旧编码？*/
+    public boolean isCompatible() {
+        return !this.migrated.get();
+    }
+
+    /**
+     * 去掉旧编码的 JSON 引号，其他值（包括 null）原样返回。
+     * 迁移完成之后原始字符串本身也可能以引号开头结尾，只在兼容期间调用。
+     */
+    @Contract("null -> null")
+    public static String unquote(String value)
+    {
+        if (
+            value == null || value.length() < 2 ||
+            value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"'
+        ) {
+            return value;
+        }
+
+        try {
+            return JSON.readValue(value, String.class);
+        }
+        catch (JsonProcessingException exception) {
+            return value;
+        }
+    }
+
+    /** 旧编码下的字段名。*/
+    @Contract(pure = true)
+    public static @NotNull String quoted(String field) {
+        return "\"" + field + "\"";
+    }
+
+    /** 读出的集合或有序集合成员（兼容期间去掉引号）。*/
+    public String member(String value) {
+        return (this.isCompatible()) ? unquote(value) : value;
+    }
+
+    /**
+     * 读取哈希的多个字段，与 HMGET 一样按字段顺序返回（不存在的字段为 null）。
+     * 兼容期间读不到的字段再按带引号的字段名读一次，读出的值去掉引号。
+     */
+    public @NotNull Mono<List<String>>
+    multiGet(String key, List<String> fields)
+    {
+        return
+        this.stringRedisTemplate.<String, String>opsForHash()
+            .multiGet(key, fields)
+            .flatMap((values) -> {
+                if (!this.isCompatible() || !values.contains(null)) {
+                    return Mono.just(values);
+                }
+
+                this.recheckMarker();
+
+                return
+                this.stringRedisTemplate.<String, String>opsForHash()
+                    .multiGet(key, fields.stream().map(PlainValueReader::quoted).toList())
+                    .map((legacyValues) -> {
+                        final List<String> merged = new ArrayList<>(values);
+
+                        for (int index = 0; index < merged.size(); ++index)
+                        {
+                            if (merged.get(index) == null) {
+                                merged.set(index, unquote(legacyValues.get(index)));
+                            }
+                        }
+
+                        return merged;
+                    });
+            });
+    }
+
+    /** 读取哈希的一个字段（兼容方式同 {@link #multiGet}），字段不存在时为空。*/
+    public @NotNull Mono<String> get(String key, String field)
+    {
+        return
+        this.multiGet(key, List.of(field))
+            .flatMap((values) -> Mono.justOrEmpty(values.getFirst()));
+    }
+
+    /** 读取有序集合成员的分数，兼容期间没有这个成员时再按带引号的成员读一次。*/
+    public @NotNull Mono<Double> score(String key, String member)
+    {
+        final Mono<Double> score
+            = this.stringRedisTemplate.opsForZSet().score(key, member);
+
+        if (!this.isCompatible()) {
+            return score;
+        }
+
+        return
+        score.switchIfEmpty(
+            Mono.defer(() ->
+                this.stringRedisTemplate.opsForZSet().score(key, quoted(member))));
+    }
+
+    /** 集合中是否有这个成员，兼容期间没有时再按带引号的成员判断一次。*/
+    public @NotNull Mono<Boolean> isMember(String key, String member)
+    {
+        final Mono<Boolean> isMember
+            = this.stringRedisTemplate.opsForSet().isMember(key, member);
+
+        if (!this.isCompatible()) {
+            return isMember;
+        }
+
+        return
+        isMember.flatMap((found) ->
+            (found)
+                ? Mono.just(true)
+                : this.stringRedisTemplate.opsForSet().isMember(key, quoted(member)));
+    }
+
+    /** 兼容期间（最多每分钟一次）重新确认迁移标记键是否已经存在。*/
+    private void recheckMarker()
+    {
+        final long now  = System.currentTimeMillis();
+        final long last = this.lastMarkerCheck.get();
+
+        if (
+            now - last < MARKER_RECHECK_MILLIS ||
+            !this.lastMarkerCheck.compareAndSet(last, now)
+        ) {
+            return;
+        }
+
+        this.redisTemplate
+            .hasKey(getPlainValueMigrationKey())
+            .subscribe(
+                (exists) -> {
+                    if (exists && !this.migrated.getAndSet(true)) {
+                        log.info("Plain value migration marker found, legacy reads disabled.");
+                    }
+                },
+                (exception) ->
+                    log.warn("Check plain value migration marker failed!", exception)
+            );
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.jesse.item_market.config;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+import static java.lang.String.format;
+
+/**
+ * <p>用户、市场、包裹等业务数据的序列化器。</p>
+ *
+ * 字符串按 UTF-8 原样写入，数字、布尔值与枚举写入它们的字符串形式，
+ * 不再像 Jackson 那样给字符串包上一层 JSON 引号（"\"Sword\""），
+ * Lua 脚本拿到的参数与 Redis 中保存的值都是原始字符串，读取时也不需要再经过 Jackson。
+ * 不支持其他类型（对象、集合等），需要结构化数据时由调用方自行编码。
+ */
+public class PlainValueSerializer implements RedisSerializer<Object>
+{
+    @Override
+    public byte @NotNull [] serialize(Object value) throws SerializationException
+    {
+        return switch (value)
+        {
+            case null           -> new byte[0];
+            case byte[] bytes   -> bytes;
+            case String string  -> string.getBytes(StandardCharsets.UTF_8);
+            case Enum<?> e      -> e.name().getBytes(StandardCharsets.UTF_8);
+
+            case Number number ->
+                String.valueOf(number).getBytes(StandardCharsets.UTF_8);
+
+            case Boolean bool ->
+                String.valueOf(bool).getBytes(StandardCharsets.UTF_8);
+
+            case Character character ->
+                String.valueOf(character).getBytes(StandardCharsets.UTF_8);
+
+            default ->
+                throw new SerializationException(
+                    format(
+                        "Plain value serializer not support type: %s",
+                        value.getClass().getName()
+                    )
+                );
+        };
+    }
+
+    @Contract("null -> null")
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException
+    {
+        return (bytes == null) ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,26 +1,44 @@
 package com.example.jesse.item_market.config;
 
-import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.KeyConcat;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.lettuce.core.ClientOptions;
 import io.lettuce.core.SocketOptions;
 import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisPassword;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.serializer.*;
 
 import java.time.Duration;
-
-/** 项目 Redis 配置类。*/
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>项目 Redis 配置类。</p>
+ *
+ * <p>
+ *     app.redis-mode=standalone（默认）时连接单个 Redis 实例；
+ *     app.redis-mode=cluster 时按 spring.data.redis.cluster.nodes 连接 Redis 集群，
+ *     {@link KeyConcat} 生成带哈希标签的键（由 {@link RedisKeyLayoutPostProcessor} 在启动时设置），
+ *     使每个脚本的所有键落在同一个槽上。
+ * </p>
+ */
+@Slf4j
 @Configuration
 public class ReactiveRedisConfig
 {
@@ -33,12 +51,29 @@ public class ReactiveRedisConfig
     @Value("${spring.data.redis.password}")
     private String redisPassword;
 
+    /** Redis 部署模式（standalone 或 cluster）。*/
+    @Value("${app.redis-mode:standalone}")
+    private String redisMode;
+
+    /** 集群模式下的初始节点列表（逗号分割的 host:port）。*/
+    @Value("${spring.data.redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    /** 当前是否以集群模式连接 Redis？*/
+    private boolean isClusterMode() {
+        return "cluster".equals(this.redisMode);
+    }
+
     /** Redis 响应式连接工厂配置类。 */
     @Bean
     @Primary
     public ReactiveRedisConnectionFactory
     reactiveRedisConnectionFactory()
     {
+        if (this.isClusterMode()) {
+            return this.clusterConnectionFactory();
+        }
+
         // 1. 创建独立 Redis 配置
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
         config.setHostName(redisHost);       // Redis 地址
@@ -53,17 +88,9 @@ public class ReactiveRedisConfig
             .clientOptions(
                 ClientOptions.builder()
                     .autoReconnect(true)
-                    .socketOptions(
-                        SocketOptions.builder()
-                            .connectTimeout(Duration.ofSeconds(5L)) // 连接超时
-                            .keepAlive(true) // 自动管理 TCP 连接存活
-                            .build()
-                    )
-                    .timeoutOptions(
-                        TimeoutOptions.builder()
-                            .fixedTimeout(Duration.ofSeconds(15L)) // 操作超时
-                            .build()
-                    ).build()
+                    .socketOptions(socketOptions())
+                    .timeoutOptions(timeoutOptions())
+                    .build()
             )
             .commandTimeout(Duration.ofSeconds(15L))  // 命令超时时间
             .shutdownTimeout(Duration.ofSeconds(5L))  // 关闭超时时间
@@ -73,6 +100,70 @@ public class ReactiveRedisConfig
         return new LettuceConnectionFactory(config, clientConfig);
     }
 
+    /** 集群模式下的 Redis 响应式连接工厂。*/
+    private @NotNull ReactiveRedisConnectionFactory
+    clusterConnectionFactory()
+    {
+        final List<String> nodes
+            = Arrays.stream(this.clusterNodes.split(","))
+                    .map(String::trim)
+                    .filter((node) -> !node.isEmpty())
+                    .toList();
+
+        if (nodes.isEmpty())
+        {
+            throw new IllegalStateException(
+                "app.redis-mode=cluster requires spring.data.redis.cluster.nodes!"
+            );
+        }
+
+        // 1. 创建集群配置
+        RedisClusterConfiguration config = new RedisClusterConfiguration(nodes);
+        config.setPassword(RedisPassword.of(redisPassword));
+
+        // 2. 创建客户端配置（槽迁移、故障转移后自动刷新集群拓扑）
+        LettuceClientConfiguration clientConfig
+            = LettuceClientConfiguration.builder()
+            .clientOptions(
+                ClusterClientOptions.builder()
+                    .autoReconnect(true)
+                    .socketOptions(socketOptions())
+                    .timeoutOptions(timeoutOptions())
+                    .topologyRefreshOptions(
+                        ClusterTopologyRefreshOptions.builder()
+                            .enableAllAdaptiveRefreshTriggers()
+                            .enablePeriodicRefresh(Duration.ofSeconds(30L))
+                            .build()
+                    ).build()
+            )
+            .commandTimeout(Duration.ofSeconds(15L))
+            .shutdownTimeout(Duration.ofSeconds(5L))
+            .build();
+
+        log.info("Connect to redis cluster, nodes: {}", nodes);
+
+        return new LettuceConnectionFactory(config, clientConfig);
+    }
+
+    /** 连接的 Socket 配置。*/
+    private static SocketOptions socketOptions()
+    {
+        return
+        SocketOptions.builder()
+            .connectTimeout(Duration.ofSeconds(5L)) // 连接超时
+            .keepAlive(true) // 自动管理 TCP 连接存活
+            .build();
+    }
+
+    /** 命令的超时配置。*/
+    private static TimeoutOptions timeoutOptions()
+    {
+        return
+        TimeoutOptions.builder()
+            .fixedTimeout(Duration.ofSeconds(15L)) // 操作超时
+            .build();
+    }
+
     /**
      * Redis 响应式模板的构建。
      *
@@ -111,27 +202,29 @@ public class ReactiveRedisConfig
         return new ReactiveRedisTemplate<>(factory, context);
     }
 
-    /** 专门用于执行 Lua 脚本的 ReactiveRedisTemplate。*/
+    /**
+     * 业务数据（用户、用户名哈希、联系人、包裹、市场、公会）的 Redis 响应式模板，
+     * 键、值、哈希字段名与字段值都以原始字符串读写（不带 JSON 引号），
+     * 与 Lua 脚本写入的格式保持一致。
+     * 以 reactiveStringRedisTemplate 为名，替代 Spring Boot 自动配置的同名模板。
+     *
+     * @param factory Redis 连接工厂
+     *
+     * @return 以原始字符串读写的 Redis 响应式模板
+     */
     @Bean
-    public ReactiveRedisTemplate<String, LuaOperatorResult>
-    marketTransactionRedisTemplate(
-        ReactiveRedisConnectionFactory factory,
-        ObjectMapper objectMapper
-    )
-    {
-        RedisSerializer<String> keySerializer = new StringRedisSerializer();
-
-        Jackson2JsonRedisSerializer<LuaOperatorResult> valueSerializer
-            = new Jackson2JsonRedisSerializer<>(objectMapper, LuaOperatorResult.class);
-
-        RedisSerializationContext<String, LuaOperatorResult> context
-            = RedisSerializationContext.<String, LuaOperatorResult>
-                newSerializationContext(keySerializer)
-                .value(valueSerializer)
-                .hashKey(keySerializer)
-                .hashValue(valueSerializer)
-                .build();
+    public ReactiveStringRedisTemplate
+    reactiveStringRedisTemplate(ReactiveRedisConnectionFactory factory) {
+        return new ReactiveStringRedisTemplate(factory, RedisSerializationContext.string());
+    }
 
-        return new ReactiveRedisTemplate<>(factory, context);
+    /**
+     * Lua 脚本参数（ARGV）的序列化器，字符串与数字都以原始字符串传入（见 {@link PlainValueSerializer}）。
+     * 脚本的返回值是扁平数组，由 LuaResultDecoder 直接解码，不再经过 Jackson。
+     */
+    @Bean
+    public RedisSerializer<Object>
+    luaScriptArgsSerializer() {
+        return new PlainValueSerializer();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package com.example.jesse.item_market.config;
+
+import com.example.jesse.item_market.utils.KeyConcat;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * <p>按配置设置 Redis 键布局，并检查与部署模式相关的配置组合。</p>
+ *
+ * <p>
+ *     {@link KeyConcat} 的键布局（单机或带哈希标签的集群布局）由 app.redis-mode 决定。
+ *     本类在配置文件加载完毕、应用上下文创建之前执行，
+ *     所以任何 Bean（包括它们的静态初始化）组合出的键都已经是正确的布局，
+ *     不依赖于连接工厂等 Bean 的创建顺序。
+ * </p>
+ */
+public class RedisKeyLayoutPostProcessor implements EnvironmentPostProcessor
+{
+    @Override
+    public void
+    postProcessEnvironment(
+        @NotNull ConfigurableEnvironment environment,
+        SpringApplication application)
+    {
+        final String redisMode
+            = environment.getProperty("app.redis-mode", "standalone");
+
+        if (!"standalone".equals(redisMode) && !"cluster".equals(redisMode))
+        {
+            throw new IllegalStateException(
+                "app.redis-mode must be standalone or cluster, but got: " + redisMode
+            );
+        }
+
+        /*
+         * 函数模式依赖单条原生 Lettuce 连接安装与调用函数库，集群下无法工作，
+         * 在这里直接拒绝，而不是等到 LuaScriptRegistry 启动时才失败。
+         */
+        final String executeMode
+            = environment.getProperty("app.lua-script-execute-mode", "eval");
+
+        if ("cluster".equals(redisMode) && "function".equals(executeMode))
+        {
+            throw new IllegalStateException(
+                "app.lua-script-execute-mode=function is not supported with app.redis-mode=cluster, " +
+                "use app.lua-script-execute-mode=eval instead."
+            );
+        }
+
+        KeyConcat.configureLayout("cluster".equals(redisMode));
+    }
+}
@@ -1,10 +1,11 @@
 package com.example.jesse.item_market.guild.impl;
 
+import com.example.jesse.item_market.config.PlainValueReader;
 import com.example.jesse.item_market.guild.GuildRedisService;
 import com.example.jesse.item_market.guild.utils.PrefixRange;
 import com.example.jesse.item_market.lock.RedisLock;
-import com.example.jesse.item_market.utils.LuaScriptReader;
-import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +17,7 @@ import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 import javax.naming.OperationNotSupportedException;
 import java.time.Duration;
@@ -23,8 +25,10 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import static com.example.jesse.item_market.errorhandle.RedisErrorHandle.redisGenericErrorHandel;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.CLUSTER_OPERATOR;
 import static com.example.jesse.item_market.utils.LuaScriptOperatorType.GUILD_OPERATOR;
 import static com.example.jesse.item_market.utils.KeyConcat.*;
 import static java.lang.String.format;
@@ -34,19 +38,145 @@ import static java.lang.String.format;
 @Service
 public class GuildRedisServiceImpl implements GuildRedisService
 {
-    /** Lua 脚本读取工具。*/
+    /** 公会的最大成员数。*/
+    private static final int MAX_MEMBERS = 500;
+
+    /** createGuild.lua：创建公会。*/
+    private static final LuaScript<Void> CREATE_GUILD
+        = LuaScript.<Void>builder(GUILD_OPERATOR, "createGuild.lua")
+                   .success("SUCCESS")
+                   .failure("ALREADY_JOINED", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s already join guild!", call.arg(0))))
+                   .failure("DUPLICATE_GUILD_NAME", (call) ->
+                       new IllegalArgumentException(
+                           format("Guild name: %s already exist!", call.arg(1))))
+                   .failure("USER_NAME_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Query user name by: %s not found!", call.arg(0))))
+                   .build();
+
+    /** joinGuild.lua：加入公会。*/
+    private static final LuaScript<Void> JOIN_GUILD
+        = LuaScript.<Void>builder(GUILD_OPERATOR, "joinGuild.lua")
+                   .success("SUCCESS")
+                   .failure("ALREADY_JOINED", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s already join guild!", call.arg(0))))
+                   .failure("GUILD_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Guild: %s not exist!", call.arg(1))))
+                   .failure("USER_NAME_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Query user name by: %s not found!", call.arg(0))))
+                   .failure("GUILD_IS_FULL", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "Guild: %s is full! (Max mamber = %d)",
+                               call.arg(1), MAX_MEMBERS)))
+                   .build();
+
+    /** leaveGuild.lua：离开公会。*/
+    private static final LuaScript<Void> LEAVE_GUILD
+        = LuaScript.<Void>builder(GUILD_OPERATOR, "leaveGuild.lua")
+                   .success("SUCCESS")
+                   .failure("NOT_JOIN_ANY_GUILD", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s not join any guild!", call.arg(0))))
+                   .failure("NOT_BELONG_TO_GUILD", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "User: %s not belong to guild %s!",
+                               call.arg(0), call.arg(1))))
+                   .failure("LEAVE_FORBIDDEN", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "User: %s is leader of guild %s, leave is forbidden!",
+                               call.arg(0), call.arg(1))))
+                   .failure("USER_NAME_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Query user name by: %s not found!", call.arg(0))))
+                   .build();
+
+    /** claimGuildRole.lua：集群模式下创建或加入公会的第一步，在用户数据中登记公会与身份，发布用户名。*/
+    private static final LuaScript<String> CLAIM_GUILD_ROLE
+        = LuaScript.<String>builder(CLUSTER_OPERATOR, "claimGuildRole.lua")
+                   .success("SUCCESS", (call) -> call.result().getString(0))
+                   .failure("ALREADY_JOINED", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s already join guild!", call.arg(0))))
+                   .failure("USER_NAME_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Query user name by: %s not found!", call.arg(0))))
+                   .build();
+
+    /** releaseGuildRole.lua：集群模式下离开公会的第一步（或者撤销登记的公会信息），发布用户名。*/
+    private static final LuaScript<String> RELEASE_GUILD_ROLE
+        = LuaScript.<String>builder(CLUSTER_OPERATOR, "releaseGuildRole.lua")
+                   .success("SUCCESS", (call) -> call.result().getString(0))
+                   .failure("NOT_JOIN_ANY_GUILD", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s not join any guild!", call.arg(0))))
+                   .failure("NOT_BELONG_TO_GUILD", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "User: %s not belong to guild %s!",
+                               call.arg(0), call.arg(1))))
+                   .failure("LEAVE_FORBIDDEN", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "User: %s is leader of guild %s, leave is forbidden!",
+                               call.arg(0), call.arg(1))))
+                   .failure("USER_NAME_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Query user name by: %s not found!", call.arg(0))))
+                   .build();
+
+    /** registerGuild.lua：集群模式下创建公会的第二步，登记公会名与创建者。*/
+    private static final LuaScript<Void> REGISTER_GUILD
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "registerGuild.lua")
+                   .success("SUCCESS")
+                   .failure("DUPLICATE_GUILD_NAME", (call) ->
+                       new IllegalArgumentException(
+                           format("Guild name: %s already exist!", call.arg(1))))
+                   .build();
+
+    /** addGuildMember.lua：集群模式下加入公会的第二步，写入公会的成员列表。*/
+    private static final LuaScript<Void> ADD_GUILD_MEMBER
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "addGuildMember.lua")
+                   .success("SUCCESS")
+                   .failure("GUILD_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("Guild: %s not exist!", call.arg(1))))
+                   .failure("GUILD_IS_FULL", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "Guild: %s is full! (Max mamber = %d)",
+                               call.arg(1), MAX_MEMBERS)))
+                   .build();
+
+    /** removeGuildMember.lua：集群模式下离开公会的第二步，从公会的成员列表中移除。*/
+    private static final LuaScript<Void> REMOVE_GUILD_MEMBER
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "removeGuildMember.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** 集群模式下离开公会时，用户一侧已经抹掉了公会信息，移除成员这一步的重试策略。*/
+    private static final Retry REMOVE_MEMBER_RETRY
+        = Retry.backoff(3L, Duration.ofMillis(100L));
+
+    /** Lua 脚本执行器。*/
     @Autowired
-    private LuaScriptReader luaScriptReader;
+    private LuaScriptExecutor luaScriptExecutor;
 
-    /** 通用 Redis 模板。*/
+    /** 字符串序列化 Redis 模板（用户与公会数据都以原始字符串保存）。*/
     @Autowired
     private
-    ReactiveRedisTemplate<String, Object> redisTemplate;
+    ReactiveRedisTemplate<String, String> stringRedisTemplate;
 
-    /** 专门为 LUA 脚本配置的 Redis 模板。*/
+    /** 兼容旧编码的读取器（迁移完成之前用户与公会数据可能还带着 JSON 引号）。*/
     @Autowired
-    private
-    ReactiveRedisTemplate<String, LuaOperatorResult> redisScriptTemplate;
+    private PlainValueReader plainValueReader;
 
     @Autowired
     private RedisLock redisLock;
@@ -58,27 +188,24 @@ public class GuildRedisServiceImpl implements GuildRedisService
     {
         final String guildNameSetKey = getGuildNameSetKey();
         final String formatGuildName = guildName.trim().replace(' ', '-');
-        final String usersPattern    = "users:[0-9]*";
+        final String usersPattern    = getUserKeyPattern();
 
         Mono<Boolean> checkGuildNameExists
-            = this.redisTemplate
-                  .opsForSet()
+            = this.plainValueReader
                   .isMember(guildNameSetKey, formatGuildName);
 
         Flux<String> findAllGuildMembers
-            = this.redisTemplate
+            = this.stringRedisTemplate
                   .scan(
                       ScanOptions.scanOptions()
                           .match(usersPattern)
                           .build())
                   .flatMap((matchedUserKeys) ->
-                      this.redisTemplate
-                          .opsForHash()
-                          .get(matchedUserKeys, "\"guild\"")
-                          .map((res) -> (String) res)
+                      this.plainValueReader
+                          .get(matchedUserKeys, USER_GUILD_FIELD)
                           .filter((queryGuildName) ->
                               queryGuildName.equals(formatGuildName))
-                          .map((ignore) -> matchedUserKeys.split(":")[1])
+                          .map((ignore) -> extractId(matchedUserKeys))
                   );
 
         return checkGuildNameExists
@@ -107,10 +234,8 @@ public class GuildRedisServiceImpl implements GuildRedisService
         return
         this.findAllMembersByGuildName(guildName)
             .flatMap((memberId) -> 
-                this.redisTemplate
-                    .opsForHash()
-                    .get(getUserKey(memberId), "\"guild-role\"")
-                    .map(String::valueOf)
+                this.plainValueReader
+                    .get(getUserKey(memberId), USER_GUILD_ROLE_FIELD)
                     .filter("Leader"::equals)
                     .map((role) -> memberId))
             .next()
@@ -145,58 +270,29 @@ public class GuildRedisServiceImpl implements GuildRedisService
         final String guildNameSetLogKey = getGuildNameSetLogKey();
         final String userKey            = getUserKey(uuid);
 
-        return
-        this.luaScriptReader
-            .fromFile(GUILD_OPERATOR, "createGuild.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        List.of(
-                            guildKey, guildNameSetKey, guildLogKey,
-                            guildNameSetLogKey, userKey
-                        ),
-                        uuid, formatGuildName,
-                        USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD)
-                    .timeout(Duration.ofSeconds(5L))
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "ALREADY_JOINED" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("User: %s already join guild!", uuid)
-                                    )
-                                );
-
-                            case "DUPLICATE_GUILD_NAME" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("Guild name: %s already exist!", formatGuildName)
-                                    )
-                                );
-
-                            case "USER_NAME_NOT_FOUND" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("Query user name by: %s not found!", uuid)
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
+        if (isClusterLayout())
+        {
+            return
+            this.claimGuildRoleInCluster(
+                uuid, formatGuildName, "Leader",
+                (userName) ->
+                    this.luaScriptExecutor
+                        .execute(
+                            REGISTER_GUILD,
+                            List.of(guildKey, guildNameSetKey, guildLogKey, guildNameSetLogKey),
+                            uuid, formatGuildName, userName));
+        }
 
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        })
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        return
+        this.luaScriptExecutor
+            .execute(
+                CREATE_GUILD,
+                List.of(
+                    guildKey, guildNameSetKey, guildLogKey,
+                    guildNameSetLogKey, userKey, getUserLogKey(uuid)
+                ),
+                uuid, formatGuildName,
+                USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD);
     }
 
     /**
@@ -218,66 +314,27 @@ public class GuildRedisServiceImpl implements GuildRedisService
         final String guildLogKey     = getGuildLogKey();
         final String guildNameSetKey = getGuildNameSetKey();
         final String userKey         = getUserKey(uuid);
-        final int    MAX_MEMBERS     = 500;
-
-        return
-        this.luaScriptReader
-            .fromFile(GUILD_OPERATOR, "joinGuild.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        List.of(guildKey, guildLogKey, guildNameSetKey, userKey),
-                        uuid, formatGuildName,
-                        USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD, MAX_MEMBERS)
-                    .timeout(Duration.ofSeconds(5L))
-                    .next()
-                    .flatMap((result) ->
-                        switch(result.getResult())
-                        {
-                            case "ALREADY_JOINED" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("User: %s already join guild!", uuid)
-                                    )
-                                );
-
-                            case "GUILD_NOT_FOUND" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("Guild: %s not exist!", formatGuildName)
-                                    )
-                                );
-
-                            case "USER_NAME_NOT_FOUND" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("Query user name by: %s not found!", uuid)
-                                    )
-                                );
-
-                            case "GUILD_IS_FULL" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format(
-                                            "Guild: %s is full! (Max mamber = %d)",
-                                            guildName, MAX_MEMBERS
-                                        )
-                                    )
-                                );
 
-                            case "SUCCESS" -> Mono.empty();
+        if (isClusterLayout())
+        {
+            return
+            this.claimGuildRoleInCluster(
+                uuid, formatGuildName, "Member",
+                (userName) ->
+                    this.luaScriptExecutor
+                        .execute(
+                            ADD_GUILD_MEMBER,
+                            List.of(guildKey, guildLogKey, guildNameSetKey),
+                            uuid, formatGuildName, userName, MAX_MEMBERS));
+        }
 
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        }))
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        return
+        this.luaScriptExecutor
+            .execute(
+                JOIN_GUILD,
+                List.of(guildKey, guildLogKey, guildNameSetKey, userKey, getUserLogKey(uuid)),
+                uuid, formatGuildName,
+                USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD, MAX_MEMBERS);
     }
 
     /**
@@ -299,68 +356,78 @@ public class GuildRedisServiceImpl implements GuildRedisService
         final String guildLogKey = getGuildLogKey();
         final String userKey     = getUserKey(uuid);
 
-        return
-        this.luaScriptReader
-            .fromFile(GUILD_OPERATOR, "leaveGuild.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        List.of(guildKey, guildLogKey, userKey),
-                        uuid, formatGuildName,
-                        USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD)
-                    .timeout(Duration.ofSeconds(5L))
-                    .next()
-                    .flatMap((result) ->
-                        switch(result.getResult())
-                        {
-                            case "NOT_JOIN_ANY_GUILD" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("User: %s not join any guild!", uuid)
-                                    )
-                                );
-
-                            case "NOT_BELONG_TO_GUILD" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format(
-                                            "User: %s not belong to guild %s!",
-                                            uuid, formatGuildName
-                                        )
-                                    )
-                                );
-
-                            case "LEAVE_FORBIDDEN" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format(
-                                            "User: %s is leader of guild %s, leave is forbidden!",
-                                            uuid, formatGuildName
-                                        )
-                                    )
-                                );
+        if (isClusterLayout())
+        {
+            return
+            this.luaScriptExecutor
+                .execute(
+                    RELEASE_GUILD_ROLE,
+                    List.of(userKey, getUserLogKey(uuid)),
+                    uuid, formatGuildName,
+                    USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD, "Member")
+                .flatMap((userName) ->
+                    this.luaScriptExecutor
+                        .execute(
+                            REMOVE_GUILD_MEMBER,
+                            List.of(guildKey, guildLogKey),
+                            uuid, formatGuildName, userName)
+                        .retryWhen(REMOVE_MEMBER_RETRY)
+                        .doOnError((exception) ->
+                            log.error(
+                                "User: {} left guild: {} but still in its member list!",
+                                uuid, formatGuildName, exception)));
+        }
 
-                            case "USER_NAME_NOT_FOUND" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("Query user name by: %s not found!", uuid)
-                                    )
-                                );
+        return
+        this.luaScriptExecutor
+            .execute(
+                LEAVE_GUILD,
+                List.of(guildKey, guildLogKey, userKey, getUserLogKey(uuid)),
+                uuid, formatGuildName,
+                USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD);
+    }
 
-                            case "SUCCESS" -> Mono.empty();
+    /**
+     * 集群模式下创建或加入公会。用户数据与公会不在同一个槽上，
+     * 所以拆成两步执行：先在用户数据中登记公会与身份，再写入公会，
+     * 第二步失败时撤销登记的公会信息。
+     *
+     * @param uuid            哪个用户？
+     * @param formatGuildName 公会名
+     * @param guildRole       登记的身份（Leader 或 Member）
+     * @param guildStep       第二步：以第一步读出的用户名写入公会
+     *
+     * @return 不发布任何数据的 Mono，表示操作整体是否完成
+     */
+    private @NotNull Mono<Void>
+    claimGuildRoleInCluster(
+        String uuid, String formatGuildName, String guildRole,
+        Function<String, Mono<Void>> guildStep)
+    {
+        final List<String> userKeys
+            = List.of(getUserKey(uuid), getUserLogKey(uuid));
 
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        })
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        return
+        this.luaScriptExecutor
+            .execute(
+                CLAIM_GUILD_ROLE, userKeys,
+                uuid, formatGuildName,
+                USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD, guildRole)
+            .flatMap((userName) ->
+                guildStep.apply(userName)
+                    .onErrorResume((exception) ->
+                        this.luaScriptExecutor
+                            .execute(
+                                RELEASE_GUILD_ROLE, userKeys,
+                                uuid, formatGuildName,
+                                USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD, guildRole)
+                            .onErrorResume((releaseException) -> {
+                                log.error(
+                                    "Release guild role of user: {} failed!",
+                                    uuid, releaseException);
+                                return Mono.empty();
+                            })
+                            .then(Mono.error(exception))));
     }
 
     /**
@@ -392,12 +459,11 @@ public class GuildRedisServiceImpl implements GuildRedisService
                 final String guildKey
                     = getGuildKey(guildName.trim().replace(' ', '-'));
 
-                return this.redisTemplate
+                return this.stringRedisTemplate
                            .opsForZSet()
                            .rangeByLex(
-                               guildKey,
-                               Range.rightOpen(prefixRange.getMin(), prefixRange.getMax()))
-                           .map(String::valueOf)
+                               guildKey, prefixRange.toLexRange())
+                           .map(this.plainValueReader::member)
                            .collectList()
                            .timeout(Duration.ofSeconds(3L));
             })
@@ -455,31 +521,27 @@ public class GuildRedisServiceImpl implements GuildRedisService
                 final String leaderUserKey      = getUserKey(uuid);
 
                 Mono<Boolean> isLeader
-                    = this.redisTemplate
-                          .opsForHash()
-                          .get(leaderUserKey, "\"guild-role\"")
-                          .map(String::valueOf)
+                    = this.plainValueReader
+                          .get(leaderUserKey, USER_GUILD_ROLE_FIELD)
                           .map("Leader"::equals);
 
                 Mono<String> getGuildName
-                    = this.redisTemplate
-                          .opsForHash()
-                          .get(leaderUserKey, "\"guild\"")
-                          .map(String::valueOf)
+                    = this.plainValueReader
+                          .get(leaderUserKey, USER_GUILD_FIELD)
                           .cache(Duration.ofSeconds(15L));
 
                 Mono<Void> deleteGuildNameFromSet
                  = getGuildName
                     .flatMap((guildName) ->
-                        this.redisTemplate
+                        this.stringRedisTemplate
                             .opsForSet()
-                            .remove(guildNameSetKey, guildName))
+                            .remove(guildNameSetKey, guildName, PlainValueReader.quoted(guildName)))
                     .then();
 
                 Mono<Void> deleteGuild
                     = getGuildName
                         .flatMap((guildName) ->
-                            this.redisTemplate
+                            this.stringRedisTemplate
                                 .opsForZSet()
                                 .delete(getGuildKey(guildName)))
                         .then();
@@ -488,12 +550,12 @@ public class GuildRedisServiceImpl implements GuildRedisService
                     = getGuildName
                         .flatMapMany(this::findAllMembersByGuildName)
                         .flatMap((memberId) ->
-                            this.redisTemplate.opsForHash()
+                            this.stringRedisTemplate.opsForHash()
                                 .putAll(
                                     getUserKey(memberId),
                                     Map.of(
-                                        "\"guild\"", "---",
-                                        "\"guild-role\"", "---"
+                                        USER_GUILD_FIELD, "---",
+                                        USER_GUILD_ROLE_FIELD, "---"
                                     )
                                 ))
                     .then();
@@ -512,7 +574,7 @@ public class GuildRedisServiceImpl implements GuildRedisService
                              .ofStrings(deleteGuildNameLogInfo)
                              .withStreamKey(guildNameSetLogKey);
 
-                    return this.redisTemplate
+                    return this.stringRedisTemplate
                                .opsForStream()
                                .add(record).then();
                 });
@@ -532,7 +594,7 @@ public class GuildRedisServiceImpl implements GuildRedisService
                                 .ofStrings(deleteGuildLogInfo)
                                 .withStreamKey(guildLogKey);
 
-                        return this.redisTemplate
+                        return this.stringRedisTemplate
                                    .opsForStream()
                                    .add(record).then();
                     });
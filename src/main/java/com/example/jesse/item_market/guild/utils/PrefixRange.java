@@ -3,11 +3,9 @@ package com.example.jesse.item_market.guild.utils;
 import lombok.*;
 import lombok.experimental.Accessors;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.data.domain.Range;
 import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * <p>
  * 对于一个元素非常多的列表（比如有几千个元素），
@@ -20,6 +18,11 @@ import java.util.Map;
  * 届时再调用 ZRANGEBYLEX 命令就可以轻松获取匹配的结果
  * （这个命令需要 Redis 版本 >= 2.8.9，Spring Data Redis 版本 >= 2.3.0）。
  * </p>
+ *
+ * <p>
+ * 后继按 Unicode 码点计算，不限定字母表：UTF-8 编码保持码点的大小顺序，
+ * 码点上的后继也就是 Redis 二进制顺序上的后继，任何用户名都可以作为前缀搜索。
+ * </p>
  */
 @Getter
 @Accessors(chain = true)
@@ -27,34 +30,11 @@ import java.util.Map;
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public final class PrefixRange
 {
-    private static final String ESCAPED_QUOTE = "\"";
-    private static final String LEFT_BRACKET  = "[";
-    private static final String PLUS          = "+";
-    private static final String MINUS         = "-";
-    private static final String VALID_CHARS   = "/0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
-
-    private static final Map<Character, Integer> CHAR_POSITIONS;
-
-    static {
-        // Validate character order
-        for (int i = 1; i < VALID_CHARS.length(); i++)
-        {
-            if (VALID_CHARS.charAt(i) <= VALID_CHARS.charAt(i - 1))
-            {
-                throw new IllegalStateException("VALID_CHARS must be in ascending order!");
-            }
-        }
-
-        CHAR_POSITIONS = new HashMap<>();
+    private static final int SURROGATE_MIN = Character.MIN_SURROGATE;
+    private static final int SURROGATE_MAX = Character.MAX_SURROGATE;
 
-        for (int i = 0; i < VALID_CHARS.length(); i++)
-        {
-            CHAR_POSITIONS.put(VALID_CHARS.charAt(i), i);
-        }
-    }
-
-    private String min;  // Inclusive lower bound
-    private String max;  // Exclusive upper bound
+    private String min;  // Inclusive lower bound (the prefix itself)
+    private String max;  // Exclusive upper bound (the successor of the prefix, null when there is none)
 
     public static @NotNull
     Mono<PrefixRange> create(String prefix)
@@ -65,40 +45,65 @@ public final class PrefixRange
                 throw new IllegalArgumentException("Prefix cannot be null or empty");
             }
 
-            // Check for special characters that might break Redis lex commands
-            if (prefix.contains("\"") || prefix.contains("\\") || prefix.contains("[") || prefix.contains("(")) {
-                throw new IllegalArgumentException("Prefix contains special characters");
-            }
-
-            // Build the inclusive lower bound - matches "\"prefix"
-            String min = LEFT_BRACKET + ESCAPED_QUOTE + prefix;
+            return new PrefixRange(prefix, successorOf(prefix));
+        }).onErrorMap(IllegalArgumentException.class,
+            e -> new CreatePrefixRangeFailed(e.getMessage(), e)
+        );
+    }
 
-            // Build the exclusive upper bound
-            String max;
-            char lastChar = prefix.charAt(prefix.length() - 1);
-            Integer position = CHAR_POSITIONS.get(lastChar);
+    /**
+     * Build the successor of the prefix: increase its last code point by one.
+     * When a code point is already the largest one (U+10FFFF), carry to the code point before it;
+     * a prefix made of largest code points only has no successor (returns null).
+     * Surrogates are skipped since they can not appear alone in a valid string.
+     */
+    private static String successorOf(@NotNull String prefix)
+    {
+        final int[] codePoints = prefix.codePoints().toArray();
 
-            if (position == null)
-            {
-                throw new IllegalArgumentException(
-                    String.format("Illegal character '%c' in prefix: %s", lastChar, prefix)
-                );
+        for (int index = codePoints.length - 1; index >= 0; --index)
+        {
+            if (codePoints[index] == Character.MAX_CODE_POINT) {
+                continue;
             }
 
-            if (position == VALID_CHARS.length() - 1) {
-                max = PLUS; // +inf
-            }
-            else
-            {
-                char nextChar = VALID_CHARS.charAt(position + 1);
-                String base = prefix.substring(0, prefix.length() - 1);
-                // Matches "\"base<nextChar>"
-                max = LEFT_BRACKET + ESCAPED_QUOTE + base + nextChar;
+            int next = codePoints[index] + 1;
+
+            if (next >= SURROGATE_MIN && next <= SURROGATE_MAX) {
+                next = SURROGATE_MAX + 1;
             }
 
-            return new PrefixRange(min, max);
-        }).onErrorMap(IllegalArgumentException.class,
-            e -> new CreatePrefixRangeFailed(e.getMessage(), e)
-        );
+            codePoints[index] = next;
+
+            return new String(codePoints, 0, index + 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Convert to the range used by {@code ZSetOperations.rangeByLex()}: [prefix, successor).
+     * Spring Data Redis adds '[' or '(' by the bound itself,
+     * and a prefix without a successor has no upper bound.
+     */
+    public @NotNull Range<String> toLexRange()
+    {
+        return (this.max == null)
+            ? Range.rightUnbounded(Range.Bound.inclusive(this.min))
+            : Range.rightOpen(this.min, this.max);
+    }
+
+    /**
+     * Same as {@link #toLexRange()}, but starts right after a member returned by the previous page: (after, successor).
+     * Paging this way always reads from the head of the range (LIMIT 0 count),
+     * so the cost stays O(log(N) + count) no matter how deep the page is.
+     */
+    public @NotNull Range<String> toLexRangeAfter(@NotNull String after)
+    {
+        final Range.Bound<String> lower = Range.Bound.exclusive(after);
+
+        return (this.max == null)
+            ? Range.of(lower, Range.Bound.unbounded())
+            : Range.of(lower, Range.Bound.exclusive(this.max));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.example.jesse.item_market.kafka.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.util.Map;
+
+/** 从 Redis 日志流桥接到 Kafka 的一条审计事件。*/
+@Data
+@ToString
+@Accessors(chain = true)
+@EqualsAndHashCode
+@NoArgsConstructor(access  = AccessLevel.PUBLIC)
+@AllArgsConstructor(access = AccessLevel.PUBLIC)
+@JsonIgnoreProperties(ignoreUnknown = true)       // 忽略 JSON 中的未知字段
+public class StreamEventMessage
+{
+    private String              stream;     // 来源日志流键
+    private String              entryId;    // 事件在日志流中的 ID
+    private long                entryTime;  // 事件写入日志流的时间（毫秒时间戳）
+    private Map<String, String> fields;     // 事件的所有字段
+}
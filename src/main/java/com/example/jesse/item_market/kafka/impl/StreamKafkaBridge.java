@@ -0,0 +1,503 @@
+package com.example.jesse.item_market.kafka.impl;
+
+import com.example.jesse.item_market.kafka.dto.StreamEventMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.StreamGroupReader.readGroup;
+
+/**
+ * <p>Redis 日志流到 Kafka 的桥接器。</p>
+ *
+ * <p>
+ *     本类以消费组（kafka-bridge）读取各个日志流（与归档的日志流相同，见 getArchivedStreamKeys()），
+ *     把一批事件逐条发送到同一个 Kafka 主题，以事件的 uuid（没有时依次取卖家、公会名、用户名、武器 ID，
+ *     都没有时取日志流键）作为消息键，同一个用户的事件因此落在同一个分区，保持它们在日志流中的先后顺序。
+ *     一批事件全部交给生产者之后才等待发送结果，由生产者按 linger.ms 与压缩配置合并成少量的请求。
+ * </p>
+ *
+ * <ul>
+ *     <li>
+ *         确认：只有 Kafka 确认收到的事件才会 XACK，并且只确认第一条发送失败的事件之前的那些，
+ *         失败的事件与其后的事件留在待确认列表中，下一轮从待确认列表重新发送，不会越过失败的事件。
+ *         因此投递语义是至少一次，下游应以 (stream, entryId) 去重。
+ *     </li>
+ *     <li>
+ *         进度：消费组本身记录了读到的位置，重启后先重发本消费者的待确认事件，再继续读取新事件；
+ *         确认之后的最后一条事件 ID 另外记在进度哈希（kafka-bridge:checkpoint）中，
+ *         消费组丢失时从这里继续，没有进度时从流的末尾开始，不会重放整个日志流的历史。
+ *     </li>
+ *     <li>
+ *         指标：stream.kafka-bridge.sent（发送并确认的事件数）、stream.kafka-bridge.failed（发送失败数）、
+ *         stream.kafka-bridge.batch（每批从发送到 Kafka 确认的耗时）、
+ *         stream.kafka-bridge.lag（还没有读取的事件数，需要 Redis 7）、
+ *         stream.kafka-bridge.pending（已经读取但还没有确认的事件数），都以 stream 标签区分日志流。
+ *     </li>
+ * </ul>
+ *
+ * <p>
+ *     消费组的待确认事件会阻止 trimArchivedStream.lua 删除它们，所以归档器不会删掉还没桥接的事件。
+ *     集群模式下用户、包裹、联系人日志按用户分成了各自的流，不在桥接范围内。
+ * </p>
+ */
+@Slf4j
+@Component
+public class StreamKafkaBridge implements SmartLifecycle
+{
+    /** Kafka 桥接消费组名。*/
+    public static final String BRIDGE_GROUP = "kafka-bridge";
+
+    /** 发送事件数指标名。*/
+    public static final String SENT_METRIC = "stream.kafka-bridge.sent";
+
+    /** 发送失败数指标名。*/
+    public static final String FAILED_METRIC = "stream.kafka-bridge.failed";
+
+    /** 每批发送耗时指标名。*/
+    public static final String BATCH_METRIC = "stream.kafka-bridge.batch";
+
+    /** 还没有读取的事件数指标名。*/
+    public static final String LAG_METRIC = "stream.kafka-bridge.lag";
+
+    /** 已读取未确认的事件数指标名。*/
+    public static final String PENDING_METRIC = "stream.kafka-bridge.pending";
+
+    /** 依次尝试作为 Kafka 消息键的事件字段。*/
+    private static final List<String> KEY_FIELDS
+        = List.of("uuid", "seller", "guild-name", "user-name", "weaponId");
+
+    /** 是否启用 Kafka 桥接？*/
+    @Value("${app.kafka-bridge.enabled:false}")
+    private boolean enabled;
+
+    /** 事件发送到的 Kafka 主题。*/
+    @Value("${app.kafka-bridge.topic:item-market-audit-events}")
+    private String topic;
+
+    /** 每个日志流一批最多发送几条事件。*/
+    @Value("${app.kafka-bridge.batch-size:500}")
+    private int batchSize;
+
+    /** 没有新事件时等待多久再读（毫秒）。*/
+    @Value("${app.kafka-bridge.idle-wait-millis:1000}")
+    private long idleWaitMillis;
+
+    /** 多久采样一次消费组的积压（秒）。*/
+    @Value("${app.kafka-bridge.lag-sample-seconds:15}")
+    private long lagSampleSeconds;
+
+    /** 本节点在消费组中的消费者名（重启后保持不变才能继续处理自己的待确认事件）。*/
+    @Value("${app.kafka-bridge.consumer-name:${HOSTNAME:kafka-bridge}}")
+    private String consumerName;
+
+    /** 字符串序列化 Redis 模板（日志流的字段都是原始字符串）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** Kafka 模板类。*/
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    /** 指标注册表。*/
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 正在执行的桥接任务。*/
+    private volatile Disposable bridging;
+
+    /** 正在执行的积压采样任务。*/
+    private volatile Disposable lagSampling;
+
+    /** 日志流 -> 各项指标。*/
+    private final Map<String, StreamMeters> meters = new ConcurrentHashMap<>();
+
+    /** 下一轮需要先重发待确认事件的日志流。*/
+    private final Set<String> retryStreams = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 一个日志流的指标。
+     *
+     * @param sent    发送并确认的事件数
+     * @param failed  发送失败数
+     * @param batch   每批发送耗时
+     * @param lag     还没有读取的事件数
+     * @param pending 已读取未确认的事件数
+     */
+    private record StreamMeters(
+        Counter sent, Counter failed, Timer batch,
+        AtomicLong lag, AtomicLong pending) {}
+
+    /** 启动桥接任务（没有启用时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && RUNNING.compareAndSet(false, true))
+        {
+            log.info(
+                "[SmartLifecycle] Stream kafka bridge started, consumer: {}, topic: {}, streams: {}.",
+                this.consumerName, this.topic, getArchivedStreamKeys());
+
+            this.bridging
+                = this.bridge()
+                      .subscribe(
+                          null,
+                          (exception) ->
+                              log.error("Stream kafka bridge stopped by error!", exception)
+                      );
+
+            this.lagSampling
+                = Flux.interval(Duration.ofSeconds(this.lagSampleSeconds))
+                      .concatMap((ignore) -> this.sampleLag())
+                      .subscribe();
+        }
+    }
+
+    /** 停止桥接任务，没有确认的事件留在待确认列表中，下次启动时重新发送。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] Stream kafka bridge stopped.");
+
+            if (this.bridging != null) {
+                this.bridging.dispose();
+            }
+
+            if (this.lagSampling != null) {
+                this.lagSampling.dispose();
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其最后被创建，最先被执行。*/
+    @Override
+    public int getPhase() { return Integer.MAX_VALUE; }
+
+    /** 获取（或创建）某个日志流的指标。*/
+    private @NotNull StreamMeters
+    getMeters(String streamKey)
+    {
+        return
+        this.meters.computeIfAbsent(streamKey, (key) -> {
+            final AtomicLong lag     = new AtomicLong();
+            final AtomicLong pending = new AtomicLong();
+
+            Gauge.builder(LAG_METRIC, lag, AtomicLong::get)
+                 .description("Stream entries not yet read by the kafka bridge")
+                 .tag("stream", key)
+                 .register(this.meterRegistry);
+
+            Gauge.builder(PENDING_METRIC, pending, AtomicLong::get)
+                 .description("Stream entries read but not yet acknowledged by kafka")
+                 .tag("stream", key)
+                 .register(this.meterRegistry);
+
+            return
+            new StreamMeters(
+                Counter.builder(SENT_METRIC)
+                       .description("Stream entries published to kafka")
+                       .tag("stream", key)
+                       .register(this.meterRegistry),
+                Counter.builder(FAILED_METRIC)
+                       .description("Stream entries failed to publish to kafka")
+                       .tag("stream", key)
+                       .register(this.meterRegistry),
+                Timer.builder(BATCH_METRIC)
+                     .description("Time from sending one batch until kafka acknowledged it")
+                     .tag("stream", key)
+                     .register(this.meterRegistry),
+                lag, pending);
+        });
+    }
+
+    /** 以 XINFO GROUPS 采样每个日志流上本消费组的积压与待确认事件数。*/
+    private @NotNull Mono<Void> sampleLag()
+    {
+        return
+        Flux.fromIterable(getArchivedStreamKeys())
+            .concatMap((streamKey) ->
+                this.stringRedisTemplate
+                    .opsForStream()
+                    .groups(streamKey)
+                    .filter((group) -> BRIDGE_GROUP.equals(group.groupName()))
+                    .doOnNext((group) -> {
+                        final StreamMeters streamMeters = this.getMeters(streamKey);
+
+                        // lag 字段从 Redis 7 开始提供，被删除的事件让它无法计算时为空
+                        if (group.getRaw().get("lag") instanceof Number lag) {
+                            streamMeters.lag().set(lag.longValue());
+                        }
+
+                        streamMeters.pending().set(group.pendingCount());
+                    })
+                    .onErrorResume((exception) -> Mono.empty()))
+            .then();
+    }
+
+    /** 创建消费组（流不存在时一并创建），从桥接进度之后开始读取，没有进度时从流的末尾开始；消费组已经存在时什么都不做。*/
+    private @NotNull Mono<Void>
+    createGroup(String streamKey)
+    {
+        final ByteBuffer rawKey
+            = ByteBuffer.wrap(streamKey.getBytes(StandardCharsets.UTF_8));
+
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForHash()
+            .get(getKafkaBridgeCheckpointKey(), streamKey)
+            .defaultIfEmpty("$")
+            .flatMap((checkpoint) ->
+                this.stringRedisTemplate
+                    .execute((connection) ->
+                        connection.streamCommands()
+                                  .xGroupCreate(rawKey, BRIDGE_GROUP, ReadOffset.from(checkpoint), true))
+                    .then())
+            .onErrorResume(
+                (exception) ->
+                    exception.getMessage() != null &&
+                    exception.getMessage().contains("BUSYGROUP"),
+                (exception) -> Mono.empty()
+            );
+    }
+
+    /** 以本消费者的身份从某个位置读取某个日志流的一批事件。*/
+    private @NotNull Mono<List<MapRecord<String, String, String>>>
+    readBatch(String streamKey, ReadOffset offset)
+    {
+        return
+        readGroup(
+            this.stringRedisTemplate,
+            Consumer.from(BRIDGE_GROUP, this.consumerName), this.batchSize,
+            StreamOffset.create(streamKey, offset))
+        .collectList();
+    }
+
+    /** 一条事件的 Kafka 消息键（同一个用户的事件落在同一个分区）。*/
+    private static @NotNull String
+    messageKey(String streamKey, @NotNull Map<String, String> fields)
+    {
+        for (String field : KEY_FIELDS)
+        {
+            final String value = fields.get(field);
+
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+
+        return streamKey;
+    }
+
+    /** 把一批事件全部交给 Kafka 生产者（可能因缓冲区已满或元数据未就绪而阻塞，所以放在弹性线程上执行）。*/
+    private @NotNull Mono<List<CompletableFuture<SendResult<String, Object>>>>
+    sendAll(String streamKey, @NotNull List<MapRecord<String, String, String>> records)
+    {
+        return
+        Mono.fromCallable(() ->
+            records.stream()
+                   .map((record) -> {
+                       final StreamEventMessage message
+                           = new StreamEventMessage(
+                               streamKey, record.getId().getValue(),
+                               record.getId().getTimestamp(), record.getValue());
+
+                       try
+                       {
+                           return
+                           this.kafkaTemplate
+                               .send(this.topic, messageKey(streamKey, record.getValue()), message);
+                       }
+                       catch (RuntimeException exception) {
+                           return CompletableFuture.<SendResult<String, Object>>failedFuture(exception);
+                       }
+                   })
+                   .toList())
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /** 确认 Kafka 已经收到的一批事件，并推进桥接进度。*/
+    private @NotNull Mono<Void>
+    acknowledge(String streamKey, @NotNull List<MapRecord<String, String, String>> records)
+    {
+        if (records.isEmpty()) {
+            return Mono.empty();
+        }
+
+        final RecordId[] ids
+            = records.stream()
+                     .map(MapRecord::getId)
+                     .toArray(RecordId[]::new);
+
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForStream()
+            .acknowledge(streamKey, BRIDGE_GROUP, ids)
+            .then(
+                this.stringRedisTemplate
+                    .<String, String>opsForHash()
+                    .put(getKafkaBridgeCheckpointKey(), streamKey, records.getLast().getId().getValue()))
+            .then();
+    }
+
+    /**
+     * 发送一批事件，等待 Kafka 的确认，确认第一条发送失败的事件之前的所有事件，
+     * 有事件发送失败时，下一轮先重发这个日志流的待确认事件。
+     */
+    private @NotNull Mono<Void>
+    bridgeBatch(String streamKey, @NotNull List<MapRecord<String, String, String>> records)
+    {
+        final StreamMeters streamMeters = this.getMeters(streamKey);
+        final long start = System.nanoTime();
+
+        return
+        this.sendAll(streamKey, records)
+            .flatMapMany(Flux::fromIterable)
+            .concatMap((future) ->
+                Mono.fromFuture(future)
+                    .thenReturn(true)
+                    .onErrorResume((exception) -> {
+                        log.warn("Publish event of stream: {} to kafka failed!", streamKey, exception);
+                        return Mono.just(false);
+                    }))
+            .collectList()
+            .flatMap((results) -> {
+                final int acknowledged
+                    = results.contains(false) ? results.indexOf(false) : results.size();
+
+                streamMeters.batch().record(Duration.ofNanos(System.nanoTime() - start));
+                streamMeters.sent().increment(acknowledged);
+
+                if (acknowledged < records.size())
+                {
+                    streamMeters.failed().increment(records.size() - acknowledged);
+                    this.retryStreams.add(streamKey);
+                }
+
+                return
+                this.acknowledge(streamKey, records.subList(0, acknowledged));
+            });
+    }
+
+    /**
+     * 读取并发送某个日志流的一批事件（需要重发时读取待确认事件，否则读取新事件），
+     * 发布这一批的事件数（出错时发布 0）。
+     */
+    private @NotNull Mono<Integer>
+    bridgeNextBatch(String streamKey)
+    {
+        final boolean retry = this.retryStreams.remove(streamKey);
+
+        return
+        this.readBatch(streamKey, (retry) ? ReadOffset.from("0") : ReadOffset.lastConsumed())
+            .flatMap((records) -> {
+                // 待确认事件一批读不完时，下一轮继续重发
+                if (retry && records.size() >= this.batchSize) {
+                    this.retryStreams.add(streamKey);
+                }
+
+                return
+                (records.isEmpty())
+                    ? Mono.just(0)
+                    : this.bridgeBatch(streamKey, records).thenReturn(records.size());
+            })
+            .onErrorResume((exception) -> {
+                log.warn("Bridge stream: {} to kafka failed, retry in next round.", streamKey, exception);
+
+                if (retry) {
+                    this.retryStreams.add(streamKey);
+                }
+
+                // 流或者消费组可能被删除了，重新创建后继续读取
+                return
+                this.createGroup(streamKey)
+                    .onErrorResume((ignore) -> Mono.empty())
+                    .thenReturn(0);
+            });
+    }
+
+    /**
+     * 一轮桥接：每个日志流各读取并发送一批事件，
+     * 有流读满了一批（还有积压）时马上开始下一轮，否则等待一段时间。
+     */
+    private @NotNull Mono<Void>
+    bridgeRound(@NotNull List<String> streamKeys)
+    {
+        return
+        Flux.fromIterable(streamKeys)
+            .flatMap(this::bridgeNextBatch, streamKeys.size())
+            .reduce(0, Math::max)
+            .flatMap((largestBatch) ->
+                (largestBatch < this.batchSize)
+                    ? Mono.delay(Duration.ofMillis(this.idleWaitMillis)).then()
+                    : Mono.<Void>empty());
+    }
+
+    /**
+     * 日志流到 Kafka 的桥接任务：
+     *
+     * <ol>
+     *     <li>为每个日志流创建消费组，并标记为需要先重发本消费者的待确认事件</li>
+     *     <li>一轮一轮地发送所有日志流的事件，直到本 Bean 停止</li>
+     * </ol>
+     */
+    public @NotNull Mono<Void> bridge()
+    {
+        final List<String> streamKeys = List.copyOf(getArchivedStreamKeys());
+
+        return
+        Flux.fromIterable(streamKeys)
+            .concatMap((streamKey) ->
+                this.createGroup(streamKey)
+                    .doOnSuccess((ignore) -> this.retryStreams.add(streamKey))
+                    .onErrorResume((exception) -> {
+                        log.warn("Prepare stream: {} for kafka bridge failed!", streamKey, exception);
+                        return Mono.empty();
+                    }))
+            .then(
+                this.bridgeRound(streamKeys)
+                    .repeat(RUNNING::get)
+                    .then());
+    }
+}
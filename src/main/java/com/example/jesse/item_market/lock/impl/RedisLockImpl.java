@@ -2,15 +2,14 @@ package com.example.jesse.item_market.lock.impl;
 
 import com.example.jesse.item_market.lock.RedisLock;
 import com.example.jesse.item_market.lock.exception.RedisLockAcquireTimeout;
-import com.example.jesse.item_market.utils.LuaScriptReader;
-import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
@@ -18,7 +17,6 @@ import java.util.List;
 import java.util.UUID;
 import java.util.function.Function;
 
-import static com.example.jesse.item_market.errorhandle.RedisErrorHandle.redisGenericErrorHandel;
 import static com.example.jesse.item_market.utils.KeyConcat.getRedisLockKey;
 import static com.example.jesse.item_market.utils.LuaScriptOperatorType.LOCK_OPERATOR;
 import static java.lang.String.format;
@@ -38,14 +36,43 @@ import static java.lang.String.format;
 @AllArgsConstructor(access = AccessLevel.PUBLIC)
 public class RedisLockImpl implements RedisLock
 {
-    /** Lua 脚本读取器。*/
+    /** acquireLockTimeout.lua：获取锁，发布锁的唯一标识符。*/
+    private static final LuaScript<String> ACQUIRE_LOCK_TIMEOUT
+        = LuaScript.<String>builder(LOCK_OPERATOR, "acquireLockTimeout.lua")
+                   .timeout(null)
+                   .success("SUCCESS", (call) -> {
+                       log.info("Lock obtain success!");
+                       return (String) call.arg(0);
+                   })
+                   .failure("GET_LOCK_TIMEOUT", (call) ->
+                       new RedisLockAcquireTimeout(
+                           format(
+                               "Acquire lock: %s timeout! (acquireTimeout = %d seconds)",
+                               call.key(0), (long) call.arg(1)
+                           ), null))
+                   .build();
+
+    /** releaseLock.lua：释放锁。*/
+    private static final LuaScript<Void> RELEASE_LOCK
+        = LuaScript.<Void>builder(LOCK_OPERATOR, "releaseLock.lua")
+                   .timeout(null)
+                   .success("SUCCESS", (call) -> {
+                       log.info("Lock release success!");
+                       return null;
+                   })
+                   .success("CONCURRENT_DELETE", (call) -> {
+                       log.warn("Concurrent delete happend!");
+                       return null;
+                   })
+                   .success("LOCK_OWNED_BY_OTHERS", (call) -> {
+                       log.error("Try to delete others lock!");
+                       return null;
+                   })
+                   .build();
+
+    /** Lua 脚本执行器。*/
     @Autowired
-    private LuaScriptReader scriptReader;
-
-    /** 执行 Lua 脚本专用 Redis 模板。*/
-    @Autowired
-    private
-    ReactiveRedisTemplate<String, LuaOperatorResult> redisScriptTemplate;
+    private LuaScriptExecutor luaScriptExecutor;
 
     /**
      * 尝试获取一个锁。
@@ -64,44 +91,11 @@ public class RedisLockImpl implements RedisLock
         final String identifier  = UUID.randomUUID().toString();
 
         return
-        this.scriptReader
-            .fromFile(LOCK_OPERATOR, "acquireLockTimeout.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        List.of(lockKeyName),
-                        identifier, acquireTimeout, lockTimeout)
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "GET_LOCK_TIMEOUT" ->
-                                Mono.error(
-                                    new RedisLockAcquireTimeout(
-                                        format(
-                                            "Acquire lock: %s timeout! (acquireTimeout = %d seconds)",
-                                            lockName, acquireTimeout
-                                        ), null
-                                    )
-                                );
-
-                            case "SUCCESS" -> {
-                                log.info("Lock obtain success!");
-                                yield Mono.just(identifier);
-                            }
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected value: " + result.getResult()
-                                    )
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null));
+        this.luaScriptExecutor
+            .execute(
+                ACQUIRE_LOCK_TIMEOUT,
+                List.of(lockKeyName),
+                identifier, acquireTimeout, lockTimeout);
     }
 
     /**
@@ -115,41 +109,10 @@ public class RedisLockImpl implements RedisLock
         final String lockKeyName = getRedisLockKey(lockName);
 
         return
-        this.scriptReader
-            .fromFile(LOCK_OPERATOR, "releaseLock.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(script, List.of(lockKeyName), identifier)
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "CONCURRENT_DELETE" -> {
-                                log.warn("Concurrent delete happend!");
-                                yield Mono.empty();
-                            }
-
-                            case "LOCK_OWNED_BY_OTHERS" -> {
-                                log.error("Try to delete others lock!");
-                                yield Mono.empty();
-                            }
-
-                            case "SUCCESS" -> {
-                                log.info("Lock release success!");
-                                yield Mono.empty();
-                            }
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected value: " + result.getResult()
-                                    )
-                            );
-                        })
-                )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                RELEASE_LOCK,
+                List.of(lockKeyName), identifier);
     }
 
     /**
@@ -1,7 +1,18 @@
 package com.example.jesse.item_market.market;
 
+import com.example.jesse.item_market.market.dto.CartPurchaseResult;
+import com.example.jesse.item_market.market.dto.ListingPage;
+import com.example.jesse.item_market.market.dto.PriceCandle;
+import com.example.jesse.item_market.market.dto.PurchaseResult;
+import com.example.jesse.item_market.market.dto.TransactionResult;
+import com.example.jesse.item_market.market.dto.WeaponStats;
+import com.example.jesse.item_market.market.utils.ListingCursor;
+import com.example.jesse.item_market.market.utils.PriceResolution;
+import com.example.jesse.item_market.user.Weapons;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /** 市场交易操作接口类。*/
 public interface MarketService
 {
@@ -12,9 +23,92 @@ public interface MarketService
      * @param sellerId    卖家 UUID
      * @param weaponId    买家想购买的武器 UID
      *
-     * @return 交易的整体操作是否完成
+     * @return 发布交易后买卖双方资金余额的 Mono，交易没有发生时不发布任何数据
      */
-    Mono<Void>
+    Mono<TransactionResult>
     marketTransaction(
         String buyerId, String sellerId, String weaponId);
+
+    /**
+     * 带幂等键的市场交易开放接口，
+     * 同一个幂等键在保存期内的重复请求直接返回之前的交易结果，不会再次执行交易。
+     *
+     * @param buyerId        买家 UUID
+     * @param sellerId       卖家 UUID
+     * @param weaponId       买家想购买的武器 UID
+     * @param idempotencyKey 幂等键（字母、数字、_ 或 -，不超过 64 个字符；为 null 时不启用幂等）
+     *
+     * @return 发布交易后买卖双方资金余额的 Mono，交易没有发生时不发布任何数据
+     */
+    Mono<TransactionResult>
+    marketTransaction(
+        String buyerId, String sellerId,
+        String weaponId, String idempotencyKey);
+
+    /**
+     * 购买某一类武器中价格最低的一件。
+     *
+     * @param buyerId  买家 UUID
+     * @param weapon   武器类型
+     * @param maxPrice 买家能接受的最高价格
+     *
+     * @return 发布买到的武器、成交价与买卖双方资金余额的 Mono，交易没有发生时不发布任何数据
+     */
+    Mono<PurchaseResult>
+    buyCheapestWeapon(
+        String buyerId, Weapons weapon, double maxPrice);
+
+    /**
+     * 按价格升序分页浏览市场上的武器。
+     *
+     * @param weapon   武器类型（为 null 时浏览所有武器）
+     * @param minPrice 最低价格（包含）
+     * @param maxPrice 最高价格（包含）
+     * @param cursor   分页游标（第一页用 {@link ListingCursor#first(double)}）
+     * @param pageSize 一页几件武器
+     *
+     * @return 发布一页结果的 Mono
+     */
+    Mono<ListingPage>
+    getListings(
+        Weapons weapon, double minPrice, double maxPrice,
+        ListingCursor cursor, int pageSize);
+
+    /**
+     * 购物车交易：买家一次性购买多件武器，要么全部成交，要么一件都不成交。
+     *
+     * @param buyerId   买家 UUID
+     * @param weaponIds 买家想购买的所有武器 UID（不可重复）
+     *
+     * @return 发布买家资金余额与每一件武器成交结果的 Mono，
+     *         有武器不在市场上时发布 ItemNoOnMarket（消息中列出这些武器），
+     *         买家资金不足以支付总价时发布 FundsNotEnough
+     */
+    Mono<CartPurchaseResult>
+    cartPurchase(String buyerId, List<String> weaponIds);
+
+    /**
+     * 读取某一类武器的市场统计（地板价、平均成交价、近 24 小时成交量等），
+     * 统计由市场统计消费组增量累加，读取只需两次 HGETALL。
+     *
+     * @param weapon 武器类型
+     *
+     * @return 发布该类武器市场统计的 Mono（还没有任何事件时各项均为 0 或 null）
+     */
+    Mono<WeaponStats>
+    getWeaponStats(Weapons weapon);
+
+    /**
+     * 读取某一类武器在某个时间范围内的价格历史（K 线），只读取范围内的桶。
+     *
+     * @param weapon     武器类型
+     * @param resolution 时间粒度
+     * @param from       起始时间（秒，包含）
+     * @param to         结束时间（秒，包含）
+     *
+     * @return 发布范围内所有有成交的桶（按时间升序）的 Mono
+     */
+    Mono<List<PriceCandle>>
+    getPriceHistory(
+        Weapons weapon, PriceResolution resolution, long from, long to);
 }
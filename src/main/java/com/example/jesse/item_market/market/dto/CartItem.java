@@ -0,0 +1,20 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/** 购物车交易中成交的一件武器，以及交易后该武器卖家的资金余额。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItem
+{
+    private String weaponId;
+    private String weaponName;
+    private String seller;
+    private BigDecimal price;
+    private BigDecimal sellerFunds;
+}
@@ -0,0 +1,18 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/** 一次购物车交易完成后，买家的资金余额与每一件武器的成交结果。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartPurchaseResult
+{
+    private BigDecimal buyerFunds;
+    private List<CartItem> items;
+}
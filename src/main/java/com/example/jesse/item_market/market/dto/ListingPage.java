@@ -0,0 +1,26 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** 市场浏览的一页结果。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ListingPage
+{
+    /** 本页的在售武器（按价格升序）。*/
+    private List<MarketListing> listings;
+
+    /** 当前是第几页。*/
+    private int pageNo;
+
+    /** 价格区间内的武器总数（第一页时统计，之后随游标传递）。*/
+    private long totalItems;
+
+    /** 下一页的游标，没有下一页时为 null。*/
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** 市场上的一件在售武器。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MarketListing
+{
+    private String weaponId;
+    private String weaponName;
+    private String seller;
+    private double price;
+}
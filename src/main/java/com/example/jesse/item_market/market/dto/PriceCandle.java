@@ -0,0 +1,25 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/** 某一类武器在一个时间桶内的成交价格（开、高、低、收）与成交次数。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceCandle
+{
+    /** 桶的起始时间（秒）。*/
+    private long bucketStart;
+
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+
+    /** 成交次数。*/
+    private long volume;
+}
@@ -0,0 +1,19 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/** 一次 “购买最便宜武器” 完成后，买到的武器、成交价以及买卖双方的资金余额。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseResult
+{
+    private String weaponId;
+    private BigDecimal price;
+    private BigDecimal buyerFunds;
+    private BigDecimal sellerFunds;
+}
@@ -0,0 +1,17 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/** 一次市场交易完成后，买卖双方的资金余额（由交易脚本直接返回，无需再次查询）。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionResult
+{
+    private BigDecimal buyerFunds;
+    private BigDecimal sellerFunds;
+}
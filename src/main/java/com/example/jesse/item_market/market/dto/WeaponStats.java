@@ -0,0 +1,47 @@
+package com.example.jesse.item_market.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/** 某一类武器的市场统计（由市场统计消费组从市场日志流中增量累加）。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeaponStats
+{
+    /** 武器类型。*/
+    private String weaponName;
+
+    /** 地板价（在售武器中的最低价格，没有在售武器时为 null）。*/
+    private BigDecimal floorPrice;
+
+    /** 在售数量。*/
+    private long activeListings;
+
+    /** 累计上架次数。*/
+    private long listedTotal;
+
+    /** 累计下架次数（卖家下架或用户注销）。*/
+    private long withdrawnTotal;
+
+    /** 累计成交次数。*/
+    private long soldTotal;
+
+    /** 平均成交价（还没有成交时为 null）。*/
+    private BigDecimal averageSalePrice;
+
+    /** 最近一次成交价（还没有成交时为 null）。*/
+    private BigDecimal lastSalePrice;
+
+    /** 近 24 小时的成交次数。*/
+    private long volume24h;
+
+    /** 近 24 小时的成交额。*/
+    private BigDecimal turnover24h;
+
+    /** 最近累加的市场日志事件 ID（还没有累加过事件时为 null）。*/
+    private String lastEventId;
+}
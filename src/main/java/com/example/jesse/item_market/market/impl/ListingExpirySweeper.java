@@ -0,0 +1,334 @@
+package com.example.jesse.item_market.market.impl;
+
+import com.example.jesse.item_market.config.PlainValueReader;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.CLUSTER_OPERATOR;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.MARKET_OPERATOR;
+
+/**
+ * <p>上架到期的清理任务。</p>
+ *
+ * <p>
+ *     设置了上架时长的武器登记在上架到期时间表（有序集合，分数为到期时间）中，
+ *     本任务在后台不断取出一小批到期的武器，逐件下架并放回卖家包裹，
+ *     同时写入市场日志（WEAPON_OUTBOUND，reason 为 EXPIRED）与包裹日志（WEAPON_INBOUND）。
+ * </p>
+ *
+ * <p>
+ *     每一批最多 batch-size 件，批与批之间至少间隔 interval-millis 毫秒，
+ *     积压再多也只是以固定的速率下架，不会在短时间内集中占用 Redis。
+ *     单机模式下每件武器由 expireListing.lua 一次性原子地完成；
+ *     集群模式下先由 delistExpired.lua 从市场上删除，再由 returnToInventory.lua 放回卖家包裹（失败时重试）。
+ * </p>
+ *
+ * <p>
+ *     被买走或被卖家下架的武器不会从到期时间表中主动移除（交易脚本不需要多写一个键），
+ *     到期时由本任务顺便清理。多个节点同时清理也是安全的，脚本中会再次校验到期时间。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ListingExpirySweeper implements SmartLifecycle
+{
+    /** expireListing.lua：下架一件到期的武器并放回卖家包裹，发布本次是否下架了这件武器。*/
+    private static final LuaScript<Boolean> EXPIRE_LISTING
+        = LuaScript.<Boolean>builder(MARKET_OPERATOR, "expireListing.lua")
+                   .success("SUCCESS", (call) -> true)
+                   .success("NOT_EXPIRED", (call) -> false)
+                   .success("NOT_ON_MARKET", (call) -> false)
+                   .success("LISTING_CHANGED", (call) -> false)
+                   .success("RESERVED", (call) -> false)
+                   .build();
+
+    /** delistExpired.lua：集群模式下从市场上删除一件到期的武器，发布是否需要放回卖家包裹。*/
+    private static final LuaScript<Boolean> DELIST_EXPIRED
+        = LuaScript.<Boolean>builder(CLUSTER_OPERATOR, "delistExpired.lua")
+                   .success("SUCCESS", (call) -> true)
+                   .success("NOT_EXPIRED", (call) -> false)
+                   .success("NOT_ON_MARKET", (call) -> false)
+                   .success("LISTING_CHANGED", (call) -> false)
+                   .success("RESERVED", (call) -> false)
+                   .build();
+
+    /** returnToInventory.lua：集群模式下把下架的武器放回卖家包裹。*/
+    private static final LuaScript<Void> RETURN_TO_INVENTORY
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "returnToInventory.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** 放回卖家包裹失败时的重试策略。*/
+    private static final Retry RETURN_RETRY
+        = Retry.backoff(3L, Duration.ofMillis(100L));
+
+    /** 武器正在被集群交易预留时，推迟几秒再处理。*/
+    private static final long RESERVED_POSTPONE_SECONDS = 30L;
+
+    /** 没有到期的武器时等待多久再查。*/
+    private static final Duration IDLE_WAIT = Duration.ofSeconds(5L);
+
+    /** 是否启用上架到期清理？*/
+    @Value("${app.market.listing-expiry.enabled:false}")
+    private boolean enabled;
+
+    /** 每一批最多下架几件武器。*/
+    @Value("${app.market.listing-expiry.batch-size:20}")
+    private int batchSize;
+
+    /** 批与批之间至少间隔多少毫秒。*/
+    @Value("${app.market.listing-expiry.interval-millis:200}")
+    private long intervalMillis;
+
+    /** 字符串序列化 Redis 模板（市场数据都以原始字符串保存）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** 兼容旧编码的市场数据读取器（迁移完成之前武器哈希可能还带着 JSON 引号）。*/
+    @Autowired
+    private PlainValueReader plainValueReader;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 正在执行的清理任务。*/
+    private volatile Disposable sweeping;
+
+    /**
+     * 一件到期的武器。
+     *
+     * @param weaponId   武器 ID
+     * @param weaponName 武器名（武器已经不在市场上时为 null）
+     * @param sellerId   卖家 UUID（武器已经不在市场上时为 null）
+     */
+    private record ExpiredListing(String weaponId, String weaponName, String sellerId) {}
+
+    /** 启动清理任务（没有启用上架到期清理时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && RUNNING.compareAndSet(false, true))
+        {
+            log.info("[SmartLifecycle] Listing expiry sweeper started.");
+
+            this.sweeping
+                = this.sweep()
+                      .subscribe(
+                          null,
+                          (exception) ->
+                              log.error("Listing expiry sweeper stopped by error!", exception)
+                      );
+        }
+    }
+
+    /** 停止清理任务，正在处理的这一批中没有完成的武器下次继续处理。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] Listing expiry sweeper stopped.");
+
+            if (this.sweeping != null) {
+                this.sweeping.dispose();
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其最后被创建，最先被执行。*/
+    @Override
+    public int getPhase() { return Integer.MAX_VALUE; }
+
+    /** 读出一小批到期的武器，以及它们的武器名与卖家（以流水线的方式批量 HMGET）。*/
+    private @NotNull Mono<List<ExpiredListing>> findExpired()
+    {
+        return
+        this.stringRedisTemplate.opsForZSet()
+            .rangeByScore(
+                getListingExpiryZsetKey(),
+                Range.closed(0.0, (double) Instant.now().getEpochSecond()),
+                Limit.limit().count(this.batchSize))
+            .flatMapSequential((weaponId) ->
+                this.plainValueReader
+                    .multiGet(getWeaponHashKey(weaponId), List.of("weapon-name", "seller"))
+                    .map((fields) ->
+                        new ExpiredListing(weaponId, fields.getFirst(), fields.get(1))))
+            .collectList();
+    }
+
+    /** 单机模式下，以流水线的方式批量执行 expireListing.lua，发布下架的武器数量。*/
+    private @NotNull Mono<Long>
+    expireAll(@NotNull List<ExpiredListing> listings)
+    {
+        return
+        this.luaScriptExecutor
+            .executeAll(
+                EXPIRE_LISTING,
+                listings.stream()
+                        .map((listing) ->
+                            LuaScript.Invocation.of(
+                                List.of(
+                                    getListingExpiryZsetKey(),
+                                    getWeaponHashKey(listing.weaponId()),
+                                    getWeaponPriceZsetKey(),
+                                    getWeaponTypePriceZsetKey(listing.weaponName()),
+                                    getMarketLogKey(),
+                                    getUserKey(listing.sellerId()),
+                                    getInventoryKey(listing.sellerId()),
+                                    getInventoryLogKey(listing.sellerId()),
+                                    getSellerIndexKey(listing.sellerId())),
+                                listing.weaponId(), listing.sellerId(),
+                                listing.weaponName(), RESERVED_POSTPONE_SECONDS))
+                        .toList())
+            .doOnNext((result) -> {
+                if (!result.isSuccess()) {
+                    log.warn("Expire listing failed!", result.getError());
+                }
+            })
+            .filter((result) -> Boolean.TRUE.equals(result.getValue()))
+            .count();
+    }
+
+    /** 集群模式下，先从市场上删除到期的武器，再放回卖家包裹，发布下架的武器数量。*/
+    private @NotNull Mono<Long>
+    expireAllInCluster(@NotNull List<ExpiredListing> listings)
+    {
+        return
+        Flux.fromIterable(listings)
+            .concatMap((listing) ->
+                this.luaScriptExecutor
+                    .execute(
+                        DELIST_EXPIRED,
+                        List.of(
+                            getListingExpiryZsetKey(),
+                            getWeaponHashKey(listing.weaponId()),
+                            getWeaponPriceZsetKey(),
+                            getWeaponTypePriceZsetKey(listing.weaponName()),
+                            getMarketLogKey()),
+                        listing.weaponId(), listing.sellerId(),
+                        listing.weaponName(), RESERVED_POSTPONE_SECONDS)
+                    .filter(Boolean::booleanValue)
+                    .flatMap((delisted) ->
+                        this.luaScriptExecutor
+                            .execute(
+                                RETURN_TO_INVENTORY,
+                                List.of(
+                                    getUserKey(listing.sellerId()),
+                                    getInventoryKey(listing.sellerId()),
+                                    getInventoryLogKey(listing.sellerId()),
+                                    getSellerIndexKey(listing.sellerId())),
+                                listing.sellerId(), listing.weaponName(), listing.weaponId())
+                            .retryWhen(RETURN_RETRY)
+                            .doOnError((exception) ->
+                                log.error(
+                                    "Weapon: {} delisted but not returned to seller: {}!",
+                                    listing.weaponId(), listing.sellerId(), exception))
+                            .thenReturn(delisted))
+                    .onErrorResume((exception) -> {
+                        log.warn("Expire listing: {} failed!", listing.weaponId(), exception);
+                        return Mono.empty();
+                    }))
+            .count();
+    }
+
+    /**
+     * 处理一批到期的武器：已经不在市场上的武器直接从到期时间表中移除，其余的逐件下架。
+     *
+     * @return 发布本批取出的到期武器数量的 Mono（用于判断是否还有积压）
+     */
+    private @NotNull Mono<Integer> sweepBatch()
+    {
+        return
+        this.findExpired()
+            .flatMap((listings) -> {
+                if (listings.isEmpty()) {
+                    return Mono.just(0);
+                }
+
+                final Object[] staleIds
+                    = listings.stream()
+                              .filter((listing) -> listing.weaponName() == null || listing.sellerId() == null)
+                              .map(ExpiredListing::weaponId)
+                              .toArray();
+
+                final List<ExpiredListing> live
+                    = listings.stream()
+                              .filter((listing) -> listing.weaponName() != null && listing.sellerId() != null)
+                              .toList();
+
+                final Mono<Long> removeStale
+                    = (staleIds.length == 0)
+                        ? Mono.just(0L)
+                        : this.stringRedisTemplate.opsForZSet()
+                              .remove(getListingExpiryZsetKey(), staleIds);
+
+                final Mono<Long> expireLive
+                    = (live.isEmpty())
+                        ? Mono.just(0L)
+                        : (isClusterLayout())
+                            ? this.expireAllInCluster(live)
+                            : this.expireAll(live);
+
+                return
+                removeStale
+                    .then(expireLive)
+                    .doOnNext((count) -> {
+                        if (count > 0L) {
+                            log.info("{} expired listings returned to inventory.", count);
+                        }
+                    })
+                    .thenReturn(listings.size());
+            });
+    }
+
+    /**
+     * 清理任务：不断处理一批到期的武器，
+     * 这一批取满了（可能还有积压）时间隔 interval-millis 毫秒后继续，否则等待一段时间再查，
+     * 直到本 Bean 停止。
+     */
+    public @NotNull Mono<Void> sweep()
+    {
+        return
+        this.sweepBatch()
+            .flatMap((fetched) ->
+                Mono.delay(
+                    (fetched >= this.batchSize)
+                        ? Duration.ofMillis(this.intervalMillis)
+                        : IDLE_WAIT))
+            .onErrorResume((exception) -> {
+                log.warn("Sweep expired listings failed, retry in {} seconds.", IDLE_WAIT.getSeconds(), exception);
+                return Mono.delay(IDLE_WAIT);
+            })
+            .repeat(RUNNING::get)
+            .then();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.jesse.item_market.market.impl;
+
+import com.example.jesse.item_market.config.OneShotMigration;
+import com.example.jesse.item_market.config.PlainValueReader;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.MARKET_OPERATOR;
+
+/**
+ * <p>市场索引的一次性回填任务。</p>
+ *
+ * 索引上线之前上架的武器不在卖家索引（market:seller:{uuid}）
+ * 和各类武器的价格表（market:weapon-market:weapon-price:{武器名}）中，
+ * 开启 app.market.index-backfill 后，应用启动完成时 SCAN 一遍市场上的所有武器，
+ * 按卖家与武器类型写入索引。整个过程在分布式锁内执行，完成后写入标记键，
+ * 多个节点同时启动或者重复启动都只会回填一次。
+ */
+@Component
+public class MarketIndexBackfill extends OneShotMigration
+{
+    /** indexListedWeapon.lua：确认武器还在市场上后写入索引，发布写入的武器数（0 或 1）。*/
+    private static final LuaScript<Long> INDEX_LISTED_WEAPON
+        = LuaScript.<Long>builder(MARKET_OPERATOR, "indexListedWeapon.lua")
+                   .success("SUCCESS", (call) -> call.result().getLong(0))
+                   .build();
+
+    /** 是否在应用启动完成时执行回填？*/
+    @Value("${app.market.index-backfill:false}")
+    private boolean enabled;
+
+    /** 字符串序列化 Redis 模板（市场数据都以原始字符串保存）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** 兼容旧编码的市场数据读取器（迁移完成之前武器哈希可能还带着 JSON 引号）。*/
+    @Autowired
+    private PlainValueReader plainValueReader;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    public MarketIndexBackfill() { super("MarketIndexBackfill", 300L); }
+
+    @Override
+    protected boolean isEnabled() { return this.enabled; }
+
+    @Override
+    protected @NotNull String markerKey() { return getMarketIndexBackfillKey(); }
+
+    /** SCAN 市场上的所有武器，按卖家与武器类型写入索引。*/
+    @Override
+    protected @NotNull Mono<Long> migrateAll() {
+        return this.forEachKey(getWeaponHashKeyPattern(), 16, this::indexListedWeapon);
+    }
+
+    /**
+     * 将一件在售武器写入卖家索引与对应武器类型的价格表：
+     * 先读出武器名与卖家确定索引键，再由 indexListedWeapon.lua 确认武器还在市场上后写入，
+     * 读取之后武器被买走或下架时什么都不写。
+     *
+     * <p>
+     *     集群模式下卖家索引与市场不在同一个槽，脚本只写价格表，之后再写入卖家索引，
+     *     写入后武器已经不在市场上（期间售出，售出时的 SREM 先于这次写入）时再从卖家索引中删除。
+     * </p>
+     */
+    private @NotNull Mono<Boolean>
+    indexListedWeapon(String weaponKey)
+    {
+        final String weaponId = extractId(weaponKey);
+
+        return
+        this.plainValueReader
+            .multiGet(weaponKey, List.of("weapon-name", "seller"))
+            .filter((fields) -> fields.getFirst() != null && fields.get(1) != null)
+            .flatMap((fields) -> {
+                final String weaponName = fields.getFirst();
+                final String seller     = fields.get(1);
+
+                final List<String> keys
+                    = new ArrayList<>(List.of(
+                        weaponKey, getWeaponPriceZsetKey(), getWeaponTypePriceZsetKey(weaponName)));
+
+                if (!isClusterLayout()) {
+                    keys.add(getSellerIndexKey(seller));
+                }
+
+                return
+                this.luaScriptExecutor
+                    .execute(INDEX_LISTED_WEAPON, keys, weaponId, weaponName, seller)
+                    .filter((indexed) -> indexed > 0L)
+                    .flatMap((indexed) ->
+                        (isClusterLayout())
+                            ? this.indexSellerInCluster(weaponKey, weaponId, seller)
+                            : Mono.just(true));
+            });
+    }
+
+    /** 集群模式下写入卖家索引，写入后武器已经不在市场上时撤销这次写入。*/
+    private @NotNull Mono<Boolean>
+    indexSellerInCluster(String weaponKey, String weaponId, String seller)
+    {
+        final String sellerIndexKey = getSellerIndexKey(seller);
+
+        return
+        this.stringRedisTemplate
+            .opsForSet()
+            .add(sellerIndexKey, weaponId)
+            .then(this.stringRedisTemplate.hasKey(weaponKey))
+            .flatMap((listed) ->
+                (listed)
+                    ? Mono.just(true)
+                    : this.stringRedisTemplate
+                          .opsForSet()
+                          .remove(sellerIndexKey, weaponId)
+                          .thenReturn(false));
+    }
+}
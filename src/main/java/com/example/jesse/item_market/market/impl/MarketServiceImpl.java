@@ -1,134 +1,657 @@
 package com.example.jesse.item_market.market.impl;
 
+import com.example.jesse.item_market.config.PlainValueReader;
 import com.example.jesse.item_market.market.MarketService;
+import com.example.jesse.item_market.market.dto.CartItem;
+import com.example.jesse.item_market.market.dto.CartPurchaseResult;
+import com.example.jesse.item_market.market.dto.ListingPage;
+import com.example.jesse.item_market.market.dto.PriceCandle;
+import com.example.jesse.item_market.market.dto.MarketListing;
+import com.example.jesse.item_market.market.dto.PurchaseResult;
+import com.example.jesse.item_market.market.dto.TransactionResult;
+import com.example.jesse.item_market.market.dto.WeaponStats;
 import com.example.jesse.item_market.market.exception.FundsNotEnough;
 import com.example.jesse.item_market.market.exception.ItemNoOnMarket;
 import com.example.jesse.item_market.market.exception.SelfTransactional;
-import com.example.jesse.item_market.utils.LuaScriptReader;
+import com.example.jesse.item_market.market.utils.ListingCursor;
+import com.example.jesse.item_market.market.utils.PriceResolution;
+import com.example.jesse.item_market.market.utils.SoldListingCache;
+import com.example.jesse.item_market.user.Weapons;
+import com.example.jesse.item_market.utils.FundsCents;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
 import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.exception.LuaScriptOperatorFailed;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Unmodifiable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.Map;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 import static com.example.jesse.item_market.errorhandle.RedisErrorHandle.redisGenericErrorHandel;
 import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.CLUSTER_OPERATOR;
 import static com.example.jesse.item_market.utils.LuaScriptOperatorType.MARKET_OPERATOR;
+import static com.example.jesse.item_market.utils.UUIDGenerator.generateAsHex;
 import static java.lang.String.format;
 
-/** 市场交易操作实现类。*/
+/**
+ * <p>市场交易操作实现类。</p>
+ *
+ * <p>
+ *     单机模式下，交易由 marketTransaction.lua 一次性原子地完成。
+ *     集群模式下买家、卖家与市场分属三个槽，交易按槽拆成以下几步，
+ *     每一步都是单槽脚本，以交易 ID 保证重试时的幂等：
+ * </p>
+ *
+ * <ol>
+ *     <li>reserveListing：预留市场上的武器（从价格表中移除，记下交易 ID 与成交价）</li>
+ *     <li>debitBuyer：买家付款，武器入买家包裹（失败时执行 releaseListing 取消预留）</li>
+ *     <li>creditSeller：卖家收款，从卖家索引中移除武器（失败时重试）</li>
+ *     <li>settleListing：删除已售出的武器（失败时重试）</li>
+ * </ol>
+ *
+ * <p>
+ *     单机模式下可以开启精简交易事件（app.market.trade-events.compact）：
+ *     交易只向 market:trade-log 写一条带 ID 与金额的事件，不再读取买卖双方的名字、写四条日志，
+ *     由 {@link TradeEventExpander} 异步展开成市场、用户、包裹日志，缩短交易脚本的执行时间。
+ * </p>
+ *
+ * <p>
+ *     单机模式下还可以开启交易微批（app.market.trade-batch.enabled）：
+ *     短时间窗口内到达的交易由 {@link TradeSettlementBatcher} 凑成一批，在一次脚本执行中结算。
+ * </p>
+ *
+ * <p>
+ *     每一类武器另有一张价格表（有序集合），购买最便宜的武器时只需取表头，
+ *     与市场上武器的总数无关。单机模式下取表头与交易在同一个脚本内完成；
+ *     集群模式下表头由调用方先读出，表头在交易前变化时重新读取后重试。
+ * </p>
+ *
+ * <p>
+ *     浏览市场时以 (价格, 武器 UID) 游标在价格表上分页（见 {@link ListingCursor}），
+ *     一页武器的详情以流水线的方式批量读取。
+ * </p>
+ *
+ * <p>
+ *     交易可以带上幂等键：单机模式下交易结果与交易本身在同一个脚本内原子地保存在幂等键上，
+ *     集群模式下只保存成功的交易结果。本节点确认售出的武器记录在本地负缓存
+ *     （{@link SoldListingCache}）中，之后对它的交易不再访问 Redis。
+ * </p>
+ *
+ * <p>
+ *     同一件武器在本节点上同时只有一笔交易在执行（single-flight），
+ *     其余的交易等待这一笔的结果：它成交了，或者武器已经不在市场上，等待者直接得到 “武器不在市场上”；
+ *     它因为买家自身的原因（资金不足等）失败，等待者中的下一个再去执行。
+ *     抢购热门武器时，每个节点同一时刻只有一次脚本执行。
+ * </p>
+ *
+ * <p>
+ *     购物车交易由 cartPurchase.lua 一次性原子地完成所有武器的交易，
+ *     脚本需要的卖家键由调用方先读出，所以集群模式下（卖家分属不同的槽）不支持购物车交易。
+ * </p>
+ */
 @Slf4j
 @Service
 public class MarketServiceImpl implements MarketService
 {
-    /** 专门为 LUA 脚本配置的 Redis 模板。*/
+    /** marketTransaction.lua：结算一笔或一批市场交易，发布每笔交易的原始结果（见 {@link #toTransactionResult}）。*/
+    static final LuaScript<List<Object>> SETTLE_TRADES
+        = LuaScript.<List<Object>>builder(MARKET_OPERATOR, "marketTransaction.lua")
+                   .success("SUCCESS", (call) -> call.result().getPayload())
+                   .build();
+
+    /**
+     * marketTransaction.lua 中每一笔交易的结果：
+     * 交易后买卖双方的资金余额（脚本返回整数分），或者对应的异常。
+     */
+    static final LuaScript<TransactionResult> MARKET_TRANSACTION
+        = LuaScript.<TransactionResult>builder(MARKET_OPERATOR, "marketTransaction.lua")
+                   .success("SUCCESS", (call) ->
+                       new TransactionResult(
+                           FundsCents.toAmount(call.result().getLong(0)),
+                           FundsCents.toAmount(call.result().getLong(1))))
+                   .failure("SELF_TRANSACTIONAL", (call) ->
+                       new SelfTransactional("Self transaction is forbidden!", null))
+                   .failure("WEAPON_NOT_FOUND", (call) ->
+                       new ItemNoOnMarket(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Weapon: %s not exist in market!",
+                               call.arg(0), call.arg(1), call.arg(2)
+                           ), null))
+                   .failure("BUYER_FUNDS_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Buyer funds not found!", call.arg(0), call.arg(1))))
+                   .failure("IDEMPOTENCY_KEY_REUSED", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Idempotency key already used by another transaction!",
+                               call.arg(0), call.arg(1))))
+                   .failure("BUYER_FUNDS_NOT_ENOUGH", (call) ->
+                       new FundsNotEnough(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Buyer funds not enough!",
+                               call.arg(0), call.arg(1)
+                           ), null))
+                   .failure("ERROR", (call) ->
+                       new LuaScriptOperatorFailed(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Transaction failed! Caused by: %s",
+                               call.arg(0), call.arg(1), call.result().getString(0)
+                           ), null))
+                   .build();
+
+    /** marketTransaction.lua 中每笔交易的 KEYS 数。*/
+    static final int KEYS_PER_TRADE = 9;
+
+    /**
+     * buyCheapestWeapon.lua：单机模式下，确认调用方读到的表头还是某一类武器中价格最低的一件并完成交易，
+     * 发布卖家 UUID 与买到的武器、成交价、买卖双方的资金余额；表头变了时发布 {@link ConcurrentModificationException}。
+     */
+    private static final LuaScript<SettledPurchase> BUY_CHEAPEST_WEAPON
+        = LuaScript.<SettledPurchase>builder(MARKET_OPERATOR, "buyCheapestWeapon.lua")
+                   .success("SUCCESS", (call) ->
+                       new SettledPurchase(
+                           call.result().getString(1),
+                           new PurchaseResult(
+                               call.result().getString(0),
+                               FundsCents.toAmount(call.result().getLong(2)),
+                               FundsCents.toAmount(call.result().getLong(3)),
+                               FundsCents.toAmount(call.result().getLong(4)))))
+                   .failure("NO_WEAPON_UNDER_PRICE", (call) ->
+                       new ItemNoOnMarket(
+                           format(
+                               "[Purchase Buyer: %s] No weapon under price: %s in market!",
+                               call.arg(0), call.arg(1)
+                           ), null))
+                   .failure("STALE_HEAD", (call) ->
+                       new ConcurrentModificationException(
+                           format(
+                               "[Purchase Buyer: %s] Weapon: %s is no longer the cheapest listing!",
+                               call.arg(0), call.arg(2))))
+                   .failure("SELF_TRANSACTIONAL", (call) ->
+                       new SelfTransactional("Self transaction is forbidden!", null))
+                   .failure("BUYER_FUNDS_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("[Purchase Buyer: %s] Buyer funds not found!", call.arg(0))))
+                   .failure("BUYER_FUNDS_NOT_ENOUGH", (call) ->
+                       new FundsNotEnough(
+                           format("[Purchase Buyer: %s] Buyer funds not enough!", call.arg(0)),
+                           null))
+                   .build();
+
+    /** cartPurchase.lua：购物车交易，发布买家资金余额与每一件武器的成交结果。*/
+    private static final LuaScript<CartPurchaseResult> CART_PURCHASE
+        = LuaScript.<CartPurchaseResult>builder(MARKET_OPERATOR, "cartPurchase.lua")
+                   .success("SUCCESS", (call) -> {
+                       final List<CartItem> items = new ArrayList<>();
+
+                       for (int index = 1; index < call.result().payloadSize(); ++index)
+                       {
+                           final List<Object> item = call.result().getList(index);
+
+                           items.add(
+                               new CartItem(
+                                   String.valueOf(item.get(0)),
+                                   String.valueOf(item.get(1)),
+                                   String.valueOf(item.get(2)),
+                                   FundsCents.toAmount(((Number) item.get(3)).longValue()),
+                                   FundsCents.toAmount(((Number) item.get(4)).longValue())));
+                       }
+
+                       return
+                       new CartPurchaseResult(
+                           FundsCents.toAmount(call.result().getLong(0)), items);
+                   })
+                   .failure("WEAPON_NOT_FOUND", (call) ->
+                       new ItemNoOnMarket(
+                           format(
+                               "[Cart Buyer: %s] Weapons: %s not exist in market!",
+                               call.arg(0), call.result().getPayload()
+                           ), null))
+                   .failure("CART_CHANGED", (call) ->
+                       new ConcurrentModificationException(
+                           format(
+                               "[Cart Buyer: %s] Weapons in cart changed before purchase!",
+                               call.arg(0))))
+                   .failure("SELF_TRANSACTIONAL", (call) ->
+                       new SelfTransactional("Self transaction is forbidden!", null))
+                   .failure("DUPLICATE_WEAPON", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "[Cart Buyer: %s] Duplicate weapon: %s in cart!",
+                               call.arg(0), call.result().getString(0))))
+                   .failure("INVALID_CART", (call) ->
+                       new IllegalArgumentException(
+                           format("[Cart Buyer: %s] Cart keys and args not match!", call.arg(0))))
+                   .failure("BUYER_FUNDS_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("[Cart Buyer: %s] Buyer funds not found!", call.arg(0))))
+                   .failure("BUYER_FUNDS_NOT_ENOUGH", (call) ->
+                       new FundsNotEnough(
+                           format("[Cart Buyer: %s] Buyer funds not enough!", call.arg(0)),
+                           null))
+                   .build();
+
+    /** listingPage.lua：市场浏览的一页（只读），发布交替出现的 [成员, 价格]。*/
+    private static final LuaScript<List<Object>> LISTING_PAGE
+        = LuaScript.<List<Object>>builder(MARKET_OPERATOR, "listingPage.lua")
+                   .success("SUCCESS", (call) -> call.result().getPayload())
+                   .build();
+
+    /** reserveListing.lua：集群交易第一步，预留武器，发布 [武器名, 成交价]。*/
+    private static final LuaScript<List<String>> RESERVE_LISTING
+        = LuaScript.<List<String>>builder(CLUSTER_OPERATOR, "reserveListing.lua")
+                   .success("SUCCESS", (call) ->
+                       List.of(call.result().getString(0), call.result().getString(1)))
+                   .failure("SELF_TRANSACTIONAL", (call) ->
+                       new SelfTransactional("Self transaction is forbidden!", null))
+                   .failure("WEAPON_NOT_FOUND", (call) ->
+                       new ItemNoOnMarket(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Weapon: %s not exist in market!",
+                               call.arg(1), call.arg(2), call.arg(3)
+                           ), null))
+                   .failure("WEAPON_RESERVED", (call) ->
+                       new ItemNoOnMarket(
+                           format(
+                               "[Transaction Buyer: %s -> Seller: %s] " +
+                               "Weapon: %s reserved by another transaction!",
+                               call.arg(1), call.arg(2), call.arg(3)
+                           ), null))
+                   .build();
+
+    /** releaseListing.lua：集群交易付款失败时，取消武器的预留。*/
+    private static final LuaScript<Void> RELEASE_LISTING
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "releaseListing.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** debitBuyer.lua：集群交易第二步，买家付款，发布买家的资金余额（单位：分）。*/
+    private static final LuaScript<Long> DEBIT_BUYER
+        = LuaScript.<Long>builder(CLUSTER_OPERATOR, "debitBuyer.lua")
+                   .success("SUCCESS", (call) -> call.result().getLong(0))
+                   .failure("BUYER_FUNDS_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format(
+                               "[Transaction %s] Buyer: %s funds not found!",
+                               call.arg(0), call.arg(1))))
+                   .failure("BUYER_FUNDS_NOT_ENOUGH", (call) ->
+                       new FundsNotEnough(
+                           format(
+                               "[Transaction %s] Buyer: %s funds not enough!",
+                               call.arg(0), call.arg(1)
+                           ), null))
+                   .build();
+
+    /** creditSeller.lua：集群交易第三步，卖家收款，发布卖家的资金余额（单位：分）。*/
+    private static final LuaScript<Long> CREDIT_SELLER
+        = LuaScript.<Long>builder(CLUSTER_OPERATOR, "creditSeller.lua")
+                   .success("SUCCESS", (call) -> call.result().getLong(0))
+                   .build();
+
+    /** settleListing.lua：集群交易最后一步，删除已售出的武器。*/
+    private static final LuaScript<Void> SETTLE_LISTING
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "settleListing.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** 集群交易步骤标记的存活时间（秒），覆盖所有重试即可。*/
+    private static final long TRADE_MARKER_TTL_SECONDS = 86400L;
+
+    /** 集群交易中可重试步骤（收款、结算）的重试策略。*/
+    private static final Retry TRADE_STEP_RETRY
+        = Retry.backoff(3L, Duration.ofMillis(100L));
+
+    /** 幂等键的格式（会被拼进 Redis 键中）。*/
+    private static final Pattern IDEMPOTENCY_KEY_PATTERN
+        = Pattern.compile("^[A-Za-z0-9_-]{1,64}$");
+
+    /** 一个购物车最多几件武器。*/
+    private static final int MAX_CART_SIZE = 50;
+
+    /** 脚本执行前读取的数据（价格表表头、购物车中武器的卖家）被其他交易改变后的重试策略。*/
+    private static final Retry STALE_READ_RETRY
+        = Retry.max(5L)
+               .filter((exception) ->
+                   exception instanceof ConcurrentModificationException);
+
+    /** Lua 脚本执行器。*/
     @Autowired
-    private
-    ReactiveRedisTemplate<String, LuaOperatorResult> redisScriptTemplate;
+    private LuaScriptExecutor luaScriptExecutor;
 
-    /** Lua 脚本读取工具。*/
+    /** 通用响应式 Redis 模板（保存幂等交易的结果）。*/
     @Autowired
-    private
-    LuaScriptReader luaScriptReader;
+    private ReactiveRedisTemplate<String, Object> redisTemplate;
 
-    /** 组合 marketTransaction.lua 脚本需要的 KEYS，以列表形式返回。*/
-    private @NotNull @Unmodifiable List<String>
-    getTransactionKeys(String buyerId, String sellerId, String weaponId)
-    {
-        final String sellerUserKey      = getUserKey(sellerId);
-        final String buyerUserKey       = getUserKey(buyerId);
-        final String buyerInventoryKey  = getInventoryKey(buyerId);
-        final String weaponHashKey      = getWeaponHashKey(weaponId);
-        final String weaponZsetKey      = getWeaponPriceZsetKey();
+    /** 字符串序列化 Redis 模板（市场数据都以原始字符串保存）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** 兼容旧编码的市场数据读取器（迁移完成之前武器哈希与价格表成员可能还带着 JSON 引号）。*/
+    @Autowired
+    private PlainValueReader plainValueReader;
+
+    /**
+     * 本节点上正在执行的一笔交易。
+     *
+     * @param buyerId        这笔交易的买家 UUID
+     * @param idempotencyKey 这笔交易的幂等键（可能为 null）
+     * @param outcome        发布这笔交易结果的 Mono
+     */
+    private record InFlightTrade(
+        String buyerId, String idempotencyKey,
+        Mono<Signal<TransactionResult>> outcome) {}
 
+    /** 本节点上正在执行的交易，键为 卖家 UUID:武器 UID。*/
+    private final Map<String, InFlightTrade>
+        inFlightTrades = new ConcurrentHashMap<>();
+
+    /** 已售出武器的本地负缓存。*/
+    @Autowired
+    private SoldListingCache soldListingCache;
+
+    /** 交易结果在幂等键上保存的时间（秒）。*/
+    @Value("${app.market.idempotency-ttl-seconds:600}")
+    private long idempotencyTtlSeconds;
+
+    /** 单机模式下的交易微批处理器（没有启用时不运行）。*/
+    @Autowired
+    private TradeSettlementBatcher tradeSettlementBatcher;
+
+    /** 单机模式下的交易是否只写一条精简交易事件（由 {@link TradeEventExpander} 异步展开成各日志）？*/
+    @Value("${app.market.trade-events.compact:false}")
+    private boolean compactTradeEvents;
+
+    /** 组合一笔交易在 marketTransaction.lua 中的 KEYS（不启用幂等时幂等键为 none）。*/
+    static @NotNull List<String>
+    getTradeKeys(
+        String buyerId, String sellerId, String weaponId, String idempotencyKey)
+    {
         return List.of(
-            sellerUserKey, buyerUserKey,
-            buyerInventoryKey,
-            weaponHashKey, weaponZsetKey
-        );
+            getUserKey(sellerId), getUserKey(buyerId),
+            getInventoryKey(buyerId), getWeaponHashKey(weaponId),
+            getUserLogKey(sellerId), getUserLogKey(buyerId),
+            getInventoryLogKey(buyerId), getSellerIndexKey(sellerId),
+            getTradeIdempotencyKey(
+                buyerId, (idempotencyKey == null) ? "none" : idempotencyKey));
+    }
+
+    /** 组合 marketTransaction.lua 的全部 KEYS：共享的键、每笔交易的键、所有武器类型的价格表。*/
+    static @NotNull List<String>
+    getSettlementKeys(@NotNull List<List<String>> tradeKeys)
+    {
+        final List<String> keys
+            = new ArrayList<>(3 + tradeKeys.size() * KEYS_PER_TRADE);
+
+        keys.add(getWeaponPriceZsetKey());
+        keys.add(getMarketLogKey());
+        keys.add(getTradeLogKey());
+
+        tradeKeys.forEach(keys::addAll);
+
+        // 武器名要在脚本内读出，所以传入所有武器类型的价格表
+        keys.addAll(getAllWeaponTypePriceZsetKeys());
+
+        return keys;
+    }
+
+    /** 组合 marketTransaction.lua 的全部 ARGV：交易笔数、是否精简事件、每笔交易的参数。*/
+    static Object @NotNull []
+    getSettlementArgs(@NotNull List<Object[]> tradeArgs, boolean compactTradeEvents)
+    {
+        final List<Object> args = new ArrayList<>(2 + tradeArgs.size() * 4);
+
+        args.add(tradeArgs.size());
+        args.add((compactTradeEvents) ? 1L : 0L);
+
+        tradeArgs.forEach((trade) -> args.addAll(List.of(trade)));
+
+        return args.toArray();
+    }
+
+    /**
+     * 按 {@link #MARKET_TRANSACTION} 的定义，把 marketTransaction.lua 中一笔交易的原始结果映射成交易结果或异常。
+     *
+     * @param reply 这笔交易的原始结果（如：[SUCCESS, 买家资金, 卖家资金]）
+     * @param keys  这笔交易的 KEYS
+     * @param args  这笔交易的参数（买家 UUID、卖家 UUID、武器 UID、幂等结果的保存时间）
+     */
+    @SuppressWarnings("unchecked")
+    static @NotNull Mono<TransactionResult>
+    toTransactionResult(Object reply, List<String> keys, Object[] args)
+    {
+        final List<Object> elements = (List<Object>) reply;
+        final String status = String.valueOf(elements.getFirst());
+
+        final Function<LuaScript.Call, Mono<TransactionResult>> outcome
+            = MARKET_TRANSACTION.getOutcome(status);
+
+        if (outcome == null)
+        {
+            return Mono.error(
+                new IllegalStateException("Unexpected result of transaction: " + status));
+        }
+
+        final LuaOperatorResult result
+            = new LuaOperatorResult(status, elements.subList(1, elements.size()));
+
+        return outcome.apply(new LuaScript.Call(result, keys, args));
     }
 
     /**
      * 市场交易执行方法实现。
      *
+     * @param buyerId        买家 UUID
+     * @param sellerId       卖家 UUID
+     * @param weaponId       买家想购买的武器 UID
+     * @param idempotencyKey 幂等键（为 null 时不启用幂等）
+     *
+     * @return 发布交易后买卖双方资金余额的 Mono
+     */
+    private @NotNull Mono<TransactionResult>
+    executeTransaction(
+        String buyerId, String sellerId, String weaponId, String idempotencyKey)
+    {
+        if (isClusterLayout())
+        {
+            return this.executeIdempotentClusterTransaction(
+                buyerId, sellerId, weaponId, idempotencyKey
+            );
+        }
+
+        if (this.tradeSettlementBatcher.isRunning())
+        {
+            return this.tradeSettlementBatcher.submit(
+                buyerId, sellerId, weaponId,
+                idempotencyKey, this.idempotencyTtlSeconds
+            );
+        }
+
+        // 单笔交易就是只有一笔的一批
+        final List<String> tradeKeys
+            = getTradeKeys(buyerId, sellerId, weaponId, idempotencyKey);
+
+        final Object[] tradeArgs
+            = { buyerId, sellerId, weaponId, (idempotencyKey == null) ? 0L : this.idempotencyTtlSeconds };
+
+        return
+        this.luaScriptExecutor
+            .execute(
+                SETTLE_TRADES,
+                getSettlementKeys(List.of(tradeKeys)),
+                getSettlementArgs(List.<Object[]>of(tradeArgs), this.compactTradeEvents))
+            .flatMap((replies) ->
+                toTransactionResult(replies.getFirst(), tradeKeys, tradeArgs));
+    }
+
+    /**
+     * 集群模式下带幂等键的市场交易。
+     * 交易跨越多个槽，无法与交易结果一起原子地保存，
+     * 所以只在交易成功后保存结果（同一个幂等键并发的重复请求，至多一个能预留到武器）。
+     */
+    private @NotNull Mono<TransactionResult>
+    executeIdempotentClusterTransaction(
+        String buyerId, String sellerId, String weaponId, String idempotencyKey)
+    {
+        if (idempotencyKey == null) {
+            return this.executeClusterTransaction(buyerId, sellerId, weaponId);
+        }
+
+        final String storeKey = getTradeIdempotencyKey(buyerId, idempotencyKey);
+
+        return
+        this.redisTemplate.opsForValue()
+            .get(storeKey)
+            .map((stored) -> {
+                if (!(stored instanceof Map<?, ?> outcome) ||
+                    !sellerId.equals(outcome.get("seller")) ||
+                    !weaponId.equals(outcome.get("weapon")))
+                {
+                    throw new IllegalArgumentException(
+                        format(
+                            "[Transaction Buyer: %s -> Seller: %s] " +
+                            "Idempotency key already used by another transaction!",
+                            buyerId, sellerId
+                        )
+                    );
+                }
+
+                return
+                new TransactionResult(
+                    FundsCents.toAmount(((Number) outcome.get("buyerFundsCents")).longValue()),
+                    FundsCents.toAmount(((Number) outcome.get("sellerFundsCents")).longValue())
+                );
+            })
+            .switchIfEmpty(
+                Mono.defer(() ->
+                    this.executeClusterTransaction(buyerId, sellerId, weaponId)
+                        .flatMap((result) ->
+                            this.redisTemplate.opsForValue()
+                                .set(
+                                    storeKey,
+                                    Map.of(
+                                        "seller", sellerId, "weapon", weaponId,
+                                        "buyerFundsCents", FundsCents.fromAmount(result.getBuyerFunds()),
+                                        "sellerFundsCents", FundsCents.fromAmount(result.getSellerFunds())),
+                                    Duration.ofSeconds(this.idempotencyTtlSeconds))
+                                .thenReturn(result))));
+    }
+
+    /**
+     * 集群模式下的市场交易，按槽拆分成多个单槽脚本依次执行（见类注释）。
+     *
      * @param buyerId     买家 UUID
      * @param sellerId    卖家 UUID
      * @param weaponId    买家想购买的武器 UID
      *
-     * @return 交易的整体操作是否完成
+     * @return 发布交易后买卖双方资金余额的 Mono
      */
-    private @NotNull Mono<Void>
-    executeTransaction(
+    private @NotNull Mono<TransactionResult>
+    executeClusterTransaction(
         String buyerId, String sellerId, String weaponId)
     {
-        return
-        this.luaScriptReader
-            .fromFile(MARKET_OPERATOR, "marketTransaction.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        this.getTransactionKeys(buyerId, sellerId, weaponId),
-                        buyerId, sellerId, weaponId)
-                    .timeout(Duration.ofSeconds(5L))
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "SELF_TRANSACTIONAL" ->
-                                Mono.error(
-                                    new SelfTransactional(
-                                        "Self transaction is forbidden!",
-                                        null
-                                    )
-                                );
-
-                            case "WEAPON_NOT_FOUND" ->
-                                Mono.error(
-                                    new ItemNoOnMarket(
-                                        format(
-                                            "[Transaction Buyer: %s -> Seller: %s] " +
-                                            "Weapon: %s not exist in market!",
-                                            buyerId, sellerId, weaponId
-                                        ), null
-                                    )
-                                );
-
-                            case "BUYER_FUNDS_NOT_FOUND" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format(
-                                            "[Transaction Buyer: %s -> Seller: %s] " +
-                                            "Buyer funds not found!", buyerId, sellerId
-                                        )
-                                    )
-                                );
-
-                            case "BUYER_FUNDS_NOT_ENOUGH" ->
-                                Mono.error(
-                                  new FundsNotEnough(
-                                      format(
-                                          "[Transaction Buyer: %s -> Seller: %s] " +
-                                          "Buyer funds not enough!",
-                                          buyerId, sellerId
-                                      ), null
-                                  )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                throw new IllegalStateException(
-                                    "Unexpected value: " + result.getResult()
-                                );
-                        })
-            );
+        return Mono.defer(() -> {
+            final String tradeId       = generateAsHex();
+            final String weaponHashKey = getWeaponHashKey(weaponId);
+            final List<String> listingKeys
+                = new ArrayList<>(List.of(weaponHashKey, getWeaponPriceZsetKey()));
+
+            listingKeys.addAll(getAllWeaponTypePriceZsetKeys());
+
+            return
+            this.luaScriptExecutor
+                .execute(
+                    RESERVE_LISTING, listingKeys,
+                    tradeId, buyerId, sellerId, weaponId)
+                .flatMap((reserved) -> {
+                    final String weaponName  = reserved.getFirst();
+                    final long   priceCents  = FundsCents.fromAmount(reserved.get(1));
+
+                    // 买家付款失败时取消预留，把武器放回市场
+                    Mono<Long> debitBuyer
+                        = this.luaScriptExecutor
+                              .execute(
+                                  DEBIT_BUYER,
+                                  List.of(
+                                      getUserKey(buyerId), getInventoryKey(buyerId),
+                                      getUserLogKey(buyerId), getInventoryLogKey(buyerId),
+                                      getTradeStepKey(buyerId, tradeId, "debit")),
+                                  tradeId, buyerId, weaponName,
+                                  priceCents, TRADE_MARKER_TTL_SECONDS)
+                              .onErrorResume((exception) ->
+                                  this.luaScriptExecutor
+                                      .execute(RELEASE_LISTING, listingKeys, tradeId, weaponId)
+                                      .doOnSuccess((ignore) ->
+                                          this.soldListingCache.forget(sellerId, weaponId))
+                                      .then(Mono.error(exception)));
+
+                    // 买家已经付款，之后的步骤只能重试，不能回滚
+                    Mono<Long> creditSeller
+                        = this.luaScriptExecutor
+                              .execute(
+                                  CREDIT_SELLER,
+                                  List.of(
+                                      getUserKey(sellerId), getUserLogKey(sellerId),
+                                      getTradeStepKey(sellerId, tradeId, "credit"),
+                                      getSellerIndexKey(sellerId)),
+                                  tradeId, sellerId, priceCents,
+                                  TRADE_MARKER_TTL_SECONDS, weaponId)
+                              .retryWhen(TRADE_STEP_RETRY);
+
+                    Mono<Void> settleListing
+                        = this.luaScriptExecutor
+                              .execute(
+                                  SETTLE_LISTING,
+                                  List.of(weaponHashKey, getMarketLogKey()),
+                                  tradeId, buyerId, sellerId, weaponId)
+                              .retryWhen(TRADE_STEP_RETRY);
+
+                    return
+                    debitBuyer.flatMap((buyerFunds) ->
+                        creditSeller
+                            .flatMap((sellerFunds) ->
+                                settleListing.thenReturn(
+                                    new TransactionResult(
+                                        FundsCents.toAmount(buyerFunds),
+                                        FundsCents.toAmount(sellerFunds))))
+                            .doOnError((exception) ->
+                                log.error(
+                                    "[Transaction {}] Buyer: {} paid but trade not finished, " +
+                                    "replay creditSeller / settleListing with this trade id!",
+                                    tradeId, buyerId, exception)));
+                });
+        });
     }
 
     /**
@@ -138,11 +661,109 @@ public class MarketServiceImpl implements MarketService
      * @param sellerId    卖家 UUID
      * @param weaponId    买家想购买的武器 UID
      *
-     * @return 交易的整体操作是否完成
+     * @return 发布交易后买卖双方资金余额的 Mono，交易没有发生时不发布任何数据
      */
     @Override
-    public Mono<Void>
-    marketTransaction(@NotNull String buyerId, String sellerId, String weaponId)
+    public Mono<TransactionResult>
+    marketTransaction(@NotNull String buyerId, String sellerId, String weaponId) {
+        return this.marketTransaction(buyerId, sellerId, weaponId, null);
+    }
+
+    /**
+     * 同一件武器的交易在本节点上同时只执行一笔（见类注释）。
+     *
+     * 同一个买家带着同一个幂等键的重试（客户端超时后重发）等到的是那一笔交易本身的结果，而不是 “武器不在市场上”。
+     *
+     * @param sellerId       卖家 UUID
+     * @param weaponId       武器 UID
+     * @param buyerId        买家 UUID
+     * @param idempotencyKey 本次交易的幂等键（可能为 null）
+     * @param trade          执行交易的 Mono 的提供者
+     *
+     * @return 本次交易的结果，等待者在别的交易成交后发布 {@link ItemNoOnMarket}
+     */
+    private @NotNull Mono<TransactionResult>
+    singleFlight(
+        String sellerId, String weaponId,
+        String buyerId, String idempotencyKey,
+        Supplier<Mono<TransactionResult>> trade)
+    {
+        return Mono.defer(() -> {
+            final String flightKey = sellerId + ":" + weaponId;
+
+            final Sinks.One<Signal<TransactionResult>> outcome = Sinks.one();
+            final InFlightTrade shared
+                = new InFlightTrade(buyerId, idempotencyKey, outcome.asMono());
+
+            final InFlightTrade inFlight
+                = this.inFlightTrades.putIfAbsent(flightKey, shared);
+
+            // 已经有一笔交易在执行，等待它的结果
+            if (inFlight != null)
+            {
+                return
+                inFlight.outcome().flatMap((signal) -> {
+                    // 同一个幂等键的重试：那一笔交易就是本次交易
+                    if (idempotencyKey != null &&
+                        idempotencyKey.equals(inFlight.idempotencyKey()) &&
+                        buyerId.equals(inFlight.buyerId()) &&
+                        !signal.isOnComplete())
+                    {
+                        return Mono.just(signal).dematerialize();
+                    }
+
+                    final boolean listingGone
+                        = signal.isOnNext() ||
+                          signal.getThrowable() instanceof ItemNoOnMarket;
+
+                    if (listingGone)
+                    {
+                        return Mono.error(
+                            new ItemNoOnMarket(
+                                format(
+                                    "[Transaction Seller: %s] " +
+                                    "Weapon: %s already sold by another transaction!",
+                                    sellerId, weaponId
+                                ), null));
+                    }
+
+                    // 那一笔交易因为买家自身的原因失败了，武器还在市场上，重新竞争
+                    return this.singleFlight(sellerId, weaponId, buyerId, idempotencyKey, trade);
+                });
+            }
+
+            return
+            trade.get()
+                .materialize()
+                .doOnNext((signal) -> {
+                    this.inFlightTrades.remove(flightKey, shared);
+                    outcome.tryEmitValue(signal);
+                })
+                .doFinally((signalType) -> {
+                    // 交易被取消（超时等）时，让等待者重新竞争
+                    if (this.inFlightTrades.remove(flightKey, shared)) {
+                        outcome.tryEmitValue(Signal.complete());
+                    }
+                })
+                .dematerialize();
+        });
+    }
+
+    /**
+     * 带幂等键的市场交易开放接口。
+     *
+     * @param buyerId        买家 UUID
+     * @param sellerId       卖家 UUID
+     * @param weaponId       买家想购买的武器 UID
+     * @param idempotencyKey 幂等键（为 null 时不启用幂等）
+     *
+     * @return 发布交易后买卖双方资金余额的 Mono，交易没有发生时不发布任何数据
+     */
+    @Override
+    public Mono<TransactionResult>
+    marketTransaction(
+        @NotNull String buyerId, String sellerId,
+        String weaponId, String idempotencyKey)
     {
         // 在脚本外检测是否左手倒右手
         if (buyerId.equals(sellerId))
@@ -154,7 +775,189 @@ public class MarketServiceImpl implements MarketService
             );
         }
 
-        return this.executeTransaction(buyerId, sellerId, weaponId)
+        if (idempotencyKey != null &&
+            !IDEMPOTENCY_KEY_PATTERN.matcher(idempotencyKey).matches())
+        {
+            return Mono.error(
+                new IllegalArgumentException(
+                    format("Invalid idempotency key: %s!", idempotencyKey)
+                )
+            );
+        }
+
+        // 本节点确认已经售出的武器，不再访问 Redis
+        if (this.soldListingCache.rejects(sellerId, weaponId, idempotencyKey))
+        {
+            log.info(
+                "[Transaction Buyer: {} -> Seller: {}] Weapon: {} already sold!",
+                buyerId, sellerId, weaponId
+            );
+
+            return Mono.empty();
+        }
+
+        return
+        this.singleFlight(
+                sellerId, weaponId, buyerId, idempotencyKey,
+                () -> this.executeTransaction(buyerId, sellerId, weaponId, idempotencyKey))
+            .doOnNext((result) ->
+                this.soldListingCache.markSold(sellerId, weaponId, idempotencyKey))
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) -> {
+                switch (exception)
+                {
+                    case FundsNotEnough fundsNotEnough ->
+                    {
+                        log.info("{}", fundsNotEnough.getMessage());
+                        return Mono.empty();
+                    }
+
+                    case ItemNoOnMarket itemNoOnMarket ->
+                    {
+                        log.info("{}", itemNoOnMarket.getMessage());
+                        return Mono.empty();
+                    }
+
+                    default -> {
+                        return redisGenericErrorHandel(
+                            exception, null
+                        );
+                    }
+                }
+            });
+    }
+
+    /**
+     * 某一类武器价格表的表头（由调用方先读出）。
+     *
+     * @param weaponId 武器 UID
+     * @param sellerId 卖家 UUID
+     * @param price    价格
+     */
+    private record CheapestListing(String weaponId, String sellerId, double price) {}
+
+    /**
+     * 单机模式下 buyCheapestWeapon.lua 完成的一次购买。
+     *
+     * @param sellerId 卖家 UUID（更新已售出武器的本地缓存时用）
+     * @param result   买到的武器、成交价与买卖双方资金余额
+     */
+    private record SettledPurchase(String sellerId, PurchaseResult result) {}
+
+    /**
+     * 读取某一类武器价格表的表头（价格不超过 maxPrice），
+     * 价格表为空时发布 {@link ItemNoOnMarket}，武器在读取期间被买走时发布 {@link ConcurrentModificationException}。
+     */
+    private @NotNull Mono<CheapestListing>
+    peekCheapestListing(String buyerId, @NotNull Weapons weapon, double maxPrice)
+    {
+        return
+        this.stringRedisTemplate.opsForZSet()
+            .rangeByScoreWithScores(
+                getWeaponTypePriceZsetKey(weapon.getItemName()),
+                Range.closed(0.0, maxPrice), Limit.limit().count(1))
+            .next()
+            .switchIfEmpty(
+                Mono.error(
+                    new ItemNoOnMarket(
+                        format(
+                            "[Purchase Buyer: %s] No %s under price: %s in market!",
+                            buyerId, weapon.getItemName(), maxPrice
+                        ), null)))
+            .flatMap((ZSetOperations.TypedTuple<String> head) -> {
+                final String weaponId = this.plainValueReader.member(head.getValue());
+
+                return
+                this.plainValueReader
+                    .get(getWeaponHashKey(weaponId), "seller")
+                    .switchIfEmpty(
+                        Mono.error(
+                            new ConcurrentModificationException(
+                                format(
+                                    "[Purchase Buyer: %s] Weapon: %s left market before purchase!",
+                                    buyerId, weaponId))))
+                    .map((seller) ->
+                        new CheapestListing(
+                            weaponId, seller,
+                            (head.getScore() == null) ? 0.0 : head.getScore()));
+            });
+    }
+
+    /**
+     * 集群模式下按表头执行一次购买：先读出表头，再走按槽拆分的交易流程。
+     * 读出表头与预留武器之间，武器可能已经被其他买家买走或预留，此时发布
+     * {@link ConcurrentModificationException}，由调用方重新读取表头后重试。
+     */
+    private @NotNull Mono<PurchaseResult>
+    executeClusterPurchase(String buyerId, @NotNull Weapons weapon, double maxPrice)
+    {
+        return
+        this.peekCheapestListing(buyerId, weapon, maxPrice)
+            .flatMap((listing) ->
+                this.executeClusterTransaction(buyerId, listing.sellerId(), listing.weaponId())
+                    .map((result) ->
+                        new PurchaseResult(
+                            listing.weaponId(),
+                            FundsCents.toAmount(
+                                FundsCents.fromAmount(BigDecimal.valueOf(listing.price()))),
+                            result.getBuyerFunds(), result.getSellerFunds()))
+                    .onErrorMap(ItemNoOnMarket.class, (exception) ->
+                        new ConcurrentModificationException(exception.getMessage())));
+    }
+
+    /**
+     * 单机模式下的一次购买：先读出表头，再由 buyCheapestWeapon.lua 确认表头没有变化并完成交易，
+     * 脚本访问的键（包括表头武器与卖家的键）全部在 KEYS 中声明。
+     * 读出表头之后武器被其他买家买走时发布 {@link ConcurrentModificationException}，由调用方重新读取表头后重试。
+     */
+    private @NotNull Mono<PurchaseResult>
+    executeStandalonePurchase(String buyerId, @NotNull Weapons weapon, double maxPrice)
+    {
+        return
+        this.peekCheapestListing(buyerId, weapon, maxPrice)
+            .flatMap((listing) ->
+                // 单机模式下所有用户共用一个用户日志流，卖家的日志键与买家的相同
+                this.luaScriptExecutor
+                    .execute(
+                        BUY_CHEAPEST_WEAPON,
+                        List.of(
+                            getWeaponTypePriceZsetKey(weapon.getItemName()), getWeaponPriceZsetKey(),
+                            getUserKey(buyerId), getInventoryKey(buyerId),
+                            getMarketLogKey(), getUserLogKey(buyerId),
+                            getUserLogKey(buyerId), getInventoryLogKey(buyerId),
+                            getWeaponHashKey(listing.weaponId()),
+                            getUserKey(listing.sellerId()),
+                            getSellerIndexKey(listing.sellerId())),
+                        buyerId, maxPrice, listing.weaponId(), listing.sellerId()))
+            .doOnNext((purchase) ->
+                this.soldListingCache.markSold(
+                    purchase.sellerId(), purchase.result().getWeaponId(), null))
+            .map(SettledPurchase::result);
+    }
+
+    /**
+     * 购买某一类武器中价格最低的一件。
+     *
+     * @param buyerId  买家 UUID
+     * @param weapon   武器类型
+     * @param maxPrice 买家能接受的最高价格
+     *
+     * @return 发布买到的武器、成交价与买卖双方资金余额的 Mono，交易没有发生时不发布任何数据
+     */
+    @Override
+    public Mono<PurchaseResult>
+    buyCheapestWeapon(String buyerId, @NotNull Weapons weapon, double maxPrice)
+    {
+        // 两种模式都是先读表头、再交易，表头在这期间变化时重新读取后重试
+        final Mono<PurchaseResult> purchase
+            = Mono.defer(() ->
+                  (isClusterLayout())
+                      ? this.executeClusterPurchase(buyerId, weapon, maxPrice)
+                      : this.executeStandalonePurchase(buyerId, weapon, maxPrice))
+              .retryWhen(STALE_READ_RETRY);
+
+        return
+        purchase
             .timeout(Duration.ofSeconds(5L))
             .onErrorResume((exception) -> {
                 switch (exception)
@@ -179,4 +982,393 @@ public class MarketServiceImpl implements MarketService
                 }
             });
     }
+
+    /**
+     * 按价格升序分页浏览市场上的武器，分为以下几个操作：
+     *
+     * <ol>
+     *     <li>执行 listingPage.lua，读取游标之后的 pageSize + 1 件武器（多读的一件用于判断是否还有下一页）</li>
+     *     <li>以流水线的方式批量 HMGET 本页武器的详情（读取期间被买走的武器会被跳过）</li>
+     *     <li>只在第一页 ZCOUNT 价格区间内的武器总数，之后的页从游标中取出</li>
+     * </ol>
+     *
+     * @param weapon   武器类型（为 null 时浏览所有武器）
+     * @param minPrice 最低价格（包含）
+     * @param maxPrice 最高价格（包含）
+     * @param cursor   分页游标（第一页用 {@link ListingCursor#first(double)}）
+     * @param pageSize 一页几件武器
+     *
+     * @return 发布一页结果的 Mono
+     */
+    @Override
+    public Mono<ListingPage>
+    getListings(
+        Weapons weapon, double minPrice, double maxPrice,
+        @NotNull ListingCursor cursor, int pageSize)
+    {
+        final String priceKey
+            = (weapon == null)
+                ? getWeaponPriceZsetKey()
+                : getWeaponTypePriceZsetKey(weapon.getItemName());
+
+        // 游标在最低价格之下（翻页时调高了最低价格），从最低价格重新开始
+        final ListingCursor from
+            = (cursor.getScore() < minPrice) ? ListingCursor.first(minPrice) : cursor;
+
+        final Mono<List<Object>> page
+            = this.luaScriptExecutor
+                  .execute(
+                      LISTING_PAGE, List.of(priceKey),
+                      minPrice, maxPrice, from.getScore(),
+                      (from.isFirst()) ? "" : from.getMember(),
+                      pageSize + 1);
+
+        final Mono<Long> totalItems
+            = (from.getTotalItems() == ListingCursor.UNKNOWN_TOTAL)
+                ? this.stringRedisTemplate.opsForZSet()
+                      .count(priceKey, Range.closed(minPrice, maxPrice))
+                : Mono.just(from.getTotalItems());
+
+        return
+        Mono.zip(page, totalItems)
+            .flatMap((result) -> {
+                // 成员与价格交替出现
+                final List<Object> entries = result.getT1();
+                final int size = Math.min(entries.size() / 2, pageSize);
+
+                final String nextCursor
+                    = (entries.size() / 2 > pageSize)
+                        ? from.next(
+                              result.getT2(),
+                              Double.parseDouble(String.valueOf(entries.get(size * 2 - 1))),
+                              String.valueOf(entries.get(size * 2 - 2))).encode()
+                        : null;
+
+                return
+                Flux.range(0, size)
+                    .flatMapSequential((index) -> {
+                        final String weaponId
+                            = this.plainValueReader.member(String.valueOf(entries.get(index * 2)));
+
+                        final double price
+                            = Double.parseDouble(String.valueOf(entries.get(index * 2 + 1)));
+
+                        return
+                        this.plainValueReader
+                            .multiGet(
+                                getWeaponHashKey(weaponId),
+                                List.of("weapon-name", "seller"))
+                            .filter((fields) -> fields.getFirst() != null)
+                            .map((fields) ->
+                                new MarketListing(
+                                    weaponId, fields.getFirst(), fields.get(1), price));
+                    }, Math.max(size, 1))
+                    .collectList()
+                    .map((listings) ->
+                        new ListingPage(
+                            listings, from.getPageNo(),
+                            result.getT2(), nextCursor));
+            })
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) ->
+                redisGenericErrorHandel(exception, null));
+    }
+
+    /**
+     * 读出购物车中每一件武器的武器名与卖家（以流水线的方式批量 HMGET），
+     * 有武器不在市场上时发布 {@link ItemNoOnMarket}。
+     *
+     * @return 发布 [武器 UID, 武器名, 卖家 UUID] 列表的 Mono
+     */
+    private @NotNull Mono<List<List<String>>>
+    resolveCartListings(String buyerId, @NotNull List<String> weaponIds)
+    {
+        return
+        Flux.fromIterable(weaponIds)
+            .flatMapSequential((weaponId) ->
+                this.plainValueReader
+                    .multiGet(
+                        getWeaponHashKey(weaponId),
+                        List.of("weapon-name", "seller"))
+                    .map((fields) ->
+                        (fields.getFirst() == null || fields.get(1) == null)
+                            ? List.of(weaponId)
+                            : List.of(weaponId, fields.getFirst(), fields.get(1))),
+                weaponIds.size())
+            .collectList()
+            .flatMap((listings) -> {
+                final List<String> notFound
+                    = listings.stream()
+                              .filter((listing) -> listing.size() == 1)
+                              .map(List::getFirst)
+                              .toList();
+
+                if (!notFound.isEmpty())
+                {
+                    return Mono.error(
+                        new ItemNoOnMarket(
+                            format(
+                                "[Cart Buyer: %s] Weapons: %s not exist in market!",
+                                buyerId, notFound
+                            ), null));
+                }
+
+                return Mono.just(listings);
+            });
+    }
+
+    /**
+     * 购物车交易，分为以下几个操作：
+     *
+     * <ol>
+     *     <li>批量读出每一件武器的武器名与卖家，组合脚本需要的 KEYS</li>
+     *     <li>
+     *         执行 cartPurchase.lua，在脚本内校验所有武器与买家资金后一次性完成交易，
+     *         若卖家在脚本执行前发生了变化，重新读取后重试
+     *     </li>
+     * </ol>
+     *
+     * 集群模式下卖家分属不同的槽，无法在一个脚本内完成，直接以 UnsupportedOperationException 失败。
+     *
+     * @param buyerId   买家 UUID
+     * @param weaponIds 买家想购买的所有武器 UID（不可重复）
+     *
+     * @return 发布买家资金余额与每一件武器成交结果的 Mono
+     */
+    @Override
+    public Mono<CartPurchaseResult>
+    cartPurchase(String buyerId, @NotNull List<String> weaponIds)
+    {
+        if (isClusterLayout())
+        {
+            return Mono.error(
+                new UnsupportedOperationException(
+                    "Cart purchase is not supported in cluster mode!"
+                )
+            );
+        }
+
+        if (weaponIds.isEmpty() || weaponIds.size() > MAX_CART_SIZE)
+        {
+            return Mono.error(
+                new IllegalArgumentException(
+                    format("Cart size must between 1 and %d!", MAX_CART_SIZE)
+                )
+            );
+        }
+
+        if (new HashSet<>(weaponIds).size() != weaponIds.size())
+        {
+            return Mono.error(
+                new IllegalArgumentException(
+                    format("Duplicate weapons in cart: %s!", weaponIds)
+                )
+            );
+        }
+
+        return
+        Mono.defer(() -> this.resolveCartListings(buyerId, weaponIds))
+            .flatMap((listings) -> {
+                final List<String> keys
+                    = new ArrayList<>(List.of(
+                        getUserKey(buyerId), getInventoryKey(buyerId),
+                        getWeaponPriceZsetKey(), getMarketLogKey(),
+                        getUserLogKey(buyerId), getInventoryLogKey(buyerId)));
+
+                final List<Object> args = new ArrayList<>();
+                args.add(buyerId);
+
+                for (List<String> listing : listings)
+                {
+                    final String weaponId   = listing.get(0);
+                    final String weaponName = listing.get(1);
+                    final String sellerId   = listing.get(2);
+
+                    keys.addAll(
+                        List.of(
+                            getWeaponHashKey(weaponId), getUserKey(sellerId),
+                            getSellerIndexKey(sellerId), getUserLogKey(sellerId),
+                            getWeaponTypePriceZsetKey(weaponName)));
+
+                    args.add(weaponId);
+                    args.add(sellerId);
+                }
+
+                return
+                this.luaScriptExecutor
+                    .execute(CART_PURCHASE, keys, args.toArray())
+                    .doOnNext((result) ->
+                        result.getItems().forEach((item) ->
+                            this.soldListingCache.markSold(
+                                item.getSeller(), item.getWeaponId(), null)));
+            })
+            .retryWhen(STALE_READ_RETRY)
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) ->
+                redisGenericErrorHandel(exception, null));
+    }
+
+    /** 读取统计哈希中的一个整数字段，不存在时返回 0。*/
+    private static long
+    statsField(@NotNull Map<String, String> stats, String field) {
+        return Long.parseLong(stats.getOrDefault(field, "0"));
+    }
+
+    /**
+     * 读取某一类武器的市场统计，分为以下几个操作：
+     *
+     * <ol>
+     *     <li>HGETALL 该类武器的统计哈希（地板价、在售数量、累计的上架、下架、成交）</li>
+     *     <li>HGETALL 该类武器按小时分桶的成交哈希，合计近 24 小时的成交次数与成交额</li>
+     * </ol>
+     *
+     * @param weapon 武器类型
+     *
+     * @return 发布该类武器市场统计的 Mono
+     */
+    @Override
+    public Mono<WeaponStats>
+    getWeaponStats(@NotNull Weapons weapon)
+    {
+        final String weaponName = weapon.getItemName();
+
+        Mono<Map<String, String>> stats
+            = this.stringRedisTemplate.<String, String>opsForHash()
+                  .entries(getWeaponStatsKey(weaponName))
+                  .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        Mono<Map<String, String>> volume
+            = this.stringRedisTemplate.<String, String>opsForHash()
+                  .entries(getWeaponVolumeKey(weaponName))
+                  .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        return
+        Mono.zip(stats, volume)
+            .map((result) -> {
+                final Map<String, String> fields = result.getT1();
+
+                final long soldTotal      = statsField(fields, "sold-total");
+                final long soldCentsTotal = statsField(fields, "sold-cents-total");
+
+                // 只合计近 24 个小时桶（含当前小时），过期的桶由累加脚本清理
+                final long currentHour
+                    = Instant.now().getEpochSecond() / 3600L;
+
+                long volume24h   = 0L;
+                long turnover24h = 0L;
+
+                for (Map.Entry<String, String> bucket : result.getT2().entrySet())
+                {
+                    final String[] parts = bucket.getKey().split(":");
+                    final long hour      = Long.parseLong(parts[0]);
+
+                    if (hour <= currentHour - 24L) {
+                        continue;
+                    }
+
+                    if ("count".equals(parts[1])) {
+                        volume24h += Long.parseLong(bucket.getValue());
+                    }
+                    else {
+                        turnover24h += Long.parseLong(bucket.getValue());
+                    }
+                }
+
+                return
+                new WeaponStats(
+                    weaponName,
+                    fields.containsKey("floor-cents")
+                        ? FundsCents.toAmount(statsField(fields, "floor-cents"))
+                        : null,
+                    statsField(fields, "active-listings"),
+                    statsField(fields, "listed-total"),
+                    statsField(fields, "withdrawn-total"),
+                    soldTotal,
+                    (soldTotal == 0L)
+                        ? null
+                        : BigDecimal.valueOf(soldCentsTotal)
+                                    .divide(BigDecimal.valueOf(soldTotal * 100L), 2, RoundingMode.HALF_UP),
+                    fields.containsKey("last-sale-cents")
+                        ? FundsCents.toAmount(statsField(fields, "last-sale-cents"))
+                        : null,
+                    volume24h,
+                    FundsCents.toAmount(turnover24h),
+                    fields.get("last-event-id")
+                );
+            })
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) ->
+                redisGenericErrorHandel(exception, null));
+    }
+
+    /**
+     * 读取某一类武器的价格历史，分为以下几个操作：
+     *
+     * <ol>
+     *     <li>在该粒度的索引（有序集合）上 ZRANGEBYSCORE 出范围内所有桶的起始时间</li>
+     *     <li>HMGET 这些桶的 K 线（"开,高,低,收,成交次数,开盘事件 ID,收盘事件 ID"，价格单位：分）</li>
+     * </ol>
+     *
+     * 价格历史由市场统计消费组在成交时累加，这里不会扫描市场日志流。
+     *
+     * @param weapon     武器类型
+     * @param resolution 时间粒度
+     * @param from       起始时间（秒，包含）
+     * @param to         结束时间（秒，包含）
+     *
+     * @return 发布范围内所有有成交的桶（按时间升序）的 Mono
+     */
+    @Override
+    public Mono<List<PriceCandle>>
+    getPriceHistory(
+        @NotNull Weapons weapon, @NotNull PriceResolution resolution,
+        long from, long to)
+    {
+        final String weaponName = weapon.getItemName();
+        final String historyKey
+            = getPriceHistoryKey(weaponName, resolution.getSuffix());
+
+        return
+        this.stringRedisTemplate.opsForZSet()
+            .rangeByScore(
+                getPriceHistoryIndexKey(weaponName, resolution.getSuffix()),
+                Range.closed((double) resolution.bucketStart(from), (double) to))
+            .collectList()
+            .flatMap((bucketStarts) -> {
+                if (bucketStarts.isEmpty()) {
+                    return Mono.just(List.<PriceCandle>of());
+                }
+
+                return
+                this.stringRedisTemplate.<String, String>opsForHash()
+                    .multiGet(historyKey, bucketStarts)
+                    .map((candles) -> {
+                        final List<PriceCandle> result = new ArrayList<>();
+
+                        for (int index = 0; index < bucketStarts.size(); ++index)
+                        {
+                            // 索引与哈希之间的桶可能刚被过期清理
+                            if (candles.get(index) == null) {
+                                continue;
+                            }
+
+                            final String[] parts = candles.get(index).split(",");
+
+                            result.add(
+                                new PriceCandle(
+                                    Long.parseLong(bucketStarts.get(index)),
+                                    FundsCents.toAmount(Long.parseLong(parts[0])),
+                                    FundsCents.toAmount(Long.parseLong(parts[1])),
+                                    FundsCents.toAmount(Long.parseLong(parts[2])),
+                                    FundsCents.toAmount(Long.parseLong(parts[3])),
+                                    Long.parseLong(parts[4])));
+                        }
+
+                        return result;
+                    });
+            })
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) ->
+                redisGenericErrorHandel(exception, null));
+    }
 }
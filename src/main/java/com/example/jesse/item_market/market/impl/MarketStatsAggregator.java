@@ -0,0 +1,362 @@
+package com.example.jesse.item_market.market.impl;
+
+import com.example.jesse.item_market.market.utils.PriceResolution;
+import com.example.jesse.item_market.user.Weapons;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.StreamGroupReader.readGroup;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.MARKET_OPERATOR;
+
+/**
+ * <p>市场统计的消费组读取器。</p>
+ *
+ * <p>
+ *     以消费组（market-stats）读取市场日志流，把 WEAPON_LISTING、WEAPON_OUTBOUND、WEAPON_DELETE、WEAPON_SOLD
+ *     事件逐条交给 foldMarketStats.lua 累加进各类武器的统计哈希与各粒度的价格历史（K 线），累加成功后再 XACK。
+ *     读取统计时只需读两个小哈希（见 {@link MarketServiceImpl#getWeaponStats(Weapons)}），
+ *     读取价格历史时只读时间范围内的桶（见 {@link MarketServiceImpl#getPriceHistory}），
+ *     与市场上武器的数量、日志流的长度都无关。
+ * </p>
+ *
+ * <p>
+ *     启动时先把空闲过久的其他消费者的待确认事件认领过来，再处理本消费者所有待确认的事件，
+ *     之后才读取新事件，所以统计总是从上次确认的位置继续累加。
+ *     累加之后、确认之前崩溃导致的重复投递由脚本中的已累加事件集合去重。
+ *     消费组在第一次启动时从流的末尾开始读取，之前的历史事件（没有成交价）不计入统计。
+ * </p>
+ */
+@Slf4j
+@Component
+public class MarketStatsAggregator implements SmartLifecycle
+{
+    /** foldMarketStats.lua：累加一条市场日志事件，发布本次是否累加了这条事件。*/
+    private static final LuaScript<Boolean> FOLD_MARKET_STATS
+        = LuaScript.<Boolean>builder(MARKET_OPERATOR, "foldMarketStats.lua")
+                   .success("SUCCESS", (call) -> true)
+                   .success("DUPLICATE", (call) -> false)
+                   .success("SKIPPED", (call) -> false)
+                   .build();
+
+    /** 市场统计消费组名。*/
+    public static final String STATS_GROUP = "market-stats";
+
+    /** 需要累加的事件类型。*/
+    private static final Set<String> FOLDED_EVENTS
+        = Set.of("WEAPON_LISTING", "WEAPON_OUTBOUND", "WEAPON_DELETE", "WEAPON_SOLD");
+
+    /** 所有武器类型的名字。*/
+    private static final Set<String> WEAPON_NAMES
+        = Arrays.stream(Weapons.values())
+                .map(Weapons::getItemName)
+                .collect(Collectors.toUnmodifiableSet());
+
+    /** 一次最多读取几条事件。*/
+    private static final int BATCH_SIZE = 100;
+
+    /** 没有新事件（或者读取出错）时等待多久再读。*/
+    private static final Duration IDLE_WAIT = Duration.ofSeconds(1L);
+
+    /** 其他消费者的待确认事件空闲多久之后认领过来。*/
+    private static final Duration CLAIM_MIN_IDLE = Duration.ofMinutes(1L);
+
+    /** 已累加事件的保留时间（秒），超过这个时间重新投递的事件无法去重。*/
+    private static final long DEDUPE_SECONDS = 86400L;
+
+    /** 是否启用市场统计？*/
+    @Value("${app.market.stats.enabled:false}")
+    private boolean enabled;
+
+    /** 本节点在消费组中的消费者名（重启后保持不变才能继续处理自己的待确认事件）。*/
+    @Value("${app.market.stats.consumer-name:${HOSTNAME:market-stats}}")
+    private String consumerName;
+
+    /** 字符串序列化 Redis 模板（市场日志流的字段都是原始字符串）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 有事件处理失败、留在了待确认列表中，下一轮先从头处理本消费者所有待确认的事件。*/
+    private final AtomicBoolean retryPending
+        = new AtomicBoolean(false);
+
+    /** 正在执行的读取任务。*/
+    private volatile Disposable aggregation;
+
+    /** 启动读取任务（没有启用市场统计时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && RUNNING.compareAndSet(false, true))
+        {
+            log.info("[SmartLifecycle] Market stats aggregator started, consumer: {}.", this.consumerName);
+
+            this.aggregation
+                = this.aggregate()
+                      .subscribe(
+                          null,
+                          (exception) ->
+                              log.error("Market stats aggregator stopped by error!", exception)
+                      );
+        }
+    }
+
+    /** 停止读取任务，没有确认的事件留在待确认列表中，下次启动时继续处理。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] Market stats aggregator stopped.");
+
+            if (this.aggregation != null) {
+                this.aggregation.dispose();
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其最后被创建，最先被执行。*/
+    @Override
+    public int getPhase() { return Integer.MAX_VALUE; }
+
+    /** 创建消费组（流不存在时一并创建），消费组已经存在时什么都不做。*/
+    private @NotNull Mono<Void> createGroup()
+    {
+        final ByteBuffer streamKey
+            = ByteBuffer.wrap(getMarketLogKey().getBytes(StandardCharsets.UTF_8));
+
+        return
+        this.stringRedisTemplate
+            .execute((connection) ->
+                connection.streamCommands()
+                          .xGroupCreate(streamKey, STATS_GROUP, ReadOffset.latest(), true))
+            .then()
+            .onErrorResume(
+                (exception) ->
+                    exception.getMessage() != null &&
+                    exception.getMessage().contains("BUSYGROUP"),
+                (exception) -> Mono.empty()
+            );
+    }
+
+    /** 把其他消费者空闲过久的待确认事件认领到本消费者名下。*/
+    private @NotNull Mono<Void> claimIdlePending()
+    {
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForStream()
+            .pending(getMarketLogKey(), STATS_GROUP, Range.unbounded(), BATCH_SIZE)
+            .flatMap((pending) -> {
+                final RecordId[] idleIds
+                    = pending.stream()
+                             .filter((message) ->
+                                 !this.consumerName.equals(message.getConsumerName()) &&
+                                 message.getElapsedTimeSinceLastDelivery().compareTo(CLAIM_MIN_IDLE) >= 0)
+                             .map(PendingMessage::getId)
+                             .toArray(RecordId[]::new);
+
+                if (idleIds.length == 0) {
+                    return Mono.empty();
+                }
+
+                return
+                this.stringRedisTemplate
+                    .<String, String>opsForStream()
+                    .claim(getMarketLogKey(), STATS_GROUP, this.consumerName, CLAIM_MIN_IDLE, idleIds)
+                    .count()
+                    .doOnNext((count) ->
+                        log.info("Claimed {} idle market events for consumer: {}.", count, this.consumerName))
+                    .then();
+            });
+    }
+
+    /** 以本消费者的身份从某个位置读取一批事件。*/
+    private @NotNull Mono<List<MapRecord<String, String, String>>>
+    readBatch(ReadOffset offset)
+    {
+        return
+        readGroup(
+            this.stringRedisTemplate,
+            Consumer.from(STATS_GROUP, this.consumerName), BATCH_SIZE,
+            StreamOffset.create(getMarketLogKey(), offset))
+        .collectList();
+    }
+
+    /** 执行 foldMarketStats.lua 累加一条事件（价格历史的键与参数按 {@link PriceResolution} 的声明顺序追加）。*/
+    private @NotNull Mono<Boolean>
+    executeFold(
+        String eventId, String event, String weaponName,
+        @NotNull Map<String, String> fields)
+    {
+        final List<String> keys
+            = new ArrayList<>(List.of(
+                getWeaponStatsKey(weaponName), getWeaponVolumeKey(weaponName),
+                getWeaponTypePriceZsetKey(weaponName), getMarketStatsAppliedKey()));
+
+        final List<Object> args
+            = new ArrayList<>(List.of(
+                eventId, event,
+                fields.getOrDefault("priceCents", ""),
+                fields.getOrDefault("timestamp", ""),
+                DEDUPE_SECONDS));
+
+        for (PriceResolution resolution : PriceResolution.values())
+        {
+            keys.add(getPriceHistoryKey(weaponName, resolution.getSuffix()));
+            keys.add(getPriceHistoryIndexKey(weaponName, resolution.getSuffix()));
+
+            args.add(resolution.getSeconds());
+            args.add(resolution.getRetentionSeconds());
+        }
+
+        return
+        this.luaScriptExecutor
+            .execute(FOLD_MARKET_STATS, keys, args.toArray());
+    }
+
+    /**
+     * 累加一条事件并确认，不需要累加的事件直接确认。
+     * 累加失败时不确认，事件留在待确认列表中，下一轮重新处理。
+     */
+    private @NotNull Mono<Void>
+    fold(@NotNull MapRecord<String, String, String> record)
+    {
+        final Map<String, String> fields = record.getValue();
+        final String event      = fields.get("event");
+        final String weaponName = fields.get("weaponName");
+
+        final Mono<Boolean> folded
+            = (FOLDED_EVENTS.contains(event) && WEAPON_NAMES.contains(weaponName))
+                ? Mono.defer(() -> this.executeFold(record.getId().getValue(), event, weaponName, fields))
+                : Mono.just(false);
+
+        return
+        folded.then(
+                this.stringRedisTemplate
+                    .<String, String>opsForStream()
+                    .acknowledge(STATS_GROUP, record))
+            .then()
+            .onErrorResume((exception) -> {
+                log.warn("Fold market event: {} failed!", record.getId(), exception);
+                this.retryPending.set(true);
+                return Mono.empty();
+            });
+    }
+
+    /** 按顺序累加一批事件。*/
+    private @NotNull Mono<Void>
+    foldAll(@NotNull List<MapRecord<String, String, String>> records)
+    {
+        return
+        Flux.fromIterable(records)
+            .concatMap(this::fold)
+            .then();
+    }
+
+    /** 处理本消费者所有待确认的事件（从 afterId 之后开始，逐批向后推进）。*/
+    private @NotNull Mono<Void> drainPending(String afterId)
+    {
+        return
+        this.readBatch(ReadOffset.from(afterId))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.empty()
+                    : this.foldAll(records)
+                          .then(
+                              Mono.defer(() ->
+                                  this.drainPending(records.getLast().getId().getValue()))));
+    }
+
+    /** 读取并累加一批新事件（上一轮有事件累加失败时先重新处理待确认的事件），没有新事件时等待一小段时间。*/
+    private @NotNull Mono<Void> pollNewEvents()
+    {
+        final Mono<Void> pending
+            = Mono.defer(() ->
+                (this.retryPending.getAndSet(false))
+                    ? this.drainPending("0")
+                    : Mono.empty());
+
+        return
+        pending
+            .then(this.readBatch(ReadOffset.lastConsumed()))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.delay(IDLE_WAIT).then()
+                    : this.foldAll(records))
+            .onErrorResume((exception) -> {
+                log.warn("Read market log failed, retry in {} seconds.", IDLE_WAIT.getSeconds(), exception);
+
+                // 读到的一批可能只处理了一部分，下一轮先重新处理待确认的事件
+                this.retryPending.set(true);
+
+                // 流或者消费组可能被删除了，重新创建后继续读取
+                return
+                Mono.delay(IDLE_WAIT)
+                    .then(this.createGroup())
+                    .onErrorResume((ignore) -> Mono.empty());
+            });
+    }
+
+    /**
+     * 市场统计的读取任务：
+     *
+     * <ol>
+     *     <li>创建消费组</li>
+     *     <li>认领其他消费者空闲过久的待确认事件</li>
+     *     <li>处理本消费者所有待确认的事件</li>
+     *     <li>不断读取并累加新事件，直到本 Bean 停止</li>
+     * </ol>
+     */
+    public @NotNull Mono<Void> aggregate()
+    {
+        return
+        this.createGroup()
+            .then(this.claimIdlePending())
+            .then(this.drainPending("0"))
+            .then(
+                this.pollNewEvents()
+                    .repeat(RUNNING::get)
+                    .then());
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.jesse.item_market.market.impl;
+
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.MARKET_OPERATOR;
+import static com.example.jesse.item_market.utils.StreamGroupReader.readGroup;
+
+/**
+ * <p>精简交易事件的展开器。</p>
+ *
+ * <p>
+ *     开启精简交易事件后，marketTransaction.lua 每笔交易只向精简交易事件流（market:trade-log）
+ *     写一条带 ID 与金额的事件。本类以消费组（trade-expander）读取这个流，
+ *     把每条事件交给 expandTradeEvent.lua 展开成原来由交易脚本直接写入的四条日志
+ *     （market:log 的 WEAPON_SOLD、卖家与买家的资金日志、买家的包裹日志）。
+ *     展开后的 WEAPON_SOLD 照常由市场统计消费组累加（见 {@link MarketStatsAggregator}）。
+ * </p>
+ *
+ * <p>
+ *     展开与 XACK 在同一个脚本内原子地完成，已经确认的事件不会再展开，
+ *     所以崩溃后重新投递的事件不会产生重复的日志；展开后的事件随即从精简交易事件流中删除。
+ *     启动时先认领其他消费者空闲过久的待确认事件，再处理本消费者的待确认事件，之后才读取新事件。
+ *     消费组第一次创建时从流的开头读取，开启展开器之前写入的事件也会被展开。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TradeEventExpander implements SmartLifecycle
+{
+    /** expandTradeEvent.lua：展开一条精简交易事件，发布本次是否展开了这条事件。*/
+    private static final LuaScript<Boolean> EXPAND_TRADE_EVENT
+        = LuaScript.<Boolean>builder(MARKET_OPERATOR, "expandTradeEvent.lua")
+                   .success("SUCCESS", (call) -> true)
+                   .success("DUPLICATE", (call) -> false)
+                   .build();
+
+    /** 交易事件展开消费组名。*/
+    public static final String EXPANDER_GROUP = "trade-expander";
+
+    /** 一次最多读取几条事件。*/
+    private static final int BATCH_SIZE = 100;
+
+    /** 没有新事件（或者读取出错）时等待多久再读。*/
+    private static final Duration IDLE_WAIT = Duration.ofSeconds(1L);
+
+    /** 其他消费者的待确认事件空闲多久之后认领过来。*/
+    private static final Duration CLAIM_MIN_IDLE = Duration.ofMinutes(1L);
+
+    /** 是否启用交易事件展开（默认与是否开启精简交易事件一致）？*/
+    @Value("${app.market.trade-events.expander.enabled:${app.market.trade-events.compact:false}}")
+    private boolean enabled;
+
+    /** 本节点在消费组中的消费者名（重启后保持不变才能继续处理自己的待确认事件）。*/
+    @Value("${app.market.trade-events.expander.consumer-name:${HOSTNAME:trade-expander}}")
+    private String consumerName;
+
+    /** 字符串序列化 Redis 模板（精简交易事件的字段都是原始字符串）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 有事件处理失败、留在了待确认列表中，下一轮先从头处理本消费者所有待确认的事件。*/
+    private final AtomicBoolean retryPending
+        = new AtomicBoolean(false);
+
+    /** 正在执行的展开任务。*/
+    private volatile Disposable expansion;
+
+    /** 启动展开任务（没有启用时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && RUNNING.compareAndSet(false, true))
+        {
+            log.info("[SmartLifecycle] Trade event expander started, consumer: {}.", this.consumerName);
+
+            this.expansion
+                = this.expand()
+                      .subscribe(
+                          null,
+                          (exception) ->
+                              log.error("Trade event expander stopped by error!", exception)
+                      );
+        }
+    }
+
+    /** 停止展开任务，没有展开的事件留在待确认列表中，下次启动时继续处理。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] Trade event expander stopped.");
+
+            if (this.expansion != null) {
+                this.expansion.dispose();
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其最后被创建，最先被执行。*/
+    @Override
+    public int getPhase() { return Integer.MAX_VALUE; }
+
+    /** 创建消费组（流不存在时一并创建），消费组已经存在时什么都不做。*/
+    private @NotNull Mono<Void> createGroup()
+    {
+        final ByteBuffer streamKey
+            = ByteBuffer.wrap(getTradeLogKey().getBytes(StandardCharsets.UTF_8));
+
+        return
+        this.stringRedisTemplate
+            .execute((connection) ->
+                connection.streamCommands()
+                          .xGroupCreate(streamKey, EXPANDER_GROUP, ReadOffset.from("0"), true))
+            .then()
+            .onErrorResume(
+                (exception) ->
+                    exception.getMessage() != null &&
+                    exception.getMessage().contains("BUSYGROUP"),
+                (exception) -> Mono.empty()
+            );
+    }
+
+    /** 把其他消费者空闲过久的待确认事件认领到本消费者名下。*/
+    private @NotNull Mono<Void> claimIdlePending()
+    {
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForStream()
+            .pending(getTradeLogKey(), EXPANDER_GROUP, Range.unbounded(), BATCH_SIZE)
+            .flatMap((pending) -> {
+                final RecordId[] idleIds
+                    = pending.stream()
+                             .filter((message) ->
+                                 !this.consumerName.equals(message.getConsumerName()) &&
+                                 message.getElapsedTimeSinceLastDelivery().compareTo(CLAIM_MIN_IDLE) >= 0)
+                             .map(PendingMessage::getId)
+                             .toArray(RecordId[]::new);
+
+                if (idleIds.length == 0) {
+                    return Mono.empty();
+                }
+
+                return
+                this.stringRedisTemplate
+                    .<String, String>opsForStream()
+                    .claim(getTradeLogKey(), EXPANDER_GROUP, this.consumerName, CLAIM_MIN_IDLE, idleIds)
+                    .count()
+                    .doOnNext((count) ->
+                        log.info("Claimed {} idle trade events for consumer: {}.", count, this.consumerName))
+                    .then();
+            });
+    }
+
+    /** 以本消费者的身份从某个位置读取一批事件。*/
+    private @NotNull Mono<List<MapRecord<String, String, String>>>
+    readBatch(ReadOffset offset)
+    {
+        return
+        readGroup(
+            this.stringRedisTemplate,
+            Consumer.from(EXPANDER_GROUP, this.consumerName), BATCH_SIZE,
+            StreamOffset.create(getTradeLogKey(), offset))
+        .collectList();
+    }
+
+    /** 组合展开一条事件的脚本调用。*/
+    private @NotNull LuaScript.Invocation
+    toInvocation(@NotNull MapRecord<String, String, String> record)
+    {
+        final Map<String, String> fields = record.getValue();
+        final String sellerId = fields.get("seller");
+        final String buyerId  = fields.get("buyer");
+
+        return
+        LuaScript.Invocation.of(
+            List.of(
+                getTradeLogKey(), getMarketLogKey(),
+                getUserKey(sellerId), getUserKey(buyerId),
+                getUserLogKey(sellerId), getUserLogKey(buyerId),
+                getInventoryLogKey(buyerId)),
+            record.getId().getValue(), EXPANDER_GROUP,
+            fields.get("weaponId"), fields.get("weaponName"),
+            sellerId, buyerId,
+            fields.get("priceCents"), fields.get("timestamp"));
+    }
+
+    /**
+     * 以流水线的方式展开一批事件。
+     * 展开失败的事件不确认，留在待确认列表中，下一轮重新处理。
+     */
+    private @NotNull Mono<Void>
+    expandAll(@NotNull List<MapRecord<String, String, String>> records)
+    {
+        return
+        this.luaScriptExecutor
+            .executeAll(
+                EXPAND_TRADE_EVENT,
+                records.stream().map(this::toInvocation).toList())
+            .filter((result) -> !result.isSuccess())
+            .doOnNext((result) -> {
+                log.warn(
+                    "Expand trade event: {} failed!",
+                    records.get(result.getIndex()).getId(), result.getError());
+                this.retryPending.set(true);
+            })
+            .then();
+    }
+
+    /** 处理本消费者所有待确认的事件（从 afterId 之后开始，逐批向后推进）。*/
+    private @NotNull Mono<Void> drainPending(String afterId)
+    {
+        return
+        this.readBatch(ReadOffset.from(afterId))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.empty()
+                    : this.expandAll(records)
+                          .then(
+                              Mono.defer(() ->
+                                  this.drainPending(records.getLast().getId().getValue()))));
+    }
+
+    /** 读取并展开一批新事件（上一轮有事件展开失败时先重新处理待确认的事件），没有新事件时等待一小段时间。*/
+    private @NotNull Mono<Void> pollNewEvents()
+    {
+        final Mono<Void> pending
+            = Mono.defer(() ->
+                (this.retryPending.getAndSet(false))
+                    ? this.drainPending("0")
+                    : Mono.empty());
+
+        return
+        pending
+            .then(this.readBatch(ReadOffset.lastConsumed()))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.delay(IDLE_WAIT).then()
+                    : this.expandAll(records))
+            .onErrorResume((exception) -> {
+                log.warn("Read trade log failed, retry in {} seconds.", IDLE_WAIT.getSeconds(), exception);
+
+                // 读到的一批可能只处理了一部分，下一轮先重新处理待确认的事件
+                this.retryPending.set(true);
+
+                // 流或者消费组可能被删除了，重新创建后继续读取
+                return
+                Mono.delay(IDLE_WAIT)
+                    .then(this.createGroup())
+                    .onErrorResume((ignore) -> Mono.empty());
+            });
+    }
+
+    /**
+     * 交易事件的展开任务：
+     *
+     * <ol>
+     *     <li>创建消费组</li>
+     *     <li>认领其他消费者空闲过久的待确认事件</li>
+     *     <li>处理本消费者所有待确认的事件</li>
+     *     <li>不断读取并展开新事件，直到本 Bean 停止</li>
+     * </ol>
+     */
+    public @NotNull Mono<Void> expand()
+    {
+        return
+        this.createGroup()
+            .then(this.claimIdlePending())
+            .then(this.drainPending("0"))
+            .then(
+                this.pollNewEvents()
+                    .repeat(RUNNING::get)
+                    .then());
+    }
+}
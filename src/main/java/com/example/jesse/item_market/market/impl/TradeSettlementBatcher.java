@@ -0,0 +1,308 @@
+package com.example.jesse.item_market.market.impl;
+
+import com.example.jesse.item_market.market.dto.TransactionResult;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static com.example.jesse.item_market.market.impl.MarketServiceImpl.*;
+
+/**
+ * <p>单机模式下市场交易的微批处理器。</p>
+ *
+ * <p>
+ *     开启后（app.market.trade-batch.enabled），{@link MarketServiceImpl} 不再为每笔交易单独执行
+ *     marketTransaction.lua，而是把交易交给本类：一个时间窗口内到达的交易（至多 max-size 笔）
+ *     凑成一批，由 marketTransaction.lua 在一次脚本执行中按顺序结算，
+ *     脚本为每笔交易返回各自的结果，再按 MARKET_TRANSACTION 的定义
+ *     映射成各个调用方自己的交易结果或异常。
+ * </p>
+ *
+ * <p>
+ *     每笔交易至多多等一个时间窗口，换来的是往返次数与脚本调用次数按批大小成倍减少。
+ *     本 Bean 在 Web 服务器之前启动、之后停止，停止时还没凑满的一批会立即结算。
+ *     结算任务因为意外的错误终止时，本 Bean 转为停止状态（之后的交易逐笔执行），
+ *     所有还没有结果的交易立即以这个错误失败，不会一直等下去。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TradeSettlementBatcher implements SmartLifecycle
+{
+    /** 并发提交交易时，向 Sink 发送失败（FAIL_NON_SERIALIZED）后自旋重试的时长（纳秒）。*/
+    private static final long EMIT_SPIN_NANOS
+        = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    /** 是否启用交易微批？*/
+    @Value("${app.market.trade-batch.enabled:false}")
+    private boolean enabled;
+
+    /** 一批最多几笔交易。*/
+    @Value("${app.market.trade-batch.max-size:64}")
+    private int maxSize;
+
+    /** 凑批的时间窗口（毫秒）。*/
+    @Value("${app.market.trade-batch.window-millis:2}")
+    private long windowMillis;
+
+    /** 同时在途的最大批数。*/
+    @Value("${app.market.trade-batch.max-in-flight:4}")
+    private int maxInFlight;
+
+    /** 交易是否只写一条精简交易事件（与单笔交易一致）？*/
+    @Value("${app.market.trade-events.compact:false}")
+    private boolean compactTradeEvents;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 已经提交、还没有结果的交易（结算任务因错误终止时，令它们全部失败）。*/
+    private final Set<PendingTrade> unsettled
+        = ConcurrentHashMap.newKeySet();
+
+    /** 等待凑批的交易。*/
+    private volatile Sinks.Many<PendingTrade> pendingTrades;
+
+    /** 正在执行的结算任务。*/
+    private volatile Disposable settlement;
+
+    /**
+     * 一笔等待结算的交易。
+     *
+     * @param buyerId        买家 UUID
+     * @param sellerId       卖家 UUID
+     * @param weaponId       武器 UID
+     * @param idempotencyTtl 交易结果在幂等键上保存的时间（秒），为 0 时不启用幂等
+     * @param idempotencyKey 幂等键（不启用幂等时为 null）
+     * @param sink           发布这笔交易结果的 Sink
+     */
+    private record PendingTrade(
+        String buyerId, String sellerId, String weaponId,
+        long idempotencyTtl, String idempotencyKey,
+        MonoSink<TransactionResult> sink)
+    {
+        /** 这笔交易在 marketTransaction.lua 中的 KEYS。*/
+        @NotNull List<String> keys() {
+            return getTradeKeys(this.buyerId, this.sellerId, this.weaponId, this.idempotencyKey);
+        }
+
+        /** 这笔交易在 marketTransaction.lua 中的参数（异常信息也会用到）。*/
+        Object @NotNull [] args() {
+            return new Object[] { this.buyerId, this.sellerId, this.weaponId, this.idempotencyTtl };
+        }
+    }
+
+    /** 启动结算任务（没有启用交易微批时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && RUNNING.compareAndSet(false, true))
+        {
+            log.info(
+                "[SmartLifecycle] Trade settlement batcher started, max size: {}, window: {} ms.",
+                this.maxSize, this.windowMillis);
+
+            this.pendingTrades = Sinks.many().unicast().onBackpressureBuffer();
+
+            // 公平背压：下游在途的批数已满时不再按时间窗口切批，而是等下游请求后再交付
+            this.settlement
+                = this.pendingTrades
+                      .asFlux()
+                      .bufferTimeout(this.maxSize, Duration.ofMillis(this.windowMillis), true)
+                      .flatMap(this::settle, this.maxInFlight)
+                      .subscribe(null, this::onSettlementError);
+        }
+    }
+
+    /**
+     * 结算任务因为意外的错误终止：转为停止状态，令所有还没有结果的交易失败。
+     * 之后 {@link MarketServiceImpl} 看到本 Bean 不再运行，交易改为逐笔执行。
+     */
+    private void onSettlementError(Throwable exception)
+    {
+        RUNNING.set(false);
+
+        log.error("Trade settlement batcher stopped by error!", exception);
+
+        final IllegalStateException failure
+            = new IllegalStateException("Trade settlement batcher stopped by error!", exception);
+
+        this.unsettled.forEach((trade) -> {
+            if (this.unsettled.remove(trade)) {
+                trade.sink().error(failure);
+            }
+        });
+    }
+
+    /** 停止接收新交易，还没凑满的一批立即结算。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] Trade settlement batcher stopped.");
+
+            final Sinks.EmitResult result
+                = emitWithSpin(this.pendingTrades::tryEmitComplete);
+
+            if (result.isFailure()) {
+                log.warn("Complete trade settlement batcher failed: {}", result);
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其在 Web 服务器之前启动、之后停止。*/
+    @Override
+    public int getPhase() { return 0; }
+
+    /**
+     * 提交一笔交易，等待它所在的一批结算完成。
+     *
+     * @param buyerId        买家 UUID
+     * @param sellerId       卖家 UUID
+     * @param weaponId       买家想购买的武器 UID
+     * @param idempotencyKey 幂等键（为 null 时不启用幂等）
+     * @param idempotencyTtl 交易结果在幂等键上保存的时间（秒）
+     *
+     * @return 发布交易后买卖双方资金余额的 Mono
+     */
+    public @NotNull Mono<TransactionResult>
+    submit(
+        String buyerId, String sellerId, String weaponId,
+        String idempotencyKey, long idempotencyTtl)
+    {
+        return
+        Mono.create((sink) -> {
+            final PendingTrade trade
+                = new PendingTrade(
+                    buyerId, sellerId, weaponId,
+                    (idempotencyKey == null) ? 0L : idempotencyTtl,
+                    idempotencyKey, sink);
+
+            if (!RUNNING.get())
+            {
+                sink.error(
+                    new IllegalStateException("Trade settlement batcher is not running!"));
+                return;
+            }
+
+            this.unsettled.add(trade);
+
+            // 调用方取消（超时等）时，还没有发送的交易不再结算
+            sink.onCancel(() -> this.unsettled.remove(trade));
+
+            final Sinks.EmitResult result
+                = emitWithSpin(() -> this.pendingTrades.tryEmitNext(trade));
+
+            if (result.isFailure() && this.unsettled.remove(trade))
+            {
+                sink.error(
+                    new IllegalStateException(
+                        "Trade settlement batcher rejected trade: " + result + "!"));
+            }
+        });
+    }
+
+    /**
+     * 向 Sink 发送信号。多个线程同时发送时，没抢到 Sink 的一方（FAIL_NON_SERIALIZED）自旋重试，
+     * 其他失败（Sink 已经终止、被取消、缓冲溢出等）直接返回，由调用方处理。
+     */
+    private static Sinks.@NotNull EmitResult
+    emitWithSpin(@NotNull Supplier<Sinks.EmitResult> emission)
+    {
+        final long deadline = System.nanoTime() + EMIT_SPIN_NANOS;
+
+        Sinks.EmitResult result;
+
+        while (
+            (result = emission.get()) == Sinks.EmitResult.FAIL_NON_SERIALIZED &&
+            System.nanoTime() < deadline)
+        {
+            Thread.onSpinWait();
+        }
+
+        return result;
+    }
+
+    /**
+     * 结算一批交易，把每笔交易的结果交给各自的调用方。
+     * 凑批期间被调用方取消的交易不会发送；发送之后才取消的交易照常结算，
+     * 结果不再交给调用方，带幂等键的交易以同一个幂等键重试即可取回保存的结果。
+     */
+    private @NotNull Mono<Void>
+    settle(@NotNull List<PendingTrade> trades)
+    {
+        final List<PendingTrade> batch
+            = trades.stream().filter(this.unsettled::contains).toList();
+
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+
+        final List<String> keys
+            = getSettlementKeys(batch.stream().map(PendingTrade::keys).toList());
+
+        final Object[] args
+            = getSettlementArgs(batch.stream().map(PendingTrade::args).toList(), this.compactTradeEvents);
+
+        return
+        this.luaScriptExecutor
+            .execute(SETTLE_TRADES, keys, args)
+            .doOnNext((replies) -> {
+                for (int index = 0; index < batch.size(); ++index) {
+                    this.complete(batch.get(index), replies.get(index));
+                }
+            })
+            .doOnError((exception) -> {
+                log.warn("Settle trade batch of {} trades failed!", batch.size(), exception);
+                batch.forEach((trade) -> {
+                    if (this.unsettled.remove(trade)) {
+                        trade.sink().error(exception);
+                    }
+                });
+            })
+            .then()
+            .onErrorResume((exception) -> Mono.empty());
+    }
+
+    /** 按 MARKET_TRANSACTION 的定义，把一笔交易的原始结果映射成交易结果或异常。*/
+    private void complete(@NotNull PendingTrade trade, Object reply)
+    {
+        if (!this.unsettled.remove(trade))
+        {
+            log.info(
+                "Trade of weapon: {} settled after its caller cancelled (idempotency key: {}).",
+                trade.weaponId(), trade.idempotencyKey());
+            return;
+        }
+
+        toTransactionResult(reply, trade.keys(), trade.args())
+            .subscribe(trade.sink()::success, trade.sink()::error, trade.sink()::success);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.jesse.item_market.market.route;
+
+import com.example.jesse.item_market.market.service.MarketApiService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static com.example.jesse.item_market.market.route.MarketServiceURIConfig.*;
+
+/** 市场服务路由函数配置类。*/
+@Configuration
+@RequiredArgsConstructor
+public class MarketServiceRouteFunctionConfig
+{
+    /** 市场服务接口 */
+    private final MarketApiService marketApiService;
+
+    @Bean
+    public RouterFunction<ServerResponse>
+    marketServiceRouteFunction()
+    {
+        return
+        RouterFunctions
+            .route()
+            .GET(GET_MARKET_LISTINGS,  this.marketApiService::findListings)
+            .POST(CREATE_TRANSACTION,  this.marketApiService::marketTransaction)
+            .POST(BUY_CHEAPEST_WEAPON, this.marketApiService::buyCheapestWeapon)
+            .POST(CART_PURCHASE,       this.marketApiService::cartPurchase)
+            .GET(GET_WEAPON_STATS,     this.marketApiService::findWeaponStats)
+            .GET(GET_PRICE_HISTORY,    this.marketApiService::findPriceHistory)
+            .build();
+    }
+}
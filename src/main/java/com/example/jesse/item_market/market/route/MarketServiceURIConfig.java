@@ -0,0 +1,41 @@
+package com.example.jesse.item_market.market.route;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/** 市场服务路径配置类 - RESTful风格。*/
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final public class MarketServiceURIConfig
+{
+    /** API 根路径 */
+    private static final String API_ROOT = "/api";
+
+    /** 市场资源 */
+    public static final String MARKET = API_ROOT + "/market";
+
+    /** 市场上的在售武器 */
+    public static final String MARKET_LISTINGS = MARKET + "/listings";
+
+    /** 市场交易 */
+    public static final String MARKET_TRANSACTIONS = MARKET + "/transactions";
+
+    /** 购买某一类武器中最便宜的一件 */
+    public static final String MARKET_PURCHASES = MARKET + "/purchases";
+
+    /** 购物车交易 */
+    public static final String MARKET_CARTS = MARKET + "/carts";
+
+    /** 各类武器的市场统计 */
+    public static final String MARKET_STATS = MARKET + "/stats";
+
+    /** 各类武器的价格历史（K 线）*/
+    public static final String MARKET_PRICE_HISTORY = MARKET + "/price-history";
+
+    // 路由常量（用于路由配置）
+    public static final String GET_MARKET_LISTINGS    = MARKET_LISTINGS;
+    public static final String CREATE_TRANSACTION     = MARKET_TRANSACTIONS;
+    public static final String BUY_CHEAPEST_WEAPON    = MARKET_PURCHASES;
+    public static final String CART_PURCHASE          = MARKET_CARTS;
+    public static final String GET_WEAPON_STATS       = MARKET_STATS;
+    public static final String GET_PRICE_HISTORY      = MARKET_PRICE_HISTORY;
+}
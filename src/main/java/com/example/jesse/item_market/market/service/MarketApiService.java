@@ -0,0 +1,33 @@
+package com.example.jesse.item_market.market.service;
+
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/** 市场服务接口。*/
+public interface MarketApiService
+{
+    /** 按价格区间分页浏览市场上的武器（游标分页）。*/
+    Mono<ServerResponse>
+    findListings(ServerRequest request);
+
+    /** 买家购买市场上的某件武器。*/
+    Mono<ServerResponse>
+    marketTransaction(ServerRequest request);
+
+    /** 买家购买某一类武器中价格最低的一件。*/
+    Mono<ServerResponse>
+    buyCheapestWeapon(ServerRequest request);
+
+    /** 买家一次性购买购物车中的所有武器（全部成交或全部不成交）。*/
+    Mono<ServerResponse>
+    cartPurchase(ServerRequest request);
+
+    /** 查询某一类武器的市场统计（地板价、平均成交价、近 24 小时成交量等）。*/
+    Mono<ServerResponse>
+    findWeaponStats(ServerRequest request);
+
+    /** 查询某一类武器在某个时间范围内的价格历史（K 线）。*/
+    Mono<ServerResponse>
+    findPriceHistory(ServerRequest request);
+}
@@ -0,0 +1,546 @@
+package com.example.jesse.item_market.market.service.impl;
+
+import com.example.jesse.item_market.market.MarketService;
+import com.example.jesse.item_market.market.exception.FundsNotEnough;
+import com.example.jesse.item_market.market.exception.ItemNoOnMarket;
+import com.example.jesse.item_market.market.exception.SelfTransactional;
+import com.example.jesse.item_market.market.service.MarketApiService;
+import com.example.jesse.item_market.market.utils.ListingCursor;
+import com.example.jesse.item_market.market.utils.PriceResolution;
+import com.example.jesse.item_market.response.ResponseBuilder;
+import com.example.jesse.item_market.response.pojo.Link;
+import com.example.jesse.item_market.response.pojo.Pagination;
+import com.example.jesse.item_market.user.Weapons;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static com.example.jesse.item_market.response.utils.URLParamPrase.*;
+import static java.lang.String.format;
+
+/** 市场服务实现。*/
+@Slf4j
+@Service
+public class MarketApiServiceImpl implements MarketApiService
+{
+    /** 默认一页几件武器。*/
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    /** 一页最多几件武器。*/
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /** 价格历史默认查询最近几个桶。*/
+    private static final long DEFAULT_HISTORY_BUCKETS = 60L;
+
+    /** 价格历史一次最多查询几个桶。*/
+    private static final long MAX_HISTORY_BUCKETS = 1440L;
+
+    /** 交易幂等键的请求头。*/
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    @Autowired
+    private MarketService marketService;
+
+    @Autowired
+    private ResponseBuilder responseBuilder;
+
+    /**
+     * 市场浏览的查询参数。
+     *
+     * @param weapon   武器类型（为 null 时浏览所有武器）
+     * @param minPrice 最低价格（包含）
+     * @param maxPrice 最高价格（包含）
+     * @param cursor   分页游标
+     * @param pageSize 一页几件武器
+     */
+    private record ListingQuery(
+        Weapons weapon, double minPrice, double maxPrice,
+        ListingCursor cursor, int pageSize) {}
+
+    /**
+     * 价格历史的查询参数。
+     *
+     * @param weapon     武器类型
+     * @param resolution 时间粒度
+     * @param from       起始时间（秒，包含）
+     * @param to         结束时间（秒，包含）
+     */
+    private record PriceHistoryQuery(
+        Weapons weapon, PriceResolution resolution, long from, long to) {}
+
+    /** 读取一个可选的数字参数，不存在时返回默认值。*/
+    private static double
+    optionalPriceParam(@NotNull ServerRequest request, String paramName, double defaultValue)
+    {
+        return
+        request.queryParam(paramName)
+            .map((param) -> {
+                try
+                {
+                    final double price = Double.parseDouble(param);
+
+                    if (Double.isNaN(price) || price < 0)
+                    {
+                        throw new IllegalArgumentException(
+                            format("Parameter: [%s] not less than 0!", paramName)
+                        );
+                    }
+
+                    return price;
+                }
+                catch (NumberFormatException exception)
+                {
+                    throw new IllegalArgumentException(
+                        "Invalid number format for parameter: " + paramName
+                    );
+                }
+            })
+            .orElse(defaultValue);
+    }
+
+    /**
+     * 解析市场浏览的查询参数（均为可选）：
+     * weaponName、minPrice、maxPrice、cursor、size。
+     */
+    private static @NotNull Mono<ListingQuery>
+    praseListingQuery(@NotNull ServerRequest request)
+    {
+        return
+        Mono.fromCallable(() -> {
+            final Weapons weapon
+                = request.queryParam("weaponName")
+                         .map(Weapons::valueOf)
+                         .orElse(null);
+
+            final double minPrice = optionalPriceParam(request, "minPrice", 0.0);
+            final double maxPrice
+                = optionalPriceParam(request, "maxPrice", Double.POSITIVE_INFINITY);
+
+            if (minPrice > maxPrice)
+            {
+                throw new IllegalArgumentException(
+                    format("minPrice: %s greater than maxPrice: %s!", minPrice, maxPrice)
+                );
+            }
+
+            final int pageSize
+                = request.queryParam("size")
+                         .map(Integer::parseInt)
+                         .orElse(DEFAULT_PAGE_SIZE);
+
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+            {
+                throw new IllegalArgumentException(
+                    format("Parameter: [size] must between 1 and %d!", MAX_PAGE_SIZE)
+                );
+            }
+
+            final ListingCursor cursor
+                = request.queryParam("cursor")
+                         .map(ListingCursor::decode)
+                         .orElseGet(() -> ListingCursor.first(minPrice));
+
+            return new ListingQuery(weapon, minPrice, maxPrice, cursor, pageSize);
+        })
+        .onErrorMap(NumberFormatException.class,
+            (exception) ->
+                new IllegalArgumentException("Invalid number format for parameter: size"));
+    }
+
+    /**
+     * 解析价格历史的查询参数：weaponName（必填）、resolution（默认 MINUTE）、
+     * to（默认当前时间）、from（默认 to 之前 60 个桶），范围内最多 1440 个桶。
+     */
+    private static @NotNull Mono<PriceHistoryQuery>
+    prasePriceHistoryQuery(@NotNull ServerRequest request)
+    {
+        return
+        praseRequestParam(request, "weaponName")
+            .map((weaponName) -> {
+                final Weapons weapon = Weapons.valueOf(weaponName);
+
+                final PriceResolution resolution
+                    = request.queryParam("resolution")
+                             .map(PriceResolution::valueOf)
+                             .orElse(PriceResolution.MINUTE);
+
+                final long to
+                    = request.queryParam("to")
+                             .map(Long::parseLong)
+                             .orElseGet(() -> Instant.now().getEpochSecond());
+
+                final long from
+                    = request.queryParam("from")
+                             .map(Long::parseLong)
+                             .orElse(to - (DEFAULT_HISTORY_BUCKETS - 1L) * resolution.getSeconds());
+
+                if (from > to)
+                {
+                    throw new IllegalArgumentException(
+                        format("from: %d greater than to: %d!", from, to)
+                    );
+                }
+
+                if ((to - resolution.bucketStart(from)) / resolution.getSeconds() >= MAX_HISTORY_BUCKETS)
+                {
+                    throw new IllegalArgumentException(
+                        format(
+                            "Query range too large, at most %d %s buckets!",
+                            MAX_HISTORY_BUCKETS, resolution
+                        )
+                    );
+                }
+
+                return new PriceHistoryQuery(weapon, resolution, from, to);
+            })
+            .onErrorMap(NumberFormatException.class,
+                (exception) ->
+                    new IllegalArgumentException("Invalid number format for parameter: from / to"));
+    }
+
+    /** 在当前请求的 URL 上替换（或去掉）游标参数，用作 HATEOAS 链接。*/
+    private static @NotNull String
+    withCursor(@NotNull ServerRequest request, String cursor)
+    {
+        return
+        UriComponentsBuilder
+            .fromPath(request.path())
+            .query(request.uri().getRawQuery())
+            .replaceQueryParam("cursor", (cursor == null) ? new Object[0] : new Object[] { cursor })
+            .build()
+            .toUriString();
+    }
+
+    /** 按价格区间分页浏览市场上的武器（游标分页）。*/
+    @Override
+    public Mono<ServerResponse>
+    findListings(ServerRequest request)
+    {
+        return
+        praseListingQuery(request)
+            .flatMap((query) ->
+                this.marketService
+                    .getListings(
+                        query.weapon(), query.minPrice(), query.maxPrice(),
+                        query.cursor(), query.pageSize())
+                    .flatMap((page) -> {
+                        final Set<Link> links = new LinkedHashSet<>();
+
+                        links.add(
+                            new Link(
+                                "self",
+                                withCursor(request, request.queryParam("cursor").orElse(null)),
+                                HttpMethod.GET));
+
+                        links.add(
+                            new Link("first", withCursor(request, null), HttpMethod.GET));
+
+                        if (page.getNextCursor() != null)
+                        {
+                            links.add(
+                                new Link(
+                                    "next",
+                                    withCursor(request, page.getNextCursor()),
+                                    HttpMethod.GET));
+                        }
+
+                        return
+                        this.responseBuilder
+                            .OK(
+                                page,
+                                format(
+                                    "Find %d weapons in market (page %d).",
+                                    page.getListings().size(), page.getPageNo()
+                                ),
+                                null,
+                                new Pagination(
+                                    page.getPageNo(), query.pageSize(),
+                                    page.getTotalItems()
+                                ),
+                                links
+                            );
+                    })
+                    .onErrorResume((exception) ->
+                        this.responseBuilder
+                            .INTERNAL_SERVER_ERROR("Find weapons from market failed!", exception)
+                    )
+            )
+            .onErrorResume(
+                IllegalArgumentException.class,
+                (exception) ->
+                    this.responseBuilder
+                        .BAD_REQUEST(exception.getMessage(), exception)
+            );
+    }
+
+    /**
+     * 买家购买市场上的某件武器。
+     * 请求头 Idempotency-Key 可选，带上时同一个键的重复请求直接返回之前的交易结果。
+     */
+    @Override
+    public Mono<ServerResponse>
+    marketTransaction(ServerRequest request)
+    {
+        return
+        Mono.zip(
+            praseRequestParam(request, "buyerId"),
+            praseRequestParam(request, "sellerId"),
+            praseRequestParam(request, "weaponId"))
+        .flatMap((params) -> {
+            final String buyerId  = params.getT1();
+            final String sellerId = params.getT2();
+            final String weaponId = params.getT3();
+
+            final String idempotencyKey
+                = request.headers().firstHeader(IDEMPOTENCY_KEY_HEADER);
+
+            return
+            this.marketService
+                .marketTransaction(buyerId, sellerId, weaponId, idempotencyKey)
+                .flatMap((result) ->
+                    this.responseBuilder
+                        .OK(
+                            result,
+                            format(
+                                "Buyer: %s bought weapon: [%s] from seller: %s!",
+                                buyerId, weaponId, sellerId
+                            )
+                        ))
+                .switchIfEmpty(
+                    Mono.defer(() ->
+                        this.responseBuilder
+                            .BAD_REQUEST(
+                                format(
+                                    "Transaction not happened! " +
+                                    "Weapon: [%s] not in market or buyer: %s funds not enough.",
+                                    weaponId, buyerId
+                                ), null)))
+                .onErrorResume(
+                    (exception) ->
+                        exception instanceof SelfTransactional ||
+                        exception instanceof IllegalArgumentException,
+                    (exception) ->
+                        this.responseBuilder
+                            .BAD_REQUEST(exception.getMessage(), exception)
+                )
+                .onErrorResume((exception) ->
+                    this.responseBuilder
+                        .INTERNAL_SERVER_ERROR(
+                            format(
+                                "Transaction of buyer: %s -> seller: %s failed!",
+                                buyerId, sellerId
+                            ), exception
+                        )
+                );
+        })
+        .onErrorResume(
+            IllegalArgumentException.class,
+            (exception) ->
+                this.responseBuilder
+                    .BAD_REQUEST(exception.getMessage(), exception)
+        );
+    }
+
+    /** 买家购买某一类武器中价格最低的一件。*/
+    @Override
+    public Mono<ServerResponse>
+    buyCheapestWeapon(ServerRequest request)
+    {
+        return
+        Mono.zip(
+            praseRequestParam(request, "buyerId"),
+            praseRequestParam(request, "weaponName").map(Weapons::valueOf),
+            praseNumberRequestParam(request, "maxPrice", Double::parseDouble))
+        .flatMap((params) -> {
+            final String  buyerId  = params.getT1();
+            final Weapons weapon   = params.getT2();
+            final double  maxPrice = params.getT3();
+
+            return
+            this.marketService
+                .buyCheapestWeapon(buyerId, weapon, maxPrice)
+                .flatMap((result) ->
+                    this.responseBuilder
+                        .OK(
+                            result,
+                            format(
+                                "Buyer: %s bought %s: [%s] at price: %.2f!",
+                                buyerId, weapon, result.getWeaponId(), result.getPrice()
+                            )
+                        ))
+                .switchIfEmpty(
+                    Mono.defer(() ->
+                        this.responseBuilder
+                            .NOT_FOUND(
+                                format(
+                                    "No %s under price: %s affordable for buyer: %s.",
+                                    weapon, maxPrice, buyerId
+                                ), null)))
+                .onErrorResume(
+                    SelfTransactional.class,
+                    (exception) ->
+                        this.responseBuilder
+                            .BAD_REQUEST(exception.getMessage(), exception)
+                )
+                .onErrorResume((exception) ->
+                    this.responseBuilder
+                        .INTERNAL_SERVER_ERROR(
+                            format(
+                                "Buyer: %s buy cheapest %s failed!",
+                                buyerId, weapon
+                            ), exception
+                        )
+                );
+        })
+        .onErrorResume(
+            IllegalArgumentException.class,
+            (exception) ->
+                this.responseBuilder
+                    .BAD_REQUEST(exception.getMessage(), exception)
+        );
+    }
+
+    /**
+     * 买家一次性购买购物车中的所有武器（全部成交或全部不成交），
+     * 武器 UID 以逗号分隔（例：/api/market/carts?buyerId=114950910119824488&weaponIds=1985f067af74d6d,1985f067af74d6e）。
+     */
+    @Override
+    public Mono<ServerResponse>
+    cartPurchase(ServerRequest request)
+    {
+        return
+        Mono.zip(
+            praseRequestParam(request, "buyerId"),
+            praseRequestParam(request, "weaponIds")
+                .map((weaponIds) ->
+                    Arrays.stream(weaponIds.split(","))
+                          .map(String::trim)
+                          .filter((weaponId) -> !weaponId.isEmpty())
+                          .toList()))
+        .flatMap((params) -> {
+            final String buyerId = params.getT1();
+
+            return
+            this.marketService
+                .cartPurchase(buyerId, params.getT2())
+                .flatMap((result) ->
+                    this.responseBuilder
+                        .OK(
+                            result,
+                            format(
+                                "Buyer: %s bought %d weapons in cart!",
+                                buyerId, result.getItems().size()
+                            )
+                        ))
+                .onErrorResume(
+                    ItemNoOnMarket.class,
+                    (exception) ->
+                        this.responseBuilder
+                            .NOT_FOUND(exception.getMessage(), exception)
+                )
+                .onErrorResume(
+                    (exception) ->
+                        exception instanceof FundsNotEnough ||
+                        exception instanceof SelfTransactional ||
+                        exception instanceof IllegalArgumentException,
+                    (exception) ->
+                        this.responseBuilder
+                            .BAD_REQUEST(exception.getMessage(), exception)
+                )
+                .onErrorResume((exception) ->
+                    this.responseBuilder
+                        .INTERNAL_SERVER_ERROR(
+                            format("Cart purchase of buyer: %s failed!", buyerId),
+                            exception
+                        )
+                );
+        })
+        .onErrorResume(
+            IllegalArgumentException.class,
+            (exception) ->
+                this.responseBuilder
+                    .BAD_REQUEST(exception.getMessage(), exception)
+        );
+    }
+
+    /** 查询某一类武器的市场统计（例：/api/market/stats?weaponName=Sword）。*/
+    @Override
+    public Mono<ServerResponse>
+    findWeaponStats(ServerRequest request)
+    {
+        return
+        praseRequestParam(request, "weaponName")
+            .map(Weapons::valueOf)
+            .flatMap((weapon) ->
+                this.marketService
+                    .getWeaponStats(weapon)
+                    .flatMap((stats) ->
+                        this.responseBuilder
+                            .OK(stats, format("Market stats of %s.", weapon)))
+                    .onErrorResume((exception) ->
+                        this.responseBuilder
+                            .INTERNAL_SERVER_ERROR(
+                                format("Find market stats of %s failed!", weapon),
+                                exception
+                            )
+                    )
+            )
+            .onErrorResume(
+                IllegalArgumentException.class,
+                (exception) ->
+                    this.responseBuilder
+                        .BAD_REQUEST(exception.getMessage(), exception)
+            );
+    }
+
+    /**
+     * 查询某一类武器在某个时间范围内的价格历史（K 线），时间均为秒级时间戳
+     * （例：/api/market/price-history?weaponName=Sword&resolution=HOUR&from=1718000000&to=1718086400）。
+     */
+    @Override
+    public Mono<ServerResponse>
+    findPriceHistory(ServerRequest request)
+    {
+        return
+        prasePriceHistoryQuery(request)
+            .flatMap((query) ->
+                this.marketService
+                    .getPriceHistory(
+                        query.weapon(), query.resolution(),
+                        query.from(), query.to())
+                    .flatMap((candles) ->
+                        this.responseBuilder
+                            .OK(
+                                candles,
+                                format(
+                                    "Find %d %s price buckets of %s.",
+                                    candles.size(), query.resolution(), query.weapon()
+                                )
+                            ))
+                    .onErrorResume((exception) ->
+                        this.responseBuilder
+                            .INTERNAL_SERVER_ERROR(
+                                format("Find price history of %s failed!", query.weapon()),
+                                exception
+                            )
+                    )
+            )
+            .onErrorResume(
+                IllegalArgumentException.class,
+                (exception) ->
+                    this.responseBuilder
+                        .BAD_REQUEST(exception.getMessage(), exception)
+            );
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.jesse.item_market.market.utils;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static java.lang.String.format;
+
+/**
+ * <p>市场浏览的分页游标。</p>
+ *
+ * <p>
+ *     价格表（有序集合）中的武器按 (价格, 武器 UID) 排序，游标记下上一页最后一件武器的价格与 UID，
+ *     下一页从这个位置之后（不包含）开始读取（见 listingPage.lua），
+ *     每一页的开销只与页大小有关，与市场规模和同一价格上的武器数量都无关，
+ *     这是 LIMIT offset 分页做不到的。上一页最后一件武器在翻页前被买走也不影响定位。
+ * </p>
+ *
+ * <p>
+ *     价格区间内的武器总数只在第一页统计一次，之后随游标传递（是第一页时的快照），翻页时不再 ZCOUNT。
+ *     游标以 Base64（URL 安全）编码成 “页码:总数:价格:武器 UID” 的形式交给前端，前端原样传回即可。
+ * </p>
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ListingCursor
+{
+    /** 总数还没有统计（第一页）。*/
+    public static final long UNKNOWN_TOTAL = -1L;
+
+    /** 当前是第几页（从 1 开始，仅用于分页元数据）。*/
+    private final int pageNo;
+
+    /** 价格区间内的武器总数（第一页时统计），还没有统计时为 {@link #UNKNOWN_TOTAL}。*/
+    private final long totalItems;
+
+    /** 上一页最后一件武器的价格（第一页为最低价格）。*/
+    private final double score;
+
+    /** 上一页最后一件武器的 UID（价格表中的成员），第一页为 null。*/
+    private final String member;
+
+    /** 第一页的游标。*/
+    @Contract("_ -> new")
+    public static @NotNull ListingCursor
+    first(double minPrice) { return new ListingCursor(1, UNKNOWN_TOTAL, minPrice, null); }
+
+    /** 是否为第一页的游标（从最低价格开始，包含最低价格）？*/
+    public boolean isFirst() { return this.member == null; }
+
+    /**
+     * 根据本页最后一件武器构建下一页的游标。
+     *
+     * @param totalItems 价格区间内的武器总数
+     * @param lastScore  本页最后一件武器的价格
+     * @param lastMember 本页最后一件武器在价格表中的成员
+     */
+    @Contract("_, _, _ -> new")
+    public @NotNull ListingCursor
+    next(long totalItems, double lastScore, @NotNull String lastMember) {
+        return new ListingCursor(this.pageNo + 1, totalItems, lastScore, lastMember);
+    }
+
+    /** 将游标编码成字符串。*/
+    public @NotNull String encode()
+    {
+        return
+        Base64.getUrlEncoder()
+              .withoutPadding()
+              .encodeToString(
+                  format(
+                      "%d:%d:%s:%s",
+                      this.pageNo, this.totalItems, Double.toString(this.score),
+                      (this.member == null) ? "" : this.member)
+                      .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码前端传回的游标。
+     *
+     * @throws IllegalArgumentException 游标格式不正确时抛出
+     */
+    public static @NotNull ListingCursor
+    decode(@NotNull String cursor)
+    {
+        try
+        {
+            // 武器 UID 放在最后，即使包含 ':' 也不影响拆分
+            final String[] parts
+                = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                      .split(":", 4);
+
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Cursor must have 4 parts!");
+            }
+
+            final int    pageNo     = Integer.parseInt(parts[0]);
+            final long   totalItems = Long.parseLong(parts[1]);
+            final double score      = Double.parseDouble(parts[2]);
+            final String member     = parts[3].isEmpty() ? null : parts[3];
+
+            if (
+                pageNo < 1 || totalItems < UNKNOWN_TOTAL || Double.isNaN(score) ||
+                (pageNo > 1) == (member == null)
+            ) {
+                throw new IllegalArgumentException("Cursor out of range!");
+            }
+
+            return new ListingCursor(pageNo, totalItems, score, member);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            throw new IllegalArgumentException(
+                format("Invalid listing cursor: %s", cursor), exception
+            );
+        }
+    }
+}
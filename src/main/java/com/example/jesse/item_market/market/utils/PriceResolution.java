@@ -0,0 +1,45 @@
+package com.example.jesse.item_market.market.utils;
+
+import lombok.Getter;
+
+/**
+ * <p>价格历史（K 线）的时间粒度。</p>
+ *
+ * 每一笔成交同时累加进三种粒度的桶，小时桶与天桶就是分钟桶的降采样，
+ * 各粒度的桶超过保留时间后由累加脚本删除。
+ */
+public enum PriceResolution
+{
+    /** 分钟桶，保留 2 天。*/
+    MINUTE("1m", 60L, 2L * 86400L),
+
+    /** 小时桶，保留 90 天。*/
+    HOUR("1h", 3600L, 90L * 86400L),
+
+    /** 天桶，保留 3 年。*/
+    DAY("1d", 86400L, 3L * 365L * 86400L);
+
+    /** 键名中的粒度后缀。*/
+    @Getter
+    private final String suffix;
+
+    /** 桶宽（秒）。*/
+    @Getter
+    private final long seconds;
+
+    /** 保留时间（秒）。*/
+    @Getter
+    private final long retentionSeconds;
+
+    PriceResolution(String suffix, long seconds, long retentionSeconds)
+    {
+        this.suffix           = suffix;
+        this.seconds          = seconds;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    /** 某个时间点（秒）所在的桶的起始时间。*/
+    public long bucketStart(long epochSecond) {
+        return epochSecond - Math.floorMod(epochSecond, this.seconds);
+    }
+}
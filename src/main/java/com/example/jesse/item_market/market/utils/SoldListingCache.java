@@ -0,0 +1,142 @@
+package com.example.jesse.item_market.market.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>已售出武器的本地负缓存。</p>
+ *
+ * <p>
+ *     热门武器售出后，仍会有大量买家继续尝试购买它，
+ *     这些请求在本节点上直接被拒绝，不再访问 Redis。
+ *     只有本节点确认成交（脚本返回 SUCCESS）的武器才会被缓存：武器 UID 在上架时生成且不会复用，
+ *     成交后的武器不会再回到市场。脚本返回 “武器不在市场上” 时不缓存，
+ *     因为集群模式下被其他交易预留的武器同样不在价格表上，那笔交易付款失败后武器会被放回市场。
+ * </p>
+ *
+ * <p>
+ *     缓存的键是 卖家 UUID + 武器 UID。
+ *     售出时会记下成交的那一个幂等键，同一个幂等键的重试不会被拒绝，
+ *     而是继续交给脚本返回之前保存的交易结果。
+ *     武器被放回市场时（取消预留）调用 {@link #forget(String, String)} 清除缓存项。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SoldListingCache
+{
+    /** 命中次数指标名。*/
+    public static final String METRIC_NAME = "market.sold-listing-cache.hits";
+
+    /** 缓存项的存活时间（秒）。*/
+    @Value("${app.market.sold-listing-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    /** 最多缓存多少件武器。*/
+    @Value("${app.market.sold-listing-cache.max-entries:100000}")
+    private int maxEntries;
+
+    /** 指标注册表。*/
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** 命中计数器。*/
+    private Counter hits;
+
+    /**
+     * 一个缓存项。
+     *
+     * @param expireAt       过期时刻（System.nanoTime()）
+     * @param idempotencyKey 成交的幂等键（没有成交或者没有幂等键时为 null）
+     */
+    private record Entry(long expireAt, String idempotencyKey) {}
+
+    /** 卖家 UUID:武器 UID -> 缓存项。*/
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init()
+    {
+        this.hits
+            = Counter.builder(METRIC_NAME)
+                     .description("Trades rejected by the local sold-listing cache")
+                     .register(this.meterRegistry);
+    }
+
+    private static @NotNull String
+    cacheKey(String sellerId, String weaponId) { return sellerId + ":" + weaponId; }
+
+    /** 记录一件武器已经售出（idempotencyKey 为成交的幂等键，可为 null）。*/
+    public void markSold(String sellerId, String weaponId, String idempotencyKey) {
+        this.put(cacheKey(sellerId, weaponId), idempotencyKey);
+    }
+
+    /** 武器被放回市场，清除它的缓存项。*/
+    public void forget(String sellerId, String weaponId) {
+        this.entries.remove(cacheKey(sellerId, weaponId));
+    }
+
+    /**
+     * 本次交易是否可以直接拒绝。
+     *
+     * @param sellerId       卖家 UUID
+     * @param weaponId       武器 UID
+     * @param idempotencyKey 本次交易的幂等键（可为 null）
+     */
+    public boolean rejects(String sellerId, String weaponId, String idempotencyKey)
+    {
+        final String key   = cacheKey(sellerId, weaponId);
+        final Entry  entry = this.entries.get(key);
+
+        if (entry == null) {
+            return false;
+        }
+
+        if (entry.expireAt() - System.nanoTime() <= 0L)
+        {
+            this.entries.remove(key, entry);
+            return false;
+        }
+
+        // 成交那一笔交易的重试，交给脚本返回保存的结果
+        if (idempotencyKey != null && Objects.equals(entry.idempotencyKey(), idempotencyKey)) {
+            return false;
+        }
+
+        this.hits.increment();
+
+        return true;
+    }
+
+    private void put(String key, String idempotencyKey)
+    {
+        final long now = System.nanoTime();
+
+        if (this.entries.size() >= this.maxEntries)
+        {
+            this.entries.values()
+                .removeIf((entry) -> entry.expireAt() - now <= 0L);
+
+            // 清理过期项后依然满了，就不再缓存（负缓存只是优化，不影响正确性）
+            if (this.entries.size() >= this.maxEntries) {
+                return;
+            }
+        }
+
+        this.entries.put(
+            key,
+            new Entry(now + TimeUnit.SECONDS.toNanos(this.ttlSeconds), idempotencyKey)
+        );
+    }
+}
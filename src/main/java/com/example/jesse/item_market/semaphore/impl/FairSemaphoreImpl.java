@@ -3,13 +3,12 @@ package com.example.jesse.item_market.semaphore.impl;
 import com.example.jesse.item_market.semaphore.FairSemaphore;
 import com.example.jesse.item_market.semaphore.exception.AcquireSemaphoreFailed;
 import com.example.jesse.item_market.semaphore.exception.SemaphoreNotFound;
-import com.example.jesse.item_market.utils.LuaScriptReader;
-import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -19,7 +18,6 @@ import java.util.List;
 import java.util.UUID;
 import java.util.function.Function;
 
-import static com.example.jesse.item_market.errorhandle.RedisErrorHandle.redisGenericErrorHandel;
 import static com.example.jesse.item_market.utils.LuaScriptOperatorType.SEMAPHORE_OPERATOR;
 import static java.lang.String.format;
 
@@ -43,14 +41,44 @@ import static java.lang.String.format;
 @Component
 public class FairSemaphoreImpl implements FairSemaphore
 {
-    /** Lua 脚本读取器。*/
+    /** acquireFairSemaphore.lua：获取信号量，发布信号量的唯一标识符。*/
+    private static final LuaScript<String> ACQUIRE_FAIR_SEMAPHORE
+        = LuaScript.<String>builder(SEMAPHORE_OPERATOR, "acquireFairSemaphore.lua")
+                   .success("SUCCESS", (call) -> (String) call.arg(2))
+                   .failure("ACQUIRE_SEMAPHORE_FAILED", (call) ->
+                       new AcquireSemaphoreFailed(
+                           "Acquire semaphore failed! " +
+                           "Caused by: The resource is busy.",
+                           null))
+                   .build();
+
+    /** refreshFairSemaphore.lua：刷新信号量。*/
+    private static final LuaScript<Void> REFRESH_FAIR_SEMAPHORE
+        = LuaScript.<Void>builder(SEMAPHORE_OPERATOR, "refreshFairSemaphore.lua")
+                   .timeout(Duration.ofSeconds(3L))
+                   .success("SUCCESS")
+                   .failure("SEMAPHORE_NOT_FOUND", (call) ->
+                       new SemaphoreNotFound(
+                           format(
+                               "Fair semapore %s not exist in %s",
+                               call.arg(0), call.key(0)),
+                           null))
+                   .build();
+
+    /** releaseFairSemaphore.lua：释放信号量。*/
+    private static final LuaScript<Void> RELEASE_FAIR_SEMAPHORE
+        = LuaScript.<Void>builder(SEMAPHORE_OPERATOR, "releaseFairSemaphore.lua")
+                   .timeout(Duration.ofSeconds(3L))
+                   .success("SUCCESS")
+                   .failure("SEMAPHORE_TIMEOUT", (call) ->
+                       new SemaphoreNotFound(
+                           format("Semaphore: %s timeout.", call.arg(0)),
+                           null))
+                   .build();
+
+    /** Lua 脚本执行器。*/
     @Autowired
-    private LuaScriptReader luaScriptReader;
-
-    /** 执行 Lua 脚本专用 Redis 模板。*/
-    @Autowired
-    private
-    ReactiveRedisTemplate<String, LuaOperatorResult> scriptRedisTemplate;
+    private LuaScriptExecutor luaScriptExecutor;
 
     /** 组合信号量拥有者有序集合键。*/
     @Contract(pure = true)
@@ -89,39 +117,11 @@ public class FairSemaphoreImpl implements FairSemaphore
             = UUID.randomUUID().toString();
 
         return
-        this.luaScriptReader
-            .fromFile(SEMAPHORE_OPERATOR, "acquireFairSemaphore.lua")
-            .flatMap((script) ->
-                this.scriptRedisTemplate
-                    .execute(
-                        script,
-                        List.of(semaphoreName, semaphoneOwnerKey, semaphoneCountererKey),
-                        limit, timeout, identifier)
-                    .timeout(Duration.ofSeconds(5L))
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "ACQUIRE_SEMAPHORE_FAILED" ->
-                                Mono.error(
-                                    new AcquireSemaphoreFailed(
-                                        "Acquire semaphore failed! " +
-                                        "Caused by: The resource is busy.",
-                                        null
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.just(identifier);
-
-                            case null, default ->
-                                throw new IllegalStateException(
-                                    "Unexpected value: " + result.getResult()
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null));
+        this.luaScriptExecutor
+            .execute(
+                ACQUIRE_FAIR_SEMAPHORE,
+                List.of(semaphoreName, semaphoneOwnerKey, semaphoneCountererKey),
+                limit, timeout, identifier);
     }
 
     /**
@@ -136,38 +136,10 @@ public class FairSemaphoreImpl implements FairSemaphore
     refreshFairSemaphore(String semaphoreName, String identifier)
     {
         return
-        this.luaScriptReader
-            .fromFile(SEMAPHORE_OPERATOR,"refreshFairSemaphore.lua")
-            .flatMap((script) ->
-                this.scriptRedisTemplate
-                    .execute(script, List.of(semaphoreName), identifier)
-                    .timeout(Duration.ofSeconds(3L))
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "SEMAPHORE_NOT_FOUND" ->
-                                Mono.error(
-                                    new SemaphoreNotFound(
-                                        format(
-                                            "Fair semapore %s not exist in %s",
-                                            identifier, semaphoreName),
-                                        null
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                throw new IllegalStateException(
-                                    "Unexpected value: " + result.getResult()
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                REFRESH_FAIR_SEMAPHORE,
+                List.of(semaphoreName), identifier);
     }
 
     /**
@@ -185,39 +157,11 @@ public class FairSemaphoreImpl implements FairSemaphore
             = this.getSemaphoneOwnerKey(semaphoreName);
 
         return
-        this.luaScriptReader
-            .fromFile(SEMAPHORE_OPERATOR, "releaseFairSemaphore.lua")
-            .flatMap((script) ->
-                this.scriptRedisTemplate
-                    .execute(
-                        script,
-                        List.of(semaphoreName, semaphoneOwnerKey),
-                        identifier)
-                    .timeout(Duration.ofSeconds(3L))
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "SEMAPHORE_TIMEOUT" ->
-                                Mono.error(
-                                    new SemaphoreNotFound(
-                                        format("Semaphore: %s timeout.", identifier),
-                                        null
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                throw new IllegalStateException(
-                                    "Unexpected value: " + result.getResult()
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                RELEASE_FAIR_SEMAPHORE,
+                List.of(semaphoreName, semaphoneOwnerKey),
+                identifier);
     }
 
     /**
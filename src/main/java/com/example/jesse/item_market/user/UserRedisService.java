@@ -1,10 +1,16 @@
 package com.example.jesse.item_market.user;
 
+import com.example.jesse.item_market.user.dto.UserHistoryPage;
 import com.example.jesse.item_market.user.dto.UserInfo;
+import com.example.jesse.item_market.user.dto.UserNameSearchPage;
+import com.example.jesse.item_market.utils.dto.LuaBulkResult;
 import org.jetbrains.annotations.NotNull;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Map;
+
 /** 用户 Redis 操作接口类。*/
 public interface UserRedisService
 {
@@ -14,9 +20,12 @@ public interface UserRedisService
     /** 获取某个用户的最近联系人列表。*/
     Flux<String> getContactListByUUID(String uuid);
 
-    /** 获取某个用户包裹中的所有武器。*/
+    /** 获取某个用户包裹中的所有武器（每类武器按数量重复出现）。*/
     Flux<Weapons> getAllWeaponsFromInventoryByUUID(String uuid);
 
+    /** 获取某个用户包裹中每类武器的数量。*/
+    Mono<Map<Weapons, Long>> getInventoryCountsByUUID(String uuid);
+
     /** 获取某个用户上架至市场的所有武器。*/
     Flux<Weapons> getAllWeaponsFromMarketByUUID(String uuid);
 
@@ -26,6 +35,32 @@ public interface UserRedisService
     /** 获取某个用户的数据。*/
     Mono<UserInfo> getUserInfoByUUID(String uuid);
 
+    /**
+     * 从新到旧分页查询某个用户的操作历史（用户、包裹、联系人日志中与该用户有关的事件），
+     * 查询代价只与该用户自己的事件数有关，与日志流的总长度无关。
+     *
+     * @param uuid   用户 UUID
+     * @param cursor 上一页返回的游标（查询第一页时为 null）
+     * @param limit  一页最多几条事件
+     *
+     * @return 发布一页操作历史的 Mono
+     */
+    Mono<UserHistoryPage>
+    getUserHistory(String uuid, String cursor, int limit);
+
+    /**
+     * 按用户名前缀分页搜索所有用户（不区分 ASCII 字母的大小写），
+     * 查询代价只与一页的大小有关，与用户总数和页码无关。
+     *
+     * @param prefix 用户名前缀
+     * @param cursor 上一页返回的游标（查询第一页时为 null）
+     * @param limit  一页最多几个用户
+     *
+     * @return 发布一页匹配用户（用户名与 UUID）的 Mono
+     */
+    Mono<UserNameSearchPage>
+    searchUsersByNamePrefix(String prefix, String cursor, int limit);
+
     /**
      * 当用户在前端页面的最近联系人搜索框中输入若干字母时，
      * 匹配该用户最近联系人列表中所有 prefix 开头的联系人名。
@@ -59,6 +94,16 @@ public interface UserRedisService
      */
     Mono<String> addNewUser(String userName);
 
+    /**
+     * 批量创建新用户（用于数据初始化、迁移），
+     * 以流水线的方式发送，按 userNames 的顺序发布每个用户的创建结果。
+     *
+     * @param userNames 新用户名列表
+     *
+     * @return 按顺序发布每个新用户 UUID（或失败原因）的 Flux
+     */
+    Flux<LuaBulkResult<String>> addNewUsers(List<String> userNames);
+
     /**
      * 用户记录另一个用户为最近联系人，分为以下几个操作：
      *
@@ -95,6 +140,16 @@ public interface UserRedisService
      */
     Mono<Void> addWeaponToInventory(String uuid, @NotNull Weapons weapon);
 
+    /**
+     * 批量为用户的包裹添加武器，以流水线的方式发送。
+     *
+     * @param uuid    用户的 uuid
+     * @param weapons 要添加的武器
+     *
+     * @return 按 weapons 的顺序发布每次添加结果的 Flux
+     */
+    Flux<LuaBulkResult<Void>> addWeaponsToInventory(String uuid, @NotNull List<Weapons> weapons);
+
     /**
      * 用户销毁包裹中的某个武器。
      *
@@ -122,6 +177,20 @@ public interface UserRedisService
      */
     Mono<String> addWeaponToMarket(String uuid, @NotNull Weapons weapon, double price);
 
+    /**
+     * 用户将武器上架至市场，并指定上架时长，
+     * 到期后武器由清理任务下架并放回卖家包裹。
+     *
+     * @param uuid       用户的 uuid
+     * @param weapon     武器类型
+     * @param price      销售价格
+     * @param ttlSeconds 上架时长（秒，0 表示不会到期）
+     *
+     * @return 发布上架至市场的武器 UID 的 Mono
+     */
+    Mono<String>
+    addWeaponToMarket(String uuid, @NotNull Weapons weapon, double price, long ttlSeconds);
+
     /**
      * 用户从市场上下架某个武器，分为以下几个操作。
      *
@@ -0,0 +1,29 @@
+package com.example.jesse.item_market.user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/** 用户操作历史中的一条事件。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserHistoryEntry
+{
+    /** 事件所在的日志流（如：inventories:log）。*/
+    private String stream;
+
+    /** 事件在日志流中的 ID。*/
+    private String entryId;
+
+    /** 事件类型（如：WEAPON_INBOUND）。*/
+    private String event;
+
+    /** 事件的所有字段（事件已经归档并从日志流中删除时为 null）。*/
+    private Map<String, String> fields;
+
+    /** 事件是否已经归档（从日志流中删除，只能到归档库中查询）？*/
+    private boolean archived;
+}
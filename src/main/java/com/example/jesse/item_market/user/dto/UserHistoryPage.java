@@ -0,0 +1,20 @@
+package com.example.jesse.item_market.user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** 用户操作历史的一页结果。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserHistoryPage
+{
+    /** 本页的事件（从新到旧）。*/
+    private List<UserHistoryEntry> entries;
+
+    /** 下一页的游标，没有下一页时为 null。*/
+    private String nextCursor;
+}
@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.Accessors;
 
+import java.math.BigDecimal;
+
 /** 某个用户的信息。*/
 @Data
 @Accessors(chain = true)
@@ -13,7 +15,8 @@ import lombok.experimental.Accessors;
 public class UserInfo
 {
     private String userName;
-    private double userFunds;
+    /** 用户资金（元，两位小数，由 Redis 中的整数分换算而来）。*/
+    private BigDecimal userFunds;
     private String guildName;
     private String guildRole;
 }
@@ -0,0 +1,18 @@
+package com.example.jesse.item_market.user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** 用户名前缀搜索匹配到的一个用户。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserNameMatch
+{
+    /** 用户名（保留原始大小写）。*/
+    private String name;
+
+    /** 用户 UUID。*/
+    private String uuid;
+}
@@ -0,0 +1,20 @@
+package com.example.jesse.item_market.user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** 用户名前缀搜索的一页结果。*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserNameSearchPage
+{
+    /** 本页匹配到的用户（按小写用户名的字典序）。*/
+    private List<UserNameMatch> matches;
+
+    /** 下一页的游标，没有下一页时为 null。*/
+    private String nextCursor;
+}
@@ -0,0 +1,64 @@
+package com.example.jesse.item_market.user.impl;
+
+import com.example.jesse.item_market.config.OneShotMigration;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.USER_OPERATOR;
+
+/**
+ * <p>用户包裹的在线迁移任务。</p>
+ *
+ * 用户包裹原先是武器名可重复出现的列表（取出武器要 LREM，是 O(N) 的），
+ * 现在改为 武器名 -> 数量 的哈希（HINCRBY 增减，O(1)，字段数不超过武器种类数）。
+ * 修改包裹的脚本会顺便迁移当事用户的包裹，读取包裹时两种格式都能读，不需要停机；
+ * 开启 app.user.inventory-migration 后，应用启动完成时再 SCAN 一遍所有包裹，把剩下的包裹一并迁移。
+ * 整个过程在分布式锁内执行，完成后写入标记键，多个节点同时启动或者重复启动都只会迁移一次。
+ */
+@Component
+public class InventoryMigration extends OneShotMigration
+{
+    /** migrateInventory.lua：迁移一个用户的包裹，发布本次是否完成了迁移。*/
+    private static final LuaScript<Boolean> MIGRATE_INVENTORY
+        = LuaScript.<Boolean>builder(USER_OPERATOR, "migrateInventory.lua")
+                   .success("MIGRATED", (call) -> true)
+                   .success("ALREADY_MIGRATED", (call) -> false)
+                   .success("INVENTORY_NOT_FOUND", (call) -> false)
+                   .build();
+
+    /** 是否在应用启动完成时执行迁移？*/
+    @Value("${app.user.inventory-migration:false}")
+    private boolean enabled;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    public InventoryMigration() { super("InventoryMigration", 300L); }
+
+    @Override
+    protected boolean isEnabled() { return this.enabled; }
+
+    @Override
+    protected @NotNull String markerKey() { return getInventoryMigrationKey(); }
+
+    /** SCAN 所有用户包裹，逐个迁移。*/
+    @Override
+    protected @NotNull Mono<Long> migrateAll()
+    {
+        return
+        this.forEachKey(
+            getInventoryKeyPattern(), 16,
+            (inventoryKey) ->
+                this.luaScriptExecutor
+                    .execute(MIGRATE_INVENTORY, List.of(inventoryKey)));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.jesse.item_market.user.impl;
+
+import com.example.jesse.item_market.config.OneShotMigration;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.USER_OPERATOR;
+
+/**
+ * <p>用户资金的在线迁移任务。</p>
+ *
+ * 用户资金原先以浮点数元保存在用户哈希的 funds 字段上（HINCRBYFLOAT 增减），
+ * 现在改为以整数分保存在 funds-cents 字段上（HINCRBY 增减）。
+ * 交易脚本读取资金时会顺便迁移当事用户，不需要停机；
+ * 开启 app.user.funds-migration 后，应用启动完成时再 SCAN 一遍所有用户，把剩下的用户一并迁移。
+ * 整个过程在分布式锁内执行，完成后写入标记键，多个节点同时启动或者重复启动都只会迁移一次。
+ */
+@Component
+public class UserFundsMigration extends OneShotMigration
+{
+    /** migrateUserFunds.lua：迁移一个用户的资金，发布本次是否完成了迁移。*/
+    private static final LuaScript<Boolean> MIGRATE_USER_FUNDS
+        = LuaScript.<Boolean>builder(USER_OPERATOR, "migrateUserFunds.lua")
+                   .success("MIGRATED", (call) -> true)
+                   .success("ALREADY_MIGRATED", (call) -> false)
+                   .success("FUNDS_NOT_FOUND", (call) -> false)
+                   .build();
+
+    /** 是否在应用启动完成时执行迁移？*/
+    @Value("${app.user.funds-migration:false}")
+    private boolean enabled;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    public UserFundsMigration() { super("UserFundsMigration", 300L); }
+
+    @Override
+    protected boolean isEnabled() { return this.enabled; }
+
+    @Override
+    protected @NotNull String markerKey() { return getUserFundsMigrationKey(); }
+
+    /** SCAN 所有用户，逐个迁移资金。*/
+    @Override
+    protected @NotNull Mono<Long> migrateAll()
+    {
+        return
+        this.forEachKey(
+            getUserKeyPattern(), 16,
+            (userKey) ->
+                this.luaScriptExecutor
+                    .execute(MIGRATE_USER_FUNDS, List.of(userKey)));
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.jesse.item_market.user.impl;
+
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.USER_OPERATOR;
+import static com.example.jesse.item_market.utils.StreamGroupReader.readGroup;
+
+/**
+ * <p>用户操作历史索引器（单机模式）。</p>
+ *
+ * <p>
+ *     单机模式下所有用户的事件都写在共享的用户、包裹、联系人日志流中，
+ *     查询某个用户的操作历史原本需要遍历整个日志流。本类以消费组（user-history）读取这三个日志流，
+ *     为每一条带 uuid 的事件在该用户的操作历史索引（users:history:{uuid}，近似上限 max-length 条）中
+ *     记下一条引用（日志流与事件 ID），查询时只需读该用户自己的索引，再批量取回被引用的事件。
+ * </p>
+ *
+ * <p>
+ *     索引与 XACK 在同一个脚本内原子地完成，重新投递的事件不会被重复索引。
+ *     消费组第一次创建时从流的开头读取，已有的事件也会被索引。
+ *     已经被删除的用户（包括用户删除事件本身）的事件只确认不索引，删除用户时一并删除的索引不会被重新创建。
+ *     集群模式下这几个日志流本来就按用户分开（如 users:log:{uuid}），不需要索引，本类不会启动。
+ * </p>
+ */
+@Slf4j
+@Component
+public class UserHistoryIndexer implements SmartLifecycle
+{
+    /** indexUserHistory.lua：索引一条用户事件，发布本次是否索引了这条事件。*/
+    private static final LuaScript<Boolean> INDEX_USER_HISTORY
+        = LuaScript.<Boolean>builder(USER_OPERATOR, "indexUserHistory.lua")
+                   .success("SUCCESS", (call) -> true)
+                   .success("DUPLICATE", (call) -> false)
+                   .success("USER_GONE", (call) -> false)
+                   .build();
+
+    /** 用户操作历史消费组名。*/
+    public static final String HISTORY_GROUP = "user-history";
+
+    /** 一次最多读取几条事件（每个日志流）。*/
+    private static final int BATCH_SIZE = 100;
+
+    /** 没有新事件（或者读取出错）时等待多久再读。*/
+    private static final Duration IDLE_WAIT = Duration.ofSeconds(1L);
+
+    /** 是否启用用户操作历史索引？*/
+    @Value("${app.user.history.enabled:false}")
+    private boolean enabled;
+
+    /** 每个用户的操作历史索引最多保留多少条（近似）。*/
+    @Value("${app.user.history.max-length:1000}")
+    private long maxLength;
+
+    /** 本节点在消费组中的消费者名（重启后保持不变才能继续处理自己的待确认事件）。*/
+    @Value("${app.user.history.consumer-name:${HOSTNAME:user-history}}")
+    private String consumerName;
+
+    /** 字符串序列化 Redis 模板（日志流的字段都是原始字符串）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    /** 这个 Bean 是否运行标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 有事件索引失败、留在了待确认列表中的日志流，下一轮先从头索引本消费者在这些流上所有待确认的事件。*/
+    private final Set<String> retryStreams
+        = ConcurrentHashMap.newKeySet();
+
+    /** 正在执行的索引任务。*/
+    private volatile Disposable indexing;
+
+    /** 需要索引的日志流（单机模式下所有用户共享）。*/
+    private static @NotNull List<String> getIndexedStreamKeys()
+    {
+        return List.of(
+            USER_PREFIX + "log", INVENTORY_PREFIX + "log", USER_CONTACT_PREFIX + "log"
+        );
+    }
+
+    /** 启动索引任务（没有启用，或者是集群模式时什么都不做）。*/
+    @Override
+    public void start()
+    {
+        if (this.enabled && !isClusterLayout() && RUNNING.compareAndSet(false, true))
+        {
+            log.info("[SmartLifecycle] User history indexer started, consumer: {}.", this.consumerName);
+
+            this.indexing
+                = this.index()
+                      .subscribe(
+                          null,
+                          (exception) ->
+                              log.error("User history indexer stopped by error!", exception)
+                      );
+        }
+    }
+
+    /** 停止索引任务，没有确认的事件留在待确认列表中，下次启动时继续处理。*/
+    @Override
+    public void stop()
+    {
+        if (RUNNING.compareAndSet(true, false))
+        {
+            log.info("[SmartLifecycle] User history indexer stopped.");
+
+            if (this.indexing != null) {
+                this.indexing.dispose();
+            }
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 管理生命周期，令其最后被创建，最先被执行。*/
+    @Override
+    public int getPhase() { return Integer.MAX_VALUE; }
+
+    /** 为某个日志流创建消费组（流不存在时一并创建），消费组已经存在时什么都不做。*/
+    private @NotNull Mono<Void>
+    createGroup(@NotNull String streamKey)
+    {
+        final ByteBuffer rawKey
+            = ByteBuffer.wrap(streamKey.getBytes(StandardCharsets.UTF_8));
+
+        return
+        this.stringRedisTemplate
+            .execute((connection) ->
+                connection.streamCommands()
+                          .xGroupCreate(rawKey, HISTORY_GROUP, ReadOffset.from("0"), true))
+            .then()
+            .onErrorResume(
+                (exception) ->
+                    exception.getMessage() != null &&
+                    exception.getMessage().contains("BUSYGROUP"),
+                (exception) -> Mono.empty()
+            );
+    }
+
+    /** 以本消费者的身份从这些位置读取一批事件。*/
+    private @NotNull Mono<List<MapRecord<String, String, String>>>
+    readBatch(List<StreamOffset<String>> offsets)
+    {
+        return
+        readGroup(
+            this.stringRedisTemplate,
+            Consumer.from(HISTORY_GROUP, this.consumerName), BATCH_SIZE,
+            offsets)
+        .collectList();
+    }
+
+    /**
+     * 以流水线的方式索引一批事件，没有 uuid 的事件直接确认。
+     * 索引失败的事件不确认，留在待确认列表中，下一轮重新处理。
+     */
+    private @NotNull Mono<Void>
+    indexAll(@NotNull List<MapRecord<String, String, String>> records)
+    {
+        final List<MapRecord<String, String, String>> userEvents
+            = records.stream()
+                     .filter((record) -> record.getValue().get("uuid") != null)
+                     .toList();
+
+        final Mono<Void> acknowledgeOthers
+            = Flux.fromIterable(records)
+                  .filter((record) -> record.getValue().get("uuid") == null)
+                  .concatMap((record) ->
+                      this.stringRedisTemplate
+                          .<String, String>opsForStream()
+                          .acknowledge(HISTORY_GROUP, record))
+                  .then();
+
+        return
+        this.luaScriptExecutor
+            .executeAll(
+                INDEX_USER_HISTORY,
+                userEvents.stream()
+                          .map((record) ->
+                              LuaScript.Invocation.of(
+                                  List.of(
+                                      record.getStream(),
+                                      getUserHistoryKey(record.getValue().get("uuid")),
+                                      getUserKey(record.getValue().get("uuid"))),
+                                  HISTORY_GROUP, record.getId().getValue(),
+                                  record.getValue().getOrDefault("event", ""),
+                                  this.maxLength))
+                          .toList())
+            .filter((result) -> !result.isSuccess())
+            .doOnNext((result) -> {
+                final MapRecord<String, String, String> record
+                    = userEvents.get(result.getIndex());
+
+                log.warn("Index user event: {} failed!", record.getId(), result.getError());
+                this.retryStreams.add(record.getStream());
+            })
+            .then(acknowledgeOthers);
+    }
+
+    /** 索引本消费者在某个日志流上所有待确认的事件（从 afterId 之后开始，逐批向后推进）。*/
+    private @NotNull Mono<Void>
+    drainPending(String streamKey, String afterId)
+    {
+        return
+        this.readBatch(List.of(StreamOffset.create(streamKey, ReadOffset.from(afterId))))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.empty()
+                    : this.indexAll(records)
+                          .then(
+                              Mono.defer(() ->
+                                  this.drainPending(streamKey, records.getLast().getId().getValue()))));
+    }
+
+    /** 从所有日志流读取并索引一批新事件（上一轮有事件索引失败的流先重新处理待确认的事件），没有新事件时等待一小段时间。*/
+    private @NotNull Mono<Void> pollNewEvents()
+    {
+        final List<StreamOffset<String>> offsets
+            = getIndexedStreamKeys().stream()
+                                    .map((streamKey) ->
+                                        StreamOffset.create(streamKey, ReadOffset.lastConsumed()))
+                                    .toList();
+
+        final Mono<Void> pending
+            = Flux.defer(() -> {
+                  final List<String> streamKeys = List.copyOf(this.retryStreams);
+                  this.retryStreams.removeAll(streamKeys);
+
+                  return Flux.fromIterable(streamKeys);
+              })
+              .concatMap((streamKey) -> this.drainPending(streamKey, "0"))
+              .then();
+
+        return
+        pending
+            .then(this.readBatch(offsets))
+            .flatMap((records) ->
+                (records.isEmpty())
+                    ? Mono.delay(IDLE_WAIT).then()
+                    : this.indexAll(records))
+            .onErrorResume((exception) -> {
+                log.warn("Read user logs failed, retry in {} seconds.", IDLE_WAIT.getSeconds(), exception);
+
+                // 读到的一批可能只处理了一部分，下一轮先重新处理所有日志流上待确认的事件
+                this.retryStreams.addAll(getIndexedStreamKeys());
+
+                // 流或者消费组可能被删除了，重新创建后继续读取
+                return
+                Mono.delay(IDLE_WAIT)
+                    .then(
+                        Flux.fromIterable(getIndexedStreamKeys())
+                            .concatMap(this::createGroup)
+                            .then())
+                    .onErrorResume((ignore) -> Mono.empty());
+            });
+    }
+
+    /**
+     * 用户操作历史的索引任务：
+     *
+     * <ol>
+     *     <li>为每个日志流创建消费组</li>
+     *     <li>索引本消费者在每个日志流上所有待确认的事件</li>
+     *     <li>不断读取并索引新事件，直到本 Bean 停止</li>
+     * </ol>
+     */
+    public @NotNull Mono<Void> index()
+    {
+        return
+        Flux.fromIterable(getIndexedStreamKeys())
+            .concatMap((streamKey) ->
+                this.createGroup(streamKey)
+                    .then(this.drainPending(streamKey, "0")))
+            .then(
+                this.pollNewEvents()
+                    .repeat(RUNNING::get)
+                    .then());
+    }
+}
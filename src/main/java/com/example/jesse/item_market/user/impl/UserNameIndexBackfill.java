@@ -0,0 +1,81 @@
+package com.example.jesse.item_market.user.impl;
+
+import com.example.jesse.item_market.config.OneShotMigration;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.USER_OPERATOR;
+
+/**
+ * <p>用户名前缀搜索索引的一次性回填任务。</p>
+ *
+ * 索引上线之前创建的用户不在用户名前缀搜索索引（user-name:name-index）中，
+ * 开启 app.user.name-index-backfill 后，应用启动完成时 HSCAN 一遍用户名哈希，
+ * 每批若干个用户名以一次脚本调用写入索引（脚本会跳过期间被删除的用户）。
+ * 整个过程在分布式锁内执行，完成后写入标记键，多个节点同时启动或者重复启动都只会回填一次。
+ */
+@Component
+public class UserNameIndexBackfill extends OneShotMigration
+{
+    /** backfillUserNameIndex.lua：将一批用户名写入索引，发布本次新写入的用户数。*/
+    private static final LuaScript<Long> BACKFILL_USER_NAME_INDEX
+        = LuaScript.<Long>builder(USER_OPERATOR, "backfillUserNameIndex.lua")
+                   .success("SUCCESS", (call) -> call.result().getLong(0))
+                   .build();
+
+    /** 每次脚本调用写入多少个用户名。*/
+    private static final int BATCH_SIZE = 500;
+
+    /** 是否在应用启动完成时执行回填？*/
+    @Value("${app.user.name-index-backfill:false}")
+    private boolean enabled;
+
+    /** 字符串序列化 Redis 模板（用户名哈希以原始字符串保存）。*/
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    /** Lua 脚本执行器。*/
+    @Autowired
+    private LuaScriptExecutor luaScriptExecutor;
+
+    public UserNameIndexBackfill() { super("UserNameIndexBackfill", 300L); }
+
+    @Override
+    protected boolean isEnabled() { return this.enabled; }
+
+    @Override
+    protected @NotNull String markerKey() { return getUserNameIndexBackfillKey(); }
+
+    /** HSCAN 用户名哈希，每 BATCH_SIZE 个用户名写入一次索引。*/
+    @Override
+    protected @NotNull Mono<Long> migrateAll()
+    {
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForHash()
+            .scan(
+                getUserHashKey(),
+                ScanOptions.scanOptions().count(1000L).build())
+            .buffer(BATCH_SIZE)
+            .concatMap((entries) ->
+                this.luaScriptExecutor
+                    .execute(
+                        BACKFILL_USER_NAME_INDEX,
+                        List.of(getUserHashKey(), getUserNameIndexKey()),
+                        entries.stream()
+                               .flatMap((entry) -> Stream.of(entry.getKey(), entry.getValue()))
+                               .toArray()))
+            .reduce(0L, Long::sum);
+    }
+}
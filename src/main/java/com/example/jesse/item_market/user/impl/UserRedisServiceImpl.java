@@ -1,30 +1,44 @@
 package com.example.jesse.item_market.user.impl;
 
+import com.example.jesse.item_market.config.PlainValueReader;
 import com.example.jesse.item_market.errorhandle.ProjectRedisOperatorException;
+import com.example.jesse.item_market.guild.utils.PrefixRange;
 import com.example.jesse.item_market.user.UserRedisService;
 import com.example.jesse.item_market.user.Weapons;
+import com.example.jesse.item_market.user.dto.UserHistoryEntry;
+import com.example.jesse.item_market.user.dto.UserHistoryPage;
 import com.example.jesse.item_market.user.dto.UserInfo;
+import com.example.jesse.item_market.user.dto.UserNameMatch;
+import com.example.jesse.item_market.user.dto.UserNameSearchPage;
+import com.example.jesse.item_market.utils.FundsCents;
 import com.example.jesse.item_market.utils.LimitRandomElement;
-import com.example.jesse.item_market.utils.LuaScriptReader;
-import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.LuaScript;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import com.example.jesse.item_market.utils.dto.LuaBulkResult;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Locale;
-import java.util.NoSuchElementException;
+import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static com.example.jesse.item_market.errorhandle.RedisErrorHandle.redisGenericErrorHandel;
 import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static com.example.jesse.item_market.utils.LuaScriptOperatorType.CLUSTER_OPERATOR;
 import static com.example.jesse.item_market.utils.LuaScriptOperatorType.USER_OPERATOR;
 import static com.example.jesse.item_market.utils.UUIDGenerator.generateAsSting;
 import static java.lang.String.format;
@@ -38,19 +52,203 @@ public class UserRedisServiceImpl implements UserRedisService
     private final static List<Weapons> WEAPONS
         = Arrays.asList(Weapons.values());
 
-    /** Lua 脚本读取工具。*/
+    /** 最近联系人前缀补全最多返回几个联系人名。*/
+    private static final int CONTACT_AUTO_COMPLETE_LIMIT = 10;
+
+    /** 用户名前缀搜索索引成员中的分隔符（小写用户名\0用户名\0UUID）。*/
+    private static final char USER_NAME_INDEX_SEPARATOR = '\0';
+
+    /** 新用户的初始资金（单位：分）。*/
+    private static final long NEW_USER_FUNDS_CENTS = 1_250_000L;
+
+    /** addNewUser.lua：创建新用户，发布新用户的 UUID。*/
+    private static final LuaScript<String> ADD_NEW_USER
+        = LuaScript.<String>builder(USER_OPERATOR, "addNewUser.lua")
+                   .success("SUCCESS", (call) -> call.result().getString(0))
+                   .failure("DUPLICATE_USER", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s is exist!", call.arg(4))))
+                   .build();
+
+    /** addNewContact.lua：添加最近联系人。*/
+    private static final LuaScript<Void> ADD_NEW_CONTACT
+        = LuaScript.<Void>builder(USER_OPERATOR, "addNewContact.lua")
+                   .timeout(Duration.ofSeconds(3L))
+                   .success("SUCCESS")
+                   .failure("SELF_ADDED", (call) ->
+                       new IllegalArgumentException("Self add is forbidden!"))
+                   .build();
+
+    /** removeContact.lua：删除最近联系人。*/
+    private static final LuaScript<Void> REMOVE_CONTACT
+        = LuaScript.<Void>builder(USER_OPERATOR, "removeContact.lua")
+                   .timeout(Duration.ofSeconds(3L))
+                   .success("SUCCESS")
+                   .failure("CONCAT_NAME_NOT_FOUND", (call) ->
+                       new NoSuchElementException(
+                           format("Concat name: %s not found!", call.arg(1))))
+                   .build();
+
+    /** addWeaponToInventory.lua：为用户的包裹添加一件武器。*/
+    private static final LuaScript<Void> ADD_WEAPON_TO_INVENTORY
+        = LuaScript.<Void>builder(USER_OPERATOR, "addWeaponToInventory.lua")
+                   .success("SUCCESS")
+                   .failure("USER_NOT_FOUND", (call) ->
+                       new IllegalArgumentException(
+                           format("User key: %s not found!", call.key(0))))
+                   .build();
+
+    /** destroyWeaponFromInventory.lua：销毁包裹中的某个武器。*/
+    private static final LuaScript<Void> DESTROY_WEAPON_FROM_INVENTORY
+        = LuaScript.<Void>builder(USER_OPERATOR, "destroyWeaponFromInventory.lua")
+                   .success("SUCCESS")
+                   .failure("WEAPON_NOT_FOUND", (call) ->
+                       new NoSuchElementException(
+                           format(
+                               "Weapon %s not exist in user %s's inventory!",
+                               call.arg(1), call.arg(0))))
+                   .build();
+
+    /** addWeaponToMarket.lua：将武器上架至市场，发布武器 ID。*/
+    private static final LuaScript<String> ADD_WEAPON_TO_MARKET
+        = LuaScript.<String>builder(USER_OPERATOR, "addWeaponToMarket.lua")
+                   .success("SUCCESS", (call) -> call.result().getString(0))
+                   .failure("INVENTORY_REM_FAILED", (call) ->
+                       new NoSuchElementException(
+                           format(
+                               "Weapon: %s not exist in User: %s 's inventory.",
+                               call.arg(2), call.arg(1))))
+                   .build();
+
+    /** removeWeaponFromMarket.lua：从市场上下架某个武器。*/
+    private static final LuaScript<Void> REMOVE_WEAPON_FROM_MARKET
+        = LuaScript.<Void>builder(USER_OPERATOR, "removeWeaponFromMarket.lua")
+                   .success("SUCCESS")
+                   .failure("WEAPON_NOT_FOUND", (call) ->
+                       new NoSuchElementException(
+                           format(
+                               "Weapon: %s of User: %s not found in market!",
+                               call.arg(1), call.arg(0))))
+                   .build();
+
+    /** deleteUser.lua：删除用户。*/
+    private static final LuaScript<Void> DELETE_USER
+        = LuaScript.<Void>builder(USER_OPERATOR, "deleteUser.lua")
+                   .success("SUCCESS")
+                   .failure("USER_NOT_FOUND", (call) ->
+                       new NoSuchElementException(
+                           format("User key: %s not exits!", call.key(0))))
+                   .failure("INVALID_USER_KEY", (call) ->
+                       new IllegalArgumentException(
+                           format("Failed to extract UUID from %s.", call.key(0))))
+                   .failure("SELLER_INDEX_CHANGED", (call) ->
+                       new ConcurrentModificationException(
+                           format("Seller index: %s changed during delete.", call.key(11))))
+                   .build();
+
+    /** reserveUserName.lua：集群模式下创建用户的第一步，占用用户名。*/
+    private static final LuaScript<Void> RESERVE_USER_NAME
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "reserveUserName.lua")
+                   .success("SUCCESS")
+                   .failure("DUPLICATE_USER", (call) ->
+                       new IllegalArgumentException(
+                           format("User: %s is exist!", call.arg(0))))
+                   .build();
+
+    /** releaseUserName.lua：集群模式下创建用户失败时，释放占用的用户名。*/
+    private static final LuaScript<Void> RELEASE_USER_NAME
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "releaseUserName.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** createUserData.lua：集群模式下创建用户的第二步，写入用户数据，发布新用户的 UUID。*/
+    private static final LuaScript<String> CREATE_USER_DATA
+        = LuaScript.<String>builder(CLUSTER_OPERATOR, "createUserData.lua")
+                   .success("SUCCESS", (call) -> call.result().getString(0))
+                   .failure("DUPLICATE_UUID", (call) ->
+                       new IllegalStateException(
+                           format("User key: %s is exist!", call.key(0))))
+                   .build();
+
+    /** takeFromInventory.lua：集群模式下上架武器的第一步，从卖家包裹中取出武器。*/
+    private static final LuaScript<Void> TAKE_FROM_INVENTORY
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "takeFromInventory.lua")
+                   .success("SUCCESS")
+                   .failure("INVENTORY_REM_FAILED", (call) ->
+                       new NoSuchElementException(
+                           format(
+                               "Weapon: %s not exist in User: %s 's inventory.",
+                               call.arg(1), call.arg(0))))
+                   .build();
+
+    /** createListing.lua：集群模式下上架武器的第二步，在市场上登记武器，发布武器 ID。*/
+    private static final LuaScript<String> CREATE_LISTING
+        = LuaScript.<String>builder(CLUSTER_OPERATOR, "createListing.lua")
+                   .success("SUCCESS", (call) -> call.result().getString(0))
+                   .build();
+
+    /** returnToInventory.lua：集群模式下上架武器失败时，把武器放回卖家包裹。*/
+    private static final LuaScript<Void> RETURN_TO_INVENTORY
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "returnToInventory.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** delistWeapon.lua：集群模式下下架武器（或者删除用户时清理在售武器）的第一步，从市场上删除武器。*/
+    private static final LuaScript<Void> DELIST_WEAPON
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "delistWeapon.lua")
+                   .success("SUCCESS")
+                   .failure("WEAPON_NOT_FOUND", (call) ->
+                       new NoSuchElementException(
+                           format(
+                               "Weapon: %s of User: %s not found in market!",
+                               call.arg(1), call.arg(0))))
+                   .failure("WEAPON_RESERVED", (call) ->
+                       new ConcurrentModificationException(
+                           format("Weapon: %s is reserved by a pending trade.", call.arg(2))))
+                   .build();
+
+    /** deleteUserData.lua：集群模式下删除用户的第二步，删除用户自己槽里的数据，发布 [用户名, 公会名, 公会身份]。*/
+    private static final LuaScript<List<String>> DELETE_USER_DATA
+        = LuaScript.<List<String>>builder(CLUSTER_OPERATOR, "deleteUserData.lua")
+                   .success("SUCCESS", (call) ->
+                       List.of(
+                           call.result().getString(0),
+                           call.result().getString(1),
+                           call.result().getString(2)))
+                   .failure("USER_NOT_FOUND", (call) ->
+                       new NoSuchElementException(
+                           format("User key: %s not exits!", call.key(0))))
+                   .failure("SELLER_INDEX_CHANGED", (call) ->
+                       new ConcurrentModificationException(
+                           format("Seller index: %s changed during delete.", call.key(4))))
+                   .build();
+
+    /** removeGuildMember.lua：集群模式下删除用户时，把它从公会的成员列表中移除。*/
+    private static final LuaScript<Void> REMOVE_GUILD_MEMBER
+        = LuaScript.<Void>builder(CLUSTER_OPERATOR, "removeGuildMember.lua")
+                   .success("SUCCESS")
+                   .build();
+
+    /** 集群模式下用户一侧已经完成之后，其他槽上的后续步骤（放回包裹、释放用户名、离开公会）的重试策略。*/
+    private static final Retry FOLLOW_UP_RETRY
+        = Retry.backoff(3L, Duration.ofMillis(100L));
+
+    /** 默认的上架时长（秒，0 表示上架的武器不会到期）。*/
+    @Value("${app.market.listing-ttl-seconds:0}")
+    private long defaultListingTtlSeconds;
+
+    /** Lua 脚本执行器。*/
     @Autowired
-    private LuaScriptReader luaScriptReader;
+    private LuaScriptExecutor luaScriptExecutor;
 
-    /** 通用 Redis 模板。*/
+    /** 字符串序列化 Redis 模板（用户、包裹与市场数据都以原始字符串保存）。*/
     @Autowired
     private
-    ReactiveRedisTemplate<String, Object> redisTemplate;
+    ReactiveRedisTemplate<String, String> stringRedisTemplate;
 
-    /** 专门为 LUA 脚本配置的 Redis 模板。*/
+    /** 兼容旧编码的读取器（迁移完成之前用户与市场数据可能还带着 JSON 引号）。*/
     @Autowired
-    private
-    ReactiveRedisTemplate<String, LuaOperatorResult> redisScriptTemplate;
+    private PlainValueReader plainValueReader;
 
     /**
      * 获取所有用户的 UUID
@@ -60,59 +258,242 @@ public class UserRedisServiceImpl implements UserRedisService
     public Flux<String> getAllUserUUID()
     {
         return
-        this.redisTemplate
-            .opsForHash()
+        this.stringRedisTemplate
+            .<String, String>opsForHash()
             .values(getUserHashKey())
-            .map(String::valueOf);
+            .map(this.plainValueReader::member);
     }
 
-    /** 获取某个用户的最近联系人列表。*/
+    /**
+     * 获取某个用户的最近联系人列表（最近联系的在前）。
+     * 还没有迁移的最近联系人（列表）按原来的顺序读取。
+     */
     @Override
     public Flux<String>
     getContactListByUUID(String uuid)
     {
+        final String contactKey = getContactKey(uuid);
+
         return
-        this.redisTemplate.opsForList()
-            .range(getContactKey(uuid), 0L, -1L)
-            .map((name) -> (String) name)
+        this.stringRedisTemplate
+            .opsForZSet()
+            .reverseRange(contactKey, Range.unbounded())
             .timeout(Duration.ofSeconds(3L))
+            .onErrorResume(
+                (exception) ->
+                    exception.getMessage() != null &&
+                    exception.getMessage().contains("WRONGTYPE"),
+                (exception) ->
+                    this.stringRedisTemplate
+                        .opsForList()
+                        .range(contactKey, 0L, -1L)
+                        .map(this.plainValueReader::member))
             .onErrorResume((exception) ->
                 redisGenericErrorHandel(exception, null));
     }
 
     /**
      * 当用户在前端页面的最近联系人搜索框中输入若干字母时，
-     * 匹配该用户最近联系人列表中所有 prefix 开头的联系人名。
-     * 由于最近联系人列表长度有限（不超过 175），所以效率不会慢。
+     * 匹配该用户最近联系人中所有 prefix 开头（ASCII 字母不区分大小写）的联系人名，至多返回
+     * {@link #CONTACT_AUTO_COMPLETE_LIMIT} 个。
+     * 匹配在 Redis 中以 ZRANGEBYLEX ... LIMIT 查询联系人字典序索引完成，不再把整个列表读到应用里过滤；
+     * 还没有迁移的最近联系人没有字典序索引，仍然读出列表后过滤。
+     * 前缀与索引成员都按 {@link #normalizeUserName} 规范化（与脚本中的 string.lower() 一致）。
      *
      * @param uuid   搜索哪个用户的最近联系人列表？
      * @param prefix 用户在搜索框输入了什么？
      *
-     * @return 发布匹配该用户最近联系人列表中所有 prefix 开头的联系人名数据的 Mono
+     * @return 发布匹配该用户最近联系人列表中所有 prefix 开头的联系人名数据的 Flux
      */
     @Override
     public Flux<String>
     fetchAutoCompleteContact(String uuid, String prefix)
     {
+        final String lowerPrefix
+            = (prefix == null) ? null : normalizeUserName(prefix);
+
+        final Flux<String> legacyMatches
+            = this.stringRedisTemplate
+                  .opsForList()
+                  .range(getContactKey(uuid), 0L, -1L)
+                  .map(this.plainValueReader::member)
+                  .filter((contact) ->
+                      normalizeUserName(contact).startsWith(lowerPrefix))
+                  .take(CONTACT_AUTO_COMPLETE_LIMIT);
+
+        return
+        PrefixRange.create(lowerPrefix)
+            .flatMapMany((prefixRange) ->
+                this.stringRedisTemplate
+                    .opsForZSet()
+                    .rangeByLex(
+                        getContactLexKey(uuid), prefixRange.toLexRange(),
+                        Limit.limit().count(CONTACT_AUTO_COMPLETE_LIMIT)))
+            .map(UserRedisServiceImpl::parseContactLexMember)
+            .switchIfEmpty(
+                this.stringRedisTemplate
+                    .type(getContactKey(uuid))
+                    .flatMapMany((type) ->
+                        (type == DataType.LIST) ? legacyMatches : Flux.empty()))
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) ->
+                redisGenericErrorHandel(exception, null));
+    }
+
+    /**
+     * 规范化用户名：只把 ASCII 大写字母转成小写，
+     * 与脚本中的 string.lower()（按字节处理）结果一致，且不改变用户名的长度。
+     */
+    private static @NotNull String
+    normalizeUserName(@NotNull String userName)
+    {
+        final char[] normalized = userName.toCharArray();
+
+        for (int index = 0; index < normalized.length; ++index)
+        {
+            if (normalized[index] >= 'A' && normalized[index] <= 'Z') {
+                normalized[index] += 'a' - 'A';
+            }
+        }
+
+        return new String(normalized);
+    }
+
+    /**
+     * 从联系人字典序索引的成员（小写联系人名:联系人名）中取出联系人名。
+     * 小写联系人名与联系人名等长，按长度拆分，联系人名中即使含有 ':' 也能正确取出。
+     */
+    private static @NotNull String
+    parseContactLexMember(@NotNull String member) {
+        return member.substring(member.length() / 2 + 1);
+    }
+
+    /**
+     * 从用户名前缀搜索索引的成员（小写用户名\0用户名\0UUID）中解析出用户名与 UUID。
+     * UUID 中没有分隔符，小写用户名又与用户名等长，所以用户名中即使含有分隔符也能正确解析。
+     */
+    private static @NotNull UserNameMatch
+    parseUserNameIndexMember(@NotNull String member)
+    {
+        final int    uuidStart = member.lastIndexOf(USER_NAME_INDEX_SEPARATOR);
+        final String names     = member.substring(0, uuidStart);
+
+        return new UserNameMatch(
+            names.substring(names.length() / 2 + 1),
+            member.substring(uuidStart + 1));
+    }
+
+    /** 把一页最后一个索引成员编码成下一页的游标（成员中含有分隔符，不便直接放进 URL）。*/
+    private static @NotNull String
+    encodeUserNameCursor(@NotNull String member)
+    {
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString(member.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 按用户名前缀分页搜索用户（不区分 ASCII 字母的大小写）。
+     * 在用户名前缀搜索索引上以 ZRANGEBYLEX ... LIMIT 0 limit 查询，
+     * 翻页时以上一页的最后一个成员作为开区间的下界，而不是用 OFFSET 跳过前面的成员，
+     * 所以无论索引中有多少用户、翻到第几页，一次查询的代价都是 O(log(N) + limit)。
+     */
+    @Override
+    public Mono<UserNameSearchPage>
+    searchUsersByNamePrefix(String prefix, String cursor, int limit)
+    {
+        final String normalizedPrefix
+            = (prefix == null) ? null : normalizeUserName(prefix);
+
         return
-        this.redisTemplate
-            .opsForList()
-            .range(getContactKey(uuid), 0 , -1)
+        PrefixRange.create(normalizedPrefix)
+            .flatMap((prefixRange) -> {
+                Range<String> range = prefixRange.toLexRange();
+
+                if (cursor != null)
+                {
+                    final String after
+                        = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+                    // 游标必须是本次搜索的前缀范围内的成员，否则下界会越过前缀范围
+                    if (!after.startsWith(normalizedPrefix)) {
+                        throw new IllegalArgumentException(format("Invalid search cursor: %s!", cursor));
+                    }
+
+                    range = prefixRange.toLexRangeAfter(after);
+                }
+
+                return
+                this.stringRedisTemplate
+                    .opsForZSet()
+                    .rangeByLex(getUserNameIndexKey(), range, Limit.limit().count(limit))
+                    .collectList()
+                    .map((members) ->
+                        new UserNameSearchPage(
+                            members.stream()
+                                   .map(UserRedisServiceImpl::parseUserNameIndexMember)
+                                   .toList(),
+                            (members.size() < limit)
+                                ? null
+                                : encodeUserNameCursor(members.getLast())));
+            })
             .timeout(Duration.ofSeconds(5L))
-            .map((res) -> ((String) res).toLowerCase(Locale.ROOT))
-            .filter((contact) ->
-                (contact.startsWith(prefix.toLowerCase(Locale.ROOT))))
             .onErrorResume((exception) ->
                 redisGenericErrorHandel(exception, null));
     }
 
+    /**
+     * 获取某个用户包裹中每类武器的数量。
+     * 包裹是 武器名 -> 数量 的哈希，还没有迁移的包裹（武器名可重复出现的列表）读出后在这里计数。
+     */
+    @Override
+    public Mono<Map<Weapons, Long>>
+    getInventoryCountsByUUID(String uuid)
+    {
+        final String inventoryKey = getInventoryKey(uuid);
+
+        final Mono<Map<Weapons, Long>> counts
+            = this.stringRedisTemplate
+                  .<String, String>opsForHash()
+                  .entries(inventoryKey)
+                  .collect(
+                      () -> new EnumMap<>(Weapons.class),
+                      (map, entry) ->
+                          map.put(Weapons.valueOf(entry.getKey()), Long.parseLong(entry.getValue())));
+
+        final Mono<Map<Weapons, Long>> legacyCounts
+            = this.stringRedisTemplate
+                  .opsForList()
+                  .range(inventoryKey, 0L, -1L)
+                  .collect(
+                      () -> new EnumMap<>(Weapons.class),
+                      (map, weaponName) ->
+                          map.merge(
+                              Weapons.valueOf(this.plainValueReader.member(weaponName)),
+                              1L, Long::sum));
+
+        return
+        counts.timeout(Duration.ofSeconds(5L))
+              .onErrorResume(
+                  (exception) ->
+                      exception.getMessage() != null &&
+                      exception.getMessage().contains("WRONGTYPE"),
+                  (exception) -> legacyCounts)
+              .onErrorResume((exception) ->
+                  redisGenericErrorHandel(exception, null));
+    }
+
+    /** 获取某个用户包裹中的所有武器（每类武器按数量重复出现）。*/
     @Override
     public Flux<Weapons>
     getAllWeaponsFromInventoryByUUID(String uuid)
     {
-        return this.redisTemplate.opsForList()
-            .range(getInventoryKey(uuid), 0L, -1L)
-            .timeout(Duration.ofSeconds(5L))
+        return
+        this.getInventoryCountsByUUID(uuid)
+            .flatMapMany((counts) ->
+                Flux.fromIterable(counts.entrySet()))
+            .concatMap((count) ->
+                Flux.fromIterable(Collections.nCopies(count.getValue().intValue(), count.getKey())))
             .switchIfEmpty(
                 Mono.error(
                     new ProjectRedisOperatorException(
@@ -120,28 +501,50 @@ public class UserRedisServiceImpl implements UserRedisService
                     )
                 )
             )
-            .map((weapon) -> Weapons.valueOf((String) weapon))
             .onErrorResume((exception) ->
                 redisGenericErrorHandel(exception, null));
     }
 
+    /** 从卖家索引中读取某个用户所有在售武器的 ID。*/
+    private @NotNull Flux<String>
+    getListedWeaponIds(String uuid)
+    {
+        return
+        this.stringRedisTemplate
+            .opsForSet()
+            .members(getSellerIndexKey(uuid))
+            .map(this.plainValueReader::member);
+    }
+
+    /**
+     * 通过卖家索引读取某个用户所有在售武器的 [武器 ID, 武器名]，
+     * 索引中已经失效的武器（哈希不存在或卖家不符）会被跳过。
+     */
+    private @NotNull Flux<Map.Entry<String, String>>
+    getListedWeapons(String uuid)
+    {
+        return
+        this.getListedWeaponIds(uuid)
+            .flatMapSequential((weaponId) ->
+                this.plainValueReader
+                    .multiGet(
+                        getWeaponHashKey(weaponId),
+                        List.of("weapon-name", "seller"))
+                    .filter((result) ->
+                        result.getFirst() != null && uuid.equals(result.get(1)))
+                    .map((result) ->
+                        Map.entry(weaponId, result.getFirst())));
+    }
+
     /** 获取某个用户上架至市场的所有武器。*/
     @Override
     public Flux<Weapons>
     getAllWeaponsFromMarketByUUID(String uuid)
     {
         return
-        this.redisTemplate
-            .scan(
-                ScanOptions.scanOptions()
-                    .match("market:weapon-market:weapons:*")
-                    .build())
+        this.getListedWeapons(uuid)
             .timeout(Duration.ofSeconds(5L))
-            .flatMap((key) ->
-                this.redisTemplate.opsForHash()
-                    .multiGet(key, List.of("\"weapon-name\"", "\"seller\""))
-                    .filter((result) -> result.get(1).equals(uuid))
-                    .map((res) -> Weapons.valueOf((String) res.getFirst())))
+            .map((weapon) -> Weapons.valueOf(weapon.getValue()))
             .onErrorResume((exception) ->
                 redisGenericErrorHandel(exception, null));
     }
@@ -152,22 +555,31 @@ public class UserRedisServiceImpl implements UserRedisService
     getAllWeaponIdsFromMarketByUUID(String uuid)
     {
         return
-        this.redisTemplate
-            .scan(
-                ScanOptions.scanOptions()
-                    .match("market:weapon-market:weapons:*")
-                    .build())
+        this.getListedWeapons(uuid)
             .timeout(Duration.ofSeconds(5L))
-            .flatMap((key) ->
-                this.redisTemplate.opsForHash()
-                    .get(key, "\"seller\"")
-                    .filter(sellerId -> sellerId.equals(uuid))
-                    .map(ignore ->
-                        key.substring(key.lastIndexOf(":") + 1)))
+            .map(Map.Entry::getKey)
             .onErrorResume((exception) ->
                 redisGenericErrorHandel(exception, null));
     }
 
+    /**
+     * 将用户哈希中读到的资金换算成金额，
+     * 还没有迁移的用户只有旧版的浮点数资金字段，按元四舍五入到分。
+     */
+    private static BigDecimal
+    toUserFunds(String fundsCents, String legacyFunds)
+    {
+        if (fundsCents != null) {
+            return FundsCents.toAmount(Long.parseLong(fundsCents));
+        }
+
+        if (legacyFunds != null) {
+            return FundsCents.toAmount(FundsCents.fromAmount(legacyFunds));
+        }
+
+        return null;
+    }
+
     /** 获取某个用户的数据。*/
     @Override
     public Mono<UserInfo>
@@ -176,7 +588,7 @@ public class UserRedisServiceImpl implements UserRedisService
         final String userKey = getUserKey(uuid);
 
         return
-        this.redisTemplate
+        this.stringRedisTemplate
             .hasKey(userKey)
             .flatMap((exists) ->
                 (!exists)
@@ -185,22 +597,138 @@ public class UserRedisServiceImpl implements UserRedisService
                             format("User: %s not found!", uuid)
                         )
                     )
-                    : this.redisTemplate.opsForHash()
+                    : this.plainValueReader
                           .multiGet(
                               userKey,
-                              List.of("\"name\"", "\"funds\"", "\"guild\"", "\"guild-role\""))
+                              List.of(
+                                  USER_NAME_FIELD, USER_FUNDS_CENTS_FIELD, USER_FUNDS_FIELD,
+                                  USER_GUILD_FIELD, USER_GUILD_ROLE_FIELD))
                         .map((result) ->
                             new UserInfo()
-                                .setUserName((String) result.getFirst())
-                                .setUserFunds((double) result.get(1))
-                                .setGuildName((String) result.get(2))
-                                .setGuildRole((String) result.get(3)))
+                                .setUserName(result.getFirst())
+                                .setUserFunds(toUserFunds(result.get(1), result.get(2)))
+                                .setGuildName(result.get(3))
+                                .setGuildRole(result.get(4)))
             )
             .timeout(Duration.ofSeconds(5L))
             .onErrorResume((exception) ->
                 redisGenericErrorHandel(exception, null));
     }
 
+    /** 流 ID 的格式（操作历史的游标就是一条记录的 ID）。*/
+    private static final Pattern STREAM_ID_PATTERN = Pattern.compile("^\\d+-\\d+$");
+
+    /** 比较两条流记录的先后（新的在前）。*/
+    private static final Comparator<MapRecord<String, String, String>> NEWEST_FIRST
+        = Comparator.<MapRecord<String, String, String>>comparingLong((record) -> record.getId().getTimestamp())
+                    .thenComparingLong((record) -> record.getId().getSequence())
+                    .reversed();
+
+    /** 在游标之前（更旧）的所有记录，没有游标时为所有记录。*/
+    private static @NotNull Range<String>
+    olderThan(String cursor)
+    {
+        return (cursor == null)
+            ? Range.unbounded()
+            : Range.of(Range.Bound.unbounded(), Range.Bound.exclusive(cursor));
+    }
+
+    /**
+     * 取回操作历史索引中的一条引用指向的事件，
+     * 事件已经归档（从日志流中删除）时只返回引用本身。
+     */
+    private @NotNull Mono<UserHistoryEntry>
+    resolveHistoryReference(@NotNull MapRecord<String, String, String> reference)
+    {
+        final String stream  = reference.getValue().get("stream");
+        final String entryId = reference.getValue().get("id");
+        final String event   = reference.getValue().get("event");
+
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForStream()
+            .range(stream, Range.closed(entryId, entryId))
+            .next()
+            .map((record) ->
+                new UserHistoryEntry(stream, entryId, event, record.getValue(), false))
+            .defaultIfEmpty(new UserHistoryEntry(stream, entryId, event, null, true));
+    }
+
+    /**
+     * 单机模式：从该用户的操作历史索引中读一页引用（见 {@link UserHistoryIndexer}），
+     * 再以流水线的方式一次性取回所有被引用的事件。游标为索引记录的 ID。
+     */
+    private @NotNull Mono<UserHistoryPage>
+    getIndexedUserHistory(String uuid, String cursor, int limit)
+    {
+        return
+        this.stringRedisTemplate
+            .<String, String>opsForStream()
+            .reverseRange(getUserHistoryKey(uuid), olderThan(cursor), Limit.limit().count(limit))
+            .collectList()
+            .flatMap((references) ->
+                Flux.fromIterable(references)
+                    .flatMapSequential(this::resolveHistoryReference)
+                    .collectList()
+                    .map((entries) ->
+                        new UserHistoryPage(
+                            entries,
+                            (references.size() < limit)
+                                ? null
+                                : references.getLast().getId().getValue())));
+    }
+
+    /**
+     * 集群模式：用户、包裹、联系人日志本来就按用户分开，
+     * 各取游标之前最新的一页后按事件 ID 归并。游标为事件 ID。
+     */
+    private @NotNull Mono<UserHistoryPage>
+    getPerUserLogHistory(String uuid, String cursor, int limit)
+    {
+        return
+        Flux.just(getUserLogKey(uuid), getInventoryLogKey(uuid), getContactLogKey(uuid))
+            .flatMapSequential((streamKey) ->
+                this.stringRedisTemplate
+                    .<String, String>opsForStream()
+                    .reverseRange(streamKey, olderThan(cursor), Limit.limit().count(limit)))
+            .collectSortedList(NEWEST_FIRST)
+            .map((records) -> {
+                final List<MapRecord<String, String, String>> page
+                    = records.subList(0, Math.min(limit, records.size()));
+
+                return
+                new UserHistoryPage(
+                    page.stream()
+                        .map((record) ->
+                            new UserHistoryEntry(
+                                record.getStream(), record.getId().getValue(),
+                                record.getValue().get("event"), record.getValue(), false))
+                        .toList(),
+                    (page.size() < limit) ? null : page.getLast().getId().getValue());
+            });
+    }
+
+    /** 从新到旧分页查询某个用户的操作历史。*/
+    @Override
+    public Mono<UserHistoryPage>
+    getUserHistory(String uuid, String cursor, int limit)
+    {
+        if (cursor != null && !STREAM_ID_PATTERN.matcher(cursor).matches())
+        {
+            return Mono.error(
+                new IllegalArgumentException(format("Invalid history cursor: %s!", cursor))
+            );
+        }
+
+        return
+        ((isClusterLayout())
+            ? this.getPerUserLogHistory(uuid, cursor, limit)
+            : this.getIndexedUserHistory(uuid, cursor, limit))
+            .timeout(Duration.ofSeconds(5L))
+            .onErrorResume((exception) ->
+                redisGenericErrorHandel(exception, null));
+    }
+
     /**
      * 创建一个新用户，并为它随机挑选几件武器放入包裹，
      * 分为以下几个操作：
@@ -234,68 +762,165 @@ public class UserRedisServiceImpl implements UserRedisService
                 );
             }
 
-            final String uuid          = generateAsSting();
-            final String userKey       = getUserKey(uuid);
-            final String userHashKey   = getUserHashKey();
-            final String inventoryKey  = getInventoryKey(uuid);
-            final float NEW_USER_FUNDS = 12500.00F;
-            final String weaponsString
-                = LimitRandomElement.getRandomLimit(WEAPONS, 6)
-                        .stream()
-                        .map(Weapons::getItemName)
-                        .collect(Collectors.joining(" "));
-
-                return this.luaScriptReader
-                    .fromFile(USER_OPERATOR, "addNewUser.lua")
-                    .flatMap((script) ->
-                        this.redisScriptTemplate
-                            .execute(
-                                script,
-                                List.of(userKey, userHashKey, inventoryKey),
-                                USER_NAME_FIELD,
-                                USER_FUNDS_FIELD,
-                                USER_GUILD_FIELD,
-                                USER_GUILD_ROLE_FIELD,
-                                userName,
-                                NEW_USER_FUNDS,
-                                weaponsString)
-                            .timeout(Duration.ofSeconds(5L))
-                            .next()
-                            .flatMap((result) -> {
-                                if ("DUPLICATE_USER".equals(result.getResult()))
-                                {
-                                    return Mono.error(
-                                        new IllegalArgumentException(
-                                            format("User: %s is exist!", userName)
-                                        )
-                                    );
-                                }
-                                else if ("SUCCESS".equals(result.getResult())) {
-                                    return Mono.just(uuid);
-                                }
-                                else
-                                {
-                                    return Mono.error(
-                                        new IllegalStateException(
-                                            "Unexpected result: " + result.getResult()
-                                        )
-                                    );
-                                }
-                            })
+            if (isClusterLayout()) {
+                return this.addNewUserInCluster(userName);
+            }
+
+            final LuaScript.Invocation invocation
+                = this.newUserInvocation(userName);
+
+            return this.luaScriptExecutor
+                .execute(ADD_NEW_USER, invocation.keys(), invocation.args());
+        });
+    }
+
+    /** 为新用户随机挑选几件初始武器（空格分割的字符串）。*/
+    private static @NotNull String randomInitWeapons()
+    {
+        return
+        LimitRandomElement.getRandomLimit(WEAPONS, 6)
+            .stream()
+            .map(Weapons::getItemName)
+            .collect(Collectors.joining(" "));
+    }
+
+    /** 组合 addNewUser.lua 的一次调用（随机生成 UUID 和初始武器）。*/
+    private @NotNull LuaScript.Invocation
+    newUserInvocation(String userName)
+    {
+        final String uuid          = generateAsSting();
+        final String userKey       = getUserKey(uuid);
+        final String userHashKey   = getUserHashKey();
+        final String inventoryKey  = getInventoryKey(uuid);
+
+        return LuaScript.Invocation.of(
+            List.of(
+                userKey, userHashKey, inventoryKey,
+                getUserNameLogKey(), getUserLogKey(uuid), getInventoryLogKey(uuid),
+                getUserNameIndexKey()),
+            USER_NAME_FIELD,
+            USER_FUNDS_CENTS_FIELD,
+            USER_GUILD_FIELD,
+            USER_GUILD_ROLE_FIELD,
+            userName,
+            NEW_USER_FUNDS_CENTS,
+            randomInitWeapons()
+        );
+    }
+
+    /**
+     * 集群模式下创建新用户。用户名哈希与用户数据不在同一个槽上，
+     * 所以拆成两步执行：先占用用户名，再写入用户数据，
+     * 第二步失败时释放占用的用户名。
+     *
+     * @param userName 新用户名
+     *
+     * @return 发布新用户 UUID 的 Mono
+     */
+    private @NotNull Mono<String>
+    addNewUserInCluster(String userName)
+    {
+        final String uuid = generateAsSting();
+        final List<String> userNameKeys
+            = List.of(getUserHashKey(), getUserNameLogKey(), getUserNameIndexKey());
+
+        return
+        this.luaScriptExecutor
+            .execute(RESERVE_USER_NAME, userNameKeys, userName, uuid)
+            .then(
+                this.luaScriptExecutor
+                    .execute(
+                        CREATE_USER_DATA,
+                        List.of(
+                            getUserKey(uuid), getInventoryKey(uuid),
+                            getUserLogKey(uuid), getInventoryLogKey(uuid)),
+                        USER_NAME_FIELD,
+                        USER_FUNDS_CENTS_FIELD,
+                        USER_GUILD_FIELD,
+                        USER_GUILD_ROLE_FIELD,
+                        userName,
+                        NEW_USER_FUNDS_CENTS,
+                        randomInitWeapons())
+                    .onErrorResume((exception) ->
+                        this.luaScriptExecutor
+                            .execute(RELEASE_USER_NAME, userNameKeys, userName, uuid)
+                            .then(Mono.error(exception))));
+    }
+
+    /**
+     * 批量创建新用户，以流水线的方式发送，按 userNames 的顺序发布每个用户的创建结果，
+     * 某个用户创建失败（比如用户名重复）不影响其他用户。
+     *
+     * @param userNames 新用户名列表
+     *
+     * @return 按顺序发布每个新用户 UUID（或失败原因）的 Flux
+     */
+    @Override
+    public Flux<LuaBulkResult<String>>
+    addNewUsers(@NotNull List<String> userNames)
+    {
+        return Flux.defer(() -> {
+            if (userNames.stream().anyMatch((name) -> name == null || name.trim().isEmpty()))
+            {
+                return Flux.error(
+                    new IllegalArgumentException("User name never be null or empty!")
+                );
+            }
+
+            if (isClusterLayout())
+            {
+                return
+                Flux.range(0, userNames.size())
+                    .flatMapSequential((index) ->
+                        this.addNewUserInCluster(userNames.get(index))
+                            .map((uuid) -> LuaBulkResult.success(index, uuid))
                             .onErrorResume((exception) ->
-                                redisGenericErrorHandel(exception, null)
-                            )
-                    );
+                                Mono.just(LuaBulkResult.failure(index, exception))),
+                        LuaScriptExecutor.DEFAULT_MAX_IN_FLIGHT, 1);
+            }
+
+            return
+            this.luaScriptExecutor
+                .executeAll(
+                    ADD_NEW_USER,
+                    userNames.stream()
+                             .map(this::newUserInvocation)
+                             .toList());
         });
     }
 
+    /**
+     * 批量为用户的包裹添加武器，以流水线的方式发送，按 weapons 的顺序发布每次添加的结果。
+     *
+     * @param uuid    用户的 uuid
+     * @param weapons 要添加的武器
+     *
+     * @return 按顺序发布每次添加结果的 Flux
+     */
+    @Override
+    public Flux<LuaBulkResult<Void>>
+    addWeaponsToInventory(String uuid, @NotNull List<Weapons> weapons)
+    {
+        final List<String> keys
+            = List.of(getUserKey(uuid), getInventoryKey(uuid), getInventoryLogKey(uuid));
+
+        return
+        this.luaScriptExecutor
+            .executeAll(
+                ADD_WEAPON_TO_INVENTORY,
+                weapons.stream()
+                       .map((weapon) ->
+                           LuaScript.Invocation.of(keys, weapon.getItemName()))
+                       .toList());
+    }
+
     /**
      * 用户记录另一个用户为最近联系人，分为以下几个操作：
      *
      * <ol>
-     *     <li>检查要添加的用户十是否存在与列表中，如果存在要移除</li>
-     *     <li>往列表中添加指定用户</li>
-     *     <li>倘若列表长度超过上限（假设是 100 个），则移除列表末尾的联系人</li>
+     *     <li>以当前时间为分数添加指定用户（已经存在时只是更新分数，移到最前面）</li>
+     *     <li>新的联系人同时登记到联系人字典序索引中</li>
+     *     <li>倘若联系人数量超过上限，则按排名移除最旧的联系人</li>
      * </ol>
      *
      * @param uuid         哪个用户要添加一条最近联系人？
@@ -309,43 +934,15 @@ public class UserRedisServiceImpl implements UserRedisService
     {
         final String userKey       = getUserKey(uuid);
         final String contactKey    = getContactKey(uuid);
-        final String contactLogKey = getContactLogKey();
+        final String contactLogKey = getContactLogKey(uuid);
         final int USER_MAX_CONTACT = 10;
 
         return
-        this.luaScriptReader
-            .fromFile(USER_OPERATOR, "addNewContact.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script, List.of(userKey, contactKey, contactLogKey),
-                        uuid, contactName, USER_MAX_CONTACT)
-                    .next()
-                    .timeout(Duration.ofSeconds(3L))
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "SELF_ADDED" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        "Self add is forbidden!"
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                ADD_NEW_CONTACT,
+                List.of(userKey, contactKey, getContactLexKey(uuid), contactLogKey),
+                uuid, contactName, USER_MAX_CONTACT);
     }
 
     /**
@@ -361,43 +958,14 @@ public class UserRedisServiceImpl implements UserRedisService
     removeContact(String uuid, String contactName)
     {
         final String contactKey    = getContactKey(uuid);
-        final String contactLogKey = getContactLogKey();
+        final String contactLogKey = getContactLogKey(uuid);
 
         return
-        this.luaScriptReader
-            .fromFile(USER_OPERATOR, "removeContact.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        List.of(contactKey, contactLogKey),
-                        uuid, contactName)
-                    .next()
-                    .timeout(Duration.ofSeconds(3L))
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "CONCAT_NAME_NOT_FOUND" ->
-                                Mono.error(
-                                    new NoSuchElementException(
-                                        format("Concat name: %s not found!", contactName)
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                REMOVE_CONTACT,
+                List.of(contactKey, getContactLexKey(uuid), contactLogKey),
+                uuid, contactName);
     }
 
     /**
@@ -413,40 +981,11 @@ public class UserRedisServiceImpl implements UserRedisService
     addWeaponToInventory(String uuid, @NotNull Weapons weapon)
     {
         return 
-        this.luaScriptReader
-            .fromFile(USER_OPERATOR, "addWeaponToInventory.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script, 
-                        List.of(getUserKey(uuid), getInventoryKey(uuid)), 
-                        weapon.getItemName())
-                    .next()
-                    .timeout(Duration.ofSeconds(5L))
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "USER_NOT_FOUND" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("uuid: %s not found!", uuid)
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        }
-                    )
-            )
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                ADD_WEAPON_TO_INVENTORY,
+                List.of(getUserKey(uuid), getInventoryKey(uuid), getInventoryLogKey(uuid)),
+                weapon.getItemName());
     }
 
     /**
@@ -465,42 +1004,11 @@ public class UserRedisServiceImpl implements UserRedisService
         final String userKey      = getUserKey(uuid);
 
         return
-        this.luaScriptReader
-            .fromFile(USER_OPERATOR, "destroyWeaponFromInventory.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
-                    .execute(
-                        script,
-                        List.of(inventoryKey, userKey),
-                        uuid, weapon.getItemName())
-                    .next()
-                    .timeout(Duration.ofSeconds(5L))
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "WEAPON_NOT_FOUND" ->
-                                Mono.error(
-                                    new NoSuchElementException(
-                                        format(
-                                            "Weapon %s not exist in user %s's inventory!",
-                                            weapon, uuid
-                                        )
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        }
-                    ))
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+        this.luaScriptExecutor
+            .execute(
+                DESTROY_WEAPON_FROM_INVENTORY,
+                List.of(inventoryKey, userKey, getInventoryLogKey(uuid)),
+                uuid, weapon.getItemName());
     }
 
     /**
@@ -520,8 +1028,33 @@ public class UserRedisServiceImpl implements UserRedisService
      */
     @Override
     public Mono<String>
-    addWeaponToMarket(String uuid, @NotNull Weapons weapon, double price)
+    addWeaponToMarket(String uuid, @NotNull Weapons weapon, double price) {
+        return this.addWeaponToMarket(uuid, weapon, price, this.defaultListingTtlSeconds);
+    }
+
+    /**
+     * 用户将武器上架至市场，并指定上架时长，
+     * 设置了上架时长的武器同时登记在上架到期时间表中。
+     *
+     * @param uuid       用户的 uuid
+     * @param weapon     武器类型
+     * @param price      销售价格
+     * @param ttlSeconds 上架时长（秒，0 表示不会到期）
+     *
+     * @return 发布上架至市场的武器 UID 的 Mono
+     */
+    @Override
+    public Mono<String>
+    addWeaponToMarket(
+        String uuid, @NotNull Weapons weapon, double price, long ttlSeconds)
     {
+        if (ttlSeconds < 0L)
+        {
+            return Mono.error(
+                new IllegalArgumentException(
+                    format("Listing TTL: %d must not less than 0!", ttlSeconds)));
+        }
+
         return Mono.defer(() -> {
             final String weaponKey      = getNewWeaponHashKey();
             final String weaponPriceKey = getWeaponPriceZsetKey();
@@ -531,48 +1064,68 @@ public class UserRedisServiceImpl implements UserRedisService
             final String weaponUUID
                 = weaponKey.substring(weaponKey.lastIndexOf(":") + 1);
 
-            return this.luaScriptReader
-                .fromFile(USER_OPERATOR, "addWeaponToMarket.lua")
-                .flatMap((script) ->
-                    this.redisScriptTemplate
-                        .execute(
-                            script,
-                            List.of(weaponKey, weaponPriceKey, inventoryKey, userKey),
-                            weaponUUID, uuid, weapon.getItemName(), price)
-                        .timeout(Duration.ofSeconds(5L))
-                        .next()
-                        .flatMap((result) ->
-                            switch (result.getResult()) 
-                            {
-                                case "INVENTORY_REM_FAILED" ->
-                                    Mono.error(
-                                        new NoSuchElementException(
-                                            format(
-                                                "Weapon: %s not exist in User: %s 's inventory.",
-                                                weapon.getItemName(), uuid
-                                            )
-                                        )
-                                    );
-
-                                case "SUCCESS" -> Mono.just(weaponUUID);
-
-                                case null, default ->
-                                    Mono.error(
-                                        new IllegalStateException(
-                                            "Unexpected result: " + result.getResult()
-                                        )
-                                    );
-                            })
-                        .onErrorResume((exception) ->
-                            redisGenericErrorHandel(exception, null))
+            if (isClusterLayout())
+            {
+                return this.addWeaponToMarketInCluster(
+                    uuid, weapon, price, ttlSeconds, weaponKey, weaponUUID
                 );
+            }
+
+            return this.luaScriptExecutor
+                .execute(
+                    ADD_WEAPON_TO_MARKET,
+                    List.of(
+                        weaponKey, weaponPriceKey, inventoryKey, userKey,
+                        getInventoryLogKey(uuid), getMarketLogKey(),
+                        getSellerIndexKey(uuid),
+                        getWeaponTypePriceZsetKey(weapon.getItemName()),
+                        getListingExpiryZsetKey()),
+                    weaponUUID, uuid, weapon.getItemName(), price, ttlSeconds);
         });
     }
 
+    /**
+     * 集群模式下将武器上架至市场。卖家包裹与市场不在同一个槽上，
+     * 所以拆成两步执行：先从包裹中取出武器，再在市场上登记，
+     * 第二步失败时把武器放回卖家包裹。
+     */
+    private @NotNull Mono<String>
+    addWeaponToMarketInCluster(
+        String uuid, @NotNull Weapons weapon, double price, long ttlSeconds,
+        String weaponKey, String weaponUUID)
+    {
+        final List<String> inventoryKeys
+            = List.of(
+                getUserKey(uuid), getInventoryKey(uuid),
+                getInventoryLogKey(uuid), getSellerIndexKey(uuid));
+
+        return
+        this.luaScriptExecutor
+            .execute(
+                TAKE_FROM_INVENTORY, inventoryKeys,
+                uuid, weapon.getItemName(), weaponUUID)
+            .then(
+                this.luaScriptExecutor
+                    .execute(
+                        CREATE_LISTING,
+                        List.of(
+                            weaponKey, getWeaponPriceZsetKey(), getMarketLogKey(),
+                            getWeaponTypePriceZsetKey(weapon.getItemName()),
+                            getListingExpiryZsetKey()),
+                        weaponUUID, uuid, weapon.getItemName(), price, ttlSeconds)
+                    .onErrorResume((exception) ->
+                        this.luaScriptExecutor
+                            .execute(
+                                RETURN_TO_INVENTORY, inventoryKeys,
+                                uuid, weapon.getItemName(), weaponUUID)
+                            .then(Mono.error(exception))));
+    }
+
     /**
      * 用户从市场上下架某个武器，分为以下几个操作。
      *
      * <ol>
+     *     <li>通过卖家索引找到该用户在售的一件同名武器</li>
      *     <li>移除对应用户的武器在市场中的数据</li>
      *     <li>重新将武器放回对应用户的包裹中</li>
      * </ol>
@@ -591,35 +1144,63 @@ public class UserRedisServiceImpl implements UserRedisService
         final String inventoryKey   = getInventoryKey(uuid);
 
         return
-        this.luaScriptReader
-            .fromFile(USER_OPERATOR, "removeWeaponFromMarket.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate
+        this.getListedWeapons(uuid)
+            .filter((listed) -> listed.getValue().equals(weapon.getItemName()))
+            .next()
+            .switchIfEmpty(
+                Mono.error(
+                    new NoSuchElementException(
+                        format(
+                            "Weapon: %s of User: %s not found in market!",
+                            weapon.getItemName(), uuid))))
+            .flatMap((listed) -> {
+                if (isClusterLayout()) {
+                    return this.removeWeaponFromMarketInCluster(uuid, weapon, listed.getKey());
+                }
+
+                return
+                this.luaScriptExecutor
                     .execute(
-                        script,
-                        List.of(userKey, weaponPriceKey, inventoryKey),
-                        uuid, weapon.getItemName())
-                    .next()
-                    .timeout(Duration.ofSeconds(5L))
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "SUCCESS" -> Mono.empty();
-
-                            case "WEAPON_NOT_FOUND" ->
-                                Mono.error(new NoSuchElementException());
-
-                            case null, default ->
-                                Mono.error(
-                                    new IllegalStateException(
-                                        "Unexpected result: " + result.getResult()
-                                    )
-                                );
-                        }
-                    ))
-            .onErrorResume((exception) ->
-                redisGenericErrorHandel(exception, null))
-            .then();
+                        REMOVE_WEAPON_FROM_MARKET,
+                        List.of(
+                            userKey, weaponPriceKey, inventoryKey,
+                            getMarketLogKey(), getInventoryLogKey(uuid),
+                            getSellerIndexKey(uuid), getWeaponHashKey(listed.getKey()),
+                            getWeaponTypePriceZsetKey(weapon.getItemName())),
+                        uuid, weapon.getItemName(), listed.getKey());
+            });
+    }
+
+    /**
+     * 集群模式下从市场上下架武器。市场与卖家包裹不在同一个槽上，
+     * 所以拆成两步执行：先从市场上删除武器，再放回卖家包裹（同时移出卖家索引）。
+     * 武器已经离开市场，第二步失败时只能重试，重试用尽后记录错误。
+     */
+    private @NotNull Mono<Void>
+    removeWeaponFromMarketInCluster(String uuid, @NotNull Weapons weapon, String weaponId)
+    {
+        return
+        this.luaScriptExecutor
+            .execute(
+                DELIST_WEAPON,
+                List.of(
+                    getWeaponHashKey(weaponId), getWeaponPriceZsetKey(),
+                    getWeaponTypePriceZsetKey(weapon.getItemName()),
+                    getListingExpiryZsetKey(), getMarketLogKey()),
+                uuid, weapon.getItemName(), weaponId, "WEAPON_OUTBOUND")
+            .then(
+                this.luaScriptExecutor
+                    .execute(
+                        RETURN_TO_INVENTORY,
+                        List.of(
+                            getUserKey(uuid), getInventoryKey(uuid),
+                            getInventoryLogKey(uuid), getSellerIndexKey(uuid)),
+                        uuid, weapon.getItemName(), weaponId)
+                    .retryWhen(FOLLOW_UP_RETRY)
+                    .doOnError((exception) ->
+                        log.error(
+                            "Weapon: {} delisted but not returned to seller: {}!",
+                            weaponId, uuid, exception)));
     }
 
     /**
@@ -633,6 +1214,9 @@ public class UserRedisServiceImpl implements UserRedisService
      * </ol>
      *
      * <strong>上述操作会放在 Lua 脚本里面执行，确保原子性。</strong>
+     * 所有武器类型的价格表，以及用户在售的武器（由调用方从卖家索引中读出）都作为 KEYS 传入，
+     * 若脚本执行前索引发生了变化，重新读取索引后重试。
+     * 集群模式下这些键分属不同的槽，拆成几步执行（见 {@link #deleteUserInCluster}）。
      *
      * @param uuid 用户的 uuid
      *
@@ -641,50 +1225,146 @@ public class UserRedisServiceImpl implements UserRedisService
     @Override
     public Mono<Void> deleteUser(String uuid)
     {
+        if (isClusterLayout()) {
+            return this.deleteUserInCluster(uuid);
+        }
+
         final String userKey       = getUserKey(uuid);
         final String userHashKey   = getUserHashKey();
         final String inventoryKey  = getInventoryKey(uuid);
         final String contactsKey   = getContactKey(uuid);
-        final String contactLogKey = getContactLogKey();
+        final String contactLogKey = getContactLogKey(uuid);
 
-        return 
-        this.luaScriptReader
-            .fromFile(USER_OPERATOR, "deleteUser.lua")
-            .flatMap((script) ->
-                this.redisScriptTemplate.execute(
-                    script,
-                    List.of(userKey, userHashKey, inventoryKey, contactsKey, contactLogKey),
-                    USER_NAME_FIELD, USER_FUNDS_FIELD)
-                    .timeout(Duration.ofSeconds(5L))
-                    .next()
-                    .flatMap((result) ->
-                        switch (result.getResult())
-                        {
-                            case "USER_NOT_FOUND" ->
-                                Mono.error(
-                                    new NoSuchElementException(
-                                        format("UUID: %s not exits!", uuid)
-                                    )
-                                );
-
-                            case "INVALID_USER_KEY" ->
-                                Mono.error(
-                                    new IllegalArgumentException(
-                                        format("Failed to extract UUID from %s.", userKey)
-                                    )
-                                );
-
-                            case "SUCCESS" -> Mono.empty();
-
-                            case null, default -> Mono.error(
-                                new IllegalStateException(
-                                    "Unexpected result: " + result.getResult()
-                                )
-                            );
-                        })
-                    .onErrorResume((exception) ->
-                        redisGenericErrorHandel(exception, null))
-                    .then()
-            );
+        final List<String> fixedKeys
+            = new ArrayList<>(List.of(
+                userKey, userHashKey, inventoryKey, contactsKey, contactLogKey,
+                getUserNameLogKey(), getWeaponPriceZsetKey(), getMarketLogKey(),
+                getInventoryLogKey(uuid), getGuildLogKey(), getUserLogKey(uuid),
+                getSellerIndexKey(uuid), getContactLexKey(uuid), getUserNameIndexKey(),
+                getUserHistoryKey(uuid)));
+
+        final List<String> typeBookKeys = getAllWeaponTypePriceZsetKeys();
+        fixedKeys.addAll(typeBookKeys);
+
+        return
+        this.getListedWeaponIds(uuid)
+            .map((weaponId) -> getWeaponHashKey(weaponId))
+            .collectList()
+            .flatMap((weaponKeys) -> {
+                final List<String> keys = new ArrayList<>(fixedKeys);
+                keys.addAll(weaponKeys);
+
+                return
+                this.luaScriptExecutor
+                    .execute(
+                        DELETE_USER, keys,
+                        USER_NAME_FIELD, USER_FUNDS_CENTS_FIELD, getGuildKeyPrefix(),
+                        typeBookKeys.size());
+            })
+            .retryWhen(
+                Retry.max(3L)
+                     .filter((exception) ->
+                         exception instanceof ConcurrentModificationException));
+    }
+
+    /**
+     * 集群模式下删除用户。用户数据、市场、用户名哈希与公会分别在四个槽上，拆成以下几步执行：
+     *
+     * <ol>
+     *     <li>读取卖家索引，逐件从市场上删除用户在售的武器（{weapon-market} 槽）</li>
+     *     <li>核对卖家索引没有变化后，删除用户的数据、包裹、联系人与索引（{uuid} 槽）</li>
+     *     <li>释放用户名（{user-name} 槽）</li>
+     *     <li>用户是公会的普通成员时，把它从公会的成员列表中移除（{guild} 槽）</li>
+     * </ol>
+     *
+     * 前两步遇到正在被交易预留的武器或者卖家索引发生了变化时，从第一步开始重试；
+     * 用户数据删除之后，后两步只能重试，重试用尽后记录错误。
+     */
+    private @NotNull Mono<Void> deleteUserInCluster(String uuid)
+    {
+        final List<String> userKeys
+            = List.of(
+                getUserKey(uuid), getInventoryKey(uuid),
+                getContactKey(uuid), getContactLexKey(uuid),
+                getSellerIndexKey(uuid), getUserHistoryKey(uuid),
+                getContactLogKey(uuid), getInventoryLogKey(uuid), getUserLogKey(uuid));
+
+        final Mono<List<String>> deleteUserData
+            = this.getListedWeaponIds(uuid)
+                  .collectList()
+                  .flatMap((weaponIds) ->
+                      Flux.fromIterable(weaponIds)
+                          .concatMap((weaponId) -> this.delistForDeletedUser(uuid, weaponId))
+                          .then(
+                              Mono.defer(() -> {
+                                  final List<Object> args = new ArrayList<>();
+                                  args.add(USER_NAME_FIELD);
+                                  args.addAll(weaponIds);
+
+                                  return
+                                  this.luaScriptExecutor
+                                      .execute(DELETE_USER_DATA, userKeys, args.toArray());
+                              })))
+                  .retryWhen(
+                      Retry.max(3L)
+                           .filter((exception) ->
+                               exception instanceof ConcurrentModificationException));
+
+        return
+        deleteUserData
+            .flatMap((userData) -> {
+                final String userName  = userData.get(0);
+                final String guildName = userData.get(1);
+                final String guildRole = userData.get(2);
+
+                final Mono<Void> releaseUserName
+                    = this.luaScriptExecutor
+                          .execute(
+                              RELEASE_USER_NAME,
+                              List.of(getUserHashKey(), getUserNameLogKey(), getUserNameIndexKey()),
+                              userName, uuid);
+
+                final Mono<Void> leaveGuild
+                    = ("---".equals(guildName) || "Leader".equals(guildRole))
+                        ? Mono.empty()
+                        : this.luaScriptExecutor
+                              .execute(
+                                  REMOVE_GUILD_MEMBER,
+                                  List.of(getGuildKey(guildName), getGuildLogKey()),
+                                  uuid, guildName, userName);
+
+                return
+                releaseUserName
+                    .then(leaveGuild)
+                    .retryWhen(FOLLOW_UP_RETRY)
+                    .doOnError((exception) ->
+                        log.error(
+                            "User: {} deleted but name or guild membership not released!",
+                            uuid, exception));
+            });
+    }
+
+    /**
+     * 删除用户时从市场上删除它的一件在售武器，
+     * 卖家索引中已经失效的武器（哈希不存在或卖家不符）直接跳过。
+     */
+    private @NotNull Mono<Void>
+    delistForDeletedUser(String uuid, String weaponId)
+    {
+        return
+        this.plainValueReader
+            .multiGet(getWeaponHashKey(weaponId), List.of("weapon-name", "seller"))
+            .filter((result) ->
+                result.getFirst() != null && uuid.equals(result.get(1)))
+            .flatMap((result) ->
+                this.luaScriptExecutor
+                    .execute(
+                        DELIST_WEAPON,
+                        List.of(
+                            getWeaponHashKey(weaponId), getWeaponPriceZsetKey(),
+                            getWeaponTypePriceZsetKey(result.getFirst()),
+                            getListingExpiryZsetKey(), getMarketLogKey()),
+                        uuid, result.getFirst(), weaponId, "WEAPON_DELETE")
+                    .onErrorResume(NoSuchElementException.class, (ignore) -> Mono.empty()));
     }
 }
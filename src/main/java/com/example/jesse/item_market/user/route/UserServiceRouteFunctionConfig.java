@@ -26,10 +26,12 @@ public class UserServiceRouteFunctionConfig
         RouterFunctions
             .route()
             .GET(GET_ALL_USER_UUIDS,              this.userService::findAllUserUUID)
+            .GET(SEARCH_USERS_BY_NAME,            this.userService::searchUsersByNamePrefix)
             .GET(GET_USER_CONTACTS,               this.userService::findContactListByUUID)
             .GET(GET_USER_INVENTORY,              this.userService::findAllWeaponsFromInventoryByUUID)
             .GET(GET_USER_MARKET_LISTINGS,        this.userService::findAllWeaponsFromMarketByUUID)
             .GET(GET_USER_MARKET_LISTING_IDS,     this.userService::findAllWeaponIdsFromMarketByUUID)
+            .GET(GET_USER_HISTORY,                this.userService::findUserHistoryByUUID)
             .GET(GET_USER_INFO,                   this.userService::findUserInfoByUUID)
             .POST(CREATE_USER,                    this.userService::createNewUser)
             .POST(ADD_CONTACT,                    this.userService::addNewContact)
@@ -21,6 +21,9 @@ public class UserServiceURIConfig
     /** 用户 UUID 列表 */
     public static final String USER_UUIDS = USERS + "/uuids";
 
+    /** 按用户名前缀搜索用户 */
+    public static final String USER_SEARCH = USERS + "/search";
+
     /** 用户联系人 */
     @Contract(pure = true)
     public static @NotNull String
@@ -70,13 +73,22 @@ public class UserServiceURIConfig
         return userMarketListings(userId) + "/{weaponName}";
     }
 
+    /** 用户操作历史 */
+    @Contract(pure = true)
+    public static @NotNull String
+    userHistory(String userId) {
+        return user(userId) + "/history";
+    }
+
     // 路由常量（用于路由配置）
     public static final String GET_ALL_USER_UUIDS           = USER_UUIDS;
+    public static final String SEARCH_USERS_BY_NAME         = USER_SEARCH;
     public static final String GET_USER_INFO                = user("{userId}");
     public static final String GET_USER_CONTACTS            = userContacts("{userId}");
     public static final String GET_USER_INVENTORY           = userInventory("{userId}");
     public static final String GET_USER_MARKET_LISTINGS     = userMarketListings("{userId}");
     public static final String GET_USER_MARKET_LISTING_IDS  = userMarketListings("{userId}") + "/ids";
+    public static final String GET_USER_HISTORY             = userHistory("{userId}");
     public static final String CREATE_USER                  = USERS;
     public static final String ADD_CONTACT                  = userContacts("{userId}");
     public static final String REMOVE_CONTACT               = userContact("{userId}", "{contactName}");
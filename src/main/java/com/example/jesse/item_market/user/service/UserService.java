@@ -31,6 +31,14 @@ public interface UserService
     Mono<ServerResponse>
     findUserInfoByUUID(ServerRequest request);
 
+    /** 从新到旧分页查询某个用户的操作历史。*/
+    Mono<ServerResponse>
+    findUserHistoryByUUID(ServerRequest request);
+
+    /** 按用户名前缀分页搜索所有用户。*/
+    Mono<ServerResponse>
+    searchUsersByNamePrefix(ServerRequest request);
+
     /** 创建一个新用户，并为它随机挑选几件武器放入包裹。*/
     Mono<ServerResponse>
     createNewUser(ServerRequest request);
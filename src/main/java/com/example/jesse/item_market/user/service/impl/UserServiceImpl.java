@@ -1,5 +1,6 @@
 package com.example.jesse.item_market.user.service.impl;
 
+import com.example.jesse.item_market.guild.utils.CreatePrefixRangeFailed;
 import com.example.jesse.item_market.response.ResponseBuilder;
 import com.example.jesse.item_market.user.UserRedisService;
 import com.example.jesse.item_market.user.Weapons;
@@ -267,6 +268,142 @@ public class UserServiceImpl implements UserService
             );
     }
 
+    /** 操作历史一页默认几条事件。*/
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 20;
+
+    /** 操作历史一页最多几条事件。*/
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    /**
+     * 从新到旧分页查询某个用户的操作历史，
+     * 查询参数 cursor（上一页返回的游标）与 size（默认 20，最多 100）均为可选。
+     */
+    @Override
+    public Mono<ServerResponse>
+    findUserHistoryByUUID(ServerRequest request)
+    {
+        return
+        prasePathVariable(request, "userId")
+            .flatMap((uuid) -> {
+                final int pageSize
+                    = request.queryParam("size")
+                             .map(Integer::parseInt)
+                             .orElse(DEFAULT_HISTORY_PAGE_SIZE);
+
+                if (pageSize < 1 || pageSize > MAX_HISTORY_PAGE_SIZE)
+                {
+                    throw new IllegalArgumentException(
+                        String.format("Parameter: [size] must between 1 and %d!", MAX_HISTORY_PAGE_SIZE)
+                    );
+                }
+
+                return
+                this.userRedisService
+                    .getUserHistory(uuid, request.queryParam("cursor").orElse(null), pageSize)
+                    .flatMap((page) ->
+                        this.responseBuilder
+                            .OK(
+                                page,
+                                String.format(
+                                    "Find %d history entries of user: %s.",
+                                    page.getEntries().size(), uuid)
+                            ))
+                    .onErrorResume(
+                        IllegalArgumentException.class,
+                        (e) ->
+                            this.responseBuilder
+                                .BAD_REQUEST(e.getMessage(), e))
+                    .onErrorResume((exception) ->
+                        this.responseBuilder
+                            .INTERNAL_SERVER_ERROR(
+                                String.format("Find history of user: %s failed!", uuid),
+                                exception
+                            )
+                    );
+            })
+            .onErrorResume(
+                NumberFormatException.class,
+                (e) ->
+                    this.responseBuilder
+                        .BAD_REQUEST("Invalid number format for parameter: size", e)
+            )
+            .onErrorResume(
+                IllegalArgumentException.class,
+                (e) ->
+                    this.responseBuilder
+                        .BAD_REQUEST(e.getMessage(), e)
+            );
+    }
+
+    /** 用户名前缀搜索一页默认几个用户。*/
+    private static final int DEFAULT_NAME_SEARCH_PAGE_SIZE = 20;
+
+    /** 用户名前缀搜索一页最多几个用户。*/
+    private static final int MAX_NAME_SEARCH_PAGE_SIZE = 100;
+
+    /**
+     * 按用户名前缀分页搜索所有用户（不区分 ASCII 字母的大小写），
+     * 查询参数 prefix 必填，cursor（上一页返回的游标）与 size（默认 20，最多 100）均为可选。
+     */
+    @Override
+    public Mono<ServerResponse>
+    searchUsersByNamePrefix(ServerRequest request)
+    {
+        return
+        praseRequestParam(request, "prefix")
+            .flatMap((prefix) -> {
+                final int pageSize
+                    = request.queryParam("size")
+                             .map(Integer::parseInt)
+                             .orElse(DEFAULT_NAME_SEARCH_PAGE_SIZE);
+
+                if (pageSize < 1 || pageSize > MAX_NAME_SEARCH_PAGE_SIZE)
+                {
+                    throw new IllegalArgumentException(
+                        String.format("Parameter: [size] must between 1 and %d!", MAX_NAME_SEARCH_PAGE_SIZE)
+                    );
+                }
+
+                return
+                this.userRedisService
+                    .searchUsersByNamePrefix(prefix, request.queryParam("cursor").orElse(null), pageSize)
+                    .flatMap((page) ->
+                        this.responseBuilder
+                            .OK(
+                                page,
+                                String.format(
+                                    "Find %d users with name prefix: %s.",
+                                    page.getMatches().size(), prefix)
+                            ))
+                    .onErrorResume(
+                        (exception) ->
+                            exception instanceof IllegalArgumentException ||
+                            exception instanceof CreatePrefixRangeFailed,
+                        (e) ->
+                            this.responseBuilder
+                                .BAD_REQUEST(e.getMessage(), e))
+                    .onErrorResume((exception) ->
+                        this.responseBuilder
+                            .INTERNAL_SERVER_ERROR(
+                                String.format("Search users with name prefix: %s failed!", prefix),
+                                exception
+                            )
+                    );
+            })
+            .onErrorResume(
+                NumberFormatException.class,
+                (e) ->
+                    this.responseBuilder
+                        .BAD_REQUEST("Invalid number format for parameter: size", e)
+            )
+            .onErrorResume(
+                IllegalArgumentException.class,
+                (e) ->
+                    this.responseBuilder
+                        .BAD_REQUEST(e.getMessage(), e)
+            );
+    }
+
     /** 创建一个新用户，并为它随机挑选几件武器放入包裹。*/
     @Override
     public Mono<ServerResponse>
@@ -509,9 +646,19 @@ public class UserServiceImpl implements UserService
             final Weapons weapon = params.getT2();
             final double  price  = params.getT3();
 
+            // 上架时长（秒）可选，不传时使用默认的上架时长
+            final Mono<String> addToMarket
+                = request.queryParam("ttlSeconds")
+                         .map(Long::parseLong)
+                         .map((ttlSeconds) ->
+                             this.userRedisService
+                                 .addWeaponToMarket(uuid, weapon, price, ttlSeconds))
+                         .orElseGet(() ->
+                             this.userRedisService
+                                 .addWeaponToMarket(uuid, weapon, price));
+
             return
-            this.userRedisService
-                .addWeaponToMarket(uuid, weapon, price)
+            addToMarket
                 .flatMap((weaponId) ->
                     this.responseBuilder
                         .OK(
@@ -529,6 +676,12 @@ public class UserServiceImpl implements UserService
                         this.responseBuilder
                             .NOT_FOUND(exception.getMessage(), exception)
                 )
+                .onErrorResume(
+                    IllegalArgumentException.class,
+                    (exception) ->
+                        this.responseBuilder
+                            .BAD_REQUEST(exception.getMessage(), exception)
+                )
                 .onErrorResume(
                     (exception) -> 
                         this.responseBuilder
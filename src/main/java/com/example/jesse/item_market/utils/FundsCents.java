@@ -0,0 +1,36 @@
+package com.example.jesse.item_market.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 资金金额与整数分之间的换算。
+ * Redis 中的用户资金以整数分保存（HINCRBY 增减），
+ * 对外展示与价格表中的价格仍以元为单位，保留两位小数。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final public class FundsCents
+{
+    /** 整数分转换成以元为单位、两位小数的金额。*/
+    @Contract(pure = true)
+    public static @NotNull BigDecimal
+    toAmount(long cents) { return BigDecimal.valueOf(cents, 2); }
+
+    /** 以元为单位的金额（四舍五入到分）转换成整数分。*/
+    public static long fromAmount(@NotNull BigDecimal amount)
+    {
+        return
+        amount.setScale(2, RoundingMode.HALF_UP)
+              .movePointRight(2)
+              .longValueExact();
+    }
+
+    /** 以元为单位的金额字符串（如价格表中的分数）转换成整数分。*/
+    public static long
+    fromAmount(@NotNull String amount) { return fromAmount(new BigDecimal(amount)); }
+}
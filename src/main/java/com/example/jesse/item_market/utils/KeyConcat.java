@@ -1,25 +1,81 @@
 package com.example.jesse.item_market.utils;
 
+import com.example.jesse.item_market.user.Weapons;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.Arrays;
+import java.util.List;
 
 import static com.example.jesse.item_market.utils.UUIDGenerator.generateAsHex;
 
-/** 项目 Redis Key 组合工具类。*/
+/**
+ * <p>项目 Redis Key 组合工具类。</p>
+ *
+ * <p>
+ *     集群模式下（app.redis-mode=cluster），键会带上哈希标签（hash tag），
+ *     确保同一个脚本操作的键落在同一个槽（slot）上：
+ * </p>
+ *
+ * <ul>
+ *     <li>用户的数据、包裹、联系人、上架武器索引、交易标记以及它的日志流：{uuid}（例：users:{114940680399943670}）</li>
+ *     <li>市场的武器、价格表以及市场日志流：{weapon-market}</li>
+ *     <li>用户名哈希与它的日志流：{user-name}</li>
+ *     <li>公会、公会名集合以及公会日志流：{guild}</li>
+ * </ul>
+ *
+ * <p>
+ *     单机模式下键名与日志流保持不变（日志流为全局的 users:log 等），
+ *     集群模式下用户相关的日志流按用户分片（例：users:log:{114940680399943670}）。
+ * </p>
+ */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 final public class KeyConcat
 {
+    /**
+     * 是否启用集群模式的键布局，
+     * 由 RedisKeyLayoutPostProcessor 在应用上下文创建之前按 app.redis-mode 设置。
+     * 组合出的键依赖这个布局，所以组合键的方法都不是纯函数。
+     */
+    private static volatile boolean clusterLayout = false;
+
+    /** 设置键布局（只应在应用上下文创建之前调用）。*/
+    public static void configureLayout(boolean cluster) { clusterLayout = cluster; }
+
+    /** 当前是否为集群模式的键布局？*/
+    public static boolean isClusterLayout() { return clusterLayout; }
+
+    /** 集群模式下，为某个键段加上哈希标签。*/
+    private static @NotNull String
+    tag(String segment) { return (clusterLayout) ? "{" + segment + "}" : segment; }
+
+    /** 从键的最后一段中提取 ID（兼容带哈希标签的键，例：users:{114940680399943670}）。*/
+    @Contract(pure = true)
+    public static @NotNull String
+    extractId(@NotNull String key)
+    {
+        final String lastSegment = key.substring(key.lastIndexOf(':') + 1);
+
+        return (lastSegment.startsWith("{") && lastSegment.endsWith("}"))
+            ? lastSegment.substring(1, lastSegment.length() - 1)
+            : lastSegment;
+    }
+
     /** 用户数据键前缀。*/
     public static final String USER_PREFIX      = "users:";
 
     /** 用户哈希的用户名字段名。*/
     public static final String USER_NAME_FIELD  = "name";
 
-    /** 用户哈希的用户资金字段名。*/
+    /** 用户哈希的旧版资金字段名（浮点数，单位：元），只在迁移时读取。*/
     public static final String USER_FUNDS_FIELD = "funds";
 
+    /** 用户哈希的用户资金字段名（整数，单位：分）。*/
+    public static final String USER_FUNDS_CENTS_FIELD = "funds-cents";
+
     /** 用户哈希的用户公会字段名。*/
     public static final String USER_GUILD_FIELD = "guild";
 
@@ -48,76 +104,299 @@ final public class KeyConcat
     public static final String REDIS_LOCK_PREFIX = "lock:";
 
     /** 组合用户数据键。（示例：users:114940680399943670）*/
-    @Contract(pure = true)
     public static @NotNull String
-    getUserKey(String uuid) { return USER_PREFIX + uuid; }
+    getUserKey(String uuid) { return USER_PREFIX + tag(uuid); }
 
-    /** 组合用户最近联系人键。*/
-    @Contract(pure = true)
+    /** 扫描所有用户数据键时使用的模式。*/
     public static @NotNull String
-    getContactKey(String uuid) { return USER_CONTACT_PREFIX + uuid; }
+    getUserKeyPattern() { return (clusterLayout) ? USER_PREFIX + "{[0-9]*}" : USER_PREFIX + "[0-9]*"; }
 
-    /** 组合用户最近联系人日志键。*/
-    @Contract(pure = true)
+    /** 组合用户数据日志键。（单机：users:log，集群：users:log:{uuid}）*/
+    public static @NotNull String
+    getUserLogKey(String uuid) {
+        return (clusterLayout) ? USER_PREFIX + "log:" + tag(uuid) : USER_PREFIX + "log";
+    }
+
+    /**
+     * 组合用户操作历史索引键（流，每条记录引用用户、包裹、联系人日志中的一条事件）。
+     * （示例：users:history:114940680399943670）
+     */
     public static @NotNull String
-    getContactLogKey() { return USER_CONTACT_PREFIX + "log"; }
+    getUserHistoryKey(String uuid) { return USER_PREFIX + "history:" + tag(uuid); }
 
-    /** 组合用户包裹键。（示例：inventories:114940680399943670）*/
-    @Contract(pure = true)
+    /** 组合用户最近联系人键（以最近一次联系的时间为分数的有序集合）。*/
+    public static @NotNull String
+    getContactKey(String uuid) { return USER_CONTACT_PREFIX + tag(uuid); }
+
+    /**
+     * 组合用户联系人字典序索引键（分数皆为 0 的有序集合，成员为 小写联系人名:联系人名）。
+     * （示例：contact:lex:114940680399943670）
+     */
+    public static @NotNull String
+    getContactLexKey(String uuid) { return USER_CONTACT_PREFIX + "lex:" + tag(uuid); }
+
+    /** 组合用户最近联系人日志键。（单机：contact:log，集群：contact:log:{uuid}）*/
+    public static @NotNull String
+    getContactLogKey(String uuid) {
+        return (clusterLayout) ? USER_CONTACT_PREFIX + "log:" + tag(uuid) : USER_CONTACT_PREFIX + "log";
+    }
+
+    /** 组合用户包裹键（哈希，武器名 -> 数量）。（示例：inventories:114940680399943670）*/
     public static @NotNull String
     getInventoryKey(String uuid) {
-        return INVENTORY_PREFIX + uuid;
+        return INVENTORY_PREFIX + tag(uuid);
+    }
+
+    /** 扫描所有用户包裹键时使用的模式。*/
+    public static @NotNull String
+    getInventoryKeyPattern() { return (clusterLayout) ? INVENTORY_PREFIX + "{[0-9]*}" : INVENTORY_PREFIX + "[0-9]*"; }
+
+    /** 组合用户包裹日志键。（单机：inventories:log，集群：inventories:log:{uuid}）*/
+    public static @NotNull String
+    getInventoryLogKey(String uuid) {
+        return (clusterLayout) ? INVENTORY_PREFIX + "log:" + tag(uuid) : INVENTORY_PREFIX + "log";
+    }
+
+    /**
+     * 组合集群模式下跨槽交易的步骤标记键，
+     * 用于保证交易的扣款、入账步骤在重试时只执行一次。
+     * （示例：trades:{114940680399943670}:1985f067af74d6d:debit）
+     */
+    public static @NotNull String
+    getTradeStepKey(String uuid, String tradeId, String step) {
+        return "trades:" + tag(uuid) + ":" + tradeId + ":" + step;
+    }
+
+    /**
+     * 组合买家的交易幂等键，保存同一个幂等键下的交易结果。
+     * （示例：trades:{114950910119824488}:idempotency:9b2f6c1e）
+     */
+    public static @NotNull String
+    getTradeIdempotencyKey(String uuid, String idempotencyKey) {
+        return "trades:" + tag(uuid) + ":idempotency:" + idempotencyKey;
     }
 
     /** 用户姓名与 UUID 哈希键。（user-name:user-name-hash）*/
-    @Contract(pure = true)
     public static @NotNull String
-    getUserHashKey() { return "user-name:user-name-hash"; }
+    getUserHashKey() { return "user-name:" + tag("user-name") + ":user-name-hash"; }
+
+    /**
+     * 用户名前缀搜索索引键。（user-name:name-index）
+     * 与用户名哈希同槽，成员为 小写用户名\0用户名\0UUID，score 皆为 0。
+     */
+    public static @NotNull String
+    getUserNameIndexKey() { return "user-name:" + tag("user-name") + ":name-index"; }
+
+    /** 用户姓名哈希日志键。（user-name:log）*/
+    public static @NotNull String
+    getUserNameLogKey() {
+        return (clusterLayout) ? "user-name:" + tag("user-name") + ":log" : "user-name:log";
+    }
 
     /**
      * 为即将上架至市场的武器生成一个 UUID。
      * （示例：market:weapon-market:weapons:1985f067af74d6d）
      */
-    @Contract(pure = true)
     public static @NotNull String
     getNewWeaponHashKey() {
-        return MARKET_PREFIX + "weapons:" + generateAsHex();
+        return getWeaponHashKey(generateAsHex());
     }
 
+    /** 市场相关键的前缀。（单机：market:weapon-market:，集群：market:{weapon-market}:）*/
+    private static @NotNull String
+    marketPrefix() { return (clusterLayout) ? "market:{weapon-market}:" : MARKET_PREFIX; }
+
     /**
      * 已知武器 ID，拼合对应的键。
      * （示例：market:weapon-market:weapons:1985f067af74d6d）
      */
+    public static @NotNull String
+    getWeaponHashKey(String weaponId) { return marketPrefix() + "weapons:" + weaponId;}
+
+    /**
+     * 组合卖家上架武器索引键（集合，成员为该卖家所有在售武器的 ID），
+     * 与卖家的其他数据同槽。（示例：market:seller:114940680399943670）
+     */
+    public static @NotNull String
+    getSellerIndexKey(String uuid) { return "market:seller:" + tag(uuid); }
+
+    /**
+     * 市场索引（卖家索引、各类武器的价格表）是否已经回填完毕的标记键，
+     * 索引种类增加时提升版本号，令回填任务重新执行。
+     */
     @Contract(pure = true)
     public static @NotNull String
-    getWeaponHashKey(String weaponId) { return MARKET_PREFIX + "weapons:" + weaponId;}
+    getMarketIndexBackfillKey() { return "market:index-backfill:v2"; }
 
-    /** 存储上架武器价格的 Zset key（market:weapon-market:weapon-price） */
+    /** 用户资金是否已经全部迁移成整数分的标记键。*/
+    @Contract(pure = true)
+    public static @NotNull String
+    getUserFundsMigrationKey() { return "users-migration:funds-cents"; }
+
+    /** 用户包裹是否已经全部从列表迁移成 武器名 -> 数量 哈希的标记键。*/
     @Contract(pure = true)
     public static @NotNull String
+    getInventoryMigrationKey() { return "users-migration:inventory-counts"; }
+
+    /** 已有的用户名是否已经全部写入前缀搜索索引的标记键。*/
+    @Contract(pure = true)
+    public static @NotNull String
+    getUserNameIndexBackfillKey() { return "users-migration:name-index"; }
+
+    /** 业务数据是否已经全部改写成原始字符串的标记键。*/
+    @Contract(pure = true)
+    public static @NotNull String
+    getPlainValueMigrationKey() { return "codec-migration:plain-values"; }
+
+    /** 扫描市场上所有武器键时使用的模式。*/
+    public static @NotNull String
+    getWeaponHashKeyPattern() { return marketPrefix() + "weapons:*"; }
+
+    /** 存储上架武器价格的 Zset key（market:weapon-market:weapon-price） */
+    public static @NotNull String
     getWeaponPriceZsetKey() {
-        return WEAPON_PRICE_ZSET;
+        return (clusterLayout) ? marketPrefix() + "weapon-price" : WEAPON_PRICE_ZSET;
+    }
+
+    /**
+     * 组合某一类武器的价格表键（有序集合，成员为武器 ID，分数为价格）。
+     * （示例：market:weapon-market:weapon-price:Sword）
+     */
+    public static @NotNull String
+    getWeaponTypePriceZsetKey(String weaponName) {
+        return getWeaponPriceZsetKey() + ":" + weaponName;
+    }
+
+    /** 所有武器类型的价格表键（按 {@link Weapons} 的声明顺序）。*/
+    public static @NotNull @Unmodifiable List<String>
+    getAllWeaponTypePriceZsetKeys()
+    {
+        return
+        Arrays.stream(Weapons.values())
+              .map((weapon) -> getWeaponTypePriceZsetKey(weapon.getItemName()))
+              .toList();
     }
 
+    /**
+     * 上架到期时间表键（有序集合，成员为武器 ID，分数为到期时间，单位：秒）。
+     * （单机：market:weapon-market:listing-expiry，集群：market:{weapon-market}:listing-expiry）
+     */
+    public static @NotNull String
+    getListingExpiryZsetKey() { return marketPrefix() + "listing-expiry"; }
+
+    /**
+     * 精简交易事件流键，每笔交易一条事件，由 TradeEventExpander 异步展开成各日志。
+     * （单机：market:trade-log，集群：market:{weapon-market}:trade-log）
+     */
+    public static @NotNull String
+    getTradeLogKey() { return (clusterLayout) ? marketPrefix() + "trade-log" : "market:trade-log"; }
+
+    /** 市场日志键。（单机：market:log，集群：market:{weapon-market}:log）*/
+    public static @NotNull String
+    getMarketLogKey() { return (clusterLayout) ? marketPrefix() + "log" : "market:log"; }
+
+    /**
+     * 组合某一类武器的市场统计哈希键（地板价、成交次数、成交额等）。
+     * （示例：market:weapon-market:stats:Sword）
+     */
+    public static @NotNull String
+    getWeaponStatsKey(String weaponName) { return marketPrefix() + "stats:" + weaponName; }
+
+    /**
+     * 组合某一类武器按小时分桶的成交哈希键（字段为 小时:count 与 小时:cents）。
+     * （示例：market:weapon-market:stats:Sword:volume）
+     */
+    public static @NotNull String
+    getWeaponVolumeKey(String weaponName) { return getWeaponStatsKey(weaponName) + ":volume"; }
+
+    /** 市场统计已累加事件的有序集合键，用于重新投递时去重。（market:weapon-market:stats:applied）*/
+    public static @NotNull String
+    getMarketStatsAppliedKey() { return marketPrefix() + "stats:applied"; }
+
+    /**
+     * 组合某一类武器某个粒度的价格历史哈希键（字段为桶的起始时间，值为该桶的 K 线）。
+     * （示例：market:weapon-market:ohlc:Sword:1m）
+     */
+    public static @NotNull String
+    getPriceHistoryKey(String weaponName, String resolution) {
+        return marketPrefix() + "ohlc:" + weaponName + ":" + resolution;
+    }
+
+    /**
+     * 组合某一类武器某个粒度的价格历史索引键（有序集合，成员与分数都是桶的起始时间）。
+     * （示例：market:weapon-market:ohlc:Sword:1m:index）
+     */
+    public static @NotNull String
+    getPriceHistoryIndexKey(String weaponName, String resolution) {
+        return getPriceHistoryKey(weaponName, resolution) + ":index";
+    }
+
+    /** 公会键的前缀。（单机：guild:，集群：guild:{guild}:）*/
+    public static @NotNull String
+    getGuildKeyPrefix() { return (clusterLayout) ? GUILD_PREFIX + tag("guild") + ":" : GUILD_PREFIX; }
+
     /** 组合公会键。（示例:guild:The-Dark-Brotherhood） */
-    @Contract(pure = true)
     public static @NotNull String
-    getGuildKey(String guildName) { return GUILD_PREFIX + guildName; }
+    getGuildKey(String guildName) { return getGuildKeyPrefix() + guildName; }
 
     /** 获取公会名数据键。*/
-    @Contract(pure = true)
     public static @NotNull String
-    getGuildNameSetKey() { return GUILD_NAME_SET_KEY + "guild-name-set"; }
+    getGuildNameSetKey() { return getGuildKeyPrefix() + "guild-name:guild-name-set"; }
 
     /** 组合公会操作日志键。*/
-    @Contract(pure = true)
     public static @NotNull String
-    getGuildLogKey() { return GUILD_PREFIX + "log"; }
+    getGuildLogKey() { return getGuildKeyPrefix() + "log"; }
 
     /** 获取公会名集合日志键。*/
+    public static @NotNull String
+    getGuildNameSetLogKey() { return getGuildKeyPrefix() + "guild-name:log"; }
+
+    /**
+     * 需要归档的日志流键。
+     * 单机模式下包括所有的日志流；集群模式下用户、包裹、联系人日志按用户分成了各自的流，只包括共享的日志流
+     * （按用户分开的日志流见 {@link #getPerUserLogKeyPatterns()}）。
+     */
+    public static @NotNull @Unmodifiable List<String>
+    getArchivedStreamKeys()
+    {
+        if (clusterLayout)
+        {
+            return List.of(
+                getMarketLogKey(), getUserNameLogKey(),
+                getGuildLogKey(), getGuildNameSetLogKey()
+            );
+        }
+
+        return List.of(
+            getMarketLogKey(), USER_PREFIX + "log", INVENTORY_PREFIX + "log",
+            getGuildLogKey(), USER_CONTACT_PREFIX + "log",
+            getUserNameLogKey(), getGuildNameSetLogKey()
+        );
+    }
+
+    /**
+     * 集群模式下按用户分开的日志流（用户、包裹、联系人日志）的扫描模式，单机模式下没有这类日志流，返回空列表。
+     * （示例：users:log:{*}）
+     */
+    public static @NotNull @Unmodifiable List<String>
+    getPerUserLogKeyPatterns()
+    {
+        if (!clusterLayout) {
+            return List.of();
+        }
+
+        return List.of(
+            USER_PREFIX + "log:{*}", INVENTORY_PREFIX + "log:{*}", USER_CONTACT_PREFIX + "log:{*}"
+        );
+    }
+
+    /**
+     * Kafka 桥接进度哈希键（字段是日志流键，值是已经发送并确认到的最后一条事件 ID）。
+     * （示例：kafka-bridge:checkpoint）
+     */
     @Contract(pure = true)
     public static @NotNull String
-    getGuildNameSetLogKey() { return GUILD_NAME_SET_KEY + "log"; }
+    getKafkaBridgeCheckpointKey() { return "kafka-bridge:checkpoint"; }
 
     /** 组合 Redis 锁键。*/
     @Contract(pure = true)
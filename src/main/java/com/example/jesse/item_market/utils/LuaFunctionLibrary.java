@@ -0,0 +1,167 @@
+package com.example.jesse.item_market.utils;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Redis 7 函数库（Function Library）。</p>
+ *
+ * 将某一类操作目录下的所有脚本包装成一个函数库，每个脚本对应库中的一个同名函数
+ * （addNewUser.lua -> addNewUser），脚本首行的 {@code #!lua flags=...}
+ * 会被转换成函数的 flags，带有 no-writes 的函数以 FCALL_RO 调用。
+ * 此外，每个库都额外注册一个返回库修订号的函数，用于启动时的版本检查。
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+final public class LuaFunctionLibrary
+{
+    /** 脚本首行的 Shebang（例：#!lua flags=no-writes,allow-stale）。*/
+    private static final Pattern SHEBANG
+        = Pattern.compile("^#!lua(?:[ \\t]+flags=([\\w,-]*))?[ \\t]*\\r?\\n?");
+
+    /** 函数中不可用的 redis.replicate_commands() 调用（函数总是以效果复制）。*/
+    private static final Pattern REPLICATE_COMMANDS
+        = Pattern.compile("(?m)^[ \\t]*redis\\.replicate_commands\\(\\)[ \\t]*$");
+
+    /** 库名（例：item_market_user_operator）。*/
+    private final String libraryName;
+
+    /** 提交给 FUNCTION LOAD 的库代码。*/
+    private final String code;
+
+    /** 库修订号（库代码的 SHA1）。*/
+    private final String revision;
+
+    /** 以 FCALL_RO 调用的只读函数名。*/
+    private final Set<String> readOnlyFunctions;
+
+    /** 由 Lua 脚本类型得出函数库名。*/
+    @Contract(pure = true)
+    public static @NotNull String
+    getLibraryName(@NotNull LuaScriptOperatorType operatorType) {
+        return "item_market_" + operatorType.getTypeName().replace('-', '_');
+    }
+
+    /** 由 Lua 脚本名得出函数名。*/
+    @Contract(pure = true)
+    public static @NotNull String
+    getFunctionName(@NotNull String luaScriptName)
+    {
+        return luaScriptName.endsWith(".lua")
+            ? luaScriptName.substring(0, luaScriptName.length() - 4)
+            : luaScriptName;
+    }
+
+    /** 返回本库修订号的函数名。*/
+    @Contract(pure = true)
+    public @NotNull String
+    getRevisionFunctionName() { return this.libraryName + "_revision"; }
+
+    /** 某个脚本是否只读（首行声明了 no-writes）？*/
+    public static boolean
+    isReadOnlyScript(@NotNull String scriptContent) {
+        return parseFlags(scriptContent).contains("no-writes");
+    }
+
+    /** 解析脚本首行 Shebang 中声明的 flags。*/
+    private static @NotNull List<String>
+    parseFlags(@NotNull String scriptContent)
+    {
+        Matcher matcher = SHEBANG.matcher(scriptContent);
+
+        if (!matcher.lookingAt() || matcher.group(1) == null || matcher.group(1).isBlank()) {
+            return List.of();
+        }
+
+        return Arrays.asList(matcher.group(1).split(","));
+    }
+
+    /** 计算字符串的 SHA1。*/
+    private static @NotNull String sha1Hex(@NotNull String content)
+    {
+        try
+        {
+            return HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-1")
+                             .digest(content.getBytes(StandardCharsets.UTF_8))
+            );
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * 将某一类操作的所有脚本构建成一个函数库。
+     *
+     * @param operatorType Lua 脚本类型
+     * @param scripts      脚本名 -> 脚本内容
+     *
+     * @return 构建好的函数库
+     */
+    public static @NotNull LuaFunctionLibrary
+    build(@NotNull LuaScriptOperatorType operatorType, @NotNull Map<String, String> scripts)
+    {
+        final String libraryName = getLibraryName(operatorType);
+
+        final StringBuilder functions     = new StringBuilder();
+        final Set<String> readOnlyFunctions = new HashSet<>();
+
+        /* 按脚本名排序，确保同样的脚本在每个节点上生成同样的库代码（同样的修订号）。*/
+        for (Map.Entry<String, String> script : new TreeMap<>(scripts).entrySet())
+        {
+            final String functionName = getFunctionName(script.getKey());
+            final List<String> flags  = parseFlags(script.getValue());
+
+            final String body
+                = REPLICATE_COMMANDS.matcher(
+                    SHEBANG.matcher(script.getValue()).replaceFirst(""))
+                .replaceAll("");
+
+            if (flags.contains("no-writes")) {
+                readOnlyFunctions.add(functionName);
+            }
+
+            functions.append("\nredis.register_function{\n")
+                     .append("    function_name = '").append(functionName).append("',\n")
+                     .append("    callback = function(KEYS, ARGV)\n")
+                     .append(body)
+                     .append("\n    end");
+
+            if (!flags.isEmpty())
+            {
+                functions.append(",\n    flags = { '")
+                         .append(String.join("', '", flags))
+                         .append("' }");
+            }
+
+            functions.append("\n}\n");
+        }
+
+        final String revision = sha1Hex(functions.toString());
+
+        final String code
+            = "#!lua name=" + libraryName + "\n"  +
+              functions                           +
+              "\nredis.register_function{\n"      +
+              "    function_name = '" + libraryName + "_revision',\n" +
+              "    callback = function() return '" + revision + "' end,\n" +
+              "    flags = { 'no-writes' }\n"     +
+              "}\n";
+
+        return new LuaFunctionLibrary(
+            libraryName, code, revision,
+            Collections.unmodifiableSet(readOnlyFunctions)
+        );
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.jesse.item_market.utils;
+
+import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.exception.LuaScriptOperatorFailed;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * <p>Lua 脚本返回值解码器。</p>
+ *
+ * 脚本以扁平数组 { 'STATUS', payload... } 返回结果，
+ * 经过 Lettuce 解码后，数组中的每一个元素是以下几种类型之一：
+ *
+ * <ul>
+ *     <li>批量字符串：ByteBuffer（EVALSHA）或 byte[]（FCALL），解码成 UTF-8 字符串</li>
+ *     <li>整数：Long，保持原样</li>
+ *     <li>嵌套数组：List，递归解码</li>
+ * </ul>
+ *
+ * <strong>脚本不应在返回的数组中放入 false / nil，它们会截断 Lua 数组。</strong>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final public class LuaResultDecoder
+{
+    /**
+     * 将脚本返回的数组解码成 LuaOperatorResult。
+     *
+     * @param reply 脚本返回的数组（已被展开成元素列表）
+     *
+     * @return 第一个元素为状态码，其余元素为载荷的执行结果
+     */
+    public static @NotNull LuaOperatorResult
+    decode(@NotNull List<?> reply)
+    {
+        if (reply.isEmpty())
+        {
+            throw new LuaScriptOperatorFailed(
+                "Lua script returned an empty reply!", null
+            );
+        }
+
+        List<Object> elements = decodeList(reply);
+
+        return new LuaOperatorResult(
+            String.valueOf(elements.getFirst()),
+            Collections.unmodifiableList(elements.subList(1, elements.size()))
+        );
+    }
+
+    /** 逐个解码数组中的元素。*/
+    private static @NotNull List<Object>
+    decodeList(@NotNull List<?> elements)
+    {
+        List<Object> decoded = new ArrayList<>(elements.size());
+
+        for (Object element : elements) {
+            decoded.add(decodeElement(element));
+        }
+
+        return decoded;
+    }
+
+    /** 解码单个元素。*/
+    @Contract("null -> fail")
+    private static @NotNull Object
+    decodeElement(Object element)
+    {
+        return switch (element)
+        {
+            case ByteBuffer buffer ->
+                StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+
+            case byte[] bytes   -> new String(bytes, StandardCharsets.UTF_8);
+            case Long value     -> value;
+            case String value   -> value;
+            case List<?> nested -> Collections.unmodifiableList(decodeList(nested));
+
+            case null ->
+                throw new LuaScriptOperatorFailed(
+                    "Lua script returned a nil element!", null
+                );
+
+            default ->
+                throw new LuaScriptOperatorFailed(
+                    format(
+                        "Unsupported lua reply element type: %s",
+                        element.getClass().getName()
+                    ), null
+                );
+        };
+    }
+}
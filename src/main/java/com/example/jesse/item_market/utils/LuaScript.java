@@ -0,0 +1,146 @@
+package com.example.jesse.item_market.utils;
+
+import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * <p>声明式的 Lua 脚本定义。</p>
+ *
+ * 每个脚本只需声明一次：脚本类型、脚本名、超时时间，
+ * 以及每种状态码对应的结果（发布数据、不发布数据或者抛出异常），
+ * 之后交给 {@link LuaScriptExecutor} 统一执行。例：
+ *
+ * <pre>{@code
+ * LuaScript<String> ADD_WEAPON_TO_MARKET
+ *     = LuaScript.<String>builder(USER_OPERATOR, "addWeaponToMarket.lua")
+ *                .timeout(Duration.ofSeconds(5L))
+ *                .success("SUCCESS", (call) -> call.result().getString(0))
+ *                .failure("INVENTORY_REM_FAILED", (call) ->
+ *                    new NoSuchElementException("..." + call.arg(1)))
+ *                .build();
+ * }</pre>
+ *
+ * @param <T> 脚本执行成功后发布的数据类型
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+final public class LuaScript<T>
+{
+    /** Lua 脚本类型。*/
+    private final LuaScriptOperatorType operatorType;
+
+    /** Lua 脚本名。*/
+    private final String scriptName;
+
+    /** 脚本标识（例：user-operator/addNewUser.lua），用作指标标签。*/
+    private final String scriptId;
+
+    /** 执行超时时间（null 表示不设超时）。*/
+    private final Duration timeout;
+
+    /** 状态码 -> 结果。*/
+    private final Map<String, Function<Call, Mono<T>>> outcomes;
+
+    /**
+     * 一次脚本调用的上下文，供结果映射与异常构建使用。
+     *
+     * @param result 脚本的执行结果
+     * @param keys   脚本的 KEYS
+     * @param args   脚本的 ARGV（序列化之前的原始参数）
+     */
+    public record Call(LuaOperatorResult result, List<String> keys, Object[] args)
+    {
+        /** 获取第 index 个 KEY。*/
+        public String key(int index) { return this.keys.get(index); }
+
+        /** 获取第 index 个原始参数。*/
+        public Object arg(int index) { return this.args[index]; }
+    }
+
+    /**
+     * 一次待执行的脚本调用（批量执行时用）。
+     *
+     * @param keys 脚本的 KEYS
+     * @param args 脚本的 ARGV
+     */
+    public record Invocation(List<String> keys, Object[] args)
+    {
+        public static @NotNull Invocation
+        of(List<String> keys, Object... args) { return new Invocation(keys, args); }
+    }
+
+    /** 获取某个状态码对应的结果，没有声明时返回 null。*/
+    public Function<Call, Mono<T>>
+    getOutcome(String status) { return this.outcomes.get(status); }
+
+    /** 开始构建一个脚本定义。*/
+    public static <T> @NotNull Builder<T>
+    builder(@NotNull LuaScriptOperatorType operatorType, @NotNull String scriptName) {
+        return new Builder<>(operatorType, scriptName);
+    }
+
+    /** 脚本定义构建器。*/
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Builder<T>
+    {
+        private final LuaScriptOperatorType operatorType;
+        private final String scriptName;
+
+        private Duration timeout = Duration.ofSeconds(5L);
+
+        private final Map<String, Function<Call, Mono<T>>>
+            outcomes = new HashMap<>();
+
+        /**
+         * 设置执行超时时间（默认 5 秒），
+         * 传入 null 表示不设超时，由脚本自身控制耗时（比如在脚本内限时等待的获取锁操作）。
+         */
+        public Builder<T> timeout(Duration timeout)
+        {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /** 状态码为 status 时，发布 mapper 的返回值（返回 null 则不发布任何数据）。*/
+        public Builder<T>
+        success(@NotNull String status, @NotNull Function<Call, T> mapper)
+        {
+            this.outcomes.put(status, (call) -> Mono.justOrEmpty(mapper.apply(call)));
+            return this;
+        }
+
+        /** 状态码为 status 时，不发布任何数据。*/
+        public Builder<T> success(@NotNull String status)
+        {
+            this.outcomes.put(status, (call) -> Mono.empty());
+            return this;
+        }
+
+        /** 状态码为 status 时，发布 factory 构建的异常。*/
+        public Builder<T>
+        failure(@NotNull String status, @NotNull Function<Call, ? extends Throwable> factory)
+        {
+            this.outcomes.put(status, (call) -> Mono.error(factory.apply(call)));
+            return this;
+        }
+
+        public LuaScript<T> build()
+        {
+            return new LuaScript<>(
+                this.operatorType, this.scriptName,
+                this.operatorType.getTypeName() + "/" + this.scriptName,
+                this.timeout, Map.copyOf(this.outcomes)
+            );
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.jesse.item_market.utils;
+
+import com.example.jesse.item_market.utils.dto.LuaBulkResult;
+import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.exception.CrossSlotKeys;
+import io.lettuce.core.cluster.SlotHash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static com.example.jesse.item_market.errorhandle.RedisErrorHandle.redisGenericErrorHandel;
+
+/**
+ * <p>Lua 脚本执行器。</p>
+ *
+ * 所有脚本共用的执行路径：执行脚本 -> 超时控制 -> 按 {@link LuaScript}
+ * 声明的状态码映射结果 -> 通用错误处理。
+ * 每次执行都会按脚本与结果（状态码、TIMEOUT 或 ERROR）记录耗时，
+ * 指标名为 {@value #METRIC_NAME}，Timer 的计数即为各结果的次数。
+ *
+ * <p>
+ *     批量执行（{@link #executeAll}）时，所有调用共享同一条 Lettuce 连接，
+ *     同时在途的命令数不超过 maxInFlight，命令不等上一条的回复就写出，
+ *     效果等同于流水线（pipeline），结果按调用的顺序发布。
+ *     这里不手动关闭自动 flush（setAutoFlushCommands），因为共享连接上的其他命令也会被一起攒住。
+ * </p>
+ *
+ * <p>
+ *     集群模式下，执行前会检查脚本的所有 KEYS 是否落在同一个槽上，
+ *     跨槽的调用直接以 {@link CrossSlotKeys} 失败，而不是等 Redis 返回 CROSSSLOT 错误。
+ * </p>
+ */
+@Slf4j
+@Component
+public class LuaScriptExecutor
+{
+    /** 脚本执行耗时指标名。*/
+    public static final String METRIC_NAME = "lua.script.execution";
+
+    /** 执行超时的结果标签。*/
+    private static final String TIMEOUT_OUTCOME = "TIMEOUT";
+
+    /** 执行出错（Redis 异常等）的结果标签。*/
+    private static final String ERROR_OUTCOME = "ERROR";
+
+    /** 批量执行时默认的最大在途调用数。*/
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /** Lua 脚本注册表。*/
+    @Autowired
+    private LuaScriptRegistry luaScriptRegistry;
+
+    /** 指标注册表。*/
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** 已创建的 Timer，键为脚本标识，值为 结果 -> Timer。*/
+    private final Map<String, Map<String, Timer>>
+        timers = new ConcurrentHashMap<>();
+
+    /** 获取（或创建）某个脚本某种结果的 Timer。*/
+    private @NotNull Timer
+    getTimer(@NotNull LuaScript<?> script, @NotNull String outcome)
+    {
+        return
+        this.timers
+            .computeIfAbsent(script.getScriptId(), (id) -> new ConcurrentHashMap<>())
+            .computeIfAbsent(outcome, (ignore) ->
+                Timer.builder(METRIC_NAME)
+                     .description("Lua script execution latency")
+                     .tag("script", script.getScriptId())
+                     .tag("outcome", outcome)
+                     .register(this.meterRegistry));
+    }
+
+    /** 集群模式下，检查脚本的所有 KEYS 是否落在同一个槽上，不在时返回错误信息。*/
+    private static String
+    checkSameSlot(@NotNull LuaScript<?> script, @NotNull List<String> keys)
+    {
+        if (!KeyConcat.isClusterLayout() || keys.size() < 2) {
+            return null;
+        }
+
+        final int slot = SlotHash.getSlot(keys.getFirst());
+
+        for (String key : keys)
+        {
+            if (SlotHash.getSlot(key) != slot)
+            {
+                return
+                "Keys of " + script.getScriptId() + " span multiple slots: " +
+                keys.stream()
+                    .map((k) -> k + "(" + SlotHash.getSlot(k) + ")")
+                    .toList();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * 执行一个脚本。
+     *
+     * @param <T> 脚本执行成功后发布的数据类型
+     *
+     * @param script 脚本定义
+     * @param keys   脚本的 KEYS
+     * @param args   脚本的 ARGV
+     *
+     * @return 按脚本定义映射后的结果
+     */
+    public <T> @NotNull Mono<T>
+    execute(@NotNull LuaScript<T> script, List<String> keys, Object... args)
+    {
+        return
+        Mono.defer(() -> {
+            final String crossSlotMessage = checkSameSlot(script, keys);
+
+            if (crossSlotMessage != null) {
+                return Mono.error(new CrossSlotKeys(crossSlotMessage, null));
+            }
+
+            final long start = System.nanoTime();
+
+            Mono<LuaOperatorResult> reply
+                = this.luaScriptRegistry
+                      .execute(script.getOperatorType(), script.getScriptName(), keys, args);
+
+            if (script.getTimeout() != null) {
+                reply = reply.timeout(script.getTimeout());
+            }
+
+            return
+            reply.doOnNext((result) ->
+                    this.getTimer(script, result.getResult())
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .doOnError((exception) ->
+                    this.getTimer(
+                        script,
+                        (exception instanceof TimeoutException) ? TIMEOUT_OUTCOME : ERROR_OUTCOME
+                    ).record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .flatMap((result) -> {
+                    final Function<LuaScript.Call, Mono<T>> outcome
+                        = script.getOutcome(result.getResult());
+
+                    if (outcome == null)
+                    {
+                        return Mono.error(
+                            new IllegalStateException(
+                                "Unexpected result of " + script.getScriptId() +
+                                ": " + result.getResult()
+                            )
+                        );
+                    }
+
+                    return outcome.apply(new LuaScript.Call(result, keys, args));
+                })
+                .onErrorResume((exception) ->
+                    redisGenericErrorHandel(exception, null));
+        });
+    }
+
+    /**
+     * 批量执行同一个脚本，以流水线的方式发送，按调用的顺序发布每次调用的结果。
+     * 某次调用失败不会中断整个批次。
+     *
+     * @param <T> 脚本执行成功后发布的数据类型
+     *
+     * @param script      脚本定义
+     * @param invocations 所有调用
+     * @param maxInFlight 同时在途的最大调用数
+     *
+     * @return 按调用顺序发布每次调用结果的 Flux
+     */
+    public <T> @NotNull Flux<LuaBulkResult<T>>
+    executeAll(
+        @NotNull LuaScript<T> script,
+        @NotNull List<LuaScript.Invocation> invocations, int maxInFlight)
+    {
+        if (maxInFlight <= 0)
+        {
+            return Flux.error(
+                new IllegalArgumentException("maxInFlight must be positive!")
+            );
+        }
+
+        return
+        Flux.range(0, invocations.size())
+            .flatMapSequential((index) -> {
+                final LuaScript.Invocation invocation = invocations.get(index);
+
+                return
+                this.execute(script, invocation.keys(), invocation.args())
+                    .map((value) -> LuaBulkResult.success(index, value))
+                    .switchIfEmpty(
+                        Mono.fromSupplier(() -> LuaBulkResult.success(index, null)))
+                    .onErrorResume((exception) ->
+                        Mono.just(LuaBulkResult.failure(index, exception)));
+            }, maxInFlight, 1);
+    }
+
+    /** 以默认的最大在途调用数批量执行同一个脚本。*/
+    public <T> @NotNull Flux<LuaBulkResult<T>>
+    executeAll(@NotNull LuaScript<T> script, @NotNull List<LuaScript.Invocation> invocations) {
+        return this.executeAll(script, invocations, DEFAULT_MAX_IN_FLIGHT);
+    }
+}
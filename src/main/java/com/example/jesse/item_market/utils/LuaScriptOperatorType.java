@@ -9,7 +9,9 @@ public enum LuaScriptOperatorType
     MARKET_OPERATOR("market-operator"),
     GUILD_OPERATOR("guild-operator"),
     LOCK_OPERATOR("lock-operator"),
-    SEMAPHORE_OPERATOR("semaphore-operator");
+    SEMAPHORE_OPERATOR("semaphore-operator"),
+    CLUSTER_OPERATOR("cluster-operator"),
+    STREAM_OPERATOR("stream-operator");
 
     @Getter
     final String typeName;
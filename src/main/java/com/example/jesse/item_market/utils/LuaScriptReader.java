@@ -1,6 +1,5 @@
 package com.example.jesse.item_market.utils;
 
-import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
 import com.example.jesse.item_market.utils.exception.LuaScriptOperatorFailed;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
@@ -8,6 +7,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
@@ -17,10 +18,25 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static java.lang.String.format;
 
-/** Redis Lua 脚本读取器实现。*/
+/**
+ * <p>Redis Lua 脚本读取器实现。</p>
+ *
+ * <p>
+ *     脚本中单独一行的 <code>-- #include 名称</code> 会被替换成
+ *     lua-script/shared/名称.lua 的内容（同一个文件只引入一次，片段之间也可以互相引入），
+ *     多个脚本共用的 local function 只需要维护一份，EVAL 与函数模式下都能使用。
+ * </p>
+ */
 @Slf4j
 @Component
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -30,6 +46,13 @@ final public class LuaScriptReader
     private static final String
     LUA_SCRIPT_CLASSPATH_PREFIX = "lua-script/";
 
+    /** 公共脚本片段所在的目录名。*/
+    private static final String SHARED_DIRECTORY = "shared";
+
+    /** 引入公共脚本片段的指令（单独一行）。*/
+    private static final Pattern INCLUDE_DIRECTIVE
+        = Pattern.compile("(?m)^--[ \\t]*#include[ \\t]+([\\w-]+)[ \\t]*$");
+
     /** 本项目 Lua 脚本路径所在。*/
     @Value("${app.lua-script-path}")
     private String luaScriptPath;
@@ -59,10 +82,171 @@ final public class LuaScriptReader
                    .normalize();
     }
 
+    /** 当前是否从文件系统中读取脚本？*/
+    public boolean isFileSystemMode() {
+        return !"classpath".equals(this.scriptMode);
+    }
+
+    /** 从文件系统中读取脚本时，获取某一类脚本所在的目录。*/
+    public @NotNull Path
+    getScriptDirectory(@NotNull LuaScriptOperatorType operatorType)
+    {
+        if (!this.isFileSystemMode())
+        {
+            throw new UnsupportedOperationException(
+                "Path operator not supported in <classpath> mode!"
+            );
+        }
+
+        return Path.of(luaScriptPath)
+                   .resolve(operatorType.getTypeName())
+                   .normalize();
+    }
+
+    /** 从文件系统中读取脚本时，获取公共脚本片段所在的目录。*/
+    public @NotNull Path getSharedDirectory()
+    {
+        if (!this.isFileSystemMode())
+        {
+            throw new UnsupportedOperationException(
+                "Path operator not supported in <classpath> mode!"
+            );
+        }
+
+        return Path.of(luaScriptPath)
+                   .resolve(SHARED_DIRECTORY)
+                   .normalize();
+    }
+
+    /** 读取某个公共脚本片段的内容。*/
+    private @NotNull String
+    readShared(String sharedName) throws IOException
+    {
+        final String fileName = sharedName + ".lua";
+
+        if (this.isFileSystemMode())
+        {
+            Path sharedPath = this.getSharedDirectory().resolve(fileName);
+
+            if (!Files.exists(sharedPath))
+            {
+                throw new LuaScriptOperatorFailed(
+                    format("Shared lua script: %s not found!", fileName), null
+                );
+            }
+
+            return Files.readString(sharedPath, StandardCharsets.UTF_8);
+        }
+
+        final String classpathPath
+            = LUA_SCRIPT_CLASSPATH_PREFIX + SHARED_DIRECTORY + "/" + fileName;
+
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(classpathPath))
+        {
+            if (inputStream == null)
+            {
+                throw new LuaScriptOperatorFailed(
+                    format("Shared lua script: %s not found in classpath!",
+                        classpathPath), null);
+            }
+
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** 将脚本中的 include 指令替换成公共脚本片段的内容，同一个片段只引入一次。*/
+    private @NotNull String
+    resolveIncludes(String scriptContent) throws IOException {
+        return this.resolveIncludes(scriptContent, new HashSet<>());
+    }
+
+    /**
+     * 展开 include 指令，公共脚本片段中的 include 指令也会展开（先于片段本身的内容），
+     * included 记录整个脚本已经引入过的片段。
+     */
+    private @NotNull String
+    resolveIncludes(String scriptContent, Set<String> included) throws IOException
+    {
+        final Matcher matcher = INCLUDE_DIRECTIVE.matcher(scriptContent);
+        final StringBuilder resolved = new StringBuilder(scriptContent.length());
+
+        while (matcher.find())
+        {
+            final String sharedName = matcher.group(1);
+            final String replacement
+                = (included.add(sharedName))
+                    ? this.resolveIncludes(this.readShared(sharedName), included).stripTrailing()
+                    : "";
+
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(replacement));
+        }
+
+        matcher.appendTail(resolved);
+
+        return resolved.toString();
+    }
+
+    /**
+     * 列出某一类操作下的所有 Lua 脚本名（供脚本注册表启动时预加载）。
+     *
+     * @param operatorType Lua 脚本类型
+     *
+     * @return 该类型目录下所有 .lua 文件的文件名
+     */
+    public @NotNull List<String>
+    listScriptNames(@NotNull LuaScriptOperatorType operatorType) throws IOException
+    {
+        List<String> scriptNames = new ArrayList<>();
+
+        if (this.isFileSystemMode())
+        {
+            Path scriptDirectory = this.getScriptDirectory(operatorType);
+
+            if (!Files.isDirectory(scriptDirectory)) {
+                return scriptNames;
+            }
+
+            try (Stream<Path> paths = Files.list(scriptDirectory))
+            {
+                paths.map((path) -> path.getFileName().toString())
+                     .filter((name) -> name.endsWith(".lua"))
+                     .forEach(scriptNames::add);
+            }
+        }
+        else
+        {
+            Resource[] resources
+                = new PathMatchingResourcePatternResolver(getClass().getClassLoader())
+                    .getResources(
+                        "classpath*:" + LUA_SCRIPT_CLASSPATH_PREFIX +
+                        operatorType.getTypeName() + "/*.lua"
+                    );
+
+            for (Resource resource : resources)
+            {
+                if (resource.getFilename() != null) {
+                    scriptNames.add(resource.getFilename());
+                }
+            }
+        }
+
+        return scriptNames;
+    }
+
+    /** 创建脚本实例，脚本统一以扁平数组 { 'STATUS', payload... } 返回结果。*/
+    @SuppressWarnings("unchecked")
+    private static @NotNull DefaultRedisScript<List<Object>>
+    newScript(String scriptContent)
+    {
+        return new DefaultRedisScript<>(
+            scriptContent, (Class<List<Object>>) (Class<?>) List.class
+        );
+    }
+
     /** 从文件系统中加载脚本。（开发、测试时用）*/
     @Contract("_, _ -> new")
     private @NotNull
-    DefaultRedisScript<LuaOperatorResult>
+    DefaultRedisScript<List<Object>>
     loadFromFileSystem(LuaScriptOperatorType operatorType, String luaScriptName) throws IOException
     {
         Path scriptPath
@@ -75,16 +259,14 @@ final public class LuaScriptReader
             );
         }
 
-        return new DefaultRedisScript<>(
-            Files.readString(scriptPath, StandardCharsets.UTF_8),
-            LuaOperatorResult.class
-        );
+        return newScript(
+            this.resolveIncludes(Files.readString(scriptPath, StandardCharsets.UTF_8)));
     }
 
     /** 从 JAR 中的相对路径加载脚本（生产环境用）。*/
     @Contract("_, _ -> new")
     private @NotNull
-    DefaultRedisScript<LuaOperatorResult>
+    DefaultRedisScript<List<Object>>
     loadFromClassPath(@NotNull LuaScriptOperatorType operatorType, String luaScriptName) throws IOException
     {
             String classpathPath
@@ -105,7 +287,7 @@ final public class LuaScriptReader
                 String scriptContent
                     = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
 
-                return new DefaultRedisScript<>(scriptContent, LuaOperatorResult.class);
+                return newScript(this.resolveIncludes(scriptContent));
             }
     }
 
@@ -115,7 +297,7 @@ final public class LuaScriptReader
      * @param operatorType  Lua 脚本类型
      * @param luaScriptName Lua 脚本名
      */
-    public @NotNull Mono<DefaultRedisScript<LuaOperatorResult>>
+    public @NotNull Mono<DefaultRedisScript<List<Object>>>
     fromFile(LuaScriptOperatorType operatorType, String luaScriptName)
     {
         return Mono.fromCallable(() -> {
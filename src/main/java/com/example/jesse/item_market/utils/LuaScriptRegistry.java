@@ -0,0 +1,744 @@
+package com.example.jesse.item_market.utils;
+
+import com.example.jesse.item_market.utils.dto.LuaOperatorResult;
+import com.example.jesse.item_market.utils.exception.LuaScriptOperatorFailed;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.reactive.RedisFunctionReactiveCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.masterreplica.MasterReplica;
+import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * <p>Lua 脚本注册表。</p>
+ *
+ * <ol>
+ *     <li>启动时读取全部脚本，通过 SCRIPT LOAD 预先加载至 Redis 并缓存</li>
+ *     <li>之后的每次执行都复用缓存的脚本实例（SHA1 只计算一次），以 EVALSHA 执行</li>
+ *     <li>Redis 重启或执行 SCRIPT FLUSH 后，EVALSHA 返回 NOSCRIPT，此时自动回退至 EVAL 并重新载入</li>
+ *     <li>文件系统模式下监听脚本目录，脚本被修改后重新加载并原子替换缓存（开发时用）</li>
+ *     <li>公共脚本片段（lua-script/shared）被修改后，所有脚本都会重新加载（它们可能引入了这个片段）</li>
+ * </ol>
+ *
+ * <p>
+ *     当 app.lua-script-execute-mode=function 时（需要 Redis 7），
+ *     每一类操作的脚本会被包装成一个函数库通过 FUNCTION LOAD 安装，
+ *     之后以 FCALL / FCALL_RO 调用，不再传输脚本内容，也不用再维护 SHA 缓存。
+ *     启动时会检查 Redis 中已安装的函数库修订号，确保每个节点运行同一版本的函数库。
+ *     只读函数的 FCALL_RO 通过一条优先读副本的连接发送，分担主节点的读压力，
+ *     副本上还没有同步到函数库时回退至主节点。
+ *     函数模式只支持单机（主从）部署，与 app.redis-mode=cluster 同时配置时启动失败。
+ * </p>
+ */
+@Slf4j
+@Component
+public class LuaScriptRegistry implements SmartLifecycle
+{
+    /** Lua 脚本读取器。*/
+    @Autowired
+    private LuaScriptReader luaScriptReader;
+
+    /** 通用 Redis 模板（执行 SCRIPT LOAD、EVALSHA 等底层命令）。*/
+    @Autowired
+    private
+    ReactiveRedisTemplate<String, Object> redisTemplate;
+
+    /** Lua 脚本参数的序列化器。*/
+    @Autowired
+    private RedisSerializer<Object> luaScriptArgsSerializer;
+
+    /** Redis 连接工厂（函数模式下需要使用原生 Lettuce 客户端）。*/
+    @Autowired
+    private ReactiveRedisConnectionFactory connectionFactory;
+
+    /** 脚本的执行模式（eval 或 function）。*/
+    @Value("${app.lua-script-execute-mode:eval}")
+    private String executeMode;
+
+    /** 函数模式下，Redis 中已安装的函数库修订号与本节点不一致时，是否替换它？*/
+    @Value("${app.lua-function-replace-on-mismatch:false}")
+    private boolean replaceOnMismatch;
+
+    /** 已缓存的脚本，键为 {脚本类型}/{脚本名}。*/
+    private final Map<String, DefaultRedisScript<List<Object>>>
+        scripts = new ConcurrentHashMap<>();
+
+    /** 这个 Bean 是否允许标志位。*/
+    private final AtomicBoolean RUNNING
+        = new AtomicBoolean(false);
+
+    /** 文件系统模式下监听脚本目录变化的服务。*/
+    private WatchService scriptWatcher;
+
+    /** 监听的目录对应的脚本类型。*/
+    private final Map<WatchKey, LuaScriptOperatorType>
+        watchKeys = new ConcurrentHashMap<>();
+
+    /** 公共脚本片段目录的监听键。*/
+    private WatchKey sharedWatchKey;
+
+    /**
+     * 函数模式下安装为函数库的脚本类型。
+     * 集群操作的脚本只在 app.redis-mode=cluster 时使用，而函数模式不支持集群，所以不安装。
+     */
+    private static final Set<LuaScriptOperatorType> FUNCTION_LIBRARY_TYPES
+        = Collections.unmodifiableSet(
+            EnumSet.complementOf(EnumSet.of(LuaScriptOperatorType.CLUSTER_OPERATOR)));
+
+    /** 函数模式下已安装的函数库，键为脚本类型。*/
+    private final Map<LuaScriptOperatorType, LuaFunctionLibrary>
+        libraries = new ConcurrentHashMap<>();
+
+    /** 已安装的函数库中所有以 FCALL_RO 调用的函数名（安装或替换函数库时重新汇总）。*/
+    private volatile Set<String> readOnlyFunctions = Set.of();
+
+    /** 函数模式下执行 FCALL 的原生连接。*/
+    private StatefulConnection<byte[], byte[]> functionConnection;
+
+    /** 函数模式下的 Lettuce 函数命令集。*/
+    private RedisFunctionReactiveCommands<byte[], byte[]> functionCommands;
+
+    /** 函数模式下执行 FCALL_RO 的原生连接（优先读副本）。*/
+    private StatefulRedisMasterReplicaConnection<byte[], byte[]> readOnlyFunctionConnection;
+
+    /** 函数模式下执行 FCALL_RO 的 Lettuce 函数命令集。*/
+    private RedisFunctionReactiveCommands<byte[], byte[]> readOnlyFunctionCommands;
+
+    /** 当前是否以 Redis 函数的方式执行脚本？*/
+    public boolean isFunctionMode() {
+        return "function".equals(this.executeMode);
+    }
+
+    /** 组合脚本缓存键。*/
+    @Contract(pure = true)
+    private static @NotNull String
+    getScriptCacheKey(@NotNull LuaScriptOperatorType operatorType, String luaScriptName) {
+        return operatorType.getTypeName() + "/" + luaScriptName;
+    }
+
+    /** 通过 SCRIPT LOAD 将脚本预先加载至 Redis。*/
+    private @NotNull Mono<String>
+    scriptLoad(@NotNull DefaultRedisScript<List<Object>> script)
+    {
+        final ByteBuffer scriptBytes
+            = ByteBuffer.wrap(
+                script.getScriptAsString()
+                      .getBytes(StandardCharsets.UTF_8));
+
+        return
+        this.redisTemplate
+            .execute((connection) ->
+                connection.scriptingCommands().scriptLoad(scriptBytes))
+            .next()
+            .doOnNext((sha1) -> {
+                if (!sha1.equals(script.getSha1()))
+                {
+                    log.warn(
+                        "SHA1 mismatch after SCRIPT LOAD! (local = {}, redis = {})",
+                        script.getSha1(), sha1
+                    );
+                }
+            });
+    }
+
+    /**
+     * 读取（或重新读取）某个脚本，加载至 Redis 后替换缓存。
+     * SCRIPT LOAD 失败不影响缓存，首次执行时 EVAL 会顺带载入脚本。
+     */
+    private @NotNull Mono<DefaultRedisScript<List<Object>>>
+    reload(LuaScriptOperatorType operatorType, String luaScriptName)
+    {
+        return
+        this.luaScriptReader
+            .fromFile(operatorType, luaScriptName)
+            .filter((script) -> !script.getScriptAsString().isBlank())
+            .flatMap((script) ->
+                this.scriptLoad(script)
+                    .onErrorResume((exception) -> {
+                        log.warn(
+                            "SCRIPT LOAD {} failed, fallback to EVAL on first call. Caused by: {}",
+                            luaScriptName, exception.getMessage()
+                        );
+                        return Mono.empty();
+                    })
+                    .thenReturn(script))
+            .doOnNext((script) ->
+                this.scripts.put(
+                    getScriptCacheKey(operatorType, luaScriptName), script));
+    }
+
+    /** 读取所有类型下的全部脚本并预加载。*/
+    private @NotNull Mono<Long> preloadAll()
+    {
+        return
+        Flux.fromArray(LuaScriptOperatorType.values())
+            .concatMap((operatorType) ->
+                Mono.fromCallable(() ->
+                        this.luaScriptReader.listScriptNames(operatorType))
+                    .flatMapMany(Flux::fromIterable)
+                    .concatMap((luaScriptName) ->
+                        this.reload(operatorType, luaScriptName)))
+            .count();
+    }
+
+    /**
+     * 获取某个脚本，
+     * 缓存未命中时（比如启动后新增的脚本）从源读取并放入缓存。
+     *
+     * @param operatorType  Lua 脚本类型
+     * @param luaScriptName Lua 脚本名
+     */
+    public @NotNull Mono<DefaultRedisScript<List<Object>>>
+    getScript(LuaScriptOperatorType operatorType, String luaScriptName)
+    {
+        final String cacheKey
+            = getScriptCacheKey(operatorType, luaScriptName);
+
+        return
+        Mono.justOrEmpty(this.scripts.get(cacheKey))
+            .switchIfEmpty(
+                Mono.defer(() ->
+                    this.luaScriptReader
+                        .fromFile(operatorType, luaScriptName)
+                        .map((script) ->
+                            this.scripts.computeIfAbsent(cacheKey, (key) -> script))));
+    }
+
+    /**
+     * 执行某个脚本（EVALSHA，NOSCRIPT 时回退至 EVAL），
+     * 并将脚本返回的扁平数组解码成 LuaOperatorResult。
+     *
+     * @param operatorType  Lua 脚本类型
+     * @param luaScriptName Lua 脚本名
+     * @param keys          脚本的 KEYS
+     * @param args          脚本的 ARGV
+     *
+     * @return 发布脚本执行结果的 Mono
+     */
+    public @NotNull Mono<LuaOperatorResult>
+    execute(
+        LuaScriptOperatorType operatorType, String luaScriptName,
+        List<String> keys, Object... args)
+    {
+        final Flux<Object> reply
+            = (this.isFunctionMode())
+                ? this.functionCall(luaScriptName, keys, args)
+                : this.getScript(operatorType, luaScriptName)
+                      .flatMapMany((script) -> this.evalSha(script, keys, args));
+
+        return
+        reply.collectList()
+             .map(LuaResultDecoder::decode);
+    }
+
+    /**
+     * 以 EVALSHA 执行脚本，Redis 返回 NOSCRIPT 时以 EVAL 重新执行（顺带载入脚本）。
+     * 返回值类型为 MULTI，Lettuce 会把数组展开成逐个元素发布。
+     */
+    private @NotNull Flux<Object>
+    evalSha(
+        @NotNull DefaultRedisScript<List<Object>> script,
+        @NotNull List<String> keys, Object @NotNull ... args)
+    {
+        final List<ByteBuffer> keysAndArgs = new ArrayList<>(keys.size() + args.length);
+
+        keys.forEach((key) ->
+            keysAndArgs.add(ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8))));
+
+        for (Object arg : args) {
+            keysAndArgs.add(ByteBuffer.wrap(this.luaScriptArgsSerializer.serialize(arg)));
+        }
+
+        return
+        this.redisTemplate
+            .execute((connection) ->
+                connection.scriptingCommands()
+                    .<Object>evalSha(
+                        script.getSha1(), ReturnType.MULTI,
+                        keys.size(), duplicateAll(keysAndArgs))
+                    .onErrorResume(
+                        LuaScriptRegistry::isNoScriptError,
+                        (exception) ->
+                            connection.scriptingCommands()
+                                .eval(
+                                    ByteBuffer.wrap(
+                                        script.getScriptAsString()
+                                              .getBytes(StandardCharsets.UTF_8)),
+                                    ReturnType.MULTI,
+                                    keys.size(), duplicateAll(keysAndArgs))));
+    }
+
+    /** 复制一份参数（EVALSHA 失败回退至 EVAL 时，参数需要再被读取一次）。*/
+    private static ByteBuffer @NotNull []
+    duplicateAll(@NotNull List<ByteBuffer> buffers)
+    {
+        return buffers.stream()
+                      .map(ByteBuffer::duplicate)
+                      .toArray(ByteBuffer[]::new);
+    }
+
+    /** 异常（或它的某个起因）是否为 NOSCRIPT？*/
+    private static boolean isNoScriptError(Throwable exception)
+    {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause())
+        {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 以 FCALL（只读函数则是 FCALL_RO）执行函数库中的函数，
+     * 参数的序列化方式与 EVALSHA 模式保持一致。
+     */
+    private @NotNull Flux<Object>
+    functionCall(String luaScriptName, @NotNull List<String> keys, Object @NotNull ... args)
+    {
+        final String functionName
+            = LuaFunctionLibrary.getFunctionName(luaScriptName);
+
+        final byte[][] keyBytes
+            = keys.stream()
+                  .map((key) -> key.getBytes(StandardCharsets.UTF_8))
+                  .toArray(byte[][]::new);
+
+        final byte[][] argBytes
+            = Arrays.stream(args)
+                    .map(this.luaScriptArgsSerializer::serialize)
+                    .toArray(byte[][]::new);
+
+        final boolean readOnly
+            = this.readOnlyFunctions.contains(functionName);
+
+        /*
+         * 只读函数发往副本，副本还没有同步到函数库时（刚刚 FUNCTION LOAD 之后），
+         * 会返回 Function not found，此时回退至主节点。
+         */
+        final Flux<Object> result
+            = (readOnly)
+                ? this.readOnlyFunctionCommands
+                      .<Object>fcallReadOnly(functionName, ScriptOutputType.MULTI, keyBytes, argBytes)
+                      .onErrorResume(
+                          LuaScriptRegistry::isFunctionNotFound,
+                          (exception) ->
+                              this.functionCommands.fcallReadOnly(
+                                  functionName, ScriptOutputType.MULTI, keyBytes, argBytes))
+                : this.functionCommands.fcall(functionName, ScriptOutputType.MULTI, keyBytes, argBytes);
+
+        return
+        result.onErrorMap(
+            RedisCommandExecutionException.class,
+            (exception) ->
+                new LuaScriptOperatorFailed(
+                    format(
+                        "FCALL %s failed! Caused by: %s",
+                        functionName, exception.getMessage()
+                    ), exception
+                )
+        );
+    }
+
+    /** 异常是否为 Redis 返回的“函数不存在”？*/
+    private static boolean isFunctionNotFound(Throwable exception)
+    {
+        return
+        exception instanceof RedisCommandExecutionException &&
+        String.valueOf(exception.getMessage()).contains("not found");
+    }
+
+    /** 按单机配置组合副本连接用的 RedisURI（副本由 Lettuce 通过主节点的 INFO replication 发现）。*/
+    private static @NotNull RedisURI
+    getMasterUri(@NotNull RedisStandaloneConfiguration configuration)
+    {
+        final RedisURI.Builder builder
+            = RedisURI.builder()
+                      .withHost(configuration.getHostName())
+                      .withPort(configuration.getPort())
+                      .withDatabase(configuration.getDatabase());
+
+        configuration.getPassword()
+                     .toOptional()
+                     .ifPresent(builder::withPassword);
+
+        return builder.build();
+    }
+
+    /**
+     * 函数模式下，打开执行 FCALL 用的原生 Lettuce 连接：
+     * FCALL 与 FUNCTION LOAD 走主节点，FCALL_RO 走优先读副本的连接。
+     */
+    private void openFunctionConnection()
+    {
+        if (!(this.connectionFactory instanceof LettuceConnectionFactory lettuceConnectionFactory))
+        {
+            throw new UnsupportedOperationException(
+                "Function mode requires lettuce connection factory!"
+            );
+        }
+
+        AbstractRedisClient nativeClient
+            = lettuceConnectionFactory.getRequiredNativeClient();
+
+        if (!(nativeClient instanceof RedisClient redisClient))
+        {
+            throw new UnsupportedOperationException(
+                "Function mode not supported by client: " +
+                nativeClient.getClass().getSimpleName()
+            );
+        }
+
+        StatefulRedisConnection<byte[], byte[]> connection
+            = redisClient.connect(ByteArrayCodec.INSTANCE);
+
+        this.functionConnection = connection;
+        this.functionCommands   = connection.reactive();
+
+        StatefulRedisMasterReplicaConnection<byte[], byte[]> readOnlyConnection
+            = MasterReplica.connect(
+                redisClient, ByteArrayCodec.INSTANCE,
+                getMasterUri(lettuceConnectionFactory.getStandaloneConfiguration()));
+
+        readOnlyConnection.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+
+        this.readOnlyFunctionConnection = readOnlyConnection;
+        this.readOnlyFunctionCommands   = readOnlyConnection.reactive();
+    }
+
+    /** 将缓存中某一类操作的所有脚本构建成函数库。*/
+    private @NotNull LuaFunctionLibrary
+    buildLibrary(@NotNull LuaScriptOperatorType operatorType)
+    {
+        final String typePrefix = operatorType.getTypeName() + "/";
+        final Map<String, String> scriptContents = new HashMap<>();
+
+        this.scripts.forEach((cacheKey, script) -> {
+            if (cacheKey.startsWith(typePrefix))
+            {
+                scriptContents.put(
+                    cacheKey.substring(typePrefix.length()),
+                    script.getScriptAsString()
+                );
+            }
+        });
+
+        return LuaFunctionLibrary.build(operatorType, scriptContents);
+    }
+
+    /**
+     * 安装某一类操作的函数库，并检查修订号：
+     *
+     * <ol>
+     *     <li>Redis 中没有这个库：FUNCTION LOAD</li>
+     *     <li>修订号一致：什么都不做</li>
+     *     <li>
+     *         修订号不一致：若 app.lua-function-replace-on-mismatch=true
+     *         则 FUNCTION LOAD REPLACE，否则启动失败
+     *     </li>
+     * </ol>
+     */
+    private @NotNull Mono<Void>
+    installLibrary(LuaScriptOperatorType operatorType, boolean forceReplace)
+    {
+        final LuaFunctionLibrary library = this.buildLibrary(operatorType);
+
+        return
+        this.functionCommands
+            .fcallReadOnly(
+                library.getRevisionFunctionName(),
+                ScriptOutputType.VALUE, new byte[0][])
+            .next()
+            .map((revision) -> new String((byte[]) revision, StandardCharsets.UTF_8))
+            .onErrorResume(
+                LuaScriptRegistry::isFunctionNotFound,
+                (exception) -> Mono.empty())
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap((installed) -> {
+                if (installed.isEmpty())
+                {
+                    log.info(
+                        "Install function library {} (revision = {}).",
+                        library.getLibraryName(), library.getRevision()
+                    );
+
+                    return this.functionCommands.functionLoad(library.getCode());
+                }
+                else if (installed.get().equals(library.getRevision())) {
+                    return Mono.just(library.getLibraryName());
+                }
+                else if (forceReplace || this.replaceOnMismatch)
+                {
+                    log.warn(
+                        "Replace function library {} (revision {} -> {}).",
+                        library.getLibraryName(), installed.get(), library.getRevision()
+                    );
+
+                    return this.functionCommands.functionLoad(library.getCode(), true);
+                }
+
+                return Mono.error(
+                    new IllegalStateException(
+                        format(
+                            "Function library %s revision mismatch! " +
+                            "(redis = %s, local = %s) " +
+                            "Deploy the same scripts on every node, " +
+                            "or set app.lua-function-replace-on-mismatch=true to upgrade.",
+                            library.getLibraryName(), installed.get(), library.getRevision()
+                        )
+                    )
+                );
+            })
+            .doOnNext((ignore) -> this.registerLibrary(operatorType, library))
+            .then();
+    }
+
+    /** 记录已安装的函数库，并重新汇总只读函数名。*/
+    private synchronized void
+    registerLibrary(LuaScriptOperatorType operatorType, LuaFunctionLibrary library)
+    {
+        this.libraries.put(operatorType, library);
+
+        final Set<String> functions = new HashSet<>();
+
+        this.libraries.values()
+            .forEach((installed) ->
+                functions.addAll(installed.getReadOnlyFunctions()));
+
+        this.readOnlyFunctions = Set.copyOf(functions);
+    }
+
+    /** 文件系统模式下，注册对所有脚本目录的监听，并启动监听线程。*/
+    private void startScriptWatcher() throws IOException
+    {
+        this.scriptWatcher = FileSystems.getDefault().newWatchService();
+
+        for (LuaScriptOperatorType operatorType : LuaScriptOperatorType.values())
+        {
+            Path scriptDirectory
+                = this.luaScriptReader.getScriptDirectory(operatorType);
+
+            if (Files.isDirectory(scriptDirectory))
+            {
+                this.watchKeys.put(
+                    scriptDirectory.register(this.scriptWatcher, ENTRY_CREATE, ENTRY_MODIFY),
+                    operatorType
+                );
+            }
+        }
+
+        Path sharedDirectory = this.luaScriptReader.getSharedDirectory();
+
+        if (Files.isDirectory(sharedDirectory))
+        {
+            this.sharedWatchKey
+                = sharedDirectory.register(this.scriptWatcher, ENTRY_CREATE, ENTRY_MODIFY);
+        }
+
+        Thread.ofPlatform()
+              .name("lua-script-watcher")
+              .daemon(true)
+              .start(this::watchScriptChanges);
+    }
+
+    /** 公共脚本片段发生变化后，重新加载所有脚本（函数模式下再替换全部函数库）。*/
+    private void reloadAll()
+    {
+        this.preloadAll()
+            .flatMap((loaded) ->
+                (this.isFunctionMode())
+                    ? Flux.fromIterable(FUNCTION_LIBRARY_TYPES)
+                          .concatMap((operatorType) ->
+                              this.installLibrary(operatorType, true))
+                          .then(Mono.just(loaded))
+                    : Mono.just(loaded))
+            .subscribe(
+                (loaded) ->
+                    log.info("Shared lua scripts changed, {} lua scripts reloaded.", loaded),
+                (exception) ->
+                    log.error("Reload lua scripts failed!", exception)
+            );
+    }
+
+    /** 监听线程的主循环，脚本发生变化时重新加载。*/
+    private void watchScriptChanges()
+    {
+        while (RUNNING.get())
+        {
+            final WatchKey watchKey;
+
+            try {
+                watchKey = this.scriptWatcher.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException exception) {
+                return;
+            }
+
+            if (watchKey.equals(this.sharedWatchKey))
+            {
+                if (!watchKey.pollEvents().isEmpty()) {
+                    this.reloadAll();
+                }
+
+                watchKey.reset();
+                continue;
+            }
+
+            final LuaScriptOperatorType operatorType
+                = this.watchKeys.get(watchKey);
+
+            for (WatchEvent<?> event : watchKey.pollEvents())
+            {
+                if (operatorType == null || event.kind() == OVERFLOW) {
+                    continue;
+                }
+
+                final String luaScriptName = event.context().toString();
+
+                if (!luaScriptName.endsWith(".lua")) {
+                    continue;
+                }
+
+                this.reload(operatorType, luaScriptName)
+                    .flatMap((script) ->
+                        (this.isFunctionMode() && FUNCTION_LIBRARY_TYPES.contains(operatorType))
+                            ? this.installLibrary(operatorType, true).thenReturn(script)
+                            : Mono.just(script))
+                    .subscribe(
+                        (script) ->
+                            log.info(
+                                "Lua script {} reloaded. (sha1 = {})",
+                                getScriptCacheKey(operatorType, luaScriptName),
+                                script.getSha1()),
+                        (exception) ->
+                            log.error(
+                                "Reload lua script {} failed!",
+                                luaScriptName, exception)
+                    );
+            }
+
+            watchKey.reset();
+        }
+    }
+
+    /** 启动时预加载全部脚本，文件系统模式下再启动目录监听。*/
+    @Override
+    public void start()
+    {
+        if (!RUNNING.compareAndSet(false, true)) {
+            return;
+        }
+
+        try
+        {
+            Long loaded = this.preloadAll().block(Duration.ofSeconds(30L));
+
+            log.info("[SmartLifecycle] {} lua scripts preloaded.", loaded);
+        }
+        catch (Exception exception)
+        {
+            log.warn(
+                "Preload lua scripts failed, scripts will be loaded lazily. Caused by: {}",
+                exception.getMessage()
+            );
+        }
+
+        /* 函数库版本不一致时，直接令启动失败。*/
+        if (this.isFunctionMode())
+        {
+            this.openFunctionConnection();
+
+            Flux.fromIterable(FUNCTION_LIBRARY_TYPES)
+                .concatMap((operatorType) ->
+                    this.installLibrary(operatorType, false))
+                .then()
+                .block(Duration.ofSeconds(30L));
+        }
+
+        if (this.luaScriptReader.isFileSystemMode())
+        {
+            try {
+                this.startScriptWatcher();
+            }
+            catch (IOException exception)
+            {
+                log.error(
+                    format("Start lua script watcher failed! Caused by: %s",
+                        exception.getMessage()), exception
+                );
+            }
+        }
+    }
+
+    /** 关闭目录监听与函数模式下的原生连接。*/
+    @Override
+    public void stop()
+    {
+        if (!RUNNING.compareAndSet(true, false)) {
+            return;
+        }
+
+        if (this.scriptWatcher != null)
+        {
+            try {
+                this.scriptWatcher.close();
+            }
+            catch (IOException exception) {
+                log.warn("Close lua script watcher failed!", exception);
+            }
+        }
+
+        if (this.functionConnection != null) {
+            this.functionConnection.close();
+        }
+
+        if (this.readOnlyFunctionConnection != null) {
+            this.readOnlyFunctionConnection.close();
+        }
+    }
+
+    /** 还在运行吗？*/
+    @Override
+    public boolean
+    isRunning() { return RUNNING.get(); }
+
+    /** 需要在其他依赖脚本的组件之前启动。*/
+    @Override
+    public int getPhase() { return 0; }
+}
@@ -0,0 +1,63 @@
+package com.example.jesse.item_market.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/** 以消费组中某个消费者的身份读取日志流（XREADGROUP）的工具类。*/
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final public class StreamGroupReader
+{
+    /**
+     * 以 consumer 的身份从一个位置读取至多 count 条事件。
+     *
+     * @param template 字符串序列化 Redis 模板
+     * @param consumer 消费组与消费者名
+     * @param count    最多读取几条事件
+     * @param offset   日志流与读取位置
+     */
+    public static @NotNull Flux<MapRecord<String, String, String>>
+    readGroup(
+        @NotNull ReactiveRedisTemplate<String, String> template,
+        Consumer consumer, long count, StreamOffset<String> offset)
+    {
+        return readGroup(template, consumer, count, List.of(offset));
+    }
+
+    /**
+     * 以 consumer 的身份从这些位置各读取至多 count 条事件（一次 XREADGROUP）。
+     *
+     * <p>
+     *     read() 的参数是没有标注 @SafeVarargs 的泛型可变参数 StreamOffset&lt;K&gt;...，
+     *     调用处直接传入 StreamOffset&lt;String&gt; 时编译器要创建泛型数组并给出 unchecked 警告。
+     *     这里统一由列表转换成数组（唯一一次未检查的转换），数组只在本次调用中被 read() 读取，不会混入其他类型的元素，
+     *     所以只在这一处抑制警告。
+     * </p>
+     *
+     * @param template 字符串序列化 Redis 模板
+     * @param consumer 消费组与消费者名
+     * @param count    每个日志流最多读取几条事件
+     * @param offsets  日志流与各自的读取位置
+     */
+    @SuppressWarnings("unchecked")
+    public static @NotNull Flux<MapRecord<String, String, String>>
+    readGroup(
+        @NotNull ReactiveRedisTemplate<String, String> template,
+        Consumer consumer, long count, @NotNull List<StreamOffset<String>> offsets)
+    {
+        final StreamOffset<String>[] offsetArray
+            = (StreamOffset<String>[]) offsets.toArray(new StreamOffset<?>[0]);
+
+        return
+        template.<String, String>opsForStream()
+                .read(consumer, StreamReadOptions.empty().count(count), offsetArray);
+    }
+}
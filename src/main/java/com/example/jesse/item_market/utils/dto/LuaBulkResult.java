@@ -0,0 +1,40 @@
+package com.example.jesse.item_market.utils.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 批量执行 Lua 脚本时，某一次调用的结果。
+ * 批量执行中每次调用互不影响，所以失败以 error 的形式记录，而不是中断整个批次。
+ *
+ * @param <T> 脚本执行成功后发布的数据类型
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class LuaBulkResult<T>
+{
+    /** 这次调用在批次中的下标。*/
+    private final int index;
+
+    /** 成功时发布的数据（脚本不发布数据时为 null）。*/
+    private final T value;
+
+    /** 失败时的异常（成功时为 null）。*/
+    private final Throwable error;
+
+    /** 这次调用是否成功？*/
+    public boolean isSuccess() { return this.error == null; }
+
+    @Contract("_, _ -> new")
+    public static <T> @NotNull LuaBulkResult<T>
+    success(int index, T value) { return new LuaBulkResult<>(index, value, null); }
+
+    @Contract("_, _ -> new")
+    public static <T> @NotNull LuaBulkResult<T>
+    failure(int index, Throwable error) { return new LuaBulkResult<>(index, null, error); }
+}
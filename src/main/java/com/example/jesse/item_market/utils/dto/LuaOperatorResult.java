@@ -1,17 +1,92 @@
 package com.example.jesse.item_market.utils.dto;
 
 import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+import static java.lang.String.format;
 
 /**
- * Lua 脚本的执行结果是一个 Json 类型，会被映射成本 DTO。
- * 未来随着任务复杂度的提升，这个 DTO 也会随之扩展。
+ * <p>Lua 脚本的执行结果。</p>
+ *
+ * 脚本返回一个扁平的 Redis 数组：{ 'STATUS', payload1, payload2, ... }，
+ * 第一个元素是状态码（如 SUCCESS），会被映射成 result，
+ * 之后的元素是可选的载荷（如新的资金余额、武器 ID、列表长度），
+ * 调用方按下标读取，从而省去后续的查询操作。
  */
-@Data
-@NoArgsConstructor
+@Getter
+@ToString
+@EqualsAndHashCode
 @AllArgsConstructor
 public class LuaOperatorResult
 {
-    private String result;
+    /** 状态码。*/
+    private final String result;
+
+    /** 载荷（元素为 String、Long 或嵌套的 List）。*/
+    private final List<Object> payload;
+
+    /** 载荷的数量。*/
+    public int payloadSize() { return this.payload.size(); }
+
+    /** 获取载荷中的某个元素，下标越界时抛出异常。*/
+    private @NotNull Object getPayload(int index)
+    {
+        if (index < 0 || index >= this.payload.size())
+        {
+            throw new IndexOutOfBoundsException(
+                format(
+                    "Payload index %d out of bounds! (result = %s, payload = %s)",
+                    index, this.result, this.payload
+                )
+            );
+        }
+
+        return this.payload.get(index);
+    }
+
+    /** 以字符串的形式读取载荷。*/
+    public @NotNull String getString(int index) {
+        return String.valueOf(this.getPayload(index));
+    }
+
+    /** 以整数的形式读取载荷（Lua 的整数回复，或者整数字符串）。*/
+    public long getLong(int index)
+    {
+        return switch (this.getPayload(index))
+        {
+            case Long value -> value;
+            case Object value -> Long.parseLong(value.toString());
+        };
+    }
+
+    /**
+     * 以浮点数的形式读取载荷。
+     * Lua 数字返回给 Redis 时会被截断成整数，所以小数需要以字符串形式返回。
+     */
+    public double getDouble(int index)
+    {
+        return switch (this.getPayload(index))
+        {
+            case Long value -> value.doubleValue();
+            case Object value -> Double.parseDouble(value.toString());
+        };
+    }
+
+    /** 以列表的形式读取载荷（脚本返回了嵌套数组）。*/
+    @SuppressWarnings("unchecked")
+    public @NotNull List<Object> getList(int index)
+    {
+        if (this.getPayload(index) instanceof List<?> list) {
+            return (List<Object>) list;
+        }
+
+        throw new IllegalStateException(
+            format("Payload %d of result %s is not a list!", index, this.result)
+        );
+    }
 }
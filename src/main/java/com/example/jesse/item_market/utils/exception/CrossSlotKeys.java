@@ -0,0 +1,9 @@
+package com.example.jesse.item_market.utils.exception;
+
+/** 集群模式下，某个脚本的 KEYS 不在同一个槽上时抛出本异常。*/
+public class CrossSlotKeys extends RuntimeException
+{
+    public CrossSlotKeys(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
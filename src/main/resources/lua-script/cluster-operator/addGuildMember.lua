@@ -0,0 +1,54 @@
+--[[
+    集群模式下加入公会的第二步：把用户写入公会的成员列表（{guild} 槽）。
+    第一步由 claimGuildRole.lua 在用户数据中登记公会与 Member 身份（{uuid} 槽）。
+
+    KEYS:
+        guildKey        公会键（如：guild:{guild}:The-Dark-Brotherhood）
+        guildLogKey     公会操作日志键（guild:{guild}:log）
+        guildNameSetKey 公会名集合键（guild:{guild}:guild-name:guild-name-set）
+
+    ARGV:
+        uuid            用户 UUID
+        formatGuildName 公会名
+        userName        用户名（第一步读出）
+        maxMembers      公会的最大成员数
+
+    返回：
+        { 'SUCCESS', 公会当前的成员数 }
+]]
+local guildKey        = KEYS[1]
+local guildLogKey     = KEYS[2]
+local guildNameSetKey = KEYS[3]
+
+local uuid            = ARGV[1]
+local formatGuildName = ARGV[2]
+local userName        = ARGV[3]
+local maxMembers      = tonumber(ARGV[4])
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+if
+    not sismemberPlain(guildNameSetKey, formatGuildName)
+then
+    return { 'GUILD_NOT_FOUND' }
+end
+
+if
+    redis.call('ZCARD', guildKey) >= maxMembers
+then
+    return { 'GUILD_IS_FULL' }
+end
+
+redis.call('ZADD', guildKey, 'NX', 0, userName)
+redis.call(
+    'XADD',
+    guildLogKey, '*',
+    'event', 'JOIN_GUILD',
+    'uuid', uuid,
+    'guild-name', formatGuildName,
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS', redis.call('ZCARD', guildKey) }
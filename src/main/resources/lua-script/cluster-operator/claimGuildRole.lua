@@ -0,0 +1,72 @@
+--[[
+    集群模式下创建或加入公会的第一步：在用户数据中登记公会与身份（{uuid} 槽），
+    第二步由 registerGuild.lua（创建）或 addGuildMember.lua（加入）写入公会（{guild} 槽），
+    第二步失败时由 releaseGuildRole.lua 抹掉这里登记的公会信息。
+    先登记用户一侧，同一个用户并发地创建或加入多个公会时只有一个能通过检查。
+
+    KEYS:
+        userKey    用户键（如：users:{114934523722107784}）
+        userLogKey 用户数据日志键（如：users:log:{114934523722107784}）
+
+    ARGV:
+        uuid                用户 UUID
+        formatGuildName     公会名
+        userGuildField      用户哈希的用户公会字段名
+        userGuildRoleField  用户哈希的用户公会身份字段名
+        guildRole           登记的身份（Leader：创建公会，Member：加入公会）
+
+    返回：
+        { 'SUCCESS', userName }
+]]
+local userKey    = KEYS[1]
+local userLogKey = KEYS[2]
+
+local uuid               = ARGV[1]
+local formatGuildName    = ARGV[2]
+local userGuildField     = ARGV[3]
+local userGuildRoleField = ARGV[4]
+local guildRole          = ARGV[5]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+local userGuildName, userGuildRole
+    = unpack(hmgetPlain(userKey, userGuildField, userGuildRoleField))
+
+local noGuildInfo = '---'
+
+-- 已经加入公会的用户，不允许再新建或者加入公会
+if
+    userGuildName ~= noGuildInfo or
+    userGuildRole ~= noGuildInfo
+then
+    return { 'ALREADY_JOINED' }
+end
+
+local userName = hgetPlain(userKey, 'name')
+
+if
+    userName == false
+then
+    return { 'USER_NAME_NOT_FOUND' }
+end
+
+adoptPlainField(userKey, userGuildField)
+adoptPlainField(userKey, userGuildRoleField)
+redis.call(
+    'HSET', userKey,
+    userGuildField, formatGuildName,
+    userGuildRoleField, guildRole
+)
+redis.call(
+    'XADD',
+    userLogKey, '*',
+    'event', (guildRole == 'Leader') and 'USER_CREATE_GUILD' or 'USER_JOIN_GUILD',
+    'uuid', uuid,
+    'user-name', userName,
+    'user-funds', '---',
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS', userName }
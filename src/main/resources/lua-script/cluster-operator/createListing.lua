@@ -0,0 +1,67 @@
+--[[
+    集群模式下上架武器的第二步：在市场上登记武器与价格（{weapon-market} 槽）。
+
+    KEYS:
+        weaponHashKey       挂在市场上的武器键（如：market:{weapon-market}:weapons:1985f067af74d6d）
+        weaponPriceZsetKey  挂在市场上的武器价格键（market:{weapon-market}:weapon-price）
+        marketLogKey        市场日志键（market:{weapon-market}:log）
+        weaponTypePriceZsetKey 该类武器的价格表键（如：market:{weapon-market}:weapon-price:Sword）
+        listingExpiryZsetKey   上架到期时间表键（market:{weapon-market}:listing-expiry）
+
+    ARGV:
+        weaponUUID  武器 ID
+        sellerUUID  卖家 UUID
+        weaponName  武器名
+        weaponPrice 武器价格
+        ttlSeconds  上架时长（秒，0 表示不会到期）
+]]
+local weaponHashKey      = KEYS[1]
+local weaponPriceZsetKey = KEYS[2]
+local marketLogKey       = KEYS[3]
+local weaponTypePriceZsetKey = KEYS[4]
+local listingExpiryZsetKey   = KEYS[5]
+
+local weaponUUID  = ARGV[1]
+local sellerUUID  = ARGV[2]
+local weaponName  = ARGV[3]
+local weaponPrice = ARGV[4]
+local ttlSeconds  = tonumber(ARGV[5]) or 0
+
+local timestamp = redis.call('TIME')[1]
+
+redis.call(
+    'HSET', weaponHashKey,
+    'weapon-name', weaponName, 'seller', sellerUUID
+)
+redis.call(
+    'ZADD', weaponPriceZsetKey,
+    'NX',
+    string.format("%.2f", weaponPrice),
+    weaponUUID
+)
+redis.call(
+    'ZADD', weaponTypePriceZsetKey,
+    'NX',
+    string.format("%.2f", weaponPrice),
+    weaponUUID
+)
+
+-- 设置了上架时长的武器登记到期时间，到期后由清理任务下架并放回卖家包裹
+if ttlSeconds > 0
+then
+    redis.call('ZADD', listingExpiryZsetKey, tonumber(timestamp) + ttlSeconds, weaponUUID)
+end
+
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', 'WEAPON_LISTING',
+    'weaponId', weaponUUID,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'priceCents', math.floor(tonumber(weaponPrice) * 100 + 0.5),
+    'timestamp', timestamp
+)
+
+-- 返回上架的武器 ID（从武器键中提取）
+return { 'SUCCESS', string.match(weaponHashKey, ".*:(.*)") }
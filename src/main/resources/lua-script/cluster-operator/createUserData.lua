@@ -0,0 +1,81 @@
+--[[
+    集群模式下创建用户的第二步：写入用户数据与初始武器（{uuid} 槽）。
+
+    KEYS:
+        newUserKey       用户键（如：users:{114934523722107784}）
+        userInventoryKey 用户包裹键（如：inventories:{114934523722107784}）
+        userLogKey       用户数据日志键（如：users:log:{114934523722107784}）
+        inventoryLogKey  用户包裹日志键（如：inventories:log:{114934523722107784}）
+
+    ARGV:
+        userNameField       用户名哈希字段名
+        userFundsField      用户资金哈希字段名（单位：分）
+        userGuildField      用户哈希的用户公会字段名
+        userGuildRoleField  用户哈希的用户公会身份字段名
+        newUserName         用户名（如：Peter，Jesse）
+        newUserFunds        新用户初始资金（单位：分）
+        initWeaponsStr      新用户的初始武器（空格分割的字符串，如：Sword Shield Axe ...）
+]]
+local newUserKey       = KEYS[1]
+local userInventoryKey = KEYS[2]
+local userLogKey       = KEYS[3]
+local inventoryLogKey  = KEYS[4]
+
+local userNameField      = ARGV[1]
+local userFundsField     = ARGV[2]
+local userGuildField     = ARGV[3]
+local userGuildRoleField = ARGV[4]
+local newUserName        = ARGV[5]
+local newUserFunds       = ARGV[6]
+local initWeaponsStr     = ARGV[7]
+
+local uuid = string.match(newUserKey, ":{?([^:{}]+)}?$")
+
+local timestamp = redis.call('TIME')[1]
+
+-- UUID 冲突（概率极低），交给调用方释放用户名
+if
+    redis.call('EXISTS', newUserKey) == 1
+then
+    return { 'DUPLICATE_UUID' }
+end
+
+local initWeapons = {}
+for weapon in string.gmatch(initWeaponsStr, "%S+") do
+    table.insert(initWeapons, weapon)
+end
+
+redis.call(
+    'HSET', newUserKey,
+    userNameField, newUserName,
+    userFundsField, newUserFunds,
+    userGuildField, '---',
+    userGuildRoleField, '---'
+)
+
+for _, weapon in ipairs(initWeapons) do
+    redis.call('HINCRBY', userInventoryKey, weapon, 1)
+end
+
+redis.call(
+    'XADD',
+    userLogKey, '*',
+    'event', 'NEW_USER_CREATE',
+    'uuid', uuid,
+    'user-name', newUserName,
+    'user-funds-cents', newUserFunds,
+    'timestamp', timestamp
+)
+
+redis.call(
+    'XADD',
+    inventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', uuid,
+    'user-name', newUserName,
+    'amount', #initWeapons,
+    'timestamp', timestamp
+)
+
+-- 返回新用户的 UUID 与初始武器的数量
+return { 'SUCCESS', uuid, #initWeapons }
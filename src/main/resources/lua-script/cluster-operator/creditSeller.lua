@@ -0,0 +1,61 @@
+--[[
+    集群模式下市场交易的第三步：卖家收款（卖家的 {uuid} 槽）。
+    执行成功后写入交易步骤标记，同一笔交易重试时不会重复入账。
+
+    KEYS:
+        sellerUserKey   卖家用户键（如：users:{114940680399943670}）
+        sellerLogKey    卖家用户数据日志键（如：users:log:{114940680399943670}）
+        creditMarkerKey 交易步骤标记键（如：trades:{114940680399943670}:1985f067af74d6d:credit）
+        sellerIndexKey  卖家上架武器索引键（如：market:seller:{114940680399943670}）
+
+    ARGV:
+        tradeId     交易 ID
+        sellerUUID  卖家 UUID
+        priceCents  成交价（单位：分）
+        markerTTL   交易步骤标记的存活时间（秒）
+        weaponId    已售出的武器 UID
+]]
+local sellerUserKey   = KEYS[1]
+local sellerLogKey    = KEYS[2]
+local creditMarkerKey = KEYS[3]
+local sellerIndexKey  = KEYS[4]
+
+local tradeId     = ARGV[1]
+local sellerUUID  = ARGV[2]
+local priceCents  = tonumber(ARGV[3])
+local markerTTL   = tonumber(ARGV[4])
+local weaponId    = ARGV[5]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include funds
+
+-- 同一笔交易的重试
+if
+    redis.call('EXISTS', creditMarkerKey) == 1
+then
+    return { 'SUCCESS', loadFundsCents(sellerUserKey) }
+end
+
+local sellerName = hgetPlain(sellerUserKey, 'name')
+
+-- 卖家还没有迁移时，先迁移再入账
+loadFundsCents(sellerUserKey)
+
+local newSellerFunds
+    = redis.call('HINCRBY', sellerUserKey, 'funds-cents', priceCents)
+redis.call(
+    'XADD',
+    sellerLogKey, '*',
+    'event', 'SELLER_FUNDS_INCR',
+    'uuid', sellerUUID,
+    'user-name', sellerName,
+    'user-funds-cents', "+" ..priceCents,
+    'timestamp', timestamp
+)
+
+sremPlain(sellerIndexKey, weaponId)
+redis.call('SET', creditMarkerKey, tradeId, 'EX', markerTTL)
+
+-- 返回交易后卖家的资金余额（单位：分）
+return { 'SUCCESS', newSellerFunds }
@@ -0,0 +1,84 @@
+--[[
+    集群模式下市场交易的第二步：买家付款，武器入买家包裹（买家的 {uuid} 槽）。
+    执行成功后写入交易步骤标记，同一笔交易重试时不会重复扣款。
+
+    KEYS:
+        buyerUserKey         买家用户键（如：users:{114950910119824488}）
+        buyerInventoryKey    买家包裹键（如：inventories:{114950910119824488}）
+        buyerLogKey          买家用户数据日志键（如：users:log:{114950910119824488}）
+        buyerInventoryLogKey 买家包裹日志键（如：inventories:log:{114950910119824488}）
+        debitMarkerKey       交易步骤标记键（如：trades:{114950910119824488}:1985f067af74d6d:debit）
+
+    ARGV:
+        tradeId     交易 ID
+        buyerUUID   买家 UUID
+        weaponName  武器名（武器哈希中的 weapon-name 字段值）
+        priceCents  成交价（单位：分）
+        markerTTL   交易步骤标记的存活时间（秒）
+]]
+local buyerUserKey         = KEYS[1]
+local buyerInventoryKey    = KEYS[2]
+local buyerLogKey          = KEYS[3]
+local buyerInventoryLogKey = KEYS[4]
+local debitMarkerKey       = KEYS[5]
+
+local tradeId     = ARGV[1]
+local buyerUUID   = ARGV[2]
+local weaponName  = ARGV[3]
+local priceCents  = tonumber(ARGV[4])
+local markerTTL   = tonumber(ARGV[5])
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include inventory
+
+-- #include funds
+
+-- 同一笔交易的重试
+if
+    redis.call('EXISTS', debitMarkerKey) == 1
+then
+    return { 'SUCCESS', loadFundsCents(buyerUserKey) }
+end
+
+local buyerFundsCents = loadFundsCents(buyerUserKey)
+
+if not buyerFundsCents
+then
+    return { 'BUYER_FUNDS_NOT_FOUND' }
+end
+
+if buyerFundsCents < priceCents
+then
+    return { 'BUYER_FUNDS_NOT_ENOUGH' }
+end
+
+local buyerName = hgetPlain(buyerUserKey, 'name')
+
+local newBuyerFunds
+    = redis.call('HINCRBY', buyerUserKey, 'funds-cents', -priceCents)
+redis.call(
+    'XADD',
+    buyerLogKey, '*',
+    'event', 'BUYER_FUNDS_REDUCE',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'user-funds-cents', "-" ..priceCents,
+    'timestamp', timestamp
+)
+
+putIntoInventory(buyerInventoryKey, weaponName)
+redis.call(
+    'XADD',
+    buyerInventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'amount', '1',
+    'timestamp', timestamp
+)
+
+redis.call('SET', debitMarkerKey, tradeId, 'EX', markerTTL)
+
+-- 返回交易后买家的资金余额（单位：分）
+return { 'SUCCESS', newBuyerFunds }
@@ -0,0 +1,116 @@
+--[[
+    集群模式下删除用户的第二步：删除用户自己槽里的所有数据（{uuid} 槽）。
+    第一步由 delistWeapon.lua 逐件删除卖家索引中的在售武器（{weapon-market} 槽），
+    之后再释放用户名（releaseUserName.lua，{user-name} 槽），以及离开公会（removeGuildMember.lua，{guild} 槽）。
+
+    调用方读取卖家索引之后，卖家又上架或卖出了武器时，市场上可能留下没有清理的武器，
+    所以先核对卖家索引与调用方处理过的武器 ID 是否一致，不一致时什么都不删，由调用方重新执行第一步。
+
+    KEYS:
+        userKey         用户键（如：users:{114934523722107784}）
+        inventoryKey    用户包裹键（如：inventories:{114934523722107784}）
+        contactsKey     用户最近联系人键（如：contact:{114934523722107784}）
+        contactLexKey   用户联系人字典序索引键（如：contact:lex:{114934523722107784}）
+        sellerIndexKey  卖家上架武器索引键（如：market:seller:{114934523722107784}）
+        historyKey      用户操作历史索引键（如：users:history:{114934523722107784}）
+        contactLogKey   用户最近联系人日志键（如：contact:log:{114934523722107784}）
+        inventoryLogKey 用户包裹日志键（如：inventories:log:{114934523722107784}）
+        userLogKey      用户数据日志键（如：users:log:{114934523722107784}）
+
+    ARGV:
+        userNameField 用户名哈希字段名
+        weaponIds     （ARGV[2] 起）调用方从卖家索引中读出并处理过的所有武器 ID
+
+    返回：
+        { 'SUCCESS', userName, guildName, guildRole }（没有公会信息时为 ---）
+]]
+local userKey         = KEYS[1]
+local inventoryKey    = KEYS[2]
+local contactsKey     = KEYS[3]
+local contactLexKey   = KEYS[4]
+local sellerIndexKey  = KEYS[5]
+local historyKey      = KEYS[6]
+local contactLogKey   = KEYS[7]
+local inventoryLogKey = KEYS[8]
+local userLogKey      = KEYS[9]
+
+local userNameField     = ARGV[1]
+local WEAPON_IDS_OFFSET = 1
+
+local targetUUID = string.match(userKey, ":{?([^:{}]+)}?$")
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+local userName = hgetPlain(userKey, userNameField)
+
+if not userName then
+    return { 'USER_NOT_FOUND' }
+end
+
+-- 卖家索引中的武器必须正好是调用方处理过的那些
+if
+    redis.call('SCARD', sellerIndexKey) ~= #ARGV - WEAPON_IDS_OFFSET
+then
+    return { 'SELLER_INDEX_CHANGED' }
+end
+
+for i = WEAPON_IDS_OFFSET + 1, #ARGV do
+    if
+        not sismemberPlain(sellerIndexKey, ARGV[i])
+    then
+        return { 'SELLER_INDEX_CHANGED' }
+    end
+end
+
+local guildName, guildRole
+    = unpack(hmgetPlain(userKey, 'guild', 'guild-role'))
+
+-- 移除用户的所有常用联系人（以及它的字典序索引）
+redis.call('DEL', contactsKey, contactLexKey)
+redis.call(
+    'XADD',
+    contactLogKey, '*',
+    'event', 'REMOVE_ALL_CONTACTS',
+    'uuid', targetUUID,
+    'contactName', 'all',
+    'timestamp', timestamp
+)
+
+-- 删除用户的包裹，并添加审计信息（还没有迁移的包裹是列表，迁移后是 武器名 -> 数量 的哈希）
+local weaponAmount = 0
+
+if redis.call('TYPE', inventoryKey)['ok'] == 'list'
+then
+    weaponAmount = redis.call('LLEN', inventoryKey)
+else
+    for _, count in ipairs(redis.call('HVALS', inventoryKey)) do
+        weaponAmount = weaponAmount + tonumber(count)
+    end
+end
+
+redis.call('DEL', inventoryKey, sellerIndexKey)
+redis.call(
+    'XADD',
+    inventoryLogKey, '*',
+    'event', 'INVENTORY_REMOVE',
+    'uuid', targetUUID,
+    'user-name', userName,
+    'amount', weaponAmount,
+    'timestamp', timestamp
+)
+
+-- 最后删除用户数据与操作历史索引，并添加审计信息
+redis.call('DEL', userKey, historyKey)
+redis.call(
+    'XADD',
+    userLogKey, '*',
+    'event', 'USER_REMOVE',
+    'uuid', targetUUID,
+    'user-name', userName,
+    'user-funds', '---',
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS', userName, guildName or '---', guildRole or '---' }
@@ -0,0 +1,90 @@
+--[[
+    集群模式下下架到期武器的第一步：从市场上删除到期的武器（{weapon-market} 槽），
+    第二步由 returnToInventory.lua 把武器放回卖家包裹（{uuid} 槽）。
+    到期时间表中的武器可能已经被买走或者被卖家下架，这时只从到期时间表中移除；
+    集群交易正在预留的武器推迟一段时间后再处理。
+    武器哈希与价格表还没有改写编码时，读取回退到带引号的形式（见 shared/plain.lua）。
+
+    KEYS:
+        listingExpiryZsetKey   上架到期时间表键（market:{weapon-market}:listing-expiry）
+        weaponHashKey          到期的武器键（如：market:{weapon-market}:weapons:1985f067af74d6d）
+        weaponPriceZsetKey     挂在市场上的武器价格键（market:{weapon-market}:weapon-price）
+        weaponTypePriceZsetKey 该类武器的价格表键（如：market:{weapon-market}:weapon-price:Sword）
+        marketLogKey           市场日志键（market:{weapon-market}:log）
+
+    ARGV:
+        weaponId         到期的武器 ID
+        sellerUUID       卖家 UUID（调用方读出）
+        weaponName       武器名（调用方读出）
+        postponeSeconds  武器正在被预留时推迟几秒再处理
+
+    返回：
+        SUCCESS          已从市场上删除，需要放回卖家包裹
+        NOT_EXPIRED      武器还没有到期（或者已经被其他节点处理）
+        NOT_ON_MARKET    武器已经不在市场上，只从到期时间表中移除
+        LISTING_CHANGED  武器的卖家或武器名与调用方读出的不一致
+        RESERVED         武器正在被集群交易预留，推迟处理
+]]
+local listingExpiryZsetKey   = KEYS[1]
+local weaponHashKey          = KEYS[2]
+local weaponPriceZsetKey     = KEYS[3]
+local weaponTypePriceZsetKey = KEYS[4]
+local marketLogKey           = KEYS[5]
+
+local weaponId        = ARGV[1]
+local sellerUUID      = ARGV[2]
+local weaponName      = ARGV[3]
+local postponeSeconds = tonumber(ARGV[4])
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+local expireAt = redis.call('ZSCORE', listingExpiryZsetKey, weaponId)
+
+if not expireAt or tonumber(expireAt) > tonumber(timestamp)
+then
+    return { 'NOT_EXPIRED' }
+end
+
+local listedWeaponName, listedSellerUUID, pendingTrade
+    = unpack(
+        hmgetPlain(
+            weaponHashKey,
+            'weapon-name', 'seller', 'pending-trade'
+        )
+    )
+
+if not listedWeaponName
+then
+    redis.call('ZREM', listingExpiryZsetKey, weaponId)
+    return { 'NOT_ON_MARKET' }
+end
+
+if listedSellerUUID ~= sellerUUID or listedWeaponName ~= weaponName
+then
+    return { 'LISTING_CHANGED' }
+end
+
+if pendingTrade
+then
+    redis.call('ZADD', listingExpiryZsetKey, tonumber(timestamp) + postponeSeconds, weaponId)
+    return { 'RESERVED' }
+end
+
+redis.call('DEL', weaponHashKey)
+zremPlain(weaponPriceZsetKey, weaponId)
+zremPlain(weaponTypePriceZsetKey, weaponId)
+redis.call('ZREM', listingExpiryZsetKey, weaponId)
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', 'WEAPON_OUTBOUND',
+    'reason', 'EXPIRED',
+    'weaponId', weaponId,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS' }
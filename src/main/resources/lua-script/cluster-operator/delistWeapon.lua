@@ -0,0 +1,75 @@
+--[[
+    集群模式下卖家下架武器（或者删除用户时清理它的在售武器）的第一步：从市场上删除武器（{weapon-market} 槽），
+    下架时第二步由 returnToInventory.lua 把武器放回卖家包裹（{uuid} 槽）。
+    正在被集群交易预留的武器不能下架，由那笔交易结算或者释放之后再处理。
+    武器哈希与价格表还没有改写编码时，读取回退到带引号的形式（见 shared/plain.lua）。
+
+    KEYS:
+        weaponHashKey          要下架的武器键（如：market:{weapon-market}:weapons:1985f067af74d6d）
+        weaponPriceZsetKey     挂在市场上的武器价格键（market:{weapon-market}:weapon-price）
+        weaponTypePriceZsetKey 该类武器的价格表键（如：market:{weapon-market}:weapon-price:Sword）
+        listingExpiryZsetKey   上架到期时间表键（market:{weapon-market}:listing-expiry）
+        marketLogKey           市场日志键（market:{weapon-market}:log）
+
+    ARGV:
+        sellerUUID 卖家 UUID
+        weaponName 武器名
+        weaponId   要下架的武器 ID
+        event      写入市场日志的事件名（下架：WEAPON_OUTBOUND，删除用户：WEAPON_DELETE）
+
+    返回：
+        SUCCESS          已从市场上删除
+        WEAPON_NOT_FOUND 武器已经不在市场上，或者不是这个卖家的这件武器
+        WEAPON_RESERVED  武器正在被集群交易预留
+]]
+local weaponHashKey          = KEYS[1]
+local weaponPriceZsetKey     = KEYS[2]
+local weaponTypePriceZsetKey = KEYS[3]
+local listingExpiryZsetKey   = KEYS[4]
+local marketLogKey           = KEYS[5]
+
+local sellerUUID = ARGV[1]
+local weaponName = ARGV[2]
+local weaponId   = ARGV[3]
+local event      = ARGV[4]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+local listedWeaponName, listedSellerUUID, pendingTrade
+    = unpack(
+        hmgetPlain(
+            weaponHashKey,
+            'weapon-name', 'seller', 'pending-trade'
+        )
+    )
+
+if
+    not listedWeaponName
+    or listedSellerUUID ~= sellerUUID
+    or listedWeaponName ~= weaponName
+then
+    return { 'WEAPON_NOT_FOUND' }
+end
+
+if pendingTrade
+then
+    return { 'WEAPON_RESERVED' }
+end
+
+redis.call('DEL', weaponHashKey)
+zremPlain(weaponPriceZsetKey, weaponId)
+zremPlain(weaponTypePriceZsetKey, weaponId)
+redis.call('ZREM', listingExpiryZsetKey, weaponId)
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', event,
+    'weaponId', weaponId,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS' }
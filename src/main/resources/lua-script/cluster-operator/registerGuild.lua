@@ -0,0 +1,55 @@
+--[[
+    集群模式下创建公会的第二步：登记公会名，并令创建者成为第一个成员（{guild} 槽）。
+    第一步由 claimGuildRole.lua 在用户数据中登记公会与 Leader 身份（{uuid} 槽）。
+
+    KEYS:
+        guildKey           公会键（如：guild:{guild}:The-Dark-Brotherhood）
+        guildNameSetKey    公会名集合键（guild:{guild}:guild-name:guild-name-set）
+        guildLogKey        公会操作日志键（guild:{guild}:log）
+        guildNameSetLogKey 公会名集合日志键（guild:{guild}:guild-name:log）
+
+    ARGV:
+        uuid            创建者 UUID
+        formatGuildName 公会名
+        userName        创建者的用户名（第一步读出）
+]]
+local guildKey           = KEYS[1]
+local guildNameSetKey    = KEYS[2]
+local guildLogKey        = KEYS[3]
+local guildNameSetLogKey = KEYS[4]
+
+local uuid            = ARGV[1]
+local formatGuildName = ARGV[2]
+local userName        = ARGV[3]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+-- 公会名重复（包括还带着引号的旧成员）
+if
+    sismemberPlain(guildNameSetKey, formatGuildName) or
+    redis.call('SADD', guildNameSetKey, formatGuildName) == 0
+then
+    return { 'DUPLICATE_GUILD_NAME' }
+end
+
+redis.call(
+    'XADD',
+    guildNameSetLogKey, '*',
+    'event', 'INSERT_GUILD_NAME',
+    'guild-name', formatGuildName,
+    'timestamp', timestamp
+)
+
+redis.call('ZADD', guildKey, 'NX', 0, userName)
+redis.call(
+    'XADD',
+    guildLogKey, '*',
+    'event', 'CREATE_GUILD',
+    'uuid', uuid,
+    'guild-name', formatGuildName,
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS' }
@@ -0,0 +1,82 @@
+--[[
+    集群模式下离开公会的第一步：抹掉用户数据中的公会信息（{uuid} 槽），
+    第二步由 removeGuildMember.lua 把用户从公会中移除（{guild} 槽）。
+    创建或加入公会的第二步失败时，也由本脚本撤销 claimGuildRole.lua 登记的公会信息。
+
+    KEYS:
+        userKey    用户键（如：users:{114934523722107784}）
+        userLogKey 用户数据日志键（如：users:log:{114934523722107784}）
+
+    ARGV:
+        uuid                用户 UUID
+        formatGuildName     公会名
+        userGuildField      用户哈希的用户公会字段名
+        userGuildRoleField  用户哈希的用户公会身份字段名
+        guildRole           用户应有的身份（离开公会时为 Member，所以 Leader 不能离开；撤销时为登记的身份）
+
+    返回：
+        { 'SUCCESS', userName }
+]]
+local userKey    = KEYS[1]
+local userLogKey = KEYS[2]
+
+local uuid               = ARGV[1]
+local formatGuildName    = ARGV[2]
+local userGuildField     = ARGV[3]
+local userGuildRoleField = ARGV[4]
+local guildRole          = ARGV[5]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+local userGuildName, userGuildRole
+    = unpack(hmgetPlain(userKey, userGuildField, userGuildRoleField))
+
+local noGuildInfo = '---'
+
+if
+    userGuildName == noGuildInfo or
+    userGuildRole == noGuildInfo
+then
+    return { 'NOT_JOIN_ANY_GUILD' }
+end
+
+if
+    userGuildName ~= formatGuildName
+then
+    return { 'NOT_BELONG_TO_GUILD' }
+end
+
+if
+    userGuildRole ~= guildRole
+then
+    return { 'LEAVE_FORBIDDEN' }
+end
+
+local userName = hgetPlain(userKey, 'name')
+
+if
+    userName == false
+then
+    return { 'USER_NAME_NOT_FOUND' }
+end
+
+adoptPlainField(userKey, userGuildField)
+adoptPlainField(userKey, userGuildRoleField)
+redis.call(
+    'HSET', userKey,
+    userGuildField,     noGuildInfo,
+    userGuildRoleField, noGuildInfo
+)
+redis.call(
+    'XADD',
+    userLogKey, '*',
+    'event', 'USER_LEAVE_GUILD',
+    'uuid', uuid,
+    'user-name', userName,
+    'user-funds', '---',
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS', userName }
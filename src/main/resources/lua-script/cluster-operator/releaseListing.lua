@@ -0,0 +1,61 @@
+--[[
+    集群模式下市场交易失败时的补偿操作：取消武器的预留，重新放回价格表（{weapon-market} 槽）。
+    武器哈希还没有改写编码时，字段读取回退到带引号的形式（见 shared/plain.lua），
+    放回价格表的成员总是原始字符串。
+
+    KEYS:
+        weaponHashKey 市场武器信息哈希键（如：market:{weapon-market}:weapons:1985f067af74d6d）
+        weaponZsetKey 市场武器价格有序集合键（market:{weapon-market}:weapon-price）
+        weaponTypePriceZsetKeys （KEYS[3] 起）所有武器类型的价格表键
+
+    ARGV:
+        tradeId  交易 ID
+        weaponId 武器 UID
+]]
+local weaponHashKey = KEYS[1]
+local weaponZsetKey = KEYS[2]
+
+local TYPE_BOOKS_OFFSET = 3
+
+-- #include plain
+
+-- 按武器名在 KEYS[firstIndex..#KEYS] 中找到该类武器的价格表（价格表键以武器名结尾）
+local function findTypeBook(firstIndex, weaponName)
+    for i = firstIndex, #KEYS do
+        if string.match(KEYS[i], ":([^:]+)$") == weaponName then
+            return KEYS[i]
+        end
+    end
+
+    return nil
+end
+
+local tradeId  = ARGV[1]
+local weaponId = ARGV[2]
+
+-- 只取消本交易的预留
+if
+    hgetPlain(weaponHashKey, 'pending-trade') == tradeId
+then
+    local pendingPrice
+        = hgetPlain(weaponHashKey, 'pending-price')
+
+    redis.call(
+        'HDEL', weaponHashKey,
+        'pending-trade', 'pending-price',
+        quoted('pending-trade'), quoted('pending-price')
+    )
+    redis.call('ZADD', weaponZsetKey, 'NX', pendingPrice, weaponId)
+
+    local weaponTypePriceZsetKey
+        = findTypeBook(
+            TYPE_BOOKS_OFFSET,
+            hgetPlain(weaponHashKey, 'weapon-name')
+        )
+
+    if weaponTypePriceZsetKey then
+        redis.call('ZADD', weaponTypePriceZsetKey, 'NX', pendingPrice, weaponId)
+    end
+end
+
+return { 'SUCCESS' }
@@ -0,0 +1,41 @@
+--[[
+    集群模式下创建用户失败时的补偿操作，以及删除用户的最后一步：释放用户名（{user-name} 槽）。
+    还没有改写编码的用户名字段与 UUID 带着 JSON 引号，读取与删除时兼顾两种形式（见 shared/plain.lua）。
+
+    KEYS:
+        userHashKey      用户哈希校验键
+        userNameLogKey   用户名哈希日志键（user-name:{user-name}:log）
+        userNameIndexKey 用户名前缀搜索索引键（user-name:{user-name}:name-index）
+
+    ARGV:
+        newUserName 用户名
+        uuid        占用该用户名的 UUID（只释放自己占用的用户名）
+]]
+local userHashKey      = KEYS[1]
+local userNameLogKey   = KEYS[2]
+local userNameIndexKey = KEYS[3]
+
+local newUserName = ARGV[1]
+local uuid        = ARGV[2]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+if
+    hgetPlain(userHashKey, newUserName) == uuid
+then
+    redis.call('HDEL', userHashKey, newUserName, quoted(newUserName))
+    redis.call(
+        'ZREM', userNameIndexKey,
+        string.lower(newUserName) .. '\0' .. newUserName .. '\0' .. uuid
+    )
+    redis.call(
+        'XADD', userNameLogKey, '*',
+        'event', 'USERNAME_REMOVE',
+        'user-name', newUserName,
+        'timestamp', timestamp
+    )
+end
+
+return { 'SUCCESS' }
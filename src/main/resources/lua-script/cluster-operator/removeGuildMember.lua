@@ -0,0 +1,39 @@
+--[[
+    集群模式下离开公会（或者删除用户）的最后一步：把用户从公会的成员列表中移除（{guild} 槽）。
+    用户数据一侧的公会信息已经在之前的步骤中抹掉（releaseGuildRole.lua）或者随用户一起删除（deleteUserData.lua），
+    重复执行没有副作用，失败时由调用方重试。
+
+    KEYS:
+        guildKey    公会键（如：guild:{guild}:The-Dark-Brotherhood）
+        guildLogKey 公会操作日志键（guild:{guild}:log）
+
+    ARGV:
+        uuid            用户 UUID
+        formatGuildName 公会名
+        userName        用户名
+]]
+local guildKey    = KEYS[1]
+local guildLogKey = KEYS[2]
+
+local uuid            = ARGV[1]
+local formatGuildName = ARGV[2]
+local userName        = ARGV[3]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+if
+    zremPlain(guildKey, userName) > 0
+then
+    redis.call(
+        'XADD',
+        guildLogKey, '*',
+        'event', 'LEAVE_GUILD',
+        'uuid', uuid,
+        'guild-name', formatGuildName,
+        'timestamp', timestamp
+    )
+end
+
+return { 'SUCCESS' }
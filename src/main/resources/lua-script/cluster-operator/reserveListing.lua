@@ -0,0 +1,98 @@
+--[[
+    集群模式下市场交易的第一步：预留市场上的武器（{weapon-market} 槽）。
+    武器从价格表中移除（其他买家不再可见），并在武器哈希中记下交易 ID 与成交价，
+    同一笔交易重试时直接返回之前预留的结果。
+    还没有改写编码的价格表成员与哈希字段带着 JSON 引号，读取时回退到带引号的形式（见 shared/plain.lua）。
+
+    KEYS:
+        weaponHashKey 市场武器信息哈希键（如：market:{weapon-market}:weapons:1985f067af74d6d）
+        weaponZsetKey 市场武器价格有序集合键（market:{weapon-market}:weapon-price）
+        weaponTypePriceZsetKeys （KEYS[3] 起）所有武器类型的价格表键
+
+    ARGV:
+        tradeId    交易 ID
+        buyerUUID  买家 UUID
+        sellerUUID 卖家 UUID
+        weaponId   武器 UID
+]]
+local weaponHashKey = KEYS[1]
+local weaponZsetKey = KEYS[2]
+
+local TYPE_BOOKS_OFFSET = 3
+
+-- #include plain
+
+-- 按武器名在 KEYS[firstIndex..#KEYS] 中找到该类武器的价格表（价格表键以武器名结尾）
+local function findTypeBook(firstIndex, weaponName)
+    for i = firstIndex, #KEYS do
+        if string.match(KEYS[i], ":([^:]+)$") == weaponName then
+            return KEYS[i]
+        end
+    end
+
+    return nil
+end
+
+local tradeId    = ARGV[1]
+local buyerUUID  = ARGV[2]
+local sellerUUID = ARGV[3]
+local weaponId   = ARGV[4]
+
+-- 禁止左手倒右手
+if
+    buyerUUID == sellerUUID
+then
+    return { 'SELF_TRANSACTIONAL' }
+end
+
+local weaponName, seller, pendingTrade, pendingPrice
+    = unpack(
+        hmgetPlain(
+            weaponHashKey,
+            'weapon-name', 'seller', 'pending-trade', 'pending-price'
+        )
+    )
+
+-- 同一笔交易的重试
+if
+    pendingTrade == tradeId
+then
+    return { 'SUCCESS', weaponName, pendingPrice }
+end
+
+-- 武器不存在，或者卖家不匹配
+if
+    not weaponName or seller ~= sellerUUID
+then
+    return { 'WEAPON_NOT_FOUND' }
+end
+
+-- 已经被其他交易预留（那笔交易付款失败时武器会被放回市场）
+if pendingTrade
+then
+    return { 'WEAPON_RESERVED' }
+end
+
+local weaponPrice = zscorePlain(weaponZsetKey, weaponId)
+
+if not weaponPrice
+then
+    return { 'WEAPON_NOT_FOUND' }
+end
+
+local formatWeaponPrice = string.format("%.2f", weaponPrice)
+
+zremPlain(weaponZsetKey, weaponId)
+
+local weaponTypePriceZsetKey = findTypeBook(TYPE_BOOKS_OFFSET, weaponName)
+if weaponTypePriceZsetKey then
+    zremPlain(weaponTypePriceZsetKey, weaponId)
+end
+redis.call(
+    'HSET', weaponHashKey,
+    'pending-trade', tradeId,
+    'pending-price', formatWeaponPrice
+)
+
+-- 返回武器名与成交价
+return { 'SUCCESS', weaponName, formatWeaponPrice }
@@ -0,0 +1,45 @@
+--[[
+    集群模式下创建用户的第一步：在用户名哈希中占用用户名（{user-name} 槽）。
+
+    KEYS:
+        userHashKey      用户哈希校验键（用用户名映射他的 UUID，用来保证用户名的唯一性）
+        userNameLogKey   用户名哈希日志键（user-name:{user-name}:log）
+        userNameIndexKey 用户名前缀搜索索引键（user-name:{user-name}:name-index）
+
+    ARGV:
+        newUserName 用户名（如：Peter，Jesse）
+        uuid        新用户的 UUID
+]]
+local userHashKey      = KEYS[1]
+local userNameLogKey   = KEYS[2]
+local userNameIndexKey = KEYS[3]
+
+local newUserName = ARGV[1]
+local uuid        = ARGV[2]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+-- 用户名已被占用（包括还没有迁移、字段名带引号的旧用户名）
+if
+    hgetPlain(userHashKey, newUserName) or
+    redis.call('HSETNX', userHashKey, newUserName, uuid) == 0
+then
+    return { 'DUPLICATE_USER' }
+end
+
+-- 写入用户名前缀搜索索引（成员为 小写用户名\0用户名\0UUID，score 皆为 0）
+redis.call(
+    'ZADD', userNameIndexKey, 0,
+    string.lower(newUserName) .. '\0' .. newUserName .. '\0' .. uuid
+)
+
+redis.call(
+    'XADD', userNameLogKey, '*',
+    'event', 'USERNAME_INSERT',
+    'user-name', newUserName,
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS' }
@@ -0,0 +1,43 @@
+--[[
+    集群模式下上架武器失败时的补偿操作：把取出的武器放回卖家包裹（{uuid} 槽）。
+
+    KEYS:
+        userKey         用户键（如：users:{114934523722107784}）
+        inventoryKey    卖家包裹键（如：inventories:{114934523722107784}）
+        inventoryLogKey 卖家包裹日志键（如：inventories:log:{114934523722107784}）
+        sellerIndexKey  卖家上架武器索引键（如：market:seller:{114934523722107784}）
+
+    ARGV:
+        sellerUUID 卖家 UUID
+        weaponName 武器名
+        weaponUUID 要上架的武器 ID
+]]
+local userKey         = KEYS[1]
+local inventoryKey    = KEYS[2]
+local inventoryLogKey = KEYS[3]
+local sellerIndexKey  = KEYS[4]
+
+local sellerUUID = ARGV[1]
+local weaponName = ARGV[2]
+local weaponUUID = ARGV[3]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+-- #include inventory
+
+putIntoInventory(inventoryKey, weaponName)
+redis.call('SREM', sellerIndexKey, weaponUUID)
+redis.call(
+    'XADD',
+    inventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', sellerUUID,
+    'user-name', hgetPlain(userKey, 'name'),
+    'weapon-name', weaponName,
+    'amount', '1',
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS' }
@@ -0,0 +1,51 @@
+--[[
+    集群模式下市场交易的最后一步：从市场上删除已售出的武器（{weapon-market} 槽）。
+
+    KEYS:
+        weaponHashKey 市场武器信息哈希键（如：market:{weapon-market}:weapons:1985f067af74d6d）
+        marketLogKey  市场日志键（market:{weapon-market}:log）
+
+    武器哈希还没有改写编码时，字段读取回退到带引号的形式（见 shared/plain.lua）。
+
+    ARGV:
+        tradeId    交易 ID
+        buyerUUID  买家 UUID
+        sellerUUID 卖家 UUID
+        weaponId   武器 UID
+]]
+local weaponHashKey = KEYS[1]
+local marketLogKey  = KEYS[2]
+
+local tradeId    = ARGV[1]
+local buyerUUID  = ARGV[2]
+local sellerUUID = ARGV[3]
+local weaponId   = ARGV[4]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+-- 已经结算过（同一笔交易的重试）
+if
+    hgetPlain(weaponHashKey, 'pending-trade') ~= tradeId
+then
+    return { 'SUCCESS' }
+end
+
+local weaponName, pendingPrice
+    = unpack(hmgetPlain(weaponHashKey, 'weapon-name', 'pending-price'))
+
+redis.call('DEL', weaponHashKey)
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', 'WEAPON_SOLD',
+    'weaponId', weaponId,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'buyer', buyerUUID,
+    'priceCents', math.floor(tonumber(pendingPrice) * 100 + 0.5),
+    'timestamp', timestamp
+)
+
+return { 'SUCCESS' }
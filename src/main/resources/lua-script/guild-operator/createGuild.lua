@@ -5,7 +5,9 @@
         guildKey        公会键（示例:guild:The-Dark-Brotherhood）
         guildNameSetKey 公会名集合键，确保用户名不重复（guild:guild-name-set）
         guildLogKey     公会操作日志键（guild:log）
+        guildNameSetLogKey 公会名集合日志键（guild:guild-name:log）
         userKey         用户键（如：users:114934523722107784）
+        userLogKey      用户数据日志键（users:log）
 
     ARGV:
         uuid                用户 UUID
@@ -18,6 +20,7 @@ local guildNameSetKey    = KEYS[2]
 local guildLogKey        = KEYS[3]
 local guildNameSetLogKey = KEYS[4]
 local userKey            = KEYS[5]
+local userLogKey         = KEYS[6]
 
 local uuid               = ARGV[1]
 local formatGuildName    = ARGV[2]
@@ -26,17 +29,19 @@ local userGuildRoleField = ARGV[4]
 
 local timestamp = redis.call('TIME')[1]
 
-local userGuildName = redis.call('HGET', userKey, userGuildField)
-local userGuildRole = redis.call('HGET', userKey, userGuildRoleField)
+-- #include plain
 
-local noGuildInfo = "\"---\""
+local userGuildName = hgetPlain(userKey, userGuildField)
+local userGuildRole = hgetPlain(userKey, userGuildRoleField)
+
+local noGuildInfo = '---'
 
 -- 检查用户的公会信息，对于已经加入公会的用户，不允许再新建公会
 if
     userGuildName ~= noGuildInfo or
     userGuildRole ~= noGuildInfo
 then
-    return '{"result", "ALREADY_JOINED"}'
+    return { 'ALREADY_JOINED' }
 end
 
 -- 尝试往公会名集合插入一条数据
@@ -47,7 +52,7 @@ local isAdded
 if
     isAdded == 0
 then
-    return '{"result": "DUPLICATE_GUILD_NAME"}'
+    return { 'DUPLICATE_GUILD_NAME' }
 end
 
 redis.call(
@@ -59,12 +64,12 @@ redis.call(
 )
 
 -- 查询用户名，会写入这个公会的有序列表中
-local userName = redis.call('HGET', userKey, "\"name\"")
+local userName = hgetPlain(userKey, 'name')
 
 if
     userName == false
 then
-    return '{"result": "USER_NAME_NOT_FOUND"}'
+    return { 'USER_NAME_NOT_FOUND' }
 end
 
 redis.call('ZADD', guildKey, 'NX', 0, userName)
@@ -81,11 +86,11 @@ redis.call(
 redis.call(
     'HSET', userKey,
     userGuildField, formatGuildName,
-    userGuildRoleField, '"Leader"'
+    userGuildRoleField, 'Leader'
 )
 redis.call(
     'XADD',
-    'users:log', '*',
+    userLogKey, '*',
     'event', 'USER_CREATE_GUILD',
     'uuid', uuid,
     'user-name', userName,
@@ -93,4 +98,4 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+return { 'SUCCESS' }
\ No newline at end of file
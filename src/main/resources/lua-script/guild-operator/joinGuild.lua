@@ -4,7 +4,9 @@
     KEYS:
         guildKey        公会键（示例:guild:The-Dark-Brotherhood）
         guildLogKey     公会操作日志键（guild:log）
+        guildNameSetKey 公会名集合键（guild:guild-name:guild-name-set）
         userKey         用户键（如：users:114934523722107784）
+        userLogKey      用户数据日志键（users:log）
 
     ARGV:
         uuid                用户 UUID
@@ -18,6 +20,7 @@ local guildKey        = KEYS[1]
 local guildLogKey     = KEYS[2]
 local guildNameSetKey = KEYS[3]
 local userKey         = KEYS[4]
+local userLogKey      = KEYS[5]
 
 local uuid               = ARGV[1]
 local formatGuildName    = ARGV[2]
@@ -27,10 +30,12 @@ local maxMembers         = ARGV[5]
 
 local timestamp = redis.call('TIME')[1]
 
-local userGuildName = redis.call('HGET', userKey, userGuildField)
-local userGuildRole = redis.call('HGET', userKey, userGuildRoleField)
+-- #include plain
 
-local noGuildInfo = "\"---\""
+local userGuildName = hgetPlain(userKey, userGuildField)
+local userGuildRole = hgetPlain(userKey, userGuildRoleField)
+
+local noGuildInfo = '---'
 
 -- 检查用户的公会信息，
 -- 对于已经加入公会的用户，
@@ -39,30 +44,30 @@ if
     userGuildName ~= noGuildInfo or
     userGuildRole ~= noGuildInfo
 then
-    return '{"result": "ALREADY_JOINED"}'
+    return { 'ALREADY_JOINED' }
 end
 
 -- 检查要加入的公会是否存在
 if
     redis.call('SISMEMBER', guildNameSetKey, formatGuildName) ~= 1
 then
-    return '{"result": "GUILD_NOT_FOUND"}'
+    return { 'GUILD_NOT_FOUND' }
 end
 
 -- 查询用户名，后面会写入这个公会的有序列表中
-local userName = redis.call('HGET', userKey, "\"name\"")
+local userName = hgetPlain(userKey, 'name')
 
 if
     userName == false
 then
-    return '{"result": "USER_NAME_NOT_FOUND"}'
+    return { 'USER_NAME_NOT_FOUND' }
 end
 
 -- 检查这个公会是否已经满员
 if
     redis.call('ZCOUNT', guildKey, '-inf', '+inf') == maxMembers
 then
-    return '{"result": "GUILD_IS_FULL"}'
+    return { 'GUILD_IS_FULL' }
 end
 
 redis.call('ZADD', guildKey, 'NX', 0, userName)
@@ -79,11 +84,11 @@ redis.call(
 redis.call(
     'HSET', userKey,
     userGuildField, formatGuildName,
-    userGuildRoleField, '"Member"'
+    userGuildRoleField, 'Member'
 )
 redis.call(
     'XADD',
-    'users:log', '*',
+    userLogKey, '*',
     'event', 'USER_JOIN_GUILD',
     'uuid', uuid,
     'user-name', userName,
@@ -91,4 +96,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回公会当前的成员数
+return { 'SUCCESS', redis.call('ZCARD', guildKey) }
\ No newline at end of file
@@ -5,6 +5,7 @@
         guildKey        公会键（示例:guild:The-Dark-Brotherhood）
         guildLogKey     公会操作日志键（guild:log）
         userKey         用户键（如：users:114934523722107784）
+        userLogKey      用户数据日志键（users:log）
 
     ARGV:
         uuid                用户 UUID
@@ -16,6 +17,7 @@
 local guildKey      = KEYS[1]
 local guildLogKey   = KEYS[2]
 local userKey       = KEYS[3]
+local userLogKey    = KEYS[4]
 
 local uuid               = ARGV[1]
 local formatGuildName    = ARGV[2]
@@ -24,10 +26,12 @@ local userGuildRoleField = ARGV[4]
 
 local timestamp = redis.call('TIME')[1]
 
-local userGuildName = redis.call('HGET', userKey, userGuildField)
-local userGuildRole = redis.call('HGET', userKey, userGuildRoleField)
+-- #include plain
 
-local noGuildInfo = "\"---\""
+local userGuildName = hgetPlain(userKey, userGuildField)
+local userGuildRole = hgetPlain(userKey, userGuildRoleField)
+
+local noGuildInfo = '---'
 
 -- 检查用户的公会信息，
 -- 对于未加入任何公会的用户，禁止后续的操作
@@ -35,7 +39,7 @@ if
     userGuildName == noGuildInfo or
     userGuildRole == noGuildInfo
 then
-    return '{"result": "NOT_JOIN_ANY_GUILD"}'
+    return { 'NOT_JOIN_ANY_GUILD' }
 end
 
 -- 从用户信息中查询用户隶属于哪个公会，
@@ -43,7 +47,7 @@ end
 if
     userGuildName ~= formatGuildName
 then
-    return '{"result", "NOT_BELONG_TO_GUILD"}'
+    return { 'NOT_BELONG_TO_GUILD' }
 end
 
 -- 如果是公会的头儿，
@@ -51,16 +55,16 @@ end
 if
     userGuildRole == "Leader"
 then
-    return '{"result": "LEAVE_FORBIDDEN"}'
+    return { 'LEAVE_FORBIDDEN' }
 end
 
 -- 查询用户名
-local userName = redis.call('HGET', userKey, "\"name\"")
+local userName = hgetPlain(userKey, 'name')
 
 if
     userName == false
 then
-    return '{"result": "USER_NAME_NOT_FOUND"}'
+    return { 'USER_NAME_NOT_FOUND' }
 end
 
 -- 所有检查通过后，正式开始 leaveGuild 操作
@@ -84,7 +88,7 @@ redis.call(
 )
 redis.call(
     'XADD',
-    'users:log', '*',
+    userLogKey, '*',
     'event', 'USER_LEAVE_GUILD',
     'uuid', uuid,
     'user-name', userName,
@@ -92,4 +96,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result", "SUCCESS"}'
\ No newline at end of file
+-- 返回公会剩余的成员数
+return { 'SUCCESS', redis.call('ZCARD', guildKey) }
\ No newline at end of file
@@ -41,7 +41,7 @@ do
             'NX', 'EX', lockTimeout
         ) ~= nil
     then
-        return '{"result": "SUCCESS"}'
+        return { 'SUCCESS' }
     elseif
         -- 若这个锁存在，但是未设置有效期
         redis.call('TTL', lockKeyName) == -1
@@ -64,4 +64,4 @@ do
 end
 
 -- 若在指定时间内没有拿到锁，则为获取锁超时
-return '{"result": "GET_LOCK_TIMEOUT"}'
\ No newline at end of file
+return { 'GET_LOCK_TIMEOUT' }
\ No newline at end of file
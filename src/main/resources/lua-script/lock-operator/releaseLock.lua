@@ -31,16 +31,16 @@ then
     if
         delRes == 1
     then
-        return '{"result": "SUCCESS"}'
+        return { 'SUCCESS' }
     else
         -- 这里有一个非常罕见的情况：
         -- 若两个客户端同时发出 releaseLock() 操作，
         -- 则两个客户端都会认为自己是锁的持有者，
         -- 在先后执行 DEL 操作时就会多出一次无意义的删除操作
         -- 无害但是值得记录
-        return '{"result": "CONCURRENT_DELETE"}'
+        return { 'CONCURRENT_DELETE' }
     end
 end
 
 -- 如果是别人的锁，直接返回
-return '{"result" : "LOCK_OWNED_BY_OTHERS"}'
\ No newline at end of file
+return { 'LOCK_OWNED_BY_OTHERS' }
\ No newline at end of file
@@ -0,0 +1,162 @@
+--[[
+    购买某一类武器中价格最低的一件（价格不超过买家给出的上限），仅用于单机模式。
+    调用方先读出价格表的表头（武器 UID 与卖家），把表头武器的哈希键、卖家的用户键与上架索引键
+    与其他键一起在 KEYS 中声明；脚本内再次确认表头还是这件武器、卖家也没有变，然后完成整笔交易，
+    确认与结算之间不会被其他交易插入。表头在读取之后变了时返回 STALE_HEAD，由调用方重新读取表头后重试。
+    集群模式下这些键分属不同的槽，不使用本脚本，由调用方读取表头后走按槽拆分的交易流程。
+    还没有改写编码的价格表成员与哈希字段带着 JSON 引号，读取时去掉引号（见 shared/plain.lua）。
+
+    KEYS:
+        weaponTypePriceZsetKey 该类武器的价格表键（如：market:weapon-market:weapon-price:Sword）
+        weaponZsetKey          市场武器价格有序集合键（market:weapon-market:weapon-price）
+        buyerUserKey           买家用户键（如：users:114950910119824488）
+        buyerInventoryKey      买家包裹键（如：inventories:114950910119824488）
+        marketLogKey           市场日志键（market:log）
+        sellerLogKey           卖家用户数据日志键（users:log）
+        buyerLogKey            买家用户数据日志键（users:log）
+        buyerInventoryLogKey   买家包裹日志键（inventories:log）
+        weaponHashKey          表头武器的哈希键（如：market:weapon-market:weapons:1985f067af74d6d）
+        sellerUserKey          卖家用户键（如：users:114934523722107784）
+        sellerIndexKey         卖家上架武器索引键（如：market:seller:114934523722107784）
+
+    ARGV:
+        buyerUUID  买家 UUID
+        maxPrice   买家能接受的最高价格
+        weaponId   调用方读到的表头武器 UID
+        sellerUUID 调用方读到的表头武器卖家 UUID
+
+    返回：
+        { 'SUCCESS', 武器 UID, 卖家 UUID, 成交价, 买家资金, 卖家资金 }（金额单位均为分）
+]]
+local weaponTypePriceZsetKey = KEYS[1]
+local weaponZsetKey          = KEYS[2]
+local buyerUserKey           = KEYS[3]
+local buyerInventoryKey      = KEYS[4]
+local marketLogKey           = KEYS[5]
+local sellerLogKey           = KEYS[6]
+local buyerLogKey            = KEYS[7]
+local buyerInventoryLogKey   = KEYS[8]
+local weaponHashKey          = KEYS[9]
+local sellerUserKey          = KEYS[10]
+local sellerIndexKey         = KEYS[11]
+
+local buyerUUID  = ARGV[1]
+local maxPrice   = tonumber(ARGV[2])
+local weaponId   = ARGV[3]
+local sellerUUID = ARGV[4]
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+-- #include inventory
+
+-- #include funds
+
+-- 再次读取价格不超过上限的表头
+local head
+    = redis.call(
+        'ZRANGEBYSCORE', weaponTypePriceZsetKey,
+        '-inf', maxPrice,
+        'WITHSCORES', 'LIMIT', 0, 1
+    )
+
+if #head == 0
+then
+    return { 'NO_WEAPON_UNDER_PRICE' }
+end
+
+-- 表头换成了别的武器，或者武器已经不在市场上（卖家也随之变化）
+if
+    unquote(head[1]) ~= weaponId or
+    hgetPlain(weaponHashKey, 'seller') ~= sellerUUID
+then
+    return { 'STALE_HEAD' }
+end
+
+local priceScore = head[2]
+
+-- 禁止左手倒右手
+if
+    buyerUUID == sellerUUID
+then
+    return { 'SELF_TRANSACTIONAL' }
+end
+
+local priceCents = toCents(priceScore)
+
+local buyerFundsCents = loadFundsCents(buyerUserKey)
+
+if not buyerFundsCents
+then
+    return { 'BUYER_FUNDS_NOT_FOUND' }
+end
+
+if buyerFundsCents < priceCents
+then
+    return { 'BUYER_FUNDS_NOT_ENOUGH' }
+end
+
+local weaponName = hgetPlain(weaponHashKey, 'weapon-name')
+local sellerName = hgetPlain(sellerUserKey, 'name')
+local buyerName  = hgetPlain(buyerUserKey, 'name')
+
+-- 从市场、价格表与卖家索引中移除武器
+redis.call('DEL', weaponHashKey)
+zremPlain(weaponZsetKey, weaponId)
+zremPlain(weaponTypePriceZsetKey, weaponId)
+sremPlain(sellerIndexKey, weaponId)
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', 'WEAPON_SOLD',
+    'weaponId', weaponId,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'buyer', buyerUUID,
+    'priceCents', priceCents,
+    'timestamp', timestamp
+)
+
+-- 卖家资金增加（卖家还没有迁移时先迁移）
+loadFundsCents(sellerUserKey)
+
+local newSellerFunds
+    = redis.call('HINCRBY', sellerUserKey, 'funds-cents', priceCents)
+redis.call(
+    'XADD',
+    sellerLogKey, '*',
+    'event', 'SELLER_FUNDS_INCR',
+    'uuid', sellerUUID,
+    'user-name', sellerName,
+    'user-funds-cents', "+" ..priceCents,
+    'timestamp', timestamp
+)
+
+-- 买家资金减少
+local newBuyerFunds
+    = redis.call('HINCRBY', buyerUserKey, 'funds-cents', -priceCents)
+redis.call(
+    'XADD',
+    buyerLogKey, '*',
+    'event', 'BUYER_FUNDS_REDUCE',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'user-funds-cents', "-" ..priceCents,
+    'timestamp', timestamp
+)
+
+-- 将武器移库至买家包裹
+putIntoInventory(buyerInventoryKey, weaponName)
+redis.call(
+    'XADD',
+    buyerInventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'amount', '1',
+    'timestamp', timestamp
+)
+
+-- 返回买到的武器、卖家、成交价与交易后买家、卖家的资金余额（单位均为分）
+return { 'SUCCESS', weaponId, sellerUUID, priceCents, newBuyerFunds, newSellerFunds }
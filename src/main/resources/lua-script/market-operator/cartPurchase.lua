@@ -0,0 +1,221 @@
+--[[
+    购物车交易脚本：买家一次性购买多件武器，要么全部成交，要么一件都不成交。
+
+    所有武器都存在、卖家与调用方声明的一致、买家资金足够支付总价时，
+    才会逐件完成交易，买家资金只扣减一次。
+    还没有改写编码的价格表成员与哈希字段带着 JSON 引号，读取时回退到带引号的形式（见 shared/plain.lua）。
+
+    KEYS:
+        buyerUserKey         买家用户键（如：users:114950910119824488）
+        buyerInventoryKey    买家包裹键（如：inventories:114950910119824488）
+        weaponZsetKey        市场武器价格有序集合键（market:weapon-market:weapon-price）
+        marketLogKey         市场日志键（market:log）
+        buyerLogKey          买家用户数据日志键（users:log）
+        buyerInventoryLogKey 买家包裹日志键（inventories:log）
+        （KEYS[7] 起，每件武器 5 个键）
+            weaponHashKey          市场武器信息哈希键（如：market:weapon-market:weapons:1985f067af74d6d）
+            sellerUserKey          卖家用户键（如：users:114940680399943670）
+            sellerIndexKey         卖家上架武器索引键（如：market:seller:114940680399943670）
+            sellerLogKey           卖家用户数据日志键（users:log）
+            weaponTypePriceZsetKey 该类武器的价格表键（如：market:weapon-market:weapon-price:Sword）
+
+    ARGV:
+        buyerUUID 买家 UUID
+        （ARGV[2] 起，每件武器 2 个参数）
+            weaponId   武器 UID
+            sellerUUID 卖家 UUID
+
+    返回：
+        成功时返回 { 'SUCCESS', 买家资金余额, { 武器 UID, 武器名, 卖家 UUID, 成交价, 卖家资金余额 }... }
+        有武器不在市场上时返回 { 'WEAPON_NOT_FOUND', 武器 UID... }
+]]
+local buyerUserKey         = KEYS[1]
+local buyerInventoryKey    = KEYS[2]
+local weaponZsetKey        = KEYS[3]
+local marketLogKey         = KEYS[4]
+local buyerLogKey          = KEYS[5]
+local buyerInventoryLogKey = KEYS[6]
+
+local ITEM_KEYS_OFFSET = 6
+local ITEM_KEYS        = 5
+local ITEM_ARGS_OFFSET = 1
+local ITEM_ARGS        = 2
+
+local buyerUUID = ARGV[1]
+local itemCount = (#KEYS - ITEM_KEYS_OFFSET) / ITEM_KEYS
+
+if
+    itemCount < 1 or
+    itemCount ~= math.floor(itemCount) or
+    itemCount * ITEM_ARGS ~= #ARGV - ITEM_ARGS_OFFSET
+then
+    return { 'INVALID_CART' }
+end
+
+local timestamp = redis.call('TIME')[1]
+
+-- #include plain
+
+-- #include inventory
+
+-- #include funds
+
+-- 第一轮：校验所有武器，计算总价（单位：分）
+local items      = {}
+local notFound   = {}
+local seen       = {}
+local totalPrice = 0
+
+for i = 1, itemCount do
+    local keyBase = ITEM_KEYS_OFFSET + (i - 1) * ITEM_KEYS
+    local argBase = ITEM_ARGS_OFFSET + (i - 1) * ITEM_ARGS
+
+    local item = {
+        weaponHashKey          = KEYS[keyBase + 1],
+        sellerUserKey          = KEYS[keyBase + 2],
+        sellerIndexKey         = KEYS[keyBase + 3],
+        sellerLogKey           = KEYS[keyBase + 4],
+        weaponTypePriceZsetKey = KEYS[keyBase + 5],
+        weaponId               = ARGV[argBase + 1],
+        sellerUUID             = ARGV[argBase + 2]
+    }
+
+    -- 同一件武器不能在购物车中出现两次，否则会被重复扣款
+    if seen[item.weaponId]
+    then
+        return { 'DUPLICATE_WEAPON', item.weaponId }
+    end
+
+    seen[item.weaponId] = true
+
+    local weaponName, seller
+        = unpack(
+            hmgetPlain(item.weaponHashKey, 'weapon-name', 'seller')
+        )
+
+    local weaponPrice = zscorePlain(weaponZsetKey, item.weaponId)
+
+    if not weaponName or not weaponPrice
+    then
+        table.insert(notFound, item.weaponId)
+    else
+        -- 卖家与调用方读取时的不一致（武器已经易主重新上架）
+        if seller ~= item.sellerUUID
+        then
+            return { 'CART_CHANGED' }
+        end
+
+        -- 禁止左手倒右手
+        if seller == buyerUUID
+        then
+            return { 'SELF_TRANSACTIONAL' }
+        end
+
+        item.weaponName = weaponName
+        item.priceCents = toCents(weaponPrice)
+        totalPrice      = totalPrice + item.priceCents
+
+        table.insert(items, item)
+    end
+end
+
+if #notFound > 0
+then
+    local reply = { 'WEAPON_NOT_FOUND' }
+
+    for _, weaponId in ipairs(notFound) do
+        table.insert(reply, weaponId)
+    end
+
+    return reply
+end
+
+local buyerFundsCents = loadFundsCents(buyerUserKey)
+
+if not buyerFundsCents
+then
+    return { 'BUYER_FUNDS_NOT_FOUND' }
+end
+
+if buyerFundsCents < totalPrice
+then
+    return { 'BUYER_FUNDS_NOT_ENOUGH' }
+end
+
+local buyerName = hgetPlain(buyerUserKey, 'name')
+
+-- 第二轮：所有校验完毕，逐件完成交易（别忘记记录审计信息）
+local reply = { 'SUCCESS', 0 }
+
+for _, item in ipairs(items) do
+    redis.call('DEL', item.weaponHashKey)
+    zremPlain(weaponZsetKey, item.weaponId)
+    zremPlain(item.weaponTypePriceZsetKey, item.weaponId)
+    sremPlain(item.sellerIndexKey, item.weaponId)
+    redis.call(
+        'XADD',
+        marketLogKey, '*',
+        'event', 'WEAPON_SOLD',
+        'weaponId', item.weaponId,
+        'weaponName', item.weaponName,
+        'seller', item.sellerUUID,
+        'buyer', buyerUUID,
+        'priceCents', item.priceCents,
+        'timestamp', timestamp
+    )
+
+    -- 卖家资金增加（卖家还没有迁移时先迁移）
+    local sellerName = hgetPlain(item.sellerUserKey, 'name')
+
+    loadFundsCents(item.sellerUserKey)
+
+    local sellerFunds
+        = redis.call('HINCRBY', item.sellerUserKey, 'funds-cents', item.priceCents)
+    redis.call(
+        'XADD',
+        item.sellerLogKey, '*',
+        'event', 'SELLER_FUNDS_INCR',
+        'uuid', item.sellerUUID,
+        'user-name', sellerName,
+        'user-funds-cents', "+" ..item.priceCents,
+        'timestamp', timestamp
+    )
+
+    -- 将武器移库至买家包裹
+    putIntoInventory(buyerInventoryKey, item.weaponName)
+
+    table.insert(
+        reply,
+        {
+            item.weaponId,
+            item.weaponName,
+            item.sellerUUID,
+            item.priceCents,
+            sellerFunds
+        }
+    )
+end
+
+-- 买家资金按总价一次性减少
+reply[2] = redis.call('HINCRBY', buyerUserKey, 'funds-cents', -totalPrice)
+redis.call(
+    'XADD',
+    buyerLogKey, '*',
+    'event', 'BUYER_FUNDS_REDUCE',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'user-funds-cents', "-" ..totalPrice,
+    'timestamp', timestamp
+)
+
+redis.call(
+    'XADD',
+    buyerInventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'amount', tostring(#items),
+    'timestamp', timestamp
+)
+
+return reply
@@ -0,0 +1,106 @@
+--[[
+    将精简交易事件流中的一条事件展开成市场、卖家、买家、买家包裹四条日志（由交易事件展开消费组调用）。
+
+    展开与确认在同一个脚本内完成：事件已经被确认时说明之前展开过，直接返回，
+    所以消费者崩溃后重新投递的事件不会重复展开。展开后的事件从精简交易事件流中删除。
+
+    KEYS:
+        tradeLogKey          精简交易事件流键（market:trade-log）
+        marketLogKey         市场日志键（market:log）
+        sellerUserKey        卖家用户键（如：users:114940680399943670）
+        buyerUserKey         买家用户键（如：users:114950910119824488）
+        sellerLogKey         卖家用户数据日志键（users:log）
+        buyerLogKey          买家用户数据日志键（users:log）
+        buyerInventoryLogKey 买家包裹日志键（inventories:log）
+
+    ARGV:
+        eventId     事件在精简交易事件流中的 ID（如：1718000000000-0）
+        group       消费组名
+        weaponId    武器 UID
+        weaponName  武器名
+        sellerUUID  卖家 UUID
+        buyerUUID   买家 UUID
+        priceCents  成交价（分）
+        timestamp   交易发生的时间（秒）
+
+    返回：
+        SUCCESS   展开完成
+        DUPLICATE 这条事件之前已经展开过
+]]
+local tradeLogKey          = KEYS[1]
+local marketLogKey         = KEYS[2]
+local sellerUserKey        = KEYS[3]
+local buyerUserKey         = KEYS[4]
+local sellerLogKey         = KEYS[5]
+local buyerLogKey          = KEYS[6]
+local buyerInventoryLogKey = KEYS[7]
+
+local eventId    = ARGV[1]
+local group      = ARGV[2]
+local weaponId   = ARGV[3]
+local weaponName = ARGV[4]
+local sellerUUID = ARGV[5]
+local buyerUUID  = ARGV[6]
+local priceCents = ARGV[7]
+local timestamp  = ARGV[8]
+
+-- #include plain
+
+if redis.call('XACK', tradeLogKey, group, eventId) == 0
+then
+    return { 'DUPLICATE' }
+end
+
+-- 用户可能在交易之后注销了，名字读不到时记为空串
+local sellerName
+    = hgetPlain(sellerUserKey, 'name') or ''
+
+local buyerName
+    = hgetPlain(buyerUserKey, 'name') or ''
+
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', 'WEAPON_SOLD',
+    'weaponId', weaponId,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'buyer', buyerUUID,
+    'priceCents', priceCents,
+    'timestamp', timestamp,
+    'tradeEventId', eventId
+)
+
+redis.call(
+    'XADD',
+    sellerLogKey, '*',
+    'event', 'SELLER_FUNDS_INCR',
+    'uuid', sellerUUID,
+    'user-name', sellerName,
+    'user-funds-cents', "+" ..priceCents,
+    'timestamp', timestamp
+)
+
+redis.call(
+    'XADD',
+    buyerLogKey, '*',
+    'event', 'BUYER_FUNDS_REDUCE',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'user-funds-cents', "-" ..priceCents,
+    'timestamp', timestamp
+)
+
+redis.call(
+    'XADD',
+    buyerInventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', buyerUUID,
+    'user-name', buyerName,
+    'amount', '1',
+    'timestamp', timestamp
+)
+
+redis.call('XDEL', tradeLogKey, eventId)
+
+return { 'SUCCESS' }
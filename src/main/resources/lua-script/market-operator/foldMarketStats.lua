@@ -0,0 +1,219 @@
+--[[
+    将市场日志流中的一条事件累加进该类武器的市场统计（由市场统计消费组调用）。
+
+    计数类的统计（上架、下架、成交次数与成交额）按事件累加，与事件的处理顺序无关；
+    地板价与在售数量直接取自该类武器的价格表；
+    近 24 小时的成交按小时分桶保存，每次累加时顺便删除过期的桶；
+    成交同时累加进各粒度的价格历史（K 线）桶，各粒度的桶超过保留时间后删除。
+    消费者崩溃后重新投递的事件由已累加事件集合去重，不会重复累加。
+
+    KEYS:
+        weaponStatsKey         该类武器的统计哈希键（如：market:weapon-market:stats:Sword）
+        weaponVolumeKey        该类武器按小时分桶的成交哈希键（如：market:weapon-market:stats:Sword:volume）
+        weaponTypePriceZsetKey 该类武器的价格表键（如：market:weapon-market:weapon-price:Sword）
+        appliedEventsKey       已累加事件的有序集合键（market:weapon-market:stats:applied）
+        （之后每个粒度两个键）
+        priceHistoryKey        价格历史哈希键（如：market:weapon-market:ohlc:Sword:1m）
+        priceHistoryIndexKey   价格历史索引键（如：market:weapon-market:ohlc:Sword:1m:index）
+
+    ARGV:
+        eventId       事件在日志流中的 ID（如：1718000000000-0）
+        event         事件类型（WEAPON_LISTING、WEAPON_OUTBOUND、WEAPON_DELETE、WEAPON_SOLD）
+        priceCents    成交价（分，只有 WEAPON_SOLD 需要）
+        timestamp     事件发生的时间（秒）
+        dedupeSeconds 已累加事件的保留时间（秒）
+        （之后每个粒度两个参数，与 KEYS 中的粒度一一对应）
+        bucketSeconds    桶宽（秒）
+        retentionSeconds 保留时间（秒）
+
+    返回：
+        SUCCESS   累加完成
+        DUPLICATE 这条事件之前已经累加过
+        SKIPPED   事件缺少必要的字段（如没有成交价的 WEAPON_SOLD）
+]]
+local weaponStatsKey         = KEYS[1]
+local weaponVolumeKey        = KEYS[2]
+local weaponTypePriceZsetKey = KEYS[3]
+local appliedEventsKey       = KEYS[4]
+
+local eventId       = ARGV[1]
+local event         = ARGV[2]
+local priceCents    = tonumber(ARGV[3])
+local timestamp     = tonumber(ARGV[4])
+local dedupeSeconds = tonumber(ARGV[5])
+
+-- 近 24 小时成交量的小时桶数量
+local VOLUME_BUCKETS = 24
+
+-- 价格历史的键与参数在 KEYS、ARGV 中的起始位置
+local HISTORY_KEYS_OFFSET = 5
+local HISTORY_ARGV_OFFSET = 6
+
+-- 比较两个流 ID 的先后（a 早于 b 时返回 true）
+local function idBefore(a, b)
+    local aMs, aSeq = string.match(a, '^(%d+)-(%d+)$')
+    local bMs, bSeq = string.match(b, '^(%d+)-(%d+)$')
+
+    aMs, bMs = tonumber(aMs), tonumber(bMs)
+
+    return aMs < bMs or (aMs == bMs and tonumber(aSeq) < tonumber(bSeq))
+end
+
+-- 将一笔成交累加进某个粒度的价格历史桶，
+-- 桶的值为 "开,高,低,收,成交次数,开盘事件 ID,收盘事件 ID"（价格单位：分）
+local function foldCandle(historyKey, indexKey, bucketSeconds, retentionSeconds, now)
+    local bucketStart = timestamp - (timestamp % bucketSeconds)
+
+    -- 重放的旧事件所在的桶已经过期
+    if bucketStart <= now - retentionSeconds
+    then
+        return
+    end
+
+    local raw = redis.call('HGET', historyKey, bucketStart)
+
+    if not raw
+    then
+        redis.call(
+            'HSET', historyKey, bucketStart,
+            table.concat({ priceCents, priceCents, priceCents, priceCents, 1, eventId, eventId }, ',')
+        )
+        redis.call('ZADD', indexKey, bucketStart, bucketStart)
+
+        -- 新桶出现时顺便删除过期的桶
+        local expired
+            = redis.call('ZRANGEBYSCORE', indexKey, '-inf', now - retentionSeconds)
+
+        for _, expiredStart in ipairs(expired) do
+            redis.call('HDEL', historyKey, expiredStart)
+        end
+
+        if #expired > 0
+        then
+            redis.call('ZREMRANGEBYSCORE', indexKey, '-inf', now - retentionSeconds)
+        end
+
+        return
+    end
+
+    local open, high, low, close, volume, openId, closeId
+        = string.match(raw, '^(%d+),(%d+),(%d+),(%d+),(%d+),([^,]+),([^,]+)$')
+
+    open, high, low, close, volume
+        = tonumber(open), tonumber(high), tonumber(low), tonumber(close), tonumber(volume)
+
+    -- 事件不一定按顺序累加，开盘价与收盘价以事件 ID 的先后为准
+    if idBefore(eventId, openId)
+    then
+        open, openId = priceCents, eventId
+    end
+
+    if idBefore(closeId, eventId)
+    then
+        close, closeId = priceCents, eventId
+    end
+
+    redis.call(
+        'HSET', historyKey, bucketStart,
+        table.concat({
+            open, math.max(high, priceCents), math.min(low, priceCents), close,
+            volume + 1, openId, closeId
+        }, ',')
+    )
+end
+
+local now = tonumber(redis.call('TIME')[1])
+
+-- 去重：已累加事件以事件 ID 的毫秒数为分数，超过保留时间的清理掉
+local eventMs = tonumber(string.match(eventId, '^(%d+)-'))
+
+if redis.call('ZADD', appliedEventsKey, 'NX', eventMs, eventId) == 0
+then
+    return { 'DUPLICATE' }
+end
+
+redis.call(
+    'ZREMRANGEBYSCORE', appliedEventsKey,
+    '-inf', '(' .. ((now - dedupeSeconds) * 1000)
+)
+
+if event == 'WEAPON_LISTING'
+then
+    redis.call('HINCRBY', weaponStatsKey, 'listed-total', 1)
+elseif event == 'WEAPON_OUTBOUND' or event == 'WEAPON_DELETE'
+then
+    redis.call('HINCRBY', weaponStatsKey, 'withdrawn-total', 1)
+elseif event == 'WEAPON_SOLD'
+then
+    if not priceCents or not timestamp
+    then
+        return { 'SKIPPED' }
+    end
+
+    redis.call('HINCRBY', weaponStatsKey, 'sold-total', 1)
+    redis.call('HINCRBY', weaponStatsKey, 'sold-cents-total', priceCents)
+
+    local lastSaleId = redis.call('HGET', weaponStatsKey, 'last-sale-id')
+
+    if not lastSaleId or idBefore(lastSaleId, eventId)
+    then
+        redis.call(
+            'HSET', weaponStatsKey,
+            'last-sale-id', eventId, 'last-sale-cents', priceCents
+        )
+    end
+
+    -- 按小时分桶累加成交量，超出 24 小时的事件（重放的旧事件）不计入
+    local currentHour = math.floor(now / 3600)
+    local eventHour   = math.floor(timestamp / 3600)
+
+    if eventHour > currentHour - VOLUME_BUCKETS
+    then
+        redis.call('HINCRBY', weaponVolumeKey, eventHour .. ':count', 1)
+        redis.call('HINCRBY', weaponVolumeKey, eventHour .. ':cents', priceCents)
+    end
+
+    for _, field in ipairs(redis.call('HKEYS', weaponVolumeKey)) do
+        if tonumber(string.match(field, '^(%d+):')) <= currentHour - VOLUME_BUCKETS
+        then
+            redis.call('HDEL', weaponVolumeKey, field)
+        end
+    end
+
+    -- 各粒度的价格历史
+    for i = 0, (#KEYS - HISTORY_KEYS_OFFSET + 1) / 2 - 1 do
+        foldCandle(
+            KEYS[HISTORY_KEYS_OFFSET + i * 2], KEYS[HISTORY_KEYS_OFFSET + i * 2 + 1],
+            tonumber(ARGV[HISTORY_ARGV_OFFSET + i * 2]),
+            tonumber(ARGV[HISTORY_ARGV_OFFSET + i * 2 + 1]),
+            now
+        )
+    end
+end
+
+-- 地板价与在售数量取自价格表，与事件的处理顺序无关
+local head = redis.call('ZRANGE', weaponTypePriceZsetKey, 0, 0, 'WITHSCORES')
+
+if #head == 0
+then
+    redis.call('HDEL', weaponStatsKey, 'floor-cents')
+else
+    redis.call(
+        'HSET', weaponStatsKey,
+        'floor-cents', math.floor(tonumber(head[2]) * 100 + 0.5)
+    )
+end
+
+redis.call(
+    'HSET', weaponStatsKey,
+    'active-listings', redis.call('ZCARD', weaponTypePriceZsetKey)
+)
+
+local lastEventId = redis.call('HGET', weaponStatsKey, 'last-event-id')
+
+if not lastEventId or idBefore(lastEventId, eventId)
+then
+    redis.call('HSET', weaponStatsKey, 'last-event-id', eventId)
+end
+
+return { 'SUCCESS' }
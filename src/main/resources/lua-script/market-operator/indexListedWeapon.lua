@@ -0,0 +1,57 @@
+--[[
+    将一件在售武器写入它所属武器类型的价格表（以及卖家索引），用于市场索引的回填。
+    调用方读取武器哈希之后，武器可能已经被买走或下架；本脚本在写入之前再确认一次武器还在市场上
+    （哈希存在、武器名与卖家没有变、还在总价格表中），否则什么都不写，
+    避免把已经售出的武器作为幽灵挂单重新写回索引。重复执行没有副作用。
+
+    集群模式下卖家索引与市场不在同一个槽，不传入 sellerIndexKey，由调用方另外写入卖家索引。
+    还没有改写编码的哈希字段与价格表成员带着 JSON 引号，读取时去掉引号（见 shared/plain.lua）。
+
+    KEYS:
+        weaponHashKey          武器哈希键（如：market:weapon-market:weapons:1985f067af74d6d）
+        weaponZsetKey          市场武器价格有序集合键（market:weapon-market:weapon-price）
+        weaponTypePriceZsetKey 该类武器的价格表键（如：market:weapon-market:weapon-price:Sword）
+        sellerIndexKey         （可选，仅单机模式）卖家上架武器索引键（如：market:seller:114934523722107784）
+
+    ARGV:
+        weaponId   武器 UID
+        weaponName 调用方读到的武器名
+        sellerUUID 调用方读到的卖家 UUID
+
+    返回：
+        { 'SUCCESS', 1 } 写入了索引，{ 'SUCCESS', 0 } 武器已经不在市场上
+]]
+local weaponHashKey          = KEYS[1]
+local weaponZsetKey          = KEYS[2]
+local weaponTypePriceZsetKey = KEYS[3]
+local sellerIndexKey         = KEYS[4]
+
+local weaponId   = ARGV[1]
+local weaponName = ARGV[2]
+local sellerUUID = ARGV[3]
+
+-- #include plain
+
+local currentName, currentSeller
+    = unpack(hmgetPlain(weaponHashKey, 'weapon-name', 'seller'))
+
+if currentName ~= weaponName or currentSeller ~= sellerUUID
+then
+    return { 'SUCCESS', 0 }
+end
+
+local price = zscorePlain(weaponZsetKey, weaponId)
+
+if not price
+then
+    return { 'SUCCESS', 0 }
+end
+
+redis.call('ZADD', weaponTypePriceZsetKey, price, weaponId)
+
+if sellerIndexKey
+then
+    redis.call('SADD', sellerIndexKey, weaponId)
+end
+
+return { 'SUCCESS', 1 }
@@ -0,0 +1,123 @@
+#!lua flags=no-writes
+--[[
+    市场浏览的一页：在价格表中按 (价格, 武器 UID) 的顺序，读取游标之后（不包含游标）的若干件武器。
+    游标就是上一页最后一件武器的价格与 UID（见 ListingCursor），只读，不做任何写入。
+
+    游标武器还在价格表中（价格也没变）时，ZRANK 直接得到它的排名；
+    它在翻页前被买走或下架时，在同价的武器中按字节二分查找第一个排在它之后的武器，
+    开销为 O(log² 同价武器数)，不需要像 LIMIT skip 那样逐个跳过同价的武器。
+
+    KEYS:
+        priceKey 价格表键（如：market:weapon-market:weapon-price、market:weapon-market:weapon-price:Sword）
+
+    ARGV:
+        minPrice     最低价格（包含，只用于第一页）
+        maxPrice     最高价格（包含）
+        cursorScore  游标价格（上一页最后一件武器的价格）
+        cursorMember 游标武器 UID（价格表中的成员），为空串时读取第一页
+        count        读取的武器数量
+
+    返回：
+        { 'SUCCESS', 成员1, 价格1, 成员2, 价格2, ... }（按价格表顺序，价格不超过 maxPrice）
+]]
+local priceKey = KEYS[1]
+
+local minPrice     = ARGV[1]
+local maxPrice     = ARGV[2]
+local cursorScore  = ARGV[3]
+local cursorMember = ARGV[4]
+local count        = tonumber(ARGV[5])
+
+-- 按字节比较（与有序集合同分成员的排序一致，不受 Lua 字符串比较的 locale 影响），a < b 时返回 true
+local function bytesLess(a, b)
+    for i = 1, math.min(#a, #b) do
+        local x, y = string.byte(a, i), string.byte(b, i)
+
+        if x ~= y
+        then
+            return x < y
+        end
+    end
+
+    return #a < #b
+end
+
+-- 价格表中第一个排在游标之后的排名，没有同价的武器时返回 nil
+local function rankAfterCursor()
+    local rank = redis.call('ZRANK', priceKey, cursorMember)
+
+    if
+        rank and
+        tonumber(redis.call('ZSCORE', priceKey, cursorMember)) == tonumber(cursorScore)
+    then
+        return rank + 1
+    end
+
+    -- 游标武器已经离开价格表，找出同价武器的排名范围 [low, high)
+    local lowMember
+        = redis.call('ZRANGEBYSCORE', priceKey, cursorScore, cursorScore, 'LIMIT', 0, 1)[1]
+
+    if not lowMember
+    then
+        return nil
+    end
+
+    local highMember
+        = redis.call('ZREVRANGEBYSCORE', priceKey, cursorScore, cursorScore, 'LIMIT', 0, 1)[1]
+
+    local low  = redis.call('ZRANK', priceKey, lowMember)
+    local high = redis.call('ZRANK', priceKey, highMember) + 1
+
+    -- 二分查找第一个大于游标武器 UID 的同价武器（都不大于时为 high，即下一个价格的第一件）
+    while low < high do
+        local middle = math.floor((low + high) / 2)
+        local member = redis.call('ZRANGE', priceKey, middle, middle)[1]
+
+        if bytesLess(cursorMember, member)
+        then
+            high = middle
+        else
+            low = middle + 1
+        end
+    end
+
+    return low
+end
+
+local page
+
+if cursorMember == ''
+then
+    page = redis.call(
+        'ZRANGEBYSCORE', priceKey, minPrice, maxPrice,
+        'WITHSCORES', 'LIMIT', 0, count
+    )
+else
+    local start = rankAfterCursor()
+
+    if start
+    then
+        page = redis.call('ZRANGE', priceKey, start, start + count - 1, 'WITHSCORES')
+    else
+        -- 没有同价的武器，从更高的价格开始
+        page = redis.call(
+            'ZRANGEBYSCORE', priceKey, '(' .. cursorScore, maxPrice,
+            'WITHSCORES', 'LIMIT', 0, count
+        )
+    end
+end
+
+local reply = { 'SUCCESS' }
+local limit = tonumber(maxPrice)
+
+for i = 1, #page, 2 do
+    if tonumber(page[i + 1]) > limit
+    then
+        break
+    end
+
+    table.insert(reply, page[i])
+    table.insert(reply, page[i + 1])
+end
+
+return reply
@@ -1,138 +1,270 @@
 --[[
     市场武器交易脚本。
 
+    一次执行按顺序结算一笔或一批互相独立的交易（单笔交易就是只有一笔的一批），
+    同一批中排在后面的交易能看到前面交易的结果（比如同一件武器只有第一笔能成交，同一个买家的资金依次扣减）。
+    每笔交易先完成全部校验再开始写入，并在 pcall 中执行：
+    某一笔交易执行时出错只会令这一笔返回 ERROR（不保存幂等结果），排在它前后的交易照常结算，
+    已经写入的交易都会如实返回 SUCCESS。
+    还没有改写编码的价格表成员与哈希字段带着 JSON 引号，读取时回退到带引号的形式（见 shared/plain.lua）。
+
     KEYS:
-        sellerUserKey       卖家用户键（如：users:114940680399943670）
-        buyerUserKey        买家用户键（如：users:114950910119824488）
-        buyerInventoryKey   买家包裹键（如：inventories:114950910119824488）
-        weaponHashKey       市场武器信息哈希键（如：market:weapon-market:weapons:1985f067af74d6d）
-        weaponZsetKey       市场武器价格有序集合键（market:weapon-market:weapon-price）
+        weaponZsetKey   市场武器价格有序集合键（market:weapon-market:weapon-price）
+        marketLogKey    市场日志键（market:log）
+        tradeLogKey     精简交易事件流键（market:trade-log）
+        （之后每笔交易 9 个键）
+        sellerUserKey        卖家用户键（如：users:114940680399943670）
+        buyerUserKey         买家用户键（如：users:114950910119824488）
+        buyerInventoryKey    买家包裹键（如：inventories:114950910119824488）
+        weaponHashKey        市场武器信息哈希键（如：market:weapon-market:weapons:1985f067af74d6d）
+        sellerLogKey         卖家用户数据日志键（users:log）
+        buyerLogKey          买家用户数据日志键（users:log）
+        buyerInventoryLogKey 买家包裹日志键（inventories:log）
+        sellerIndexKey       卖家上架武器索引键（如：market:seller:114940680399943670）
+        idempotencyKey       交易幂等键（如：trades:114950910119824488:idempotency:<key>）
+        （最后）所有武器类型的价格表键
 
     ARGV:
-        buyerUUID  买家 UUID
-        sellerUUID 卖家 UUID
-        weaponId   武器 UID
+        tradeCount    本次结算的交易笔数
+        compactEvents 为 1 时每笔交易只向精简交易事件流写一条事件（不读取买卖双方的名字），
+                      由 TradeEventExpander 异步展开成市场、用户、包裹日志；为 0 时直接写四条日志
+        （之后每笔交易 4 个参数）
+        buyerUUID      买家 UUID
+        sellerUUID     卖家 UUID
+        weaponId       武器 UID
+        idempotencyTtl 交易结果在幂等键上保存的时间（秒），为 0 时不启用幂等
+
+    返回：
+        { 'SUCCESS', reply1, reply2, ... }，replyN 为第 N 笔交易的结果：
+        { 'SUCCESS', 买家资金, 卖家资金 }（单位：分）、{ 'WEAPON_NOT_FOUND' } 等校验失败，
+        或者 { 'ERROR', 错误信息 }
 ]]
+local weaponZsetKey = KEYS[1]
+local marketLogKey  = KEYS[2]
+local tradeLogKey   = KEYS[3]
+
+local tradeCount    = tonumber(ARGV[1])
+local compactEvents = ARGV[2] == '1'
 
-local sellerUserKey      = KEYS[1]
-local buyerUserKey       = KEYS[2]
-local buyerInventoryKey  = KEYS[3]
-local weaponHashKey      = KEYS[4]
-local weaponZsetKey      = KEYS[5]
+local SHARED_KEYS     = 3
+local KEYS_PER_TRADE  = 9
+local SHARED_ARGV     = 2
+local ARGV_PER_TRADE  = 4
 
-local buyerUUID  = ARGV[1]
-local sellerUUID = ARGV[2]
-local weaponId   = ARGV[3]
+local TYPE_BOOKS_OFFSET = SHARED_KEYS + tradeCount * KEYS_PER_TRADE + 1
 
 local timestamp = redis.call('TIME')[1]
 
--- redis.log(
---     redis.LOG_NOTICE,
---     "sellerUserKey = " ..sellerUserKey..
---     " buyerUserKey = " ..buyerUserKey..
---     " buyerInventoryKey = " ..buyerInventoryKey..
---     " weaponHashKey = " ..weaponHashKey..
---     " weaponZsetKey = " ..weaponZsetKey..
---     " buyerUUID = " ..buyerUUID..
---     " sellerUUID = " ..sellerUUID..
---     " weaponId = " ..weaponId
--- )
-
--- 禁止左手倒右手
-if
-    buyerUUID == sellerUUID
-then
-    return '{"result": "SELF_TRANSACTIONAL"}'
-end
+-- #include plain
+
+-- #include inventory
 
--- 在市场上查询武器价格
-local weaponPrice
-    = redis.call('ZSCORE', weaponZsetKey, weaponId)
+-- #include funds
 
-if not weaponPrice
-then
-    return '{"result": "WEAPON_NOT_FOUND"}'
+-- 按武器名找到该类武器的价格表（价格表键以武器名结尾）
+local function findTypeBook(weaponName)
+    for i = TYPE_BOOKS_OFFSET, #KEYS do
+        if string.match(KEYS[i], ":([^:]+)$") == weaponName then
+            return KEYS[i]
+        end
+    end
+
+    return nil
 end
 
--- 查询买家的资金，并判断其是否存在以及能否购买本武器
-local buyerFunds
-    = redis.call('HGET', buyerUserKey, "\"funds\"")
+-- 结算第 index 笔交易（从 0 开始）
+local function settle(index)
+    local keyBase  = SHARED_KEYS + index * KEYS_PER_TRADE
+    local argvBase = SHARED_ARGV + index * ARGV_PER_TRADE
+
+    local sellerUserKey        = KEYS[keyBase + 1]
+    local buyerUserKey         = KEYS[keyBase + 2]
+    local buyerInventoryKey    = KEYS[keyBase + 3]
+    local weaponHashKey        = KEYS[keyBase + 4]
+    local sellerLogKey         = KEYS[keyBase + 5]
+    local buyerLogKey          = KEYS[keyBase + 6]
+    local buyerInventoryLogKey = KEYS[keyBase + 7]
+    local sellerIndexKey       = KEYS[keyBase + 8]
+    local idempotencyKey       = KEYS[keyBase + 9]
+
+    local buyerUUID      = ARGV[argvBase + 1]
+    local sellerUUID     = ARGV[argvBase + 2]
+    local weaponId       = ARGV[argvBase + 3]
+    local idempotencyTtl = tonumber(ARGV[argvBase + 4])
+
+    -- 保存本笔交易的结果后返回
+    local function finish(reply)
+        if idempotencyTtl > 0
+        then
+            redis.call(
+                'SET', idempotencyKey,
+                cjson.encode({ seller = sellerUUID, weapon = weaponId, reply = reply }),
+                'EX', idempotencyTtl
+            )
+        end
+
+        return reply
+    end
+
+    -- 同一个幂等键的重复请求，直接返回保存的交易结果（不论成功与否）
+    if idempotencyTtl > 0
+    then
+        local stored = redis.call('GET', idempotencyKey)
+
+        if stored
+        then
+            stored = cjson.decode(stored)
+
+            -- 幂等键被用在了另一笔交易上
+            if stored.seller ~= sellerUUID or stored.weapon ~= weaponId
+            then
+                return { 'IDEMPOTENCY_KEY_REUSED' }
+            end
+
+            return stored.reply
+        end
+    end
+
+    -- 禁止左手倒右手
+    if buyerUUID == sellerUUID
+    then
+        return finish({ 'SELF_TRANSACTIONAL' })
+    end
+
+    -- 在市场上查询武器价格
+    local weaponPrice
+        = zscorePlain(weaponZsetKey, weaponId)
+
+    if not weaponPrice
+    then
+        return finish({ 'WEAPON_NOT_FOUND' })
+    end
+
+    -- 武器必须是这个卖家上架的（保证卖家索引的一致）
+    if
+        hgetPlain(weaponHashKey, 'seller') ~= sellerUUID
+    then
+        return finish({ 'WEAPON_NOT_FOUND' })
+    end
+
+    -- 查询买家的资金（分），并判断其是否存在以及能否购买本武器
+    local buyerFundsCents = loadFundsCents(buyerUserKey)
+
+    if not buyerFundsCents
+    then
+        return finish({ 'BUYER_FUNDS_NOT_FOUND' })
+    end
+
+    local priceCents = toCents(weaponPrice)
+
+    if buyerFundsCents < priceCents
+    then
+        return finish({ 'BUYER_FUNDS_NOT_ENOUGH' })
+    end
+
+    -- 卖家还没有迁移时，先迁移再入账
+    loadFundsCents(sellerUserKey)
+
+    local weaponName
+        = hgetPlain(weaponHashKey, 'weapon-name')
+
+    -- 所有校验完毕，正式执行交易操作（别忘记记录审计信息）
+    -- 删除市场上的武器信息
+    redis.call('DEL', weaponHashKey)
+    zremPlain(weaponZsetKey, weaponId)
+
+    local weaponTypePriceZsetKey = findTypeBook(weaponName)
+    if weaponTypePriceZsetKey then
+        zremPlain(weaponTypePriceZsetKey, weaponId)
+    end
+    sremPlain(sellerIndexKey, weaponId)
+
+    -- 卖家资金增加，买家资金减少，武器移库至买家包裹
+    local sellerFunds
+        = redis.call('HINCRBY', sellerUserKey, 'funds-cents', priceCents)
+    local buyerFunds
+        = redis.call('HINCRBY', buyerUserKey, 'funds-cents', -priceCents)
+
+    putIntoInventory(buyerInventoryKey, weaponName)
+
+    -- 精简模式：审计信息只记一条精简事件
+    if compactEvents
+    then
+        redis.call(
+            'XADD',
+            tradeLogKey, '*',
+            'weaponId', weaponId,
+            'weaponName', weaponName,
+            'seller', sellerUUID,
+            'buyer', buyerUUID,
+            'priceCents', priceCents,
+            'timestamp', timestamp
+        )
+
+        return finish({ 'SUCCESS', buyerFunds, sellerFunds })
+    end
+
+    local sellerName
+        = hgetPlain(sellerUserKey, 'name')
+
+    local buyerName
+        = hgetPlain(buyerUserKey, 'name')
+
+    redis.call(
+        'XADD',
+        marketLogKey, '*',
+        'event', 'WEAPON_SOLD',
+        'weaponId', weaponId,
+        'weaponName', weaponName,
+        'seller', sellerUUID,
+        'buyer', buyerUUID,
+        'priceCents', priceCents,
+        'timestamp', timestamp
+    )
+    redis.call(
+        'XADD',
+        sellerLogKey, '*',
+        'event', 'SELLER_FUNDS_INCR',
+        'uuid', sellerUUID,
+        'user-name', sellerName,
+        'user-funds-cents', "+" ..priceCents,
+        'timestamp', timestamp
+    )
+    redis.call(
+        'XADD',
+        buyerLogKey, '*',
+        'event', 'BUYER_FUNDS_REDUCE',
+        'uuid', buyerUUID,
+        'user-name', buyerName,
+        'user-funds-cents', "-" ..priceCents,
+        'timestamp', timestamp
+    )
+    redis.call(
+        'XADD',
+        buyerInventoryLogKey, '*',
+        'event', 'WEAPON_INBOUND',
+        'uuid', buyerUUID,
+        'user-name', buyerName,
+        'amount', '1',
+        'timestamp', timestamp
+    )
 
-if not buyerFunds
-then
-    return '{"result": "BUYER_FUNDS_NOT_FOUND"}'
+    -- 返回交易后买家、卖家的资金余额（单位：分，HINCRBY 的返回值是整数）
+    return finish({ 'SUCCESS', buyerFunds, sellerFunds })
 end
 
-buyerFunds = string.gsub(buyerFunds, '"', '')
+local replies = { 'SUCCESS' }
 
--- 格式化武器价格和买家资金为两位小数
+for index = 0, tradeCount - 1 do
+    local ok, reply = pcall(settle, index)
 
-local formatWeaponPrice = tonumber(string.format("%.2f", weaponPrice))
-local formatBuyerFunds  = tonumber(buyerFunds)
+    if not ok
+    then
+        -- redis.call 抛出的错误是 { err = '...' } 形式的表
+        reply = { 'ERROR', (type(reply) == 'table' and reply.err) or tostring(reply) }
+    end
 
-if formatBuyerFunds < formatWeaponPrice
-then
-    return '{"result": "BUYER_FUNDS_NOT_ENOUGH"}'
+    replies[#replies + 1] = reply
 end
 
-local weaponName
-    = redis.call('HGET', weaponHashKey, "\"weapon-name\"")
-
-local sellerName
-    = redis.call('HGET', sellerUserKey, "\"name\"")
-
-local buyerName
-    = redis.call('HGET', buyerUserKey, "\"name\"")
-
--- 所有校验完毕，正式执行交易操作（别忘记记录审计信息）
--- 删除市场上的武器信息
-redis.call('DEL', weaponHashKey)
-redis.call('ZREM', weaponZsetKey, weaponId)
-redis.call(
-    'XADD',
-    'market:log', '*',
-    'event', 'WEAPON_SOLD',
-    'weaponId', weaponId,
-    'weaponName', weaponName,
-    'seller', sellerUUID,
-    'buyer', buyerUUID,
-    'timestamp', timestamp
-)
-
--- 卖家资金增加
-redis.call('HINCRBYFLOAT', sellerUserKey, "\"funds\"", formatWeaponPrice)
-redis.call(
-    'XADD',
-    'users:log', '*',
-    'event', 'SELLER_FUNDS_INCR',
-    'uuid', sellerUUID,
-    'user-name', sellerName,
-    'user-funds', "+" ..formatWeaponPrice,
-    'timestamp', timestamp
-)
-
--- 买家资金减少
-redis.call('HINCRBYFLOAT', buyerUserKey, "\"funds\"", -formatWeaponPrice)
-redis.call(
-    'XADD',
-    'users:log', '*',
-    'event', 'BUYER_FUNDS_REDUCE',
-    'uuid', buyerUUID,
-    'user-name', buyerName,
-    'user-funds', "-" ..formatWeaponPrice,
-    'timestamp', timestamp
-)
-
--- 将武器移库至买家包裹
-redis.call('RPUSH', buyerInventoryKey, weaponName)
-redis.call(
-    'XADD',
-    'inventories:log', '*',
-    'event', 'WEAPON_INBOUND',
-    'uuid', buyerUUID,
-    'user-name', buyerName,
-    'amount', '1',
-    'timestamp', timestamp
-)
-
-return '{"result": "SUCCESS"}'
+return replies
@@ -72,7 +72,7 @@ if
     redis.call('ZRANK', semaphoreOwnerKey, identifier) < maxSemaphore
 then
     -- 若没有的话，则视为成功获得信号量
-    return '{"result": "SUCCESS"}'
+    return { 'SUCCESS' }
 end
 
 -- 反之则视为获取信号量失败（资源繁忙）
@@ -80,4 +80,4 @@ end
 redis.call('ZREM', semaphoreNameKey, identifier)
 redis.call('ZREM', semaphoreOwnerKey, identifier)
 
-return '{"result": "ACQUIRE_SEMAPHORE_FAILED"}'
\ No newline at end of file
+return { 'ACQUIRE_SEMAPHORE_FAILED' }
\ No newline at end of file
@@ -36,8 +36,8 @@ if
     updateCount ~= 1
 then
      -- 若不存在直接返回错误信息
-    return '{"result": "SEMAPHORE_NOT_FOUND"}'
+    return { 'SEMAPHORE_NOT_FOUND' }
 else
     -- 反之返回成功信息
-    return '{"result": "SUCCESS"}'
+    return { 'SUCCESS' }
 end
\ No newline at end of file
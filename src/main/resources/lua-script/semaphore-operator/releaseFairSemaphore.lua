@@ -13,10 +13,10 @@ redis.call('ZREM', semaphoreOwnerKey, identifier)
 if
     isRemoved == 1
 then
-    return '{"result": "SUCCESS"}'
+    return { 'SUCCESS' }
 else
     -- 若移除失败，
     -- 说明信号量因业务逻辑执行超时而被别的
     -- acquireFairSemaphore() 操作删除
-    return '{"result": "SEMAPHORE_TIMEOUT"}'
+    return { 'SEMAPHORE_TIMEOUT' }
 end
\ No newline at end of file
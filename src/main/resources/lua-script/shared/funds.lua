@@ -0,0 +1,47 @@
+--[[
+    用户资金（整数分）的公共操作，脚本以 "-- #include funds" 引入。
+
+    还没有迁移的用户（资金以浮点数元保存在 "funds" 字段上）在第一次读取时顺便迁移成整数分，
+    大批量的迁移由后台迁移任务（app.user.funds-migration）完成。
+    还没有改写编码的用户（字段名带 JSON 引号）也在这里顺便改成原始字段名，之后的 HINCRBY 直接作用在原始字段上。
+]]
+
+-- #include plain
+
+-- 读取用户资金（单位：分），用户不存在时返回 nil，还没有迁移的用户顺便迁移。
+local function loadFundsCents(userKey)
+    local cents = redis.call('HGET', userKey, 'funds-cents')
+
+    if cents
+    then
+        return tonumber(cents)
+    end
+
+    -- 字段名还带着引号的用户
+    adoptPlainField(userKey, 'funds-cents')
+    cents = redis.call('HGET', userKey, 'funds-cents')
+
+    if cents
+    then
+        return tonumber(cents)
+    end
+
+    local legacyFunds = hgetPlain(userKey, 'funds')
+
+    if not legacyFunds
+    then
+        return nil
+    end
+
+    cents = math.floor(tonumber((string.gsub(legacyFunds, '"', ''))) * 100 + 0.5)
+
+    redis.call('HSET', userKey, 'funds-cents', cents)
+    redis.call('HDEL', userKey, 'funds', quoted('funds'))
+
+    return cents
+end
+
+-- 价格表中的价格（元，两位小数）转换成分
+local function toCents(price)
+    return math.floor(tonumber(price) * 100 + 0.5)
+end
@@ -0,0 +1,87 @@
+--[[
+    包裹（武器名 -> 数量 的哈希）的公共操作，脚本以 "-- #include inventory" 引入。
+
+    还没有迁移的包裹（武器名可重复出现的列表）只在哈希命令返回 WRONGTYPE 时才迁移，
+    已经迁移的包裹不会多执行任何命令（不再每次都 TYPE 一遍）。
+    迁移保留键原有的过期时间，大批量的迁移由后台迁移任务（app.user.inventory-migration）完成。
+    旧编码下列表中的武器名带着 JSON 引号，迁移时一并去掉。
+]]
+
+-- #include plain
+
+-- 将列表形式的包裹（如：Sword, Sword, Mace）迁移成 武器名 -> 数量 的哈希，保留键原有的过期时间。
+local function migrateInventory(inventoryKey)
+    local counts = {}
+
+    for _, value in ipairs(redis.call('LRANGE', inventoryKey, 0, -1)) do
+        local weaponName = unquote(value)
+        counts[weaponName] = (counts[weaponName] or 0) + 1
+    end
+
+    local ttl = redis.call('PTTL', inventoryKey)
+
+    redis.call('DEL', inventoryKey)
+
+    for weaponName, count in pairs(counts) do
+        redis.call('HSET', inventoryKey, weaponName, count)
+    end
+
+    if ttl > 0
+    then
+        redis.call('PEXPIRE', inventoryKey, ttl)
+    end
+end
+
+-- 对包裹执行一条哈希命令，包裹还是列表（WRONGTYPE）时先迁移再重新执行，其他错误原样抛出。
+local function inventoryCall(command, inventoryKey, ...)
+    local reply = redis.pcall(command, inventoryKey, ...)
+
+    if type(reply) == 'table' and reply.err
+    then
+        if not string.find(reply.err, 'WRONGTYPE', 1, true)
+        then
+            error(reply)
+        end
+
+        migrateInventory(inventoryKey)
+
+        return redis.call(command, inventoryKey, ...)
+    end
+
+    return reply
+end
+
+-- 向包裹放入一件武器（O(1)），返回这类武器的数量。
+local function putIntoInventory(inventoryKey, weaponName)
+    return inventoryCall('HINCRBY', inventoryKey, weaponName, 1)
+end
+
+-- 从包裹取出一件武器（O(1)，数量减到 0 时删除这个字段），包裹中没有这件武器时返回 false。
+local function takeFromInventory(inventoryKey, weaponName)
+    local count = tonumber(inventoryCall('HGET', inventoryKey, weaponName))
+
+    if not count or count <= 0
+    then
+        return false
+    end
+
+    if count == 1
+    then
+        redis.call('HDEL', inventoryKey, weaponName)
+    else
+        redis.call('HINCRBY', inventoryKey, weaponName, -1)
+    end
+
+    return true
+end
+
+-- 包裹中的武器总数（各类武器的数量之和，字段数不超过武器种类数）。
+local function inventorySize(inventoryKey)
+    local size = 0
+
+    for _, count in ipairs(inventoryCall('HVALS', inventoryKey)) do
+        size = size + tonumber(count)
+    end
+
+    return size
+end
@@ -0,0 +1,93 @@
+--[[
+    兼容旧编码（Jackson，字符串带 JSON 引号，如："\"Sword\""）的读取操作，脚本以 "-- #include plain" 引入。
+
+    后台迁移任务（app.redis.plain-value-migration）完成之前，还没有改写的键中
+    哈希的字段名与字段值、集合与有序集合的成员都还带着引号。
+    脚本总是先按原始字符串读取，只有读不到时才回退到带引号的形式，已经迁移的键不会多执行任何命令。
+    （集群模式下迁移标记键与业务键不在同一个槽，脚本读不到标记键，所以只能按"读不到再回退"判断。）
+]]
+
+-- 给原始字符串包上 JSON 引号（旧编码下的字段名与成员）
+local function quoted(value)
+    return '"' .. value .. '"'
+end
+
+-- 去掉旧编码的 JSON 引号，其他值（包括 false）原样返回
+local function unquote(value)
+    if
+        value and #value >= 2 and
+        string.sub(value, 1, 1) == '"' and
+        string.sub(value, -1) == '"'
+    then
+        local ok, decoded = pcall(cjson.decode, value)
+
+        if ok and type(decoded) == 'string'
+        then
+            return decoded
+        end
+    end
+
+    return value
+end
+
+-- 读取哈希字段，没有这个字段时回退到带引号的旧字段，不存在时返回 false。
+local function hgetPlain(key, field)
+    local value = redis.call('HGET', key, field)
+
+    if value
+    then
+        return value
+    end
+
+    return unquote(redis.call('HGET', key, quoted(field)))
+end
+
+-- 一次读取多个哈希字段（与 HMGET 的返回相同），读不到的字段逐个回退到带引号的旧字段。
+local function hmgetPlain(key, ...)
+    local fields = { ... }
+    local values = redis.call('HMGET', key, unpack(fields))
+
+    for i = 1, #fields do
+        if not values[i]
+        then
+            values[i] = unquote(redis.call('HGET', key, quoted(fields[i])))
+        end
+    end
+
+    return values
+end
+
+-- 把带引号的旧字段改名成原始字段（写入原始字段之前调用，避免同一个字段出现两份）。
+local function adoptPlainField(key, field)
+    local legacy = redis.call('HGET', key, quoted(field))
+
+    if legacy
+    then
+        redis.call('HSETNX', key, field, unquote(legacy))
+        redis.call('HDEL', key, quoted(field))
+    end
+end
+
+-- 读取有序集合成员的分数，没有这个成员时回退到带引号的旧成员。
+local function zscorePlain(key, member)
+    return
+        redis.call('ZSCORE', key, member) or
+        redis.call('ZSCORE', key, quoted(member))
+end
+
+-- 从有序集合中删除成员（原始与带引号的两种形式一起删除），返回删除的数量。
+local function zremPlain(key, member)
+    return redis.call('ZREM', key, member, quoted(member))
+end
+
+-- 从集合中删除成员（原始与带引号的两种形式一起删除），返回删除的数量。
+local function sremPlain(key, member)
+    return redis.call('SREM', key, member, quoted(member))
+end
+
+-- 成员（原始或带引号的形式）是否在集合中？
+local function sismemberPlain(key, member)
+    return
+        redis.call('SISMEMBER', key, member) == 1 or
+        redis.call('SISMEMBER', key, quoted(member)) == 1
+end
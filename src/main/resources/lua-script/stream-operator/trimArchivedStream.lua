@@ -0,0 +1,81 @@
+--[[
+    删除日志流中已经归档的事件（XTRIM MINID）。
+
+    只删除所有消费组都已经处理完的事件：
+    对于每一个消费组，有待确认事件时不越过最早的待确认事件，
+    没有待确认事件时不越过最后投递的事件；归档消费组自身也是其中之一，
+    所以删除的事件不会越过归档到的位置，也不会删除市场统计等其他消费组还没处理的事件。
+
+    KEYS:
+        streamKey   日志流键（如：market:log）
+
+    ARGV:
+        archivedId  已经归档并确认的最后一条事件 ID（如：1718000000000-0）
+
+    返回：
+        { 'SUCCESS', 删除的事件数, 实际使用的 MINID }
+        { 'NOTHING_TO_TRIM' } 没有可以删除的事件
+]]
+local streamKey  = KEYS[1]
+local archivedId = ARGV[1]
+
+-- 解析流 ID
+local function parseId(id)
+    local ms, seq = string.match(id, '^(%d+)-(%d+)$')
+
+    return tonumber(ms), tonumber(seq)
+end
+
+-- 比较两个流 ID 的先后（a 早于 b 时返回 true）
+local function idBefore(a, b)
+    local aMs, aSeq = parseId(a)
+    local bMs, bSeq = parseId(b)
+
+    return aMs < bMs or (aMs == bMs and aSeq < bSeq)
+end
+
+-- 紧跟在某个 ID 之后的 ID（MINID 保留大于等于它的事件）
+local function successor(id)
+    local ms, seq = parseId(id)
+
+    return string.format('%d-%d', ms, seq + 1)
+end
+
+if redis.call('EXISTS', streamKey) == 0
+then
+    return { 'NOTHING_TO_TRIM' }
+end
+
+local minId = successor(archivedId)
+
+for _, group in ipairs(redis.call('XINFO', 'GROUPS', streamKey)) do
+    local info = {}
+
+    for i = 1, #group, 2 do
+        info[group[i]] = group[i + 1]
+    end
+
+    local bound
+
+    if tonumber(info['pending']) > 0
+    then
+        -- XPENDING 的概要形式：{ 待确认数, 最早的 ID, 最晚的 ID, 各消费者 }
+        bound = redis.call('XPENDING', streamKey, info['name'])[2]
+    else
+        bound = successor(info['last-delivered-id'])
+    end
+
+    if idBefore(bound, minId)
+    then
+        minId = bound
+    end
+end
+
+local ms, seq = parseId(minId)
+
+if ms == 0 and seq <= 1
+then
+    return { 'NOTHING_TO_TRIM' }
+end
+
+return { 'SUCCESS', redis.call('XTRIM', streamKey, 'MINID', minId), minId }
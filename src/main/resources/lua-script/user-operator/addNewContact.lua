@@ -1,9 +1,14 @@
 --[[
     用户记录另一个用户为最近联系人。
 
+    最近联系人是以最近一次联系的时间（微秒）为分数的有序集合，
+    再次联系已有的联系人时只需更新分数（O(log N)），超出上限时按排名删除最旧的联系人。
+    另有一个分数皆为 0 的字典序索引（成员为 小写联系人名:联系人名），供前缀补全使用 ZRANGEBYLEX。
+
     KEYS:
-        newUserKey       用户键（如：users:114934523722107784）
-        contactKey    用户联系人列表键（如：contact:114968372130032550）
+        userKey       用户键（如：users:114934523722107784）
+        contactKey    用户最近联系人键（如：contact:114968372130032550）
+        contactLexKey 用户联系人字典序索引键（如：contact:lex:114968372130032550）
         contactLogKey 用户最近联系人日志键（contact:log）
 
     ARGV:
@@ -13,25 +18,57 @@
 ]]
 local userKey       = KEYS[1]
 local contactKey    = KEYS[2]
-local contactLogKey = KEYS[3]
+local contactLexKey = KEYS[3]
+local contactLogKey = KEYS[4]
 
 local uuid        = ARGV[1]
 local contactName = ARGV[2]
 local maxContact  = math.min(tonumber(ARGV[3]), 175)
 
-local timestamp = redis.call('TIME')[1]
+local now       = redis.call('TIME')
+local timestamp = now[1]
+
+-- 以微秒为分数，同一秒内联系的先后顺序也能保留
+local recency = tonumber(now[1]) * 1000000 + tonumber(now[2])
+
+-- #include plain
+
+-- 联系人在字典序索引中的成员（小写在前用于前缀匹配，原名在后用于还原；string.lower 只转换 ASCII 字母，与 Java 端的 normalizeUserName 一致）
+local function lexMember(name)
+    return string.lower(name) .. ':' .. name
+end
+
+-- 还没有迁移的最近联系人（列表，最新的在最前）在这里顺便迁移成有序集合，并建立字典序索引。
+local function migrateContacts()
+    if redis.call('TYPE', contactKey)['ok'] ~= 'list'
+    then
+        return
+    end
+
+    local names = redis.call('LRANGE', contactKey, 0, -1)
+
+    redis.call('DEL', contactKey)
+
+    for index, legacyName in ipairs(names) do
+        local name = unquote(legacyName)
+
+        redis.call('ZADD', contactKey, recency - index, name)
+        redis.call('ZADD', contactLexKey, 0, lexMember(name))
+    end
+end
 
 -- 无论如何，不能添加自己为最近联系人
 if
-    contactName == redis.call('HGET', userKey, "\"name\"")
+    contactName == hgetPlain(userKey, 'name')
 then
-    return '{"result": "SELF_ADDED"}'
+    return { 'SELF_ADDED' }
 end
 
--- 直接尝试删除指定联系人，
--- 如果他存在与列表中的话，会返回 1
+migrateContacts()
+
+-- ZADD 返回 0 说明联系人已经存在，这次只是把它移到最前面
 if
-    redis.call('LREM', contactKey, 1, contactName) == 1
+    redis.call('ZADD', contactKey, recency, contactName) == 0
 then
     redis.call(
         'XADD',
@@ -41,10 +78,10 @@ then
         'contactName', contactName,
         'timestamp', timestamp
     )
+else
+    redis.call('ZADD', contactLexKey, 0, lexMember(contactName))
 end
 
--- 将联系人插入列表，使之成为最新的一个联系人
-redis.call('LPUSH', contactKey, contactName)
 redis.call(
     'XADD',
     contactLogKey, '*',
@@ -54,26 +91,30 @@ redis.call(
     'timestamp', timestamp
 )
 
-local currentListLen = redis.call('LLEN', contactKey);
--- 插入完成后，需要检查列表长度有没有超过 maxContact
--- 若有，则修剪列表，丢弃索引超过 maxContact 的元素
+local contactCount = redis.call('ZCARD', contactKey)
+
+-- 插入完成后，需要检查联系人数量有没有超过 maxContact
+-- 若有，则按排名删除最旧的联系人（连同字典序索引中的成员）
 if
-    currentListLen > maxContact
+    contactCount > maxContact
 then
-    -- 在正式修剪前，
-    -- 先弹出被修剪的联系人名字，用于日志记录
-    local trimContactName = redis.call('RPOP', contactKey)
+    local trimCount = contactCount - maxContact
 
-    redis.call('LTRIM', contactKey, 0, maxContact - 1)
-    redis.call(
-        'XADD',
-        contactLogKey, '*',
-        'event', 'TRIM_CONTACT_LIST',
-        'uuid', uuid,
-        'contactName', trimContactName,
-        'timestamp', timestamp
-    )
-end
+    for _, trimContactName in ipairs(redis.call('ZRANGE', contactKey, 0, trimCount - 1)) do
+        redis.call('ZREM', contactLexKey, lexMember(trimContactName))
+        redis.call(
+            'XADD',
+            contactLogKey, '*',
+            'event', 'TRIM_CONTACT_LIST',
+            'uuid', uuid,
+            'contactName', trimContactName,
+            'timestamp', timestamp
+        )
+    end
 
-return '{"result": "SUCCESS"}'
+    redis.call('ZREMRANGEBYRANK', contactKey, 0, trimCount - 1)
+    contactCount = maxContact
+end
 
+-- 返回最近联系人的数量
+return { 'SUCCESS', contactCount }
@@ -5,18 +5,26 @@
         newUserKey       用户键（如：users:114934523722107784）
         userHashKey      用户哈希校验键（用用户名映射他的 UUID，用来保证用户名的唯一性）
         userInventoryKey 用户包裹键（如：inventories:114935169325609268）
+        userNameLogKey   用户名哈希日志键（user-name:log）
+        userLogKey       用户数据日志键（users:log）
+        inventoryLogKey  用户包裹日志键（inventories:log）
+        userNameIndexKey 用户名前缀搜索索引键（user-name:name-index）
     ARGV:
         userNameField       用户名哈希字段名
-        userFundsField      用户资金哈希字段名
+        userFundsField      用户资金哈希字段名（单位：分）
         userGuildField      用户哈希的用户公会字段名
         userGuildRoleField  用户哈希的用户公会身份字段名
         newUserName         用户名（如：Peter，Jesse）
-        newUserFunds        新用户初始资金
-        initWeaponsStr      新用户的初始武器（空格分割的字符串，如："Sword Shield Axe ..."）
+        newUserFunds        新用户初始资金（单位：分）
+        initWeaponsStr      新用户的初始武器（空格分割的字符串，如：Sword Shield Axe ...）
 ]]
 local newUserKey       = KEYS[1]
 local userHashKey      = KEYS[2]
 local userInventoryKey = KEYS[3]
+local userNameLogKey   = KEYS[4]
+local userLogKey       = KEYS[5]
+local inventoryLogKey  = KEYS[6]
+local userNameIndexKey = KEYS[7]
 
 local userNameField      = ARGV[1]
 local userFundsField     = ARGV[2]
@@ -24,10 +32,10 @@ local userGuildField     = ARGV[3]
 local userGuildRoleField = ARGV[4]
 local newUserName        = ARGV[5]
 local newUserFunds       = ARGV[6]
-local initWeaponsStr     = string.match(ARGV[7], '^"(.*)"$')
+local initWeaponsStr     = ARGV[7]
 
 -- 从 newUserKey 中提取用户唯一 ID
-local uuid = "\"" ..string.match(newUserKey, ":([^:]+)").. "\""
+local uuid = string.match(newUserKey, ":{?([^:{}]+)}?$")
 
 -- 当前时间戳（秒）
 local timestamp = redis.call('TIME')[1]
@@ -39,19 +47,29 @@ end
 -- 解析武器列表成一个 Lua Table
 local initWeapons = {}
 for weapon in string.gmatch(initWeaponsStr, "%S+") do
-    table.insert(initWeapons, "\"" ..weapon.. "\"")
+    table.insert(initWeapons, weapon)
 end
 
+-- #include plain
+
 -- 尝试往用户哈希内插入新用户，
--- 若返回 0 则代表用户名重复
-if redis.call('HSET', userHashKey, newUserName, uuid) == 0
+-- 用户名已经存在（包括还没有迁移、字段名带引号的旧用户名）或 HSET 返回 0 都代表用户名重复
+if
+    hgetPlain(userHashKey, newUserName) or
+    redis.call('HSET', userHashKey, newUserName, uuid) == 0
 then
-    return '{"result": "DUPLICATE_USER"}'
+    return { 'DUPLICATE_USER' }
 end
 
+-- 写入用户名前缀搜索索引（成员为 小写用户名\0用户名\0UUID，score 皆为 0）
+redis.call(
+    'ZADD', userNameIndexKey, 0,
+    string.lower(newUserName) .. '\0' .. newUserName .. '\0' .. uuid
+)
+
 -- 用户添加进哈希成功，需要加一条审计数据
 redis.call(
-    'XADD', 'user-name:log', '*',
+    'XADD', userNameLogKey, '*',
     'event', 'USERNAME_INSERT',
     'user-name', newUserName,
     'timestamp', timestamp
@@ -62,30 +80,30 @@ redis.call(
     'HSET', newUserKey,
     userNameField, newUserName,
     userFundsField, newUserFunds,
-    userGuildField, "\"---\"",              -- 新用户没有加入任何公会
-    userGuildRoleField, "\"---\""
+    userGuildField, '---',              -- 新用户没有加入任何公会
+    userGuildRoleField, '---'
 )
 
 -- 为该用户添加初始武器
-if #initWeapons > 0 then
-    redis.call('RPUSH', userInventoryKey, unpack(initWeapons))
+for _, weapon in ipairs(initWeapons) do
+    redis.call('HINCRBY', userInventoryKey, weapon, 1)
 end
 
 -- 用户数据的审计信息
 redis.call(
     'XADD',
-    'users:log', '*',
+    userLogKey, '*',
     'event', 'NEW_USER_CREATE',
-    'uuid', "\"" ..uuid.. "\"",
+    'uuid', uuid,
     'user-name', newUserName,
-    'user-funds', newUserFunds,
+    'user-funds-cents', newUserFunds,
     'timestamp', timestamp
 )
 
 -- 用户包裹数据的审计信息
 redis.call(
     'XADD',
-    'inventories:log', '*',
+    inventoryLogKey, '*',
     'event', 'WEAPON_INBOUND',
     'uuid', uuid,
     'user-name', newUserName,
@@ -93,4 +111,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回新用户的 UUID 与初始武器的数量
+return { 'SUCCESS', uuid, #initWeapons }
\ No newline at end of file
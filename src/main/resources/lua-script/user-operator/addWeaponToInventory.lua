@@ -4,31 +4,37 @@
     KEYS:
         userKey      用户键（如：users:114934523722107784）
         inventoryKey 用户包裹键（如：inventories:114934523722107784）
+        inventoryLogKey 用户包裹日志键（inventories:log）
 
     ARGV:
         weapon 武器类型（Broadsword、Mace、Halberd 等）
 ]]
 local userKey      = KEYS[1]
 local inventoryKey = KEYS[2]
+local inventoryLogKey = KEYS[3]
 
 local weapon       = ARGV[1]
 
-local uuid     = string.match(inventoryKey, ":([^:]+)")
-local userName = redis.call('HGET', userKey, "\"name\"")
+-- #include plain
+
+local uuid     = string.match(inventoryKey, ":{?([^:{}]+)}?$")
+local userName = hgetPlain(userKey, 'name')
 
 -- 先检查用户是否存在，避免错误添加
 if 
     userName == false
 then
-    return '{"result": "USER_NOT_FOUND"}'
+    return { 'USER_NOT_FOUND' }
 end
 
 local timestamp = redis.call('TIME')[1]
 
-redis.call('RPUSH', inventoryKey, weapon)
+-- #include inventory
+
+putIntoInventory(inventoryKey, weapon)
 redis.call(
     'XADD',
-    'inventories:log', '*',
+    inventoryLogKey, '*',
     'event', 'WEAPON_INBOUND',
     'uuid', uuid,
     'user-name', userName,
@@ -37,4 +43,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回包裹中的武器数量
+return { 'SUCCESS', inventorySize(inventoryKey) }
\ No newline at end of file
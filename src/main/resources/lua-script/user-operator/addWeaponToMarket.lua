@@ -6,38 +6,54 @@
         weaponPriceZsetKey      挂在市场上的武器价格键（market:weapon-market:weapon-price）
         sellerInventoryListKey  卖家包裹键（如：inventories:114935169325609268）
         userKey                 用户键（如：users:114934523722107784）
+        inventoryLogKey         用户包裹日志键（inventories:log）
+        marketLogKey            市场日志键（market:log）
+        sellerIndexKey          卖家上架武器索引键（如：market:seller:114934523722107784）
+        weaponTypePriceZsetKey  该类武器的价格表键（如：market:weapon-market:weapon-price:Sword）
+        listingExpiryZsetKey    上架到期时间表键（market:weapon-market:listing-expiry）
 
     ARGV:
         weaponUUID 武器 ID
         sellerUUID 卖家 UUID
         weaponName 武器名
         weaponPrice 武器价格
+        ttlSeconds 上架时长（秒，0 表示不会到期）
 ]]
 
 local weaponHashKey          = KEYS[1]
 local weaponPriceZsetKey     = KEYS[2]
 local sellerInventoryListKey = KEYS[3]
 local userKey                = KEYS[4]
+local inventoryLogKey        = KEYS[5]
+local marketLogKey           = KEYS[6]
+local sellerIndexKey         = KEYS[7]
+local weaponTypePriceZsetKey = KEYS[8]
+local listingExpiryZsetKey   = KEYS[9]
 
 local weaponUUID  = ARGV[1]
 local sellerUUID  = ARGV[2]
 local weaponName  = ARGV[3]
 local weaponPrice = ARGV[4]
+local ttlSeconds  = tonumber(ARGV[5]) or 0
 
 local timestamp = redis.call('TIME')[1]
 
-local userName = redis.call('HGET', userKey, "\"name\"")
+-- #include plain
+
+-- #include inventory
+
+local userName = hgetPlain(userKey, 'name')
 
 -- 从用户包裹中移除指定武器
-if redis.call('LREM', sellerInventoryListKey, 1, weaponName) == 0
+if not takeFromInventory(sellerInventoryListKey, weaponName)
 then
-    return '{"result": "INVENTORY_REM_FAILED"}'
+    return { 'INVENTORY_REM_FAILED' }
 end
 
 -- 用户包裹数据的审计信息
 redis.call(
     'XADD',
-    'inventories:log', '*',
+    inventoryLogKey, '*',
     'event', 'WEAPON_OUTBOUND',
     'uuid', sellerUUID,
     'user-name', userName,
@@ -48,7 +64,7 @@ redis.call(
 
 redis.call(
     'HSET', weaponHashKey,
-    '"weapon-name"', weaponName, '"seller"', sellerUUID
+    'weapon-name', weaponName, 'seller', sellerUUID
 )
 redis.call(
     'ZADD', weaponPriceZsetKey,
@@ -56,15 +72,30 @@ redis.call(
     string.format("%.2f", weaponPrice),
     weaponUUID
 )
+redis.call(
+    'ZADD', weaponTypePriceZsetKey,
+    'NX',
+    string.format("%.2f", weaponPrice),
+    weaponUUID
+)
+redis.call('SADD', sellerIndexKey, weaponUUID)
+
+-- 设置了上架时长的武器登记到期时间，到期后由清理任务下架并放回卖家包裹
+if ttlSeconds > 0
+then
+    redis.call('ZADD', listingExpiryZsetKey, tonumber(timestamp) + ttlSeconds, weaponUUID)
+end
 
 redis.call(
     'XADD',
-    'market:log', '*',
+    marketLogKey, '*',
     'event', 'WEAPON_LISTING',
     'weaponId', weaponUUID,
     'weaponName', weaponName,
     'seller', sellerUUID,
+    'priceCents', math.floor(tonumber(weaponPrice) * 100 + 0.5),
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回上架的武器 ID（从武器键中提取）
+return { 'SUCCESS', string.match(weaponHashKey, ".*:(.*)") }
\ No newline at end of file
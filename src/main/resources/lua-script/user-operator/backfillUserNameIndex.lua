@@ -0,0 +1,33 @@
+--[[
+    将一批已有的用户名写入用户名前缀搜索索引（成员为 小写用户名\0用户名\0UUID，score 皆为 0）。
+    只写入仍然登记在用户名哈希中的用户，读取这批用户名之后被删除的用户不会重新出现在索引中，
+    重复执行没有副作用。
+
+    KEYS:
+        userHashKey      用户哈希校验键（用用户名映射他的 UUID）
+        userNameIndexKey 用户名前缀搜索索引键（user-name:name-index）
+    ARGV:
+        成对出现的 用户名 UUID（如：Peter 114934523722107784 Jesse 114935169325609268 ...）
+
+    返回：
+        SUCCESS 附带本次新写入索引的用户数
+]]
+local userHashKey      = KEYS[1]
+local userNameIndexKey = KEYS[2]
+
+local added = 0
+
+for i = 1, #ARGV, 2 do
+    local userName = ARGV[i]
+    local uuid     = ARGV[i + 1]
+
+    if redis.call('HGET', userHashKey, userName) == uuid
+    then
+        added = added + redis.call(
+            'ZADD', userNameIndexKey, 0,
+            string.lower(userName) .. '\0' .. userName .. '\0' .. uuid
+        )
+    end
+end
+
+return { 'SUCCESS', added }
@@ -5,46 +5,109 @@
         userKey          用户键（如：users:114934523722107784）
         userHashKey      用户哈希校验键（用用户名映射他的 UUID，用来保证用户名的唯一性）
         inventoryKey     用户包裹键（如：inventories:114935169325609268）
+        contactsKey      用户最近联系人键（如：contact:114968372130032550）
+        contactLogKey    用户最近联系人日志键（contact:log）
+        userNameLogKey   用户名哈希日志键（user-name:log）
+        weaponPriceZsetKey 挂在市场上的武器价格键（market:weapon-market:weapon-price）
+        marketLogKey     市场日志键（market:log）
+        inventoryLogKey  用户包裹日志键（inventories:log）
+        guildLogKey      公会日志键（guild:log）
+        userLogKey       用户数据日志键（users:log）
+        sellerIndexKey   卖家上架武器索引键（如：market:seller:114934523722107784）
+        contactLexKey    用户联系人字典序索引键（如：contact:lex:114968372130032550）
+        userNameIndexKey 用户名前缀搜索索引键（user-name:name-index）
+        historyKey       用户操作历史索引键（如：users:history:114934523722107784）
+        weaponTypePriceZsetKeys （KEYS[16] 起，共 typeBookCount 个）所有武器类型的价格表键
+        weaponHashKeys   （价格表键之后）卖家索引中所有在售武器的键，由调用方读取索引后传入
     ARGV:
         userNameField    用户名哈希字段名
         userFundsField   用户资金哈希字段名
+        guildKeyPrefix   公会键的前缀（如：guild:）
+        typeBookCount    传入的价格表键的数量
 ]]
-local userKey       = KEYS[1]
-local userHashKey   = KEYS[2]
-local inventoryKey  = KEYS[3]
-local contactsKey   = KEYS[4]
-local contactLogKey = KEYS[5]
-
-local userNameField  = ARGV[1]
-local userFundsField = ARGV[2]
+local userKey            = KEYS[1]
+local userHashKey        = KEYS[2]
+local inventoryKey       = KEYS[3]
+local contactsKey        = KEYS[4]
+local contactLogKey      = KEYS[5]
+local userNameLogKey     = KEYS[6]
+local weaponPriceZsetKey = KEYS[7]
+local marketLogKey       = KEYS[8]
+local inventoryLogKey    = KEYS[9]
+local guildLogKey        = KEYS[10]
+local userLogKey         = KEYS[11]
+local sellerIndexKey     = KEYS[12]
+local contactLexKey      = KEYS[13]
+local userNameIndexKey   = KEYS[14]
+local historyKey         = KEYS[15]
+
+local TYPE_BOOKS_OFFSET  = 16
+local WEAPON_KEYS_OFFSET = 15 + tonumber(ARGV[4])
+
+local userNameField    = ARGV[1]
+local userFundsField   = ARGV[2]
+local guildKeyPrefix   = ARGV[3]
 
 -- 获取用户的 uuid
-local targetUUID = string.match(userKey, "%:(.+)$")
-targetUUID = "\"" ..targetUUID.. "\"";
+local targetUUID = string.match(userKey, ":{?([^:{}]+)}?$")
 
 local timestamp = redis.call('TIME')[1]
 
+-- #include plain
+
+-- 按武器名在 KEYS[firstIndex..WEAPON_KEYS_OFFSET] 中找到该类武器的价格表（价格表键以武器名结尾）
+local function findTypeBook(firstIndex, weaponName)
+    for i = firstIndex, WEAPON_KEYS_OFFSET do
+        if string.match(KEYS[i], ":([^:]+)$") == weaponName then
+            return KEYS[i]
+        end
+    end
+
+    return nil
+end
+
 -- 获取用户名字符串并检查
-local userName = redis.call('HGET', userKey, userNameField)
+local userName = hgetPlain(userKey, userNameField)
 
 if not userName then
-    return '{"result": "USER_NOT_FOUND"}'
+    return { 'USER_NOT_FOUND' }
 end
 
--- 删除用户哈希校验中的用户名
-redis.call('HDEL', userHashKey, userName)
+-- 调用方读取索引之后，卖家又上架或卖出了武器，需要重新读取索引
+if
+    redis.call('SCARD', sellerIndexKey) ~= #KEYS - WEAPON_KEYS_OFFSET
+then
+    return { 'SELLER_INDEX_CHANGED' }
+end
+
+for i = WEAPON_KEYS_OFFSET + 1, #KEYS do
+    local weaponId = string.match(KEYS[i], ".*:(.*)")
+
+    if
+        redis.call('SISMEMBER', sellerIndexKey, weaponId) == 0
+    then
+        return { 'SELLER_INDEX_CHANGED' }
+    end
+end
+
+-- 删除用户哈希校验与前缀搜索索引中的用户名
+redis.call('HDEL', userHashKey, userName, quoted(userName))
+redis.call(
+    'ZREM', userNameIndexKey,
+    string.lower(userName) .. '\0' .. userName .. '\0' .. targetUUID
+)
 
 -- 添加删除用户哈希校验的审计信息
 redis.call(
     'XADD',
-    'user-name:log', '*',
+    userNameLogKey, '*',
     'event', 'USERNAME_REMOVE',
     'user-name', userName,
     'timestamp', timestamp
 )
 
--- 移除用户的所有常用联系人
-redis.call('DEL', contactsKey)
+-- 移除用户的所有常用联系人（以及它的字典序索引）
+redis.call('DEL', contactsKey, contactLexKey)
 
 redis.call(
     'XADD',
@@ -55,56 +118,57 @@ redis.call(
     'timestamp', timestamp
 )
 
--- 对于每一个 hash-key，查询买家 uuid 和 武器名，
--- 若买家 uuid 与传入的参数匹配，删除对应的整个哈希并添加审计信息
-local cursor = "0"
-repeat
-    -- 分批次获取市场中的所有武器键
-    local result
-        = redis.call(
-            'SCAN', cursor,
-            'MATCH', 'market:weapon-market:weapons:*',
-            'COUNT', 15,
-            'TYPE', 'hash'
-        )
+-- 删除卖家在市场上的所有武器（只访问索引中的武器，不再 SCAN 整个市场）
+local removedWeaponAmount = 0
+for i = WEAPON_KEYS_OFFSET + 1, #KEYS do
+    local weaponKey = KEYS[i]
+
+    local weaponName, sellerUUID
+        = unpack(hmgetPlain(weaponKey, 'weapon-name', 'seller'))
 
-    cursor = result[1]
-    local weaponHashKeys = result[2]
-
-    for i, weaponKey in ipairs(weaponHashKeys) do
-        local fields = redis.call('HMGET', weaponKey, '\"weapon-name\"', '\"seller\"')
-
-        local weaponName, sellerUUID = unpack(fields)
-
-        local weaponId = string.match(weaponKey, ".*:(.*)")
-
-        if
-            sellerUUID and sellerUUID == targetUUID
-        then
-            redis.call('DEL', weaponKey)
-            redis.call(
-                'ZREM',
-                "market:weapon-market:weapon-price",
-                "\"" ..weaponId.. "\""
-            )
-            redis.call(
-                'XADD',
-                'market:log', '*',
-                'event', 'WEAPON_DELETE',
-                'weaponName', weaponName,
-                'seller', sellerUUID,
-                'timestamp', timestamp
-            )
+    local weaponId = string.match(weaponKey, ".*:(.*)")
+
+    if
+        sellerUUID and sellerUUID == targetUUID
+    then
+        removedWeaponAmount = removedWeaponAmount + 1
+        redis.call('DEL', weaponKey)
+        zremPlain(weaponPriceZsetKey, weaponId)
+
+        local weaponTypePriceZsetKey = findTypeBook(TYPE_BOOKS_OFFSET, weaponName)
+        if weaponTypePriceZsetKey then
+            zremPlain(weaponTypePriceZsetKey, weaponId)
         end
+        redis.call(
+            'XADD',
+            marketLogKey, '*',
+            'event', 'WEAPON_DELETE',
+            'weaponName', weaponName,
+            'seller', sellerUUID,
+            'timestamp', timestamp
+        )
     end
-until cursor == "0"
+end
+
+redis.call('DEL', sellerIndexKey)
 
 -- 删除用户的包裹，并添加审计信息
-local weaponAmount = redis.call('LLEN', inventoryKey)
+-- 还没有迁移的包裹是武器名可重复出现的列表，迁移后是 武器名 -> 数量 的哈希
+local weaponAmount = 0
+
+if redis.call('TYPE', inventoryKey)['ok'] == 'list'
+then
+    weaponAmount = redis.call('LLEN', inventoryKey)
+else
+    for _, count in ipairs(redis.call('HVALS', inventoryKey)) do
+        weaponAmount = weaponAmount + tonumber(count)
+    end
+end
+
 redis.call('DEL', inventoryKey)
 redis.call(
     'XADD',
-    'inventories:log', '*',
+    inventoryLogKey, '*',
     'event', 'INVENTORY_REMOVE',
     'uuid', targetUUID,
     'user-name', userName,
@@ -113,16 +177,15 @@ redis.call(
 )
 
 -- 若用户有加入公会且不是公会的 Leader 的话，要离开公会
-local guildName = redis.call('HGET', userKey, "\"guild\"")
-local guildRole = redis.call('HGET', userKey, "\"guild-role\"")
+local guildName, guildRole
+    = unpack(hmgetPlain(userKey, 'guild', 'guild-role'))
 
 if
-    guildName ~= '\"---\"' and guildRole ~= "\"Leader\""
+    guildName and guildName ~= '---' and guildRole ~= 'Leader'
 then
-    local guildKey    = 'guild:' ..guildName
-    local guildLogKey = 'guild:log'
+    local guildKey = guildKeyPrefix ..guildName
 
-    redis.call('ZREM', guildKey, userName)
+    zremPlain(guildKey, userName)
     redis.call(
         'XADD',
         guildLogKey, '*',
@@ -133,11 +196,11 @@ then
     )
 end
 
--- 最后删除用户数据，并添加审计信息
-redis.call('DEL', userKey)
+-- 最后删除用户数据与操作历史索引，并添加审计信息
+redis.call('DEL', userKey, historyKey)
 redis.call(
     'XADD',
-    'users:log', '*',
+    userLogKey, '*',
     'event', 'USER_REMOVE',
     'uuid', targetUUID,
     'user-name', userName,
@@ -145,4 +208,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回从市场上移除的武器数量
+return { 'SUCCESS', removedWeaponAmount }
\ No newline at end of file
@@ -4,6 +4,7 @@
     KEYS:
         inventoryKey 用户包裹键（如：inventories:114935169325609268）
         userKey      用户键（如：users:114934523722107784）
+        inventoryLogKey 用户包裹日志键（inventories:log）
 
     ARGV:
         uuid        用户 UUID
@@ -11,23 +12,28 @@
 ]]
 local inventoryKey = KEYS[1]
 local userKey      = KEYS[2]
+local inventoryLogKey = KEYS[3]
 
 local uuid       = ARGV[1]
 local weaponName = ARGV[2]
 
 local timestamp = redis.call('TIME')[1]
 
-local userName = redis.call('HGET', userKey, "\"name\"")
+-- #include plain
+
+-- #include inventory
+
+local userName = hgetPlain(userKey, 'name')
 
 if 
-    redis.call('LREM', inventoryKey, 1, weaponName) == 0
+    not takeFromInventory(inventoryKey, weaponName)
 then
-    return '{"result": "WEAPON_NOT_FOUND"}'
+    return { 'WEAPON_NOT_FOUND' }
 end
 
 redis.call(
     'XADD',
-    'inventories:log', '*',
+    inventoryLogKey, '*',
     'event', 'WEAPON_DESTROY',
     'uuid', uuid,
     'user-name', userName,
@@ -36,4 +42,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回包裹中剩余的武器数量
+return { 'SUCCESS', inventorySize(inventoryKey) }
\ No newline at end of file
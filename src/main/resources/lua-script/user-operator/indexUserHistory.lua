@@ -0,0 +1,52 @@
+--[[
+    为日志流中的一条用户事件写入用户操作历史索引（由用户操作历史消费组调用）。
+
+    索引与 XACK 在同一个脚本内完成：事件已经被确认时说明之前索引过，直接返回，
+    所以消费者崩溃后重新投递的事件不会被重复索引。
+    用户已经被删除时（包括用户删除事件 USER_REMOVE 本身）只确认不索引，
+    删除用户时一并删除的操作历史索引不会被之后处理的事件重新创建。
+
+    KEYS:
+        logKey     日志流键（users:log、inventories:log 或 contact:log）
+        historyKey 该用户的操作历史索引键（如：users:history:114940680399943670）
+        userKey    该用户的用户键（如：users:114940680399943670）
+
+    ARGV:
+        group     消费组名
+        entryId   事件在日志流中的 ID（如：1718000000000-0）
+        event     事件类型（如：WEAPON_INBOUND）
+        maxLength 操作历史索引最多保留的条数（近似）
+
+    返回：
+        SUCCESS   索引完成
+        DUPLICATE 这条事件之前已经索引过
+        USER_GONE 用户已经被删除，只确认不索引
+]]
+local logKey     = KEYS[1]
+local historyKey = KEYS[2]
+local userKey    = KEYS[3]
+
+local group     = ARGV[1]
+local entryId   = ARGV[2]
+local event     = ARGV[3]
+local maxLength = ARGV[4]
+
+if redis.call('XACK', logKey, group, entryId) == 0
+then
+    return { 'DUPLICATE' }
+end
+
+if redis.call('EXISTS', userKey) == 0
+then
+    return { 'USER_GONE' }
+end
+
+redis.call(
+    'XADD',
+    historyKey, 'MAXLEN', '~', maxLength, '*',
+    'stream', logKey,
+    'id', entryId,
+    'event', event
+)
+
+return { 'SUCCESS' }
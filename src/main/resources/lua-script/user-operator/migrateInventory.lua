@@ -0,0 +1,54 @@
+--[[
+    将某个用户的包裹从武器名可重复出现的列表（如：Sword, Sword, Mace）
+    迁移成 武器名 -> 数量 的哈希（如：Sword -> 2, Mace -> 1），保留键原有的过期时间。
+    修改包裹的脚本也会顺便迁移当事用户，本脚本供后台迁移任务批量调用，重复执行没有副作用。
+
+    KEYS:
+        inventoryKey 用户包裹键（如：inventories:114940680399943670）
+
+    返回：
+        MIGRATED            本次完成迁移，附带包裹中的武器种类数
+        ALREADY_MIGRATED    之前已经迁移过
+        INVENTORY_NOT_FOUND 包裹不存在，或者不是列表、哈希
+]]
+local inventoryKey = KEYS[1]
+
+local keyType = redis.call('TYPE', inventoryKey)['ok']
+
+if keyType == 'hash'
+then
+    return { 'ALREADY_MIGRATED' }
+end
+
+if keyType ~= 'list'
+then
+    return { 'INVENTORY_NOT_FOUND' }
+end
+
+local counts = {}
+local kinds  = 0
+
+for _, weaponName in ipairs(redis.call('LRANGE', inventoryKey, 0, -1)) do
+    if not counts[weaponName]
+    then
+        counts[weaponName] = 0
+        kinds = kinds + 1
+    end
+
+    counts[weaponName] = counts[weaponName] + 1
+end
+
+local ttl = redis.call('PTTL', inventoryKey)
+
+redis.call('DEL', inventoryKey)
+
+for weaponName, count in pairs(counts) do
+    redis.call('HSET', inventoryKey, weaponName, count)
+end
+
+if ttl > 0
+then
+    redis.call('PEXPIRE', inventoryKey, ttl)
+end
+
+return { 'MIGRATED', kinds }
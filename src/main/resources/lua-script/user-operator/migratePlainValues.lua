@@ -0,0 +1,132 @@
+--[[
+    将一个键中以 JSON 字符串保存的值（如："\"Sword\""）改写成原始字符串（Sword）。
+    哈希的字段名与字段值、列表的元素、集合与有序集合的成员都会被改写，有序集合保留原有的分数
+    （同一个字段或成员同时有两种形式时，保留原始形式的值与分数）；
+    数字等非字符串的 JSON 值本身就是原始字符串，保持不变。
+    其他类型的键（字符串、流等）不做任何处理，重复执行没有副作用。
+
+    KEYS:
+        key 要改写的键（如：users:114940680399943670、inventories:114940680399943670）
+
+    返回：
+        MIGRATED  本次完成改写
+        UNCHANGED 键中没有需要改写的值
+        SKIPPED   键不存在，或者不是哈希、列表、集合、有序集合
+]]
+local key = KEYS[1]
+
+-- 一次写入的元素数量上限（unpack 的参数数量有限制）
+local CHUNK_SIZE = 500
+
+local changed = false
+
+-- 去掉 JSON 字符串的引号，其他值原样返回
+local function plain(value)
+    if
+        #value >= 2 and
+        string.sub(value, 1, 1) == '"' and
+        string.sub(value, -1) == '"'
+    then
+        local ok, decoded = pcall(cjson.decode, value)
+
+        if ok and type(decoded) == 'string'
+        then
+            changed = true
+            return decoded
+        end
+    end
+
+    return value
+end
+
+-- 分批执行写入命令（如：RPUSH key v1 v2 ...）
+local function writeChunks(command, values)
+    for i = 1, #values, CHUNK_SIZE do
+        redis.call(command, key, unpack(values, i, math.min(i + CHUNK_SIZE - 1, #values)))
+    end
+end
+
+local keyType = redis.call('TYPE', key)['ok']
+local values  = {}
+
+if keyType == 'hash'
+then
+    -- 迁移期间新代码可能已经写入了同名的原始字段，两种形式同时存在时保留原始字段的值
+    local reply  = redis.call('HGETALL', key)
+    local fields = {}
+
+    for i = 1, #reply, 2 do
+        fields[reply[i]] = true
+    end
+
+    for i = 1, #reply, 2 do
+        local field = plain(reply[i])
+
+        if field == reply[i] or not fields[field]
+        then
+            table.insert(values, field)
+            table.insert(values, plain(reply[i + 1]))
+        end
+    end
+elseif keyType == 'list'
+then
+    for _, value in ipairs(redis.call('LRANGE', key, 0, -1)) do
+        table.insert(values, plain(value))
+    end
+elseif keyType == 'set'
+then
+    for _, value in ipairs(redis.call('SMEMBERS', key)) do
+        table.insert(values, plain(value))
+    end
+elseif keyType == 'zset'
+then
+    -- ZRANGE 返回 member, score 交替的数组，ZADD 需要 score, member 的顺序
+    local reply   = redis.call('ZRANGE', key, 0, -1, 'WITHSCORES')
+    local members = {}
+
+    for i = 1, #reply, 2 do
+        members[reply[i]] = true
+    end
+
+    for i = 1, #reply, 2 do
+        local member = plain(reply[i])
+
+        if member == reply[i] or not members[member]
+        then
+            table.insert(values, reply[i + 1])
+            table.insert(values, member)
+        end
+    end
+else
+    return { 'SKIPPED' }
+end
+
+if not changed
+then
+    return { 'UNCHANGED' }
+end
+
+-- 保留键原有的过期时间
+local ttl = redis.call('PTTL', key)
+
+redis.call('DEL', key)
+
+if keyType == 'hash'
+then
+    writeChunks('HSET', values)
+elseif keyType == 'list'
+then
+    writeChunks('RPUSH', values)
+elseif keyType == 'set'
+then
+    writeChunks('SADD', values)
+else
+    writeChunks('ZADD', values)
+end
+
+if ttl > 0
+then
+    redis.call('PEXPIRE', key, ttl)
+end
+
+return { 'MIGRATED' }
@@ -0,0 +1,33 @@
+--[[
+    将某个用户的资金从浮点数元（"funds" 字段）迁移成整数分（"funds-cents" 字段）。
+    交易脚本在读取资金时也会顺便迁移，本脚本供后台迁移任务批量调用，重复执行没有副作用。
+
+    KEYS:
+        userKey 用户键（如：users:114940680399943670）
+
+    返回：
+        MIGRATED          本次完成迁移，附带迁移后的资金（分）
+        ALREADY_MIGRATED  之前已经迁移过
+        FUNDS_NOT_FOUND   用户不存在，或者没有资金字段
+]]
+local userKey = KEYS[1]
+
+if
+    redis.call('HEXISTS', userKey, 'funds-cents') == 1
+then
+    return { 'ALREADY_MIGRATED' }
+end
+
+local legacyFunds = redis.call('HGET', userKey, 'funds')
+
+if not legacyFunds
+then
+    return { 'FUNDS_NOT_FOUND' }
+end
+
+local cents = math.floor(tonumber((string.gsub(legacyFunds, '"', ''))) * 100 + 0.5)
+
+redis.call('HSET', userKey, 'funds-cents', cents)
+redis.call('HDEL', userKey, 'funds')
+
+return { 'MIGRATED', cents }
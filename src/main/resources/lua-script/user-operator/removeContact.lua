@@ -2,7 +2,8 @@
     用户删除自己最近联系人列表的某个用户。
 
     KEYS:
-        contactKey    用户联系人列表键（如：contact:114968372130032550）
+        contactKey    用户最近联系人键（如：contact:114968372130032550）
+        contactLexKey 用户联系人字典序索引键（如：contact:lex:114968372130032550）
         contactLogKey 用户最近联系人日志键（contact:log）
 
     ARGV:
@@ -10,19 +11,43 @@
         contactName 要删除哪个用户？
 ]]
 local contactKey    = KEYS[1]
-local contactLogKey = KEYS[2]
+local contactLexKey = KEYS[2]
+local contactLogKey = KEYS[3]
 
 local uuid         = ARGV[1]
 local contactName  = ARGV[2]
 
-local timestamp = redis.call('TIME')[1]
+local now       = redis.call('TIME')
+local timestamp = now[1]
+
+-- 还没有迁移的最近联系人（列表，最新的在最前）在这里顺便迁移成有序集合，并建立字典序索引。
+local function migrateContacts()
+    if redis.call('TYPE', contactKey)['ok'] ~= 'list'
+    then
+        return
+    end
+
+    local recency = tonumber(now[1]) * 1000000 + tonumber(now[2])
+    local names   = redis.call('LRANGE', contactKey, 0, -1)
+
+    redis.call('DEL', contactKey)
+
+    for index, name in ipairs(names) do
+        redis.call('ZADD', contactKey, recency - index, name)
+        redis.call('ZADD', contactLexKey, 0, string.lower(name) .. ':' .. name)
+    end
+end
+
+migrateContacts()
 
 if
-    redis.call('LREM', contactKey, 1, contactName) == 0
+    redis.call('ZREM', contactKey, contactName) == 0
 then
-    return '{"result": "CONCAT_NAME_NOT_FOUND"}'
+    return { 'CONCAT_NAME_NOT_FOUND' }
 end
 
+redis.call('ZREM', contactLexKey, string.lower(contactName) .. ':' .. contactName)
+
 redis.call(
     'XADD',
     contactLogKey, '*',
@@ -32,4 +57,5 @@ redis.call(
     'timestamp', timestamp
 )
 
-return '{"result": "SUCCESS"}'
\ No newline at end of file
+-- 返回最近联系人的数量
+return { 'SUCCESS', redis.call('ZCARD', contactKey) }
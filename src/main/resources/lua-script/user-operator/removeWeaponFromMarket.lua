@@ -1,107 +1,87 @@
 --[[
     用户从市场上下架某个武器。
+    要下架的武器由调用方通过卖家索引找出，脚本内再次校验卖家与武器名，不再 SCAN 整个市场。
+    武器哈希与价格表还没有改写编码时，读取回退到带引号的形式（见 shared/plain.lua）。
 
     KEYS:
+        userKey                 用户键（如：users:114934523722107784）
         weaponPriceZsetKey      挂在市场上的武器价格键（market:weapon-market:weapon-price）
         sellerInventoryListKey  卖家包裹键（如：inventories:114935169325609268）
-        userKey                 用户键（如：users:114934523722107784）
+        marketLogKey            市场日志键（market:log）
+        inventoryLogKey         用户包裹日志键（inventories:log）
+        sellerIndexKey          卖家上架武器索引键（如：market:seller:114934523722107784）
+        weaponHashKey           要下架的武器键（如：market:weapon-market:weapons:1985f067af74d6d）
+        weaponTypePriceZsetKey  该类武器的价格表键（如：market:weapon-market:weapon-price:Sword）
 
     ARGV:
         sellerUUID 卖家 UUID
         weaponName 武器名
+        weaponId   要下架的武器 ID
 ]]
 local userKey                = KEYS[1]
+local weaponPriceZsetKey     = KEYS[2]
 local sellerInventoryListKey = KEYS[3]
+local marketLogKey           = KEYS[4]
+local inventoryLogKey        = KEYS[5]
+local sellerIndexKey         = KEYS[6]
+local weaponHashKey          = KEYS[7]
+local weaponTypePriceZsetKey = KEYS[8]
 
-local sellerUUID  = ARGV[1]
-local weaponName  = ARGV[2]
+local sellerUUID = ARGV[1]
+local weaponName = ARGV[2]
+local weaponId   = ARGV[3]
 
 local timestamp = redis.call('TIME')[1]
 
-local foundWeapon = false
-local weaponId
-local userName    = redis.call('HGET', userKey, "\"name\"")
-
--- 对于每一个 hash-key，查询买家 uuid 和 武器名，
--- 若买家 uuid 与传入的参数匹配，删除对应的整个哈希并添加审计信息
-local cursor = "0"
-repeat
-    -- 分批次获取市场中的所有武器键
-    local result
-        = redis.call(
-            'SCAN', cursor,
-            'MATCH', 'market:weapon-market:weapons:*',
-            'COUNT', 15,
-            'TYPE', 'hash'
-        )
-
-    cursor = result[1]                  -- 获取当前游标值
-    local weaponHashKeys = result[2]    -- 获取本页所有匹配的武器哈希键
-
-    for i, weaponKey in ipairs(weaponHashKeys) do
-        local fields 
-            = redis.call(
-                'HMGET', weaponKey, 
-                "\"weapon-name\"", "\"seller\""
-            )
+-- #include plain
 
-        local scanWeaponName, scanSellerUUID
-            = unpack(fields)
+-- #include inventory
 
-        if
-            scanWeaponName
-            and scanSellerUUID
-            and scanSellerUUID == sellerUUID
-            and scanWeaponName == weaponName
-        then
-            weaponId
-                = string.match(weaponKey, ".*:(.*)")
+local userName = hgetPlain(userKey, 'name')
 
-            redis.call('DEL', weaponKey)
-            redis.call(
-                'ZREM',
-                "market:weapon-market:weapon-price",
-                "\"" ..weaponId.. "\""
-            )
-            redis.call(
-                'XADD',
-                'market:log', '*',
-                'event', 'WEAPON_OUTBOUND',
-                'weaponId', "\"" ..weaponId.. "\"",
-                'weaponName', weaponName,
-                'seller', sellerUUID,
-                'timestamp', timestamp
-            )
-
-            foundWeapon = true  -- 只需要下架一件武器
-            break
-        end
-    end
-
-    -- 如果已经找到武器，提前结束SCAN
-    if foundWeapon then
-        break
-    end
-until cursor == "0"
-
--- 只有在找到并下架武器后才将其放回用户库存
-if foundWeapon then
-
-    -- 重新将武器放回对应用户的包裹中
-    redis.call('RPUSH', sellerInventoryListKey, weaponName)
-    redis.call(
-            'XADD',
-            'inventories:log', '*',
-            'event', 'WEAPON_INBOUND',
-            'uuid', sellerUUID,
-            'user-name', userName,
-            'weapon-name', weaponName,
-            'amount', '1',
-            'timestamp', timestamp
+local listedWeaponName, listedSellerUUID
+    = unpack(
+        hmgetPlain(
+            weaponHashKey,
+            'weapon-name', 'seller'
+        )
     )
 
-    return '{"result": "SUCCESS"}'
-else
-    -- 如果用户在市场上没有上架指定武器，则返回错误消息
-    return '{"result": "WEAPON_NOT_FOUND"}'
-end
\ No newline at end of file
+-- 武器已经不在市场上（被买走或者已下架），或者不是这个卖家的这件武器
+if
+    not listedWeaponName
+    or listedSellerUUID ~= sellerUUID
+    or listedWeaponName ~= weaponName
+then
+    return { 'WEAPON_NOT_FOUND' }
+end
+
+redis.call('DEL', weaponHashKey)
+zremPlain(weaponPriceZsetKey, weaponId)
+zremPlain(weaponTypePriceZsetKey, weaponId)
+sremPlain(sellerIndexKey, weaponId)
+redis.call(
+    'XADD',
+    marketLogKey, '*',
+    'event', 'WEAPON_OUTBOUND',
+    'weaponId', weaponId,
+    'weaponName', weaponName,
+    'seller', sellerUUID,
+    'timestamp', timestamp
+)
+
+-- 重新将武器放回对应用户的包裹中
+putIntoInventory(sellerInventoryListKey, weaponName)
+redis.call(
+    'XADD',
+    inventoryLogKey, '*',
+    'event', 'WEAPON_INBOUND',
+    'uuid', sellerUUID,
+    'user-name', userName,
+    'weapon-name', weaponName,
+    'amount', '1',
+    'timestamp', timestamp
+)
+
+-- 返回被下架的武器 ID
+return { 'SUCCESS', string.match(weaponHashKey, ".*:(.*)") }
@@ -0,0 +1,193 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.market.MarketService;
+import com.example.jesse.item_market.market.dto.CartPurchaseResult;
+import com.example.jesse.item_market.market.exception.FundsNotEnough;
+import com.example.jesse.item_market.market.exception.ItemNoOnMarket;
+import com.example.jesse.item_market.market.exception.SelfTransactional;
+import com.example.jesse.item_market.user.UserRedisService;
+import com.example.jesse.item_market.user.Weapons;
+import com.example.jesse.item_market.user.dto.UserInfo;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 购物车交易的拒绝路径测试：
+ * 购物车不合法、有武器不在市场上、买自己的武器、资金不足时整个购物车都不成交，
+ * 之后合法的购物车仍然可以一次性成交。
+ */
+@SpringBootTest
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class CartPurchaseTest
+{
+    @Autowired
+    private UserRedisService userRedisService;
+
+    @Autowired
+    private MarketService marketService;
+
+    /** 测试用的武器类型。*/
+    private final static Weapons TEST_WEAPON = Weapons.values()[0];
+
+    /** 远超新用户初始资金的价格。*/
+    private final static double UNAFFORDABLE_PRICE = 1_000_000.0;
+
+    private static String buyerUUID;
+    private static String sellerUUID;
+
+    /** 卖家以正常价格上架的武器。*/
+    private static String cheapWeaponId;
+
+    /** 卖家以买家买不起的价格上架的武器。*/
+    private static String expensiveWeaponId;
+
+    /** 卖家先把武器放入包裹，再以指定的价格上架，发布武器 UID。*/
+    private Mono<String> listWeapon(double price)
+    {
+        return
+        this.userRedisService
+            .addWeaponToInventory(sellerUUID, TEST_WEAPON)
+            .then(this.userRedisService.addWeaponToMarket(sellerUUID, TEST_WEAPON, price));
+    }
+
+    /** 卖家在市场上的所有武器 UID。*/
+    private List<String> sellerListings()
+    {
+        return
+        this.userRedisService
+            .getAllWeaponIdsFromMarketByUUID(sellerUUID)
+            .collectList()
+            .block();
+    }
+
+    /** 创建买家与卖家，卖家上架两件武器。*/
+    @Order(1)
+    @Test
+    public void TestPrepareListings()
+    {
+        buyerUUID  = this.userRedisService.addNewUser("CartBuyer").block();
+        sellerUUID = this.userRedisService.addNewUser("CartSeller").block();
+
+        assertNotNull(buyerUUID);
+        assertNotNull(sellerUUID);
+
+        cheapWeaponId     = this.listWeapon(100.0).block();
+        expensiveWeaponId = this.listWeapon(UNAFFORDABLE_PRICE).block();
+
+        assertNotNull(cheapWeaponId);
+        assertNotNull(expensiveWeaponId);
+    }
+
+    /** 空购物车、超过上限的购物车、有重复武器的购物车在读取 Redis 之前就被拒绝。*/
+    @Order(2)
+    @Test
+    public void TestRejectInvalidCart()
+    {
+        StepVerifier.create(this.marketService.cartPurchase(buyerUUID, Collections.emptyList()))
+                    .expectError(IllegalArgumentException.class)
+                    .verify();
+
+        final List<String> oversized
+            = IntStream.range(0, 51).mapToObj((index) -> "weapon-" + index).toList();
+
+        StepVerifier.create(this.marketService.cartPurchase(buyerUUID, oversized))
+                    .expectError(IllegalArgumentException.class)
+                    .verify();
+
+        StepVerifier.create(
+                        this.marketService.cartPurchase(
+                            buyerUUID, List.of(cheapWeaponId, cheapWeaponId)))
+                    .expectError(IllegalArgumentException.class)
+                    .verify();
+    }
+
+    /** 有武器不在市场上时整个购物车都不成交，消息中列出这些武器。*/
+    @Order(3)
+    @Test
+    public void TestRejectMissingWeapon()
+    {
+        StepVerifier.create(
+                        this.marketService.cartPurchase(
+                            buyerUUID, List.of(cheapWeaponId, "no-such-weapon")))
+                    .expectErrorSatisfies((exception) -> {
+                        assertInstanceOf(ItemNoOnMarket.class, exception);
+                        assertTrue(exception.getMessage().contains("no-such-weapon"));
+                    })
+                    .verify();
+
+        assertTrue(this.sellerListings().contains(cheapWeaponId));
+    }
+
+    /** 卖家不能买自己上架的武器。*/
+    @Order(4)
+    @Test
+    public void TestRejectSelfPurchase()
+    {
+        StepVerifier.create(this.marketService.cartPurchase(sellerUUID, List.of(cheapWeaponId)))
+                    .expectError(SelfTransactional.class)
+                    .verify();
+
+        assertTrue(this.sellerListings().contains(cheapWeaponId));
+    }
+
+    /** 买家资金不足以支付总价时整个购物车都不成交，买家资金不变。*/
+    @Order(5)
+    @Test
+    public void TestRejectFundsNotEnough()
+    {
+        final UserInfo before
+            = this.userRedisService.getUserInfoByUUID(buyerUUID).block();
+
+        assertNotNull(before);
+
+        StepVerifier.create(
+                        this.marketService.cartPurchase(
+                            buyerUUID, List.of(cheapWeaponId, expensiveWeaponId)))
+                    .expectError(FundsNotEnough.class)
+                    .verify();
+
+        final UserInfo after
+            = this.userRedisService.getUserInfoByUUID(buyerUUID).block();
+
+        assertNotNull(after);
+        assertEquals(0, before.getUserFunds().compareTo(after.getUserFunds()));
+        assertTrue(this.sellerListings().containsAll(List.of(cheapWeaponId, expensiveWeaponId)));
+    }
+
+    /** 被拒绝过的武器之后仍然可以正常成交。*/
+    @Order(6)
+    @Test
+    public void TestPurchaseAfterRejections()
+    {
+        final CartPurchaseResult result
+            = this.marketService.cartPurchase(buyerUUID, List.of(cheapWeaponId)).block();
+
+        assertNotNull(result);
+        assertEquals(1, result.getItems().size());
+        assertEquals(cheapWeaponId, result.getItems().getFirst().getWeaponId());
+        assertFalse(this.sellerListings().contains(cheapWeaponId));
+    }
+
+    /** 删除测试用户（卖家还在市场上的武器一并删除）。*/
+    @Order(7)
+    @Test
+    public void TestCleanUp()
+    {
+        Flux.fromIterable(List.of(buyerUUID, sellerUUID))
+            .concatMap(this.userRedisService::deleteUser)
+            .blockLast();
+    }
+}
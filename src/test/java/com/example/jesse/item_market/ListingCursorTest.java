@@ -0,0 +1,95 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.market.utils.ListingCursor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 市场浏览分页游标的编码与解码测试（不需要 Redis）。*/
+public class ListingCursorTest
+{
+    /** 把原始的游标内容编码成前端拿到的形式。*/
+    private static String encodeRaw(String raw)
+    {
+        return
+        Base64.getUrlEncoder()
+              .withoutPadding()
+              .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 第一页游标编码后再解码，还是第一页。*/
+    @Test
+    public void TestFirstCursorRoundTrip()
+    {
+        final ListingCursor decoded
+            = ListingCursor.decode(ListingCursor.first(12.5).encode());
+
+        assertTrue(decoded.isFirst());
+        assertEquals(1, decoded.getPageNo());
+        assertEquals(ListingCursor.UNKNOWN_TOTAL, decoded.getTotalItems());
+        assertEquals(12.5, decoded.getScore());
+        assertNull(decoded.getMember());
+    }
+
+    /** 下一页游标记下总数、最后一件武器的价格与成员，编码后再解码不变。*/
+    @Test
+    public void TestNextCursorRoundTrip()
+    {
+        final ListingCursor next
+            = ListingCursor.first(0.0)
+                           .next(42L, 99.99, "1985f067af74d6d");
+
+        final ListingCursor decoded = ListingCursor.decode(next.encode());
+
+        assertFalse(decoded.isFirst());
+        assertEquals(2, decoded.getPageNo());
+        assertEquals(42L, decoded.getTotalItems());
+        assertEquals(99.99, decoded.getScore());
+        assertEquals("1985f067af74d6d", decoded.getMember());
+
+        assertEquals(3, decoded.next(42L, 100.0, "a").getPageNo());
+    }
+
+    /** 成员中带冒号（以及旧编码的引号）也能原样解码。*/
+    @Test
+    public void TestMemberWithSeparatorRoundTrip()
+    {
+        final ListingCursor decoded
+            = ListingCursor.decode(
+                ListingCursor.first(0.0)
+                             .next(3L, 1.0E10, "\"a:b:c\"")
+                             .encode());
+
+        assertEquals(1.0E10, decoded.getScore());
+        assertEquals("\"a:b:c\"", decoded.getMember());
+    }
+
+    /** 格式不正确的游标一律抛出 IllegalArgumentException。*/
+    @Test
+    public void TestRejectInvalidCursor()
+    {
+        // 不是 Base64
+        assertThrows(IllegalArgumentException.class, () -> ListingCursor.decode("***"));
+
+        // 旧版 页码:价格:skip 形式的游标
+        assertThrows(IllegalArgumentException.class,
+            () -> ListingCursor.decode(encodeRaw("2:10.0:3")));
+
+        // 页码从 1 开始
+        assertThrows(IllegalArgumentException.class,
+            () -> ListingCursor.decode(encodeRaw("0:-1:10.0:")));
+
+        // 价格不能是 NaN
+        assertThrows(IllegalArgumentException.class,
+            () -> ListingCursor.decode(encodeRaw("2:5:NaN:abc")));
+
+        // 第一页之后的游标必须带成员，第一页不能带成员
+        assertThrows(IllegalArgumentException.class,
+            () -> ListingCursor.decode(encodeRaw("2:5:10.0:")));
+        assertThrows(IllegalArgumentException.class,
+            () -> ListingCursor.decode(encodeRaw("1:-1:10.0:abc")));
+    }
+}
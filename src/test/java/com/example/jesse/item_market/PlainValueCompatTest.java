@@ -0,0 +1,176 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.config.PlainValueMigration;
+import com.example.jesse.item_market.config.PlainValueReader;
+import com.example.jesse.item_market.user.UserRedisService;
+import com.example.jesse.item_market.user.Weapons;
+import com.example.jesse.item_market.user.dto.UserInfo;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.example.jesse.item_market.config.PlainValueReader.quoted;
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 旧编码（字段名与字符串值带 JSON 引号）数据的兼容读取与迁移测试：
+ * 把一个新用户的数据改写成旧编码，Java 端与 Lua 端的读取都应当回退到带引号的形式，
+ * 之后执行迁移，数据应当被改写成原始字符串。
+ */
+@SpringBootTest
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class PlainValueCompatTest
+{
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    @Autowired
+    private UserRedisService userRedisService;
+
+    @Autowired
+    private PlainValueReader plainValueReader;
+
+    @Autowired
+    private PlainValueMigration plainValueMigration;
+
+    private final static String LEGACY_USER = "LegacyLois";
+
+    /** 测试用户的 UUID（各个测试之间共享）。*/
+    private static String legacyUUID;
+
+    /** 测试用户创建之后的用户信息。*/
+    private static UserInfo createdInfo;
+
+    /** 把一个哈希改写成旧编码：字段名都带引号，字符串值带引号，数字保持不变。*/
+    private void toLegacyHash(String key)
+    {
+        this.stringRedisTemplate.<String, String>opsForHash()
+            .entries(key)
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            .flatMap((entries) -> {
+                final Map<String, String> legacy = new HashMap<>();
+
+                entries.forEach((field, value) ->
+                    legacy.put(
+                        quoted(field),
+                        (value.matches("-?\\d+(\\.\\d+)?")) ? value : quoted(value)));
+
+                return
+                this.stringRedisTemplate.delete(key)
+                    .then(this.stringRedisTemplate.<String, String>opsForHash().putAll(key, legacy));
+            })
+            .block();
+    }
+
+    /** 创建测试用户，再把它的用户数据与用户名映射改写成旧编码。*/
+    @Order(1)
+    @Test
+    public void TestCreateLegacyUser()
+    {
+        // 迁移标记键存在时读取方不再兼容旧编码
+        this.stringRedisTemplate.delete(getPlainValueMigrationKey()).block();
+        assertTrue(this.plainValueReader.isCompatible());
+
+        legacyUUID  = this.userRedisService.addNewUser(LEGACY_USER).block();
+        assertNotNull(legacyUUID);
+
+        createdInfo = this.userRedisService.getUserInfoByUUID(legacyUUID).block();
+        assertNotNull(createdInfo);
+
+        this.toLegacyHash(getUserKey(legacyUUID));
+
+        this.stringRedisTemplate.<String, String>opsForHash()
+            .remove(getUserHashKey(), LEGACY_USER)
+            .then(
+                this.stringRedisTemplate.<String, String>opsForHash()
+                    .put(getUserHashKey(), quoted(LEGACY_USER), quoted(legacyUUID)))
+            .block();
+
+        assertEquals(
+            Boolean.FALSE,
+            this.stringRedisTemplate.<String, String>opsForHash()
+                .hasKey(getUserKey(legacyUUID), USER_NAME_FIELD)
+                .block());
+    }
+
+    /** Java 端读取旧编码的用户数据，结果与改写之前一致。*/
+    @Order(2)
+    @Test
+    public void TestJavaLegacyRead()
+    {
+        final UserInfo legacyInfo
+            = this.userRedisService.getUserInfoByUUID(legacyUUID).block();
+
+        assertNotNull(legacyInfo);
+        assertEquals(LEGACY_USER, legacyInfo.getUserName());
+        assertEquals(0, createdInfo.getUserFunds().compareTo(legacyInfo.getUserFunds()));
+    }
+
+    /** Lua 端读取旧编码：旧用户名仍然占用着这个名字，旧用户仍然可以修改包裹。*/
+    @Order(3)
+    @Test
+    public void TestLuaLegacyRead()
+    {
+        StepVerifier.create(this.userRedisService.addNewUser(LEGACY_USER))
+                    .expectError(IllegalArgumentException.class)
+                    .verify();
+
+        StepVerifier.create(this.userRedisService.addWeaponToInventory(legacyUUID, Weapons.values()[0]))
+                    .verifyComplete();
+    }
+
+    /** 执行迁移后，用户数据与用户名映射中不再有带引号的字段，读取结果不变。*/
+    @Order(4)
+    @Test
+    public void TestMigrationRewritesLegacyFields()
+    {
+        final Long migrated = this.plainValueMigration.run().block();
+
+        assertNotNull(migrated);
+        assertTrue(migrated > 0L);
+        assertFalse(this.plainValueReader.isCompatible());
+
+        final Map<String, String> userHash
+            = this.stringRedisTemplate.<String, String>opsForHash()
+                  .entries(getUserKey(legacyUUID))
+                  .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                  .block();
+
+        assertNotNull(userHash);
+        assertEquals(LEGACY_USER, userHash.get(USER_NAME_FIELD));
+        assertTrue(userHash.keySet().stream().noneMatch((field) -> field.startsWith("\"")));
+
+        assertEquals(
+            legacyUUID,
+            this.stringRedisTemplate.<String, String>opsForHash()
+                .get(getUserHashKey(), LEGACY_USER)
+                .block());
+
+        final UserInfo migratedInfo
+            = this.userRedisService.getUserInfoByUUID(legacyUUID).block();
+
+        assertNotNull(migratedInfo);
+        assertEquals(LEGACY_USER, migratedInfo.getUserName());
+    }
+
+    /** 删除测试用户与迁移标记键（下次启动时读取方重新兼容旧编码）。*/
+    @Order(5)
+    @Test
+    public void TestCleanUp()
+    {
+        Mono.justOrEmpty(legacyUUID)
+            .flatMap(this.userRedisService::deleteUser)
+            .then(this.stringRedisTemplate.delete(getPlainValueMigrationKey()))
+            .block();
+    }
+}
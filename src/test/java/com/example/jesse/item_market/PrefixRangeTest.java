@@ -0,0 +1,117 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.guild.utils.CreatePrefixRangeFailed;
+import com.example.jesse.item_market.guild.utils.PrefixRange;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 前缀搜索范围的构建测试（不需要 Redis）。*/
+public class PrefixRangeTest
+{
+    /** 按 Redis 的二进制顺序（UTF-8 字节）比较两个字符串。*/
+    private static int compareBytes(String a, String b)
+    {
+        return
+        Arrays.compareUnsigned(
+            a.getBytes(StandardCharsets.UTF_8),
+            b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 在 Redis 的二进制顺序下，成员是否落在前缀范围 [min, max) 之内？*/
+    private static boolean inRange(PrefixRange range, String member)
+    {
+        return
+        compareBytes(member, range.getMin()) >= 0 &&
+        (range.getMax() == null || compareBytes(member, range.getMax()) < 0);
+    }
+
+    /** 后继是最后一个码点加一，最大码点向前进位，代理区间被跳过。*/
+    @Test
+    public void TestSuccessor()
+    {
+        assertEquals("Jesf", PrefixRange.create("Jese").block().getMax());
+        assertEquals("公会b", PrefixRange.create("公会a").block().getMax());
+
+        final String maxCodePoint = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+        assertEquals("b", PrefixRange.create("a" + maxCodePoint).block().getMax());
+        assertNull(PrefixRange.create(maxCodePoint + maxCodePoint).block().getMax());
+
+        // U+D7FF 的下一个合法码点是 U+E000
+        assertEquals("\uE000", PrefixRange.create("\uD7FF").block().getMax());
+    }
+
+    /** 以前缀开头的成员都在范围之内，其他成员都在范围之外（按二进制顺序判断）。*/
+    @Test
+    public void TestRangeRoundTrip()
+    {
+        final String maxCodePoint = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+        for (String prefix : List.of("Je", "公会", "\uD7FF", "a" + maxCodePoint, maxCodePoint))
+        {
+            final PrefixRange range = PrefixRange.create(prefix).block();
+
+            assertNotNull(range);
+            assertEquals(prefix, range.getMin());
+
+            for (String suffix : List.of("", "a", "zzz", "\u00FF", "\uFFFF", maxCodePoint)) {
+                assertTrue(inRange(range, prefix + suffix), prefix + suffix);
+            }
+
+            if (range.getMax() != null) {
+                assertFalse(inRange(range, range.getMax()));
+                assertFalse(inRange(range, range.getMax() + "a"));
+            }
+
+            assertFalse(inRange(range, prefix.substring(0, prefix.length() - 1)));
+        }
+    }
+
+    /** 转换成 rangeByLex 的范围：[前缀, 后继)，没有后继时没有上界；翻页时下界换成上一页的最后一个成员（不包含）。*/
+    @Test
+    public void TestLexRange()
+    {
+        final PrefixRange range = PrefixRange.create("Je").block();
+        assertNotNull(range);
+
+        final Range<String> lexRange = range.toLexRange();
+
+        assertEquals("Je", lexRange.getLowerBound().getValue().orElseThrow());
+        assertTrue(lexRange.getLowerBound().isInclusive());
+        assertEquals("Jf", lexRange.getUpperBound().getValue().orElseThrow());
+        assertFalse(lexRange.getUpperBound().isInclusive());
+
+        final Range<String> afterRange = range.toLexRangeAfter("Jesse");
+
+        assertEquals("Jesse", afterRange.getLowerBound().getValue().orElseThrow());
+        assertFalse(afterRange.getLowerBound().isInclusive());
+        assertEquals("Jf", afterRange.getUpperBound().getValue().orElseThrow());
+
+        final String maxCodePoint = new String(Character.toChars(Character.MAX_CODE_POINT));
+        final PrefixRange unbounded = PrefixRange.create(maxCodePoint).block();
+        assertNotNull(unbounded);
+
+        assertFalse(unbounded.toLexRange().getUpperBound().isBounded());
+        assertFalse(unbounded.toLexRangeAfter(maxCodePoint + "a").getUpperBound().isBounded());
+    }
+
+    /** 前缀为 null 或空串时发布 CreatePrefixRangeFailed。*/
+    @Test
+    public void TestRejectEmptyPrefix()
+    {
+        StepVerifier.create(PrefixRange.create(null))
+                    .expectError(CreatePrefixRangeFailed.class)
+                    .verify();
+
+        StepVerifier.create(PrefixRange.create(""))
+                    .expectError(CreatePrefixRangeFailed.class)
+                    .verify();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.market.utils.SoldListingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 已售出武器本地负缓存的测试（不需要 Redis）。*/
+public class SoldListingCacheTest
+{
+    /** 构建一个缓存（与 Spring 注入属性、调用 @PostConstruct 的效果相同）。*/
+    private static SoldListingCache
+    newCache(long ttlSeconds, int maxEntries, MeterRegistry meterRegistry)
+    {
+        final SoldListingCache cache = new SoldListingCache();
+
+        ReflectionTestUtils.setField(cache, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+
+        return cache;
+    }
+
+    /** 售出的武器被拒绝并计入命中数，成交那一笔的重试与其他卖家的同名武器不被拒绝。*/
+    @Test
+    public void TestRejectSoldListing()
+    {
+        final MeterRegistry    registry = new SimpleMeterRegistry();
+        final SoldListingCache cache    = newCache(60L, 16, registry);
+
+        assertFalse(cache.rejects("seller", "weapon", "key-1"));
+
+        cache.markSold("seller", "weapon", "key-1");
+
+        assertTrue(cache.rejects("seller", "weapon", "key-2"));
+        assertTrue(cache.rejects("seller", "weapon", null));
+        assertFalse(cache.rejects("seller", "weapon", "key-1"));
+        assertFalse(cache.rejects("other-seller", "weapon", "key-2"));
+
+        assertEquals(2.0, registry.counter(SoldListingCache.METRIC_NAME).count());
+    }
+
+    /** 缓存项过期之后不再拒绝。*/
+    @Test
+    public void TestEntryExpires() throws InterruptedException
+    {
+        final SoldListingCache cache = newCache(1L, 16, new SimpleMeterRegistry());
+
+        cache.markSold("seller", "weapon", null);
+        assertTrue(cache.rejects("seller", "weapon", null));
+
+        Thread.sleep(1_100L);
+
+        assertFalse(cache.rejects("seller", "weapon", null));
+    }
+
+    /** 武器被放回市场后清除缓存项。*/
+    @Test
+    public void TestForget()
+    {
+        final SoldListingCache cache = newCache(60L, 16, new SimpleMeterRegistry());
+
+        cache.markSold("seller", "weapon", null);
+        cache.forget("seller", "weapon");
+
+        assertFalse(cache.rejects("seller", "weapon", null));
+    }
+
+    /** 缓存满了时先清理过期项，清理后依然满了就不再缓存新的武器。*/
+    @Test
+    public void TestFullCache() throws InterruptedException
+    {
+        final SoldListingCache expiring = newCache(1L, 1, new SimpleMeterRegistry());
+
+        expiring.markSold("seller", "weapon-1", null);
+        Thread.sleep(1_100L);
+        expiring.markSold("seller", "weapon-2", null);
+
+        assertTrue(expiring.rejects("seller", "weapon-2", null));
+
+        final SoldListingCache full = newCache(60L, 1, new SimpleMeterRegistry());
+
+        full.markSold("seller", "weapon-1", null);
+        full.markSold("seller", "weapon-2", null);
+
+        assertTrue(full.rejects("seller", "weapon-1", null));
+        assertFalse(full.rejects("seller", "weapon-2", null));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.market.impl.TradeSettlementBatcher;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 交易微批处理器停止与失败路径的测试（Lua 脚本执行器以 Mockito 模拟，不需要 Redis）。*/
+public class TradeSettlementBatcherTest
+{
+    /** 等待交易结果的最长时间。*/
+    private static final Duration TIMEOUT = Duration.ofSeconds(5L);
+
+    /**
+     * 构建一个启用的微批处理器（与 Spring 注入属性的效果相同），
+     * 时间窗口足够长，只有凑满一批或者停止时才会结算。
+     *
+     * @param executorAnswer Lua 脚本执行器所有方法的行为
+     */
+    private static TradeSettlementBatcher
+    newBatcher(Answer<?> executorAnswer)
+    {
+        final TradeSettlementBatcher batcher = new TradeSettlementBatcher();
+
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "maxSize", 64);
+        ReflectionTestUtils.setField(batcher, "windowMillis", 60_000L);
+        ReflectionTestUtils.setField(batcher, "maxInFlight", 4);
+        ReflectionTestUtils.setField(
+            batcher, "luaScriptExecutor",
+            Mockito.mock(LuaScriptExecutor.class, executorAnswer));
+
+        return batcher;
+    }
+
+    /** 没有启动（或者已经停止）时提交的交易立即以 IllegalStateException 失败。*/
+    @Test
+    public void TestSubmitWhenNotRunning()
+    {
+        final TradeSettlementBatcher batcher
+            = newBatcher((invocation) -> Mono.never());
+
+        StepVerifier.create(batcher.submit("buyer", "seller", "weapon", null, 0L))
+                    .expectError(IllegalStateException.class)
+                    .verify(TIMEOUT);
+
+        batcher.start();
+        batcher.stop();
+
+        assertFalse(batcher.isRunning());
+
+        StepVerifier.create(batcher.submit("buyer", "seller", "weapon", null, 0L))
+                    .expectError(IllegalStateException.class)
+                    .verify(TIMEOUT);
+    }
+
+    /** 停止时还没凑满的一批立即结算，这一批执行失败时每笔交易都以脚本的异常失败。*/
+    @Test
+    public void TestStopSettlesPendingBatch()
+    {
+        final IllegalArgumentException scriptFailure
+            = new IllegalArgumentException("Settle failed!");
+
+        final TradeSettlementBatcher batcher
+            = newBatcher((invocation) -> Mono.error(scriptFailure));
+
+        batcher.start();
+        assertTrue(batcher.isRunning());
+
+        final Mono<?> first
+            = batcher.submit("buyer-1", "seller", "weapon-1", null, 0L).cache();
+        final Mono<?> second
+            = batcher.submit("buyer-2", "seller", "weapon-2", "key", 60L).cache();
+
+        first.subscribe((ignore) -> {}, (ignore) -> {});
+        second.subscribe((ignore) -> {}, (ignore) -> {});
+
+        batcher.stop();
+
+        StepVerifier.create(first)
+                    .expectErrorMatches((exception) -> exception == scriptFailure)
+                    .verify(TIMEOUT);
+
+        StepVerifier.create(second)
+                    .expectErrorMatches((exception) -> exception == scriptFailure)
+                    .verify(TIMEOUT);
+    }
+
+    /** 凑批期间被调用方取消的交易不会发送给结算脚本。*/
+    @Test
+    public void TestCancelledTradeIsNotSettled()
+    {
+        final IllegalArgumentException scriptFailure
+            = new IllegalArgumentException("Settle failed!");
+
+        // 记录发送给结算脚本的 ARGV（第一个参数是这一批的交易笔数）
+        final AtomicReference<Object[]> sentArgs = new AtomicReference<>();
+
+        final TradeSettlementBatcher batcher
+            = newBatcher((invocation) -> {
+                sentArgs.set((Object[]) invocation.getRawArguments()[2]);
+                return Mono.error(scriptFailure);
+            });
+
+        batcher.start();
+
+        batcher.submit("buyer-1", "seller", "weapon-1", null, 0L)
+               .subscribe((ignore) -> {}, (ignore) -> {})
+               .dispose();
+
+        final Mono<?> kept
+            = batcher.submit("buyer-2", "seller", "weapon-2", null, 0L).cache();
+
+        kept.subscribe((ignore) -> {}, (ignore) -> {});
+
+        batcher.stop();
+
+        StepVerifier.create(kept)
+                    .expectErrorMatches((exception) -> exception == scriptFailure)
+                    .verify(TIMEOUT);
+
+        assertNotNull(sentArgs.get());
+        assertEquals(1, sentArgs.get()[0]);
+    }
+
+    /** 一批中的交易全部被取消时，不执行结算脚本。*/
+    @Test
+    public void TestAllCancelledBatchIsSkipped()
+    {
+        final TradeSettlementBatcher batcher
+            = newBatcher((invocation) -> fail("Cancelled batch must not be settled!"));
+
+        batcher.start();
+
+        batcher.submit("buyer", "seller", "weapon", null, 0L)
+               .subscribe((ignore) -> {}, (ignore) -> {})
+               .dispose();
+
+        batcher.stop();
+
+        assertFalse(batcher.isRunning());
+    }
+
+    /** 结算任务因为意外的错误终止时，本 Bean 转为停止状态，还没有结果的交易立即失败。*/
+    @Test
+    public void TestSettlementErrorFailsUnsettledTrades()
+    {
+        final IllegalStateException unexpected
+            = new IllegalStateException("Unexpected!");
+
+        // 执行器同步抛出异常（而不是发布错误），令结算任务本身终止
+        final TradeSettlementBatcher batcher
+            = newBatcher((invocation) -> { throw unexpected; });
+
+        batcher.start();
+
+        final Mono<?> trade
+            = batcher.submit("buyer", "seller", "weapon", null, 0L).cache();
+
+        trade.subscribe((ignore) -> {}, (ignore) -> {});
+
+        batcher.stop();
+
+        StepVerifier.create(trade)
+                    .expectErrorSatisfies((exception) -> {
+                        assertInstanceOf(IllegalStateException.class, exception);
+                        assertSame(unexpected, exception.getCause());
+                    })
+                    .verify(TIMEOUT);
+
+        assertFalse(batcher.isRunning());
+    }
+}
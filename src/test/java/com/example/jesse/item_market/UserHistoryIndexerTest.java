@@ -0,0 +1,143 @@
+package com.example.jesse.item_market;
+
+import com.example.jesse.item_market.user.UserRedisService;
+import com.example.jesse.item_market.user.impl.UserHistoryIndexer;
+import com.example.jesse.item_market.utils.LuaScriptExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.example.jesse.item_market.user.impl.UserHistoryIndexer.HISTORY_GROUP;
+import static com.example.jesse.item_market.utils.KeyConcat.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用户操作历史索引器的重试测试：一批事件索引失败时留在待确认列表中，下一轮从头重新索引。
+ * （配置中没有启用索引器，测试直接调用 index() 执行一轮，不会与后台任务互相干扰。）
+ */
+@SpringBootTest
+public class UserHistoryIndexerTest
+{
+    @Autowired
+    private ReactiveRedisTemplate<String, String> stringRedisTemplate;
+
+    @Autowired
+    private UserRedisService userRedisService;
+
+    @Autowired
+    private UserHistoryIndexer userHistoryIndexer;
+
+    /** 以 Spy 包装的 Lua 脚本执行器，用来令某一批索引失败。*/
+    @MockitoSpyBean
+    private LuaScriptExecutor luaScriptExecutor;
+
+    private static final List<String> LOG_STREAMS
+        = List.of(USER_PREFIX + "log", INVENTORY_PREFIX + "log", USER_CONTACT_PREFIX + "log");
+
+    /** 在每个日志流的末尾重新创建消费组，令测试只处理本测试写入的事件。*/
+    @BeforeEach
+    public void resetGroups()
+    {
+        Flux.fromIterable(LOG_STREAMS)
+            .concatMap((streamKey) -> {
+                final ByteBuffer rawKey
+                    = ByteBuffer.wrap(streamKey.getBytes(StandardCharsets.UTF_8));
+
+                return
+                this.stringRedisTemplate
+                    .opsForStream()
+                    .destroyGroup(streamKey, HISTORY_GROUP)
+                    .onErrorResume((ignore) -> Mono.empty())
+                    .then(
+                        this.stringRedisTemplate
+                            .execute((connection) ->
+                                connection.streamCommands()
+                                          .xGroupCreate(rawKey, HISTORY_GROUP, ReadOffset.latest(), true))
+                            .then());
+            })
+            .blockLast();
+    }
+
+    /** 删除本测试创建的消费组（之后启用索引器时会从流的开头重新创建）。*/
+    @AfterEach
+    public void cleanUp()
+    {
+        Flux.fromIterable(LOG_STREAMS)
+            .concatMap((streamKey) ->
+                this.stringRedisTemplate
+                    .opsForStream()
+                    .destroyGroup(streamKey, HISTORY_GROUP)
+                    .onErrorResume((ignore) -> Mono.empty()))
+            .blockLast();
+    }
+
+    /** 用户的事件在用户数据日志流上还没有确认的数量。*/
+    private long pendingUserEvents()
+    {
+        final Long pending
+            = this.stringRedisTemplate
+                  .opsForStream()
+                  .pending(USER_PREFIX + "log", HISTORY_GROUP)
+                  .map(PendingMessagesSummary::getTotalPendingMessages)
+                  .block();
+
+        assertNotNull(pending);
+
+        return pending;
+    }
+
+    /** 索引执行失败的一批事件不确认，下一轮重新索引，之后不再有待确认的事件。*/
+    @Test
+    public void TestFailedBatchIsRetried()
+    {
+        final String uuid
+            = this.userRedisService.addNewUser("HistoryRetry").block();
+
+        assertNotNull(uuid);
+
+        // 第一轮：这一批的索引脚本执行失败
+        Mockito.doReturn(Flux.error(new IllegalStateException("Index failed!")))
+               .when(this.luaScriptExecutor)
+               .executeAll(Mockito.any(), Mockito.anyList());
+
+        this.userHistoryIndexer.index().block();
+
+        assertTrue(this.pendingUserEvents() > 0L);
+        assertEquals(
+            Boolean.FALSE,
+            this.stringRedisTemplate.hasKey(getUserHistoryKey(uuid)).block());
+
+        // 第二轮：脚本恢复正常，待确认的事件从头重新索引
+        Mockito.doCallRealMethod()
+               .when(this.luaScriptExecutor)
+               .executeAll(Mockito.any(), Mockito.anyList());
+
+        this.userHistoryIndexer.index().block();
+
+        assertEquals(0L, this.pendingUserEvents());
+
+        final Long indexed
+            = this.stringRedisTemplate
+                  .opsForStream()
+                  .size(getUserHistoryKey(uuid))
+                  .block();
+
+        assertNotNull(indexed);
+        assertTrue(indexed > 0L);
+
+        this.userRedisService.deleteUser(uuid).block();
+    }
+}
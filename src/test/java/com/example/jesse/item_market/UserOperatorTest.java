@@ -4,7 +4,9 @@ import com.example.jesse.item_market.guild.GuildRedisService;
 import com.example.jesse.item_market.market.MarketService;
 import com.example.jesse.item_market.user.UserRedisService;
 import com.example.jesse.item_market.user.Weapons;
+import com.example.jesse.item_market.utils.dto.LuaBulkResult;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -54,6 +56,9 @@ public class UserOperatorTest
                 "Stubbies", "Bill", "Billy", "Kiki"
         );
 
+    private final static List<String> BULK_TEST_USERS
+        = List.of("Anna", "Boris", "Clara", "Dmitri", "Elsa");
+
     private final static List<Weapons> TEST_WEAPONS
         = Arrays.asList(Weapons.values());
 
@@ -69,11 +74,39 @@ public class UserOperatorTest
             .blockLast();
     }
 
+    /**
+     * 批量初始化另一些用户（以流水线发送），
+     * 批次中重复的用户名只有一个创建成功，其他用户不受影响，结果按提交的顺序发布。
+     */
+    @Order(2)
+    @Test
+    public void TestCreateSomeNewUsersInBulk()
+    {
+        final List<String> userNames = new ArrayList<>(BULK_TEST_USERS);
+        userNames.add(BULK_TEST_USERS.getFirst());
+
+        final List<LuaBulkResult<String>> results
+            = this.userRedisService
+                  .addNewUsers(userNames)
+                  .collectList()
+                  .block();
+
+        Assertions.assertNotNull(results);
+        Assertions.assertEquals(userNames.size(), results.size());
+
+        for (int index = 0; index < results.size(); ++index) {
+            Assertions.assertEquals(index, results.get(index).getIndex());
+        }
+
+        Assertions.assertEquals(
+            1L, results.stream().filter((result) -> !result.isSuccess()).count());
+    }
+
     /**
      * 对于 TEST_USERS 中的每一个用户，
      * 将用户列表中处自己之外的用户全部保存为最近联系人。
      */
-    @Order(2)
+    @Order(3)
     @Test
     public void TestAddNewContact()
     {
@@ -101,7 +134,7 @@ public class UserOperatorTest
     }
 
     /** 随机挑选几个用户删除他们最近联系人列表的某两个用户。*/
-    @Order(3)
+    @Order(4)
     @Test
     public void TestRemoveContact()
     {
@@ -128,7 +161,7 @@ public class UserOperatorTest
     }
 
     /** 为所有用户入库 10 个随机武器。*/
-    @Order(4)
+    @Order(5)
     @Test
     public void TestAddWeaponToInventory()
     {
@@ -145,7 +178,7 @@ public class UserOperatorTest
     }
 
     /** 每一个用户销毁自己包裹中的两件随机武器。*/
-    @Order(5)
+    @Order(6)
     @Test
     public void TestDestroyWeaponFromInventory()
     {
@@ -170,7 +203,7 @@ public class UserOperatorTest
      * 随机取几个用户，
      * 将他们的随机几个装备上架市场售卖。
      */
-    @Order(6)
+    @Order(7)
     @Test
     public void TestAddWeaponToMarket()
     {
@@ -212,7 +245,7 @@ public class UserOperatorTest
     }
 
     /** 获取每一个用户在市场出售的武器列表。*/
-    @Order(7)
+    @Order(8)
     @Test
     public void TestGetAllWeaponsFromMarketByUUID()
     {
@@ -226,7 +259,7 @@ public class UserOperatorTest
     }
 
     /** 将每一个用户上架在市场（如果有的话）的其中 2 件武器下架，放回用户自己的包裹。*/
-    @Order(8)
+    @Order(9)
     @Test
     public void TestRemoveWeaponFromMarket()
     {
@@ -248,7 +281,7 @@ public class UserOperatorTest
     }
 
     /** 市场交易测试。*/
-    @Order(9)
+    @Order(10)
     @Test
     void TestMarketTransaction()
     {
@@ -299,7 +332,7 @@ public class UserOperatorTest
             }).blockLast(); // 使用 blockLast() 等待所有交易完成
     }
 
-    @Order(10)
+    @Order(11)
     @Test
     public void TestCreateGuild()
     {
@@ -335,7 +368,7 @@ public class UserOperatorTest
     }
 
     /** 删除随机挑选的 5 个用户。*/
-    @Order(11)
+    @Order(12)
     @Test
     public void TestDeleteUser()
     {
@@ -349,7 +382,7 @@ public class UserOperatorTest
     }
 
     /** 最后调用 FLUSHALL ASYNC 命令，清空整个 Redis。*/
-    @Order(12)
+    @Order(13)
     @Test
     public void redisFlushAllAsync()
     {